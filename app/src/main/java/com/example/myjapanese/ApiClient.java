@@ -1,19 +1,131 @@
 package com.example.myjapanese;
 
+import android.content.Context;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+// The one HTTP stack of the app, every ApiService call goes through the same OkHttpClient
+// so connections, the response cache and the dispatcher threads are shared.
 public class ApiClient {
-    private static final String BASE_URL = "http://192.168.91.137:8000/";
-    private static Retrofit retrofit = null;
-
-    public static Retrofit getClient() {
-        if (retrofit == null) {
-            retrofit = new Retrofit.Builder()
-                    .baseUrl(BASE_URL)
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .build();
+    // Set per build type in app/build.gradle.kts
+    private static final String BASE_URL = BuildConfig.API_BASE_URL;
+
+    // Keep a few warm connections to the API host instead of a new handshake per call
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    // Responses carrying ETag or Last-Modified are revalidated from here with conditional requests
+    private static final String HTTP_CACHE_DIR = "http_cache";
+    private static final long HTTP_CACHE_SIZE_BYTES = 20L * 1024 * 1024;
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    // Ceiling for the per-endpoint read timeouts ApiResilience picks from observed latency
+    private static final long READ_TIMEOUT_SECONDS = 30;
+
+    // Keeps an idle change stream alive through NATs and notices a dead one, see ItemChangeStream
+    private static final long PING_INTERVAL_SECONDS = 30;
+
+    private static volatile Retrofit retrofit = null;
+    private static volatile ApiService apiService = null;
+
+    public static Retrofit getClient(Context context) {
+        Retrofit result = retrofit;
+        if (result == null) {
+            synchronized (ApiClient.class) {
+                result = retrofit;
+                if (result == null) {
+                    result = new Retrofit.Builder()
+                            .baseUrl(BASE_URL)
+                            .client(buildHttpClient(context.getApplicationContext()))
+                            // Times the converters after it, see ApiMetrics
+                            .addConverterFactory(ApiMetrics.get().converterFactory(ApiService.class))
+                            // Binary list responses, JSON ones fall through to Gson
+                            .addConverterFactory(CompactConverterFactory.create())
+                            .addConverterFactory(GsonConverterFactory.create(getGson()))
+                            .build();
+                    retrofit = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Gson with the hand-written model adapters, see ModelTypeAdapters
+    public static Gson getGson() {
+        return GsonHolder.GSON;
+    }
+
+    // Built on first use, which is off the main thread during startup
+    private static class GsonHolder {
+        static final Gson GSON = ModelTypeAdapters.createGson();
+    }
+
+    public static ApiService getService(Context context) {
+        ApiService result = apiService;
+        if (result == null) {
+            synchronized (ApiClient.class) {
+                result = apiService;
+                if (result == null) {
+                    result = getClient(context).create(ApiService.class);
+                    apiService = result;
+                }
+            }
         }
-        return retrofit;
+        return result;
     }
-}
\ No newline at end of file
+
+    // On the same connection pool and dispatcher as the API calls
+    public static ItemChangeStream newChangeStream(Context context, ItemChangeStream.Listener listener) {
+        Retrofit client = getClient(context);
+        OkHttpClient httpClient = ((OkHttpClient) client.callFactory()).newBuilder()
+                .pingInterval(PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .build();
+        return new ItemChangeStream(httpClient, client.baseUrl(), getGson(), listener);
+    }
+
+    // OkHttp already asks for gzip and unzips transparently, as long as no Accept-Encoding header is set by hand
+    private static OkHttpClient buildHttpClient(Context context) {
+        File cacheDir = new File(context.getCacheDir(), HTTP_CACHE_DIR);
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .cache(new Cache(cacheDir, HTTP_CACHE_SIZE_BYTES))
+                .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                // ApiResilience owns retries, OkHttp's silent ones would come on top of its MAX_ATTEMPTS
+                .retryOnConnectionFailure(false)
+                .addInterceptor(FIRST_BYTE_INTERCEPTOR)
+                // Retries, adaptive timeouts and the circuit breaker, each attempt is then measured by ApiMetrics
+                .addInterceptor(ApiResilience.get().interceptor())
+                .addInterceptor(ApiMetrics.get().applicationInterceptor())
+                .addNetworkInterceptor(ApiMetrics.get().networkInterceptor())
+                .build();
+    }
+
+    // proceed() returns once the response headers are in, before the body is read,
+    // which is the first byte as far as the app can tell
+    private static final Interceptor FIRST_BYTE_INTERCEPTOR = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+            StartupTrace trace = StartupTrace.active();
+            if (trace != null) {
+                trace.markFirstByte(request.url().encodedPath());
+            }
+            return response;
+        }
+    };
+}
@@ -0,0 +1,337 @@
+package com.example.myjapanese;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import retrofit2.Converter;
+import retrofit2.Invocation;
+import retrofit2.Retrofit;
+
+// Per-endpoint numbers for every ApiService call, keyed by the ApiService method name:
+//   network: from sending the request until the response headers are in (the HTTP cache counts too)
+//   parse:   reading and converting the body, which includes downloading it since Gson reads as it arrives
+//   bytes:   request and response bodies as they went over the wire (compressed), cache hits add nothing
+//   errors:  I/O failures, HTTP error statuses and bodies that failed to convert
+//   retries: extra network attempts OkHttp made for one call, plus retries reported by the app
+// Everything is recorded with atomics, the hot path takes no locks and allocates one small object per call.
+public final class ApiMetrics {
+
+    private static final ApiMetrics INSTANCE = new ApiMetrics();
+
+    public static ApiMetrics get() {
+        return INSTANCE;
+    }
+
+    public static class Endpoint {
+        final String name;
+        final LatencyHistogram networkMicros = new LatencyHistogram();
+        final LatencyHistogram parseMicros = new LatencyHistogram();
+        final AtomicLong requestBytes = new AtomicLong();
+        final AtomicLong responseBytes = new AtomicLong();
+        final AtomicLong ioErrors = new AtomicLong();
+        final AtomicLong httpErrors = new AtomicLong();
+        final AtomicLong parseErrors = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        public LatencyHistogram.Snapshot network() {
+            return networkMicros.snapshot();
+        }
+
+        public LatencyHistogram.Snapshot parse() {
+            return parseMicros.snapshot();
+        }
+    }
+
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    // Shared by the endpoint's interceptors and converter
+    public Endpoint endpoint(String name) {
+        Endpoint endpoint = endpoints.get(name);
+        if (endpoint == null) {
+            Endpoint created = new Endpoint(name);
+            endpoint = endpoints.putIfAbsent(name, created);
+            if (endpoint == null) {
+                endpoint = created;
+            }
+        }
+        return endpoint;
+    }
+
+    // For retries the app does on its own, e.g. sending a failed batch again
+    public void recordRetry(String endpointName) {
+        endpoint(endpointName).retries.incrementAndGet();
+    }
+
+    public void reset() {
+        endpoints.clear();
+    }
+
+    // Add with addInterceptor(), it sees each call once
+    public Interceptor applicationInterceptor() {
+        return applicationInterceptor;
+    }
+
+    // Add with addNetworkInterceptor(), it sees every attempt and the bytes on the wire
+    public Interceptor networkInterceptor() {
+        return networkInterceptor;
+    }
+
+    // Add before the Gson converter factory
+    public Converter.Factory converterFactory(Class<?> service) {
+        return new TimingConverterFactory(service);
+    }
+
+    // Network attempts of one call, handed from the application to the network interceptor in a request tag
+    private static final class Attempts {
+        final AtomicInteger count = new AtomicInteger();
+    }
+
+    private final Interceptor applicationInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Endpoint endpoint = endpoint(endpointName(request));
+            Attempts attempts = new Attempts();
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = chain.proceed(request.newBuilder().tag(Attempts.class, attempts).build());
+            } catch (IOException e) {
+                endpoint.ioErrors.incrementAndGet();
+                throw e;
+            } finally {
+                int extraAttempts = attempts.count.get() - 1;
+                if (extraAttempts > 0) {
+                    endpoint.retries.addAndGet(extraAttempts);
+                }
+            }
+            endpoint.networkMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            if (!response.isSuccessful()) {
+                endpoint.httpErrors.incrementAndGet();
+            }
+            return response;
+        }
+    };
+
+    private final Interceptor networkInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Attempts attempts = request.tag(Attempts.class);
+            if (attempts != null) {
+                attempts.count.incrementAndGet();
+            }
+            Endpoint endpoint = endpoint(endpointName(request));
+            RequestBody requestBody = request.body();
+            if (requestBody != null && requestBody.contentLength() > 0) {
+                endpoint.requestBytes.addAndGet(requestBody.contentLength());
+            }
+
+            Response response = chain.proceed(request);
+            ResponseBody body = response.body();
+            if (body == null) {
+                return response;
+            }
+            return response.newBuilder().body(new CountingResponseBody(body, endpoint)).build();
+        }
+    };
+
+    // Method name from the tag Retrofit puts on every request, method and path for anything else
+    static String endpointName(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        if (invocation != null) {
+            return invocation.method().getName();
+        }
+        return request.method() + " " + request.url().encodedPath();
+    }
+
+    // Adds the bytes read to the endpoint once the body is exhausted or closed
+    private static final class CountingResponseBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final Endpoint endpoint;
+        private final BufferedSource source;
+        private long bytesRead = 0;
+        private boolean recorded = false;
+
+        CountingResponseBody(ResponseBody delegate, Endpoint endpoint) {
+            this.delegate = delegate;
+            this.endpoint = endpoint;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read == -1) {
+                        record();
+                    } else {
+                        bytesRead += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    record();
+                    super.close();
+                }
+            });
+        }
+
+        private void record() {
+            if (!recorded) {
+                recorded = true;
+                endpoint.responseBytes.addAndGet(bytesRead);
+            }
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+    // Times the converter that comes after it. Converters are created once per ApiService method,
+    // the method is found again from the annotations and response type Retrofit passes in.
+    private final class TimingConverterFactory extends Converter.Factory {
+        private final Map<List<Annotation>, List<Method>> methodsByAnnotations = new HashMap<>();
+
+        TimingConverterFactory(Class<?> service) {
+            for (Method method : service.getDeclaredMethods()) {
+                List<Annotation> key = Arrays.asList(method.getAnnotations());
+                List<Method> methods = methodsByAnnotations.get(key);
+                if (methods == null) {
+                    methods = new ArrayList<>(1);
+                    methodsByAnnotations.put(key, methods);
+                }
+                methods.add(method);
+            }
+        }
+
+        @Override
+        public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+            final Converter<ResponseBody, ?> delegate = retrofit.nextResponseBodyConverter(this, type, annotations);
+            final String name = methodName(type, annotations);
+            return new Converter<ResponseBody, Object>() {
+                @Override
+                public Object convert(ResponseBody value) throws IOException {
+                    // Looked up per call, the converter outlives a reset()
+                    Endpoint endpoint = endpoint(name);
+                    long start = System.nanoTime();
+                    try {
+                        Object result = delegate.convert(value);
+                        endpoint.parseMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                        return result;
+                    } catch (IOException | RuntimeException e) {
+                        endpoint.parseErrors.incrementAndGet();
+                        throw e;
+                    }
+                }
+            };
+        }
+
+        private String methodName(Type responseType, Annotation[] annotations) {
+            List<Method> candidates = methodsByAnnotations.get(Arrays.asList(annotations));
+            if (candidates == null) {
+                return "unknown";
+            }
+            for (Method method : candidates) {
+                Type returnType = method.getGenericReturnType();
+                if (returnType instanceof ParameterizedType
+                        && ((ParameterizedType) returnType).getActualTypeArguments()[0].equals(responseType)) {
+                    return method.getName();
+                }
+            }
+            return candidates.get(0).getName();
+        }
+    }
+
+    // One line per endpoint, slowest p95 first. Times in ms, sizes in KB.
+    public String report() {
+        List<Endpoint> sorted = new ArrayList<>(endpoints.values());
+        final Map<Endpoint, LatencyHistogram.Snapshot> network = new HashMap<>();
+        for (Endpoint endpoint : sorted) {
+            network.put(endpoint, endpoint.network());
+        }
+        Collections.sort(sorted, new Comparator<Endpoint>() {
+            @Override
+            public int compare(Endpoint a, Endpoint b) {
+                return Long.compare(network.get(b).p95, network.get(a).p95);
+            }
+        });
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%-20s %6s %-15s %7s | %-31s | %-31s | %9s %9s%n",
+                "endpoint", "calls", "io/http/parse", "retries",
+                "network p50/p95/p99/max", "parse p50/p95/p99/max", "req KB", "resp KB"));
+        for (Endpoint endpoint : sorted) {
+            LatencyHistogram.Snapshot net = network.get(endpoint);
+            LatencyHistogram.Snapshot parse = endpoint.parse();
+            String errors = endpoint.ioErrors.get() + "/" + endpoint.httpErrors.get() + "/" + endpoint.parseErrors.get();
+            sb.append(String.format(Locale.US, "%-20s %6d %-15s %7d | %-31s | %-31s | %9.1f %9.1f%n",
+                    endpoint.name, net.count + endpoint.ioErrors.get(), errors, endpoint.retries.get(),
+                    millis(net), millis(parse),
+                    endpoint.requestBytes.get() / 1024.0, endpoint.responseBytes.get() / 1024.0));
+        }
+        return sb.toString();
+    }
+
+    public void writeReport(File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+        try {
+            writer.write(report());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String millis(LatencyHistogram.Snapshot snapshot) {
+        if (snapshot.count == 0) {
+            return "-";
+        }
+        return String.format(Locale.US, "%.1f/%.1f/%.1f/%.1f",
+                snapshot.p50 / 1000.0, snapshot.p95 / 1000.0, snapshot.p99 / 1000.0, snapshot.max / 1000.0);
+    }
+}
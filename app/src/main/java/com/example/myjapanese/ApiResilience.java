@@ -0,0 +1,390 @@
+package com.example.myjapanese;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.CacheControl;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Keeps a slow or failing backend from hanging the app, as an OkHttp application interceptor:
+//   timeouts  every endpoint gets a read timeout from its own response times (smoothed time plus four
+//             deviations, the way TCP sets its retransmit timer), at most the client's read timeout
+//   retries   a failed attempt of an idempotent call (GET, HEAD, PUT, DELETE, or any request carrying an
+//             Idempotency-Key header) is sent again after a jittered exponential backoff, MAX_ATTEMPTS in all
+//   breaker   after FAILURE_THRESHOLD failed attempts in a row the host is left alone for OPEN_MS: GETs are
+//             answered from the HTTP cache and everything else fails at once with CircuitOpenException.
+//             Then one probe goes through, a success closes the breaker, a failure opens it twice as long.
+// Add it before ApiMetrics' application interceptor, so every attempt is measured there.
+public final class ApiResilience {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long BASE_BACKOFF_MS = 200;
+    private static final long MAX_BACKOFF_MS = 5_000;
+    private static final long MIN_TIMEOUT_MS = 2_000;
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_MS = 10_000;
+    private static final long MAX_OPEN_MS = 5 * 60_000;
+
+    // Cancellation is noticed within this while backing off
+    private static final long SLEEP_SLICE_MS = 50;
+
+    public static final int CLOSED = 0;
+    public static final int OPEN = 1;
+    public static final int HALF_OPEN = 2;
+
+    private static final ApiResilience INSTANCE = new ApiResilience(MAX_ATTEMPTS, BASE_BACKOFF_MS, MAX_BACKOFF_MS,
+            MIN_TIMEOUT_MS, FAILURE_THRESHOLD, OPEN_MS, new Random());
+
+    public static ApiResilience get() {
+        return INSTANCE;
+    }
+
+    // Thrown instead of calling a backend whose breaker is open, when there is no cached response to give
+    public static class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    // Response time estimate and counters of one endpoint, keyed like ApiMetrics
+    static final class Endpoint {
+        final String name;
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong servedFromCache = new AtomicLong();
+        final AtomicLong failedFast = new AtomicLong();
+        private long smoothedMicros = -1;
+        private long deviationMicros = 0;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        synchronized void recordResponse(long micros) {
+            if (smoothedMicros < 0) {
+                smoothedMicros = micros;
+                deviationMicros = micros / 2;
+            } else {
+                long error = micros - smoothedMicros;
+                smoothedMicros += error / 8;
+                deviationMicros += (Math.abs(error) - deviationMicros) / 4;
+            }
+        }
+
+        // -1 until the first response came in
+        synchronized long estimateMillis() {
+            return smoothedMicros < 0 ? -1 : TimeUnit.MICROSECONDS.toMillis(smoothedMicros + 4 * deviationMicros);
+        }
+
+        // The most it is worth waiting for a response, maxMs until the first one came in
+        long timeoutMillis(long minMs, long maxMs) {
+            long ms = estimateMillis();
+            return ms < 0 ? maxMs : Math.max(minMs, Math.min(ms, maxMs));
+        }
+    }
+
+    // Circuit breaker of one host
+    static final class Breaker {
+        final String host;
+        private final int failureThreshold;
+        private final long baseOpenMs;
+        private int state = CLOSED;
+        private int consecutiveFailures = 0;
+        private long openedAtNanos;
+        private long openMs;
+        private boolean probing = false;
+        private long opens = 0;
+
+        Breaker(String host, int failureThreshold, long openMs) {
+            this.host = host;
+            this.failureThreshold = failureThreshold;
+            this.baseOpenMs = openMs;
+            this.openMs = openMs;
+        }
+
+        // False while open, once the open period is over true for one probe at a time
+        synchronized boolean allow(long nowNanos) {
+            if (state == OPEN && nowNanos - openedAtNanos >= TimeUnit.MILLISECONDS.toNanos(openMs)) {
+                state = HALF_OPEN;
+            }
+            if (state == HALF_OPEN && !probing) {
+                probing = true;
+                return true;
+            }
+            return state == CLOSED;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            probing = false;
+            state = CLOSED;
+            openMs = baseOpenMs;
+        }
+
+        synchronized void onFailure(long nowNanos) {
+            if (state == HALF_OPEN) {
+                probing = false;
+                open(nowNanos, Math.min(openMs * 2, MAX_OPEN_MS));
+            } else if (state == CLOSED && ++consecutiveFailures >= failureThreshold) {
+                open(nowNanos, baseOpenMs);
+            }
+        }
+
+        // The attempt said nothing about the backend (cancelled, or answered by the cache), someone else may probe
+        synchronized void onInconclusive() {
+            probing = false;
+        }
+
+        private void open(long nowNanos, long ms) {
+            state = OPEN;
+            openedAtNanos = nowNanos;
+            openMs = ms;
+            opens++;
+        }
+
+        synchronized int state() {
+            return state;
+        }
+
+        synchronized long opens() {
+            return opens;
+        }
+
+        synchronized long remainingOpenMillis(long nowNanos) {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(nowNanos - openedAtNanos);
+            return state == OPEN ? Math.max(0, openMs - elapsedMs) : 0;
+        }
+    }
+
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final long minTimeoutMs;
+    private final int failureThreshold;
+    private final long openMs;
+    private final Random random;
+    private final ConcurrentHashMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    ApiResilience(int maxAttempts, long baseBackoffMs, long maxBackoffMs, long minTimeoutMs,
+                  int failureThreshold, long openMs, Random random) {
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.minTimeoutMs = minTimeoutMs;
+        this.failureThreshold = failureThreshold;
+        this.openMs = openMs;
+        this.random = random;
+    }
+
+    // Add with addInterceptor(), ahead of ApiMetrics.applicationInterceptor()
+    public Interceptor interceptor() {
+        return interceptor;
+    }
+
+    Endpoint endpoint(String name) {
+        Endpoint endpoint = endpoints.get(name);
+        if (endpoint == null) {
+            Endpoint created = new Endpoint(name);
+            endpoint = endpoints.putIfAbsent(name, created);
+            if (endpoint == null) {
+                endpoint = created;
+            }
+        }
+        return endpoint;
+    }
+
+    Breaker breaker(HttpUrl url) {
+        String host = url.host() + ":" + url.port();
+        Breaker breaker = breakers.get(host);
+        if (breaker == null) {
+            Breaker created = new Breaker(host, failureThreshold, openMs);
+            breaker = breakers.putIfAbsent(host, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    private final Interceptor interceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Endpoint endpoint = endpoint(ApiMetrics.endpointName(request));
+            Breaker breaker = breaker(request.url());
+            boolean idempotent = isIdempotent(request);
+            int maxTimeoutMs = chain.readTimeoutMillis();
+            long timeoutMs = endpoint.timeoutMillis(minTimeoutMs, maxTimeoutMs);
+
+            for (int attempt = 1; ; attempt++) {
+                if (!breaker.allow(System.nanoTime())) {
+                    return failFast(chain, request, endpoint, breaker);
+                }
+                long start = System.nanoTime();
+                Response response;
+                boolean settled = false;
+                try {
+                    response = chain.withReadTimeout((int) timeoutMs, TimeUnit.MILLISECONDS).proceed(request);
+                    settled = true;
+                } catch (IOException e) {
+                    settled = true;
+                    if (chain.call().isCanceled()) {
+                        breaker.onInconclusive();
+                        throw e;
+                    }
+                    breaker.onFailure(System.nanoTime());
+                    if (e instanceof SocketTimeoutException) {
+                        endpoint.timeouts.incrementAndGet();
+                        // The backend may have slowed down since the estimate, the next attempt waits longer
+                        timeoutMs = Math.min(timeoutMs * 2, maxTimeoutMs);
+                    }
+                    if (!idempotent || attempt >= maxAttempts) {
+                        throw e;
+                    }
+                    backoff(chain, endpoint, attempt, -1);
+                    continue;
+                } finally {
+                    // A RuntimeException from further down says nothing about the backend, and a probe that
+                    // threw it must not keep the breaker half open for good
+                    if (!settled) {
+                        breaker.onInconclusive();
+                    }
+                }
+
+                int code = response.code();
+                if (response.networkResponse() == null) {
+                    breaker.onInconclusive();
+                } else if (code >= 500) {
+                    breaker.onFailure(System.nanoTime());
+                } else {
+                    breaker.onSuccess();
+                    endpoint.recordResponse(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                }
+
+                if (!idempotent || attempt >= maxAttempts || !isRetryableStatus(code)) {
+                    return response;
+                }
+                long retryAfterMs = retryAfterMillis(response);
+                if (retryAfterMs > maxBackoffMs) {
+                    // The server asked for more patience than a user waiting on the call has
+                    return response;
+                }
+                response.close();
+                backoff(chain, endpoint, attempt, retryAfterMs);
+            }
+        }
+    };
+
+    // A GET gets whatever the HTTP cache has, however stale. Nothing goes to the network.
+    private Response failFast(Interceptor.Chain chain, Request request, Endpoint endpoint, Breaker breaker) throws IOException {
+        if ("GET".equals(request.method())) {
+            Response cached = chain.proceed(request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build());
+            if (cached.cacheResponse() != null) {
+                endpoint.servedFromCache.incrementAndGet();
+                return cached;
+            }
+            cached.close();
+        }
+        endpoint.failedFast.incrementAndGet();
+        throw new CircuitOpenException(breaker.host + " is unavailable, retrying in "
+                + breaker.remainingOpenMillis(System.nanoTime()) / 1000 + " s");
+    }
+
+    // Full jitter: a random wait up to the exponential backoff, or what a Retry-After header asked for
+    private void backoff(Interceptor.Chain chain, Endpoint endpoint, int attempt, long retryAfterMs) throws IOException {
+        long delayMs = retryAfterMs;
+        if (delayMs < 0) {
+            long ceiling = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20));
+            delayMs = (long) (random.nextDouble() * ceiling);
+        }
+        endpoint.retries.incrementAndGet();
+        ApiMetrics.get().recordRetry(endpoint.name);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        try {
+            long remainingMs = delayMs;
+            while (remainingMs > 0) {
+                if (chain.call().isCanceled()) {
+                    throw new IOException("Canceled");
+                }
+                Thread.sleep(Math.min(remainingMs, SLEEP_SLICE_MS));
+                remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    // Sending these twice has the same effect as sending them once
+    static boolean isIdempotent(Request request) {
+        String method = request.method();
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method) || "DELETE".equals(method)
+                || "OPTIONS".equals(method) || request.header("Idempotency-Key") != null;
+    }
+
+    // Timeouts, rate limits and the gateway errors of a backend that is restarting or overloaded
+    static boolean isRetryableStatus(int code) {
+        return code == 408 || code == 429 || code == 502 || code == 503 || code == 504;
+    }
+
+    // Retry-After in seconds, -1 if there is none or it is an HTTP date
+    static long retryAfterMillis(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public int state(HttpUrl url) {
+        return breaker(url).state();
+    }
+
+    public void reset() {
+        endpoints.clear();
+        breakers.clear();
+    }
+
+    // One line per host breaker and per endpoint. The timeout is the current estimate in ms before
+    // the MIN_TIMEOUT_MS floor and the client's read timeout cap are applied.
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Breaker breaker : breakers.values()) {
+            int state = breaker.state();
+            String stateName = state == CLOSED ? "closed" : state == OPEN ? "open" : "half-open";
+            sb.append(String.format(Locale.US, "%s: breaker %s, opened %d times%n", breaker.host, stateName, breaker.opens()));
+        }
+        List<String> names = new ArrayList<>(endpoints.keySet());
+        Collections.sort(names);
+        sb.append(String.format(Locale.US, "%-20s %8s %8s %7s %7s %7s%n",
+                "endpoint", "timeout", "timeouts", "retries", "cached", "failed"));
+        for (String name : names) {
+            Endpoint endpoint = endpoints.get(name);
+            long estimateMs = endpoint.estimateMillis();
+            sb.append(String.format(Locale.US, "%-20s %8s %8d %7d %7d %7d%n", name,
+                    estimateMs < 0 ? "-" : String.valueOf(estimateMs), endpoint.timeouts.get(), endpoint.retries.get(),
+                    endpoint.servedFromCache.get(), endpoint.failedFast.get()));
+        }
+        return sb.toString();
+    }
+}
@@ -2,9 +2,12 @@ package com.example.myjapanese;
 
 import java.util.List;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.POST;
 import retrofit2.http.Body;
 
@@ -12,18 +15,41 @@ import retrofit2.Call;
 import retrofit2.http.GET;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 public interface ApiService {
 
+    // The list calls take CompactCodec's binary format when the server offers it, JSON otherwise
+    @Headers(CompactCodec.ACCEPT_HEADER)
     @GET("potato_posts/")
     Call<List<PotatoPost>> getPotatoPosts();
 
+    // Page numbers start at 1. Pages can be fetched in any order, so a page dropped from a cache
+    // can be fetched again on its own.
+    @GET("potato_posts/")
+    Call<PotatoPostPage> getPotatoPostsPage(@Query("page") int page, @Query("page_size") int pageSize);
+
+    @Headers(CompactCodec.ACCEPT_HEADER)
     @GET("location/")
     Call<List<Location>> getLocations();
 
+    @Headers(CompactCodec.ACCEPT_HEADER)
     @GET("item/")
     Call<List<Item>> getItems();
 
+    // Cursor paginated variant, pass a null cursor for the first page
+    @GET("item/")
+    Call<ItemPage> getItemsPage(@Query("cursor") String cursor, @Query("page_size") int pageSize);
+
+    // Raw body of the full list, read with ItemStreamReader while it downloads.
+    // The X-Sync-Token response header is the starting point for getItemChanges.
+    // ItemLoader.loadAll reads either format.
+    @Streaming
+    @Headers(CompactCodec.ACCEPT_HEADER)
+    @GET("item/")
+    Call<ResponseBody> streamItems();
+
     @POST("item/")
     Call<Item> createItem(@Body Item item);
 
@@ -33,5 +59,15 @@ public interface ApiService {
     @DELETE("item/{id}/")
     Call<Void> deleteItem(@Path("id") int id);
 
+    // Items changed since a token from an earlier sync, 410 Gone once the token has expired
+    @GET("item/changes/")
+    Call<ItemChanges> getItemChanges(@Query("since") String since);
+
+    // Applies a batch of creates, updates and deletes, one result per mutation matched by client_id.
+    // The server applies a batch once per key, so ApiResilience can send it again after a failed attempt.
+    // MutationQueue and ItemCsv derive the key from the batch, see ItemMutation.idempotencyKey.
+    @POST("item/bulk/")
+    Call<List<ItemMutationResult>> bulkItems(@Body List<ItemMutation> mutations, @Header("Idempotency-Key") String key);
+
 
 }
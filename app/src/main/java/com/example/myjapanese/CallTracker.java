@@ -0,0 +1,15 @@
+package com.example.myjapanese;
+
+import java.io.IOException;
+
+import retrofit2.Call;
+
+// Hands the Retrofit calls a blocking load makes to whoever may have to cancel it from another thread
+public interface CallTracker {
+
+    // Returns the call, or throws if the load was cancelled before the call could start
+    <T> Call<T> track(Call<T> call) throws IOException;
+
+    // True once the load has been cancelled, its partial results should not be shown
+    boolean isCancelled();
+}
@@ -0,0 +1,186 @@
+package com.example.myjapanese;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+// An immutable item list stored as chunks of at most CHUNK_SIZE items. A change copies the chunk it touches
+// and the array of chunk references, every other chunk is shared with the list it was made from, so a new
+// list per edit costs O(n / CHUNK_SIZE) instead of a full copy. get() binary searches the chunk start offsets.
+// The mutators of List throw, the methods that change something return a new list instead.
+public final class ChunkedItemList extends AbstractList<Item> implements RandomAccess {
+
+    static final int CHUNK_SIZE = 64;
+
+    // Each change applied on its own scans for its id, past this many a delta is merged in one pass instead
+    private static final int MAX_SEPARATE_CHANGES = 16;
+
+    public static final ChunkedItemList EMPTY = new ChunkedItemList(new Item[0][], new int[]{0});
+
+    // Never empty, starts[i] is the index of the first item of chunks[i] and starts[chunks.length] the size
+    private final Item[][] chunks;
+    private final int[] starts;
+
+    private ChunkedItemList(Item[][] chunks, int[] starts) {
+        this.chunks = chunks;
+        this.starts = starts;
+    }
+
+    // Copies the items, later changes to the given list do not show up here
+    public static ChunkedItemList of(List<Item> items) {
+        if (items instanceof ChunkedItemList) {
+            return (ChunkedItemList) items;
+        }
+        int size = items.size();
+        if (size == 0) {
+            return EMPTY;
+        }
+        int chunkCount = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Item[][] chunks = new Item[chunkCount][];
+        int[] starts = new int[chunkCount + 1];
+        Item[] all = items.toArray(new Item[size]);
+        for (int c = 0; c < chunkCount; c++) {
+            int from = c * CHUNK_SIZE;
+            chunks[c] = Arrays.copyOfRange(all, from, Math.min(from + CHUNK_SIZE, size));
+            starts[c] = from;
+        }
+        starts[chunkCount] = size;
+        return new ChunkedItemList(chunks, starts);
+    }
+
+    @Override
+    public Item get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+        }
+        int chunk = chunkOf(index);
+        return chunks[chunk][index - starts[chunk]];
+    }
+
+    @Override
+    public int size() {
+        return starts[chunks.length];
+    }
+
+    // -1 if no item has the id
+    public int indexOfId(int itemId) {
+        for (int c = 0; c < chunks.length; c++) {
+            Item[] chunk = chunks[c];
+            for (int i = 0; i < chunk.length; i++) {
+                if (chunk[i].getId() == itemId) {
+                    return starts[c] + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public ChunkedItemList replace(int index, Item item) {
+        int chunk = chunkOf(index);
+        Item[] copy = chunks[chunk].clone();
+        copy[index - starts[chunk]] = item;
+        Item[][] newChunks = chunks.clone();
+        newChunks[chunk] = copy;
+        return new ChunkedItemList(newChunks, starts);
+    }
+
+    public ChunkedItemList delete(int index) {
+        int chunk = chunkOf(index);
+        Item[] old = chunks[chunk];
+        int offset = index - starts[chunk];
+        if (old.length == 1) {
+            // The chunk goes away, so do its reference and its start
+            Item[][] newChunks = new Item[chunks.length - 1][];
+            System.arraycopy(chunks, 0, newChunks, 0, chunk);
+            System.arraycopy(chunks, chunk + 1, newChunks, chunk, chunks.length - chunk - 1);
+            int[] newStarts = new int[starts.length - 1];
+            System.arraycopy(starts, 0, newStarts, 0, chunk);
+            for (int c = chunk; c < newStarts.length; c++) {
+                newStarts[c] = starts[c + 1] - 1;
+            }
+            return new ChunkedItemList(newChunks, newStarts);
+        }
+        Item[] copy = new Item[old.length - 1];
+        System.arraycopy(old, 0, copy, 0, offset);
+        System.arraycopy(old, offset + 1, copy, offset, old.length - offset - 1);
+        Item[][] newChunks = chunks.clone();
+        newChunks[chunk] = copy;
+        int[] newStarts = starts.clone();
+        for (int c = chunk + 1; c < newStarts.length; c++) {
+            newStarts[c]--;
+        }
+        return new ChunkedItemList(newChunks, newStarts);
+    }
+
+    public ChunkedItemList append(Item item) {
+        int last = chunks.length - 1;
+        if (last >= 0 && chunks[last].length < CHUNK_SIZE) {
+            Item[] copy = Arrays.copyOf(chunks[last], chunks[last].length + 1);
+            copy[copy.length - 1] = item;
+            Item[][] newChunks = chunks.clone();
+            newChunks[last] = copy;
+            int[] newStarts = starts.clone();
+            newStarts[chunks.length]++;
+            return new ChunkedItemList(newChunks, newStarts);
+        }
+        Item[][] newChunks = Arrays.copyOf(chunks, chunks.length + 1);
+        newChunks[chunks.length] = new Item[]{item};
+        int[] newStarts = Arrays.copyOf(starts, starts.length + 1);
+        newStarts[starts.length] = size() + 1;
+        return new ChunkedItemList(newChunks, newStarts);
+    }
+
+    // Replaces the item with the id in place, or appends it
+    public ChunkedItemList upsert(Item item) {
+        int index = indexOfId(item.getId());
+        return index >= 0 ? replace(index, item) : append(item);
+    }
+
+    // The same list ItemDeltaMerger.merge produces. A few changes are applied one by one and share the
+    // untouched chunks, a large delta is merged in one pass and chunked again.
+    public ChunkedItemList apply(List<Item> upserted, int[] deleted) {
+        if (upserted == null) {
+            upserted = Collections.emptyList();
+        }
+        if (deleted == null) {
+            deleted = new int[0];
+        }
+        int changes = upserted.size() + deleted.length;
+        if (changes == 0) {
+            return this;
+        }
+        if (changes > MAX_SEPARATE_CHANGES) {
+            return of(ItemDeltaMerger.merge(this, upserted, deleted));
+        }
+        ChunkedItemList result = this;
+        for (int id : deleted) {
+            // The merger keeps an item that is deleted and upserted in the same delta where it was
+            if (!containsId(upserted, id)) {
+                int index = result.indexOfId(id);
+                if (index >= 0) {
+                    result = result.delete(index);
+                }
+            }
+        }
+        for (Item item : upserted) {
+            result = result.upsert(item);
+        }
+        return result;
+    }
+
+    private static boolean containsId(List<Item> items, int id) {
+        for (Item item : items) {
+            if (item.getId() == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int chunkOf(int index) {
+        int found = Arrays.binarySearch(starts, 0, chunks.length, index);
+        return found >= 0 ? found : -found - 2;
+    }
+}
@@ -0,0 +1,422 @@
+package com.example.myjapanese;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A compact binary encoding of the Item, Location and PotatoPost lists, the alternative to JSON a server
+// sends when the request accepts MEDIA_TYPE (see CompactConverterFactory). Every message is
+//   'M' 'J' version kind, varint count
+// followed by, for KIND_ITEMS:
+//   varint n, n zigzag varint location ids        the location dictionary, in order of first use
+//   varint n, n dates                             the date dictionary, zigzag varint epoch day + 1, or 0 and a string
+//   per item: zigzag varint id - previous id, string name, varint location index, varint date index + 1 (0 for null)
+// for KIND_LOCATIONS, per location: zigzag varint id, string name
+// for KIND_POTATO_POSTS, per post: string title, string content, byte 1 and zigzag varint published millis -
+//   previous published millis, or byte 0 for no date.
+// A string is a varint of its UTF-8 length + 1 and the bytes, 0 for null. Varints are little-endian base 128.
+// Dates come out of the dictionary as one shared String per distinct day, which StringPool does for JSON.
+public final class CompactCodec {
+
+    public static final String MEDIA_TYPE = "application/x-myjapanese-compact";
+
+    // For @Headers on the list calls, a server that does not know the format keeps sending JSON
+    public static final String ACCEPT_HEADER = "Accept: " + MEDIA_TYPE + ", application/json;q=0.5";
+
+    public static final int KIND_ITEMS = 1;
+    public static final int KIND_LOCATIONS = 2;
+    public static final int KIND_POTATO_POSTS = 3;
+
+    private static final int MAGIC_0 = 'M';
+    private static final int MAGIC_1 = 'J';
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    // A corrupt length must not turn into a huge allocation
+    private static final int MAX_STRING_BYTES = 1024 * 1024;
+    private static final int MAX_PREALLOCATED = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private CompactCodec() {
+    }
+
+    public static void writeItems(List<Item> items, OutputStream out) throws IOException {
+        // Dictionaries first, so a reader can hand out items before the end of the stream
+        Map<Integer, Integer> locationIndex = new HashMap<>();
+        List<Integer> locations = new ArrayList<>();
+        Map<String, Integer> dateIndex = new HashMap<>();
+        List<String> dates = new ArrayList<>();
+        for (Item item : items) {
+            Integer location = item.getItemLocationId();
+            if (!locationIndex.containsKey(location)) {
+                locationIndex.put(location, locations.size());
+                locations.add(location);
+            }
+            String date = item.getDateAdded();
+            if (date != null && !dateIndex.containsKey(date)) {
+                dateIndex.put(date, dates.size());
+                dates.add(date);
+            }
+        }
+
+        Output output = new Output(out);
+        output.writeHeader(KIND_ITEMS, items.size());
+        output.writeVarint(locations.size());
+        for (Integer location : locations) {
+            output.writeVarint(zigzag(location));
+        }
+        output.writeVarint(dates.size());
+        for (String date : dates) {
+            int day = IsoDates.parseEpochDay(date);
+            // Only dates that format back to the same text, "2024-5-1" stays a string
+            if (day != IsoDates.INVALID_DAY && IsoDates.formatEpochDay(day).equals(date)) {
+                output.writeVarint(zigzag(day) + 1);
+            } else {
+                output.writeVarint(0);
+                output.writeString(date);
+            }
+        }
+        int previousId = 0;
+        for (Item item : items) {
+            output.writeVarint(zigzag(item.getId() - previousId));
+            previousId = item.getId();
+            output.writeString(item.getItemName());
+            output.writeVarint(locationIndex.get(item.getItemLocationId()));
+            String date = item.getDateAdded();
+            output.writeVarint(date == null ? 0 : dateIndex.get(date) + 1);
+        }
+        output.flush();
+    }
+
+    public static void writeLocations(List<Location> locations, OutputStream out) throws IOException {
+        Output output = new Output(out);
+        output.writeHeader(KIND_LOCATIONS, locations.size());
+        for (Location location : locations) {
+            output.writeVarint(zigzag(location.getId()));
+            output.writeString(location.getLocationName());
+        }
+        output.flush();
+    }
+
+    public static void writePotatoPosts(List<PotatoPost> posts, OutputStream out) throws IOException {
+        Output output = new Output(out);
+        output.writeHeader(KIND_POTATO_POSTS, posts.size());
+        long previousMillis = 0;
+        for (PotatoPost post : posts) {
+            output.writeString(post.getTitle());
+            output.writeString(post.getContent());
+            Date date = post.getPublishedDate();
+            if (date == null) {
+                output.writeByte(0);
+            } else {
+                output.writeByte(1);
+                output.writeVarLong(zigzag(date.getTime() - previousMillis));
+                previousMillis = date.getTime();
+            }
+        }
+        output.flush();
+    }
+
+    public static List<Item> readItems(InputStream in) throws IOException {
+        final List<Item> items = new ArrayList<>();
+        readItems(in, MAX_PREALLOCATED, new ItemStreamReader.ChunkListener() {
+            @Override
+            public void onChunk(List<Item> chunk) {
+                items.addAll(chunk);
+            }
+        });
+        return items;
+    }
+
+    // Hands the items to the listener chunkSize at a time while the stream is read, like ItemStreamReader
+    public static int readItems(InputStream in, int chunkSize, ItemStreamReader.ChunkListener listener) throws IOException {
+        Input input = new Input(in);
+        int count = input.readHeader(KIND_ITEMS);
+
+        // The dictionaries grow as entries arrive, like the lists below, instead of trusting their length
+        int locationCount = input.readLength();
+        int[] locations = new int[Math.min(locationCount, MAX_PREALLOCATED)];
+        for (int i = 0; i < locationCount; i++) {
+            if (i == locations.length) {
+                locations = Arrays.copyOf(locations, grown(i, locationCount));
+            }
+            locations[i] = unzigzag(input.readVarint());
+        }
+        int dateCount = input.readLength();
+        String[] dates = new String[Math.min(dateCount, MAX_PREALLOCATED)];
+        for (int i = 0; i < dateCount; i++) {
+            if (i == dates.length) {
+                dates = Arrays.copyOf(dates, grown(i, dateCount));
+            }
+            int day = input.readVarint();
+            dates[i] = day == 0 ? input.readString() : IsoDates.formatEpochDay(unzigzag(day - 1));
+        }
+
+        List<Item> chunk = new ArrayList<>(Math.min(chunkSize, count));
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            id += unzigzag(input.readVarint());
+            String name = input.readString();
+            int location = input.readIndex(locations.length);
+            int date = input.readIndex(dates.length + 1);
+            chunk.add(new Item(id, name, date == 0 ? null : dates[date - 1], locations[location]));
+            if (chunk.size() == chunkSize) {
+                listener.onChunk(chunk);
+                chunk = new ArrayList<>(Math.min(chunkSize, count - i - 1));
+            }
+        }
+        if (!chunk.isEmpty()) {
+            listener.onChunk(chunk);
+        }
+        return count;
+    }
+
+    public static List<Location> readLocations(InputStream in) throws IOException {
+        Input input = new Input(in);
+        int count = input.readHeader(KIND_LOCATIONS);
+        List<Location> locations = new ArrayList<>(Math.min(count, MAX_PREALLOCATED));
+        for (int i = 0; i < count; i++) {
+            Location location = new Location();
+            location.setId(unzigzag(input.readVarint()));
+            location.setLocationName(input.readString());
+            locations.add(location);
+        }
+        return locations;
+    }
+
+    public static List<PotatoPost> readPotatoPosts(InputStream in) throws IOException {
+        Input input = new Input(in);
+        int count = input.readHeader(KIND_POTATO_POSTS);
+        List<PotatoPost> posts = new ArrayList<>(Math.min(count, MAX_PREALLOCATED));
+        long previousMillis = 0;
+        for (int i = 0; i < count; i++) {
+            PotatoPost post = new PotatoPost();
+            post.setTitle(input.readString());
+            post.setContent(input.readString());
+            if (input.readByte() != 0) {
+                previousMillis += unzigzag(input.readVarLong());
+                post.setPublishedDate(new Date(previousMillis));
+            }
+            posts.add(post);
+        }
+        return posts;
+    }
+
+    private static int grown(int size, int count) {
+        return (int) Math.min(count, size * 2L);
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // Buffered writes of the primitives above, the stream is not closed
+    private static final class Output {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = 0;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeHeader(int kind, int count) throws IOException {
+            writeByte(MAGIC_0);
+            writeByte(MAGIC_1);
+            writeByte(VERSION);
+            writeByte(kind);
+            writeVarint(count);
+        }
+
+        void writeByte(int value) throws IOException {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        // Unsigned, zigzag first for values that can be negative
+        void writeVarint(int value) throws IOException {
+            if (buffer.length - position < 5) {
+                flushBuffer();
+            }
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) throws IOException {
+            if (buffer.length - position < 10) {
+                flushBuffer();
+            }
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length + 1);
+            if (bytes.length > buffer.length - position) {
+                flushBuffer();
+            }
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+            } else {
+                System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                position += bytes.length;
+            }
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    // Reads straight from its own buffer instead of a byte at a time through the stream
+    private static final class Input {
+        private final InputStream in;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = 0;
+        private int limit = 0;
+
+        Input(InputStream in) {
+            this.in = in;
+        }
+
+        // The element count
+        int readHeader(int expectedKind) throws IOException {
+            if (readByte() != MAGIC_0 || readByte() != MAGIC_1) {
+                throw new IOException("Not a compact message");
+            }
+            int version = readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compact message version " + version);
+            }
+            int kind = readByte();
+            if (kind != expectedKind) {
+                throw new IOException("Expected a compact message of kind " + expectedKind + ", got " + kind);
+            }
+            return readLength();
+        }
+
+        int readByte() throws IOException {
+            if (position == limit) {
+                fill();
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int readLength() throws IOException {
+            int length = readVarint();
+            if (length < 0) {
+                throw new IOException("Negative length " + length);
+            }
+            return length;
+        }
+
+        int readIndex(int size) throws IOException {
+            int index = readVarint();
+            if (index < 0 || index >= size) {
+                throw new IOException("Dictionary index " + index + " out of " + size);
+            }
+            return index;
+        }
+
+        String readString() throws IOException {
+            int header = readLength();
+            if (header == 0) {
+                return null;
+            }
+            int length = header - 1;
+            if (length > MAX_STRING_BYTES) {
+                throw new IOException("String of " + length + " bytes");
+            }
+            if (limit - position >= length) {
+                String value = new String(buffer, position, length, UTF_8);
+                position += length;
+                return value;
+            }
+            byte[] bytes = new byte[length];
+            int copied = limit - position;
+            System.arraycopy(buffer, position, bytes, 0, copied);
+            position = limit;
+            while (copied < length) {
+                int read = in.read(bytes, copied, length - copied);
+                if (read == -1) {
+                    throw new EOFException("Compact message ends inside a string");
+                }
+                copied += read;
+            }
+            return new String(bytes, UTF_8);
+        }
+
+        private void fill() throws IOException {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                throw new EOFException("Compact message ends early");
+            }
+            position = 0;
+            limit = read;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.myjapanese;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+// Decodes List<Item>, List<Location> and List<PotatoPost> responses that came back as CompactCodec.MEDIA_TYPE,
+// anything else, including those lists as JSON, goes on to the next factory. Add it before the Gson converter
+// factory. The calls ask for the format with @Headers(CompactCodec.ACCEPT_HEADER), the server must answer
+// with Vary: Accept so the HTTP cache keeps the two representations apart.
+public final class CompactConverterFactory extends Converter.Factory {
+
+    public static CompactConverterFactory create() {
+        return new CompactConverterFactory();
+    }
+
+    private CompactConverterFactory() {
+    }
+
+    public static boolean isCompact(MediaType contentType) {
+        return contentType != null && CompactCodec.MEDIA_TYPE.equals(contentType.type() + "/" + contentType.subtype());
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        int kind = kindOf(type);
+        if (kind == 0) {
+            return null;
+        }
+        Converter<ResponseBody, ?> json = retrofit.nextResponseBodyConverter(this, type, annotations);
+        return new ListConverter(kind, json);
+    }
+
+    // The CompactCodec kind for a List of one of the models, 0 for any other type
+    static int kindOf(Type type) {
+        if (!(type instanceof ParameterizedType)) {
+            return 0;
+        }
+        ParameterizedType parameterized = (ParameterizedType) type;
+        if (parameterized.getRawType() != List.class) {
+            return 0;
+        }
+        Type element = parameterized.getActualTypeArguments()[0];
+        if (element == Item.class) {
+            return CompactCodec.KIND_ITEMS;
+        }
+        if (element == Location.class) {
+            return CompactCodec.KIND_LOCATIONS;
+        }
+        if (element == PotatoPost.class) {
+            return CompactCodec.KIND_POTATO_POSTS;
+        }
+        return 0;
+    }
+
+    private static final class ListConverter implements Converter<ResponseBody, Object> {
+        private final int kind;
+        private final Converter<ResponseBody, ?> json;
+
+        ListConverter(int kind, Converter<ResponseBody, ?> json) {
+            this.kind = kind;
+            this.json = json;
+        }
+
+        @Override
+        public Object convert(ResponseBody body) throws IOException {
+            if (!isCompact(body.contentType())) {
+                return json.convert(body);
+            }
+            try {
+                switch (kind) {
+                    case CompactCodec.KIND_ITEMS:
+                        return CompactCodec.readItems(body.byteStream());
+                    case CompactCodec.KIND_LOCATIONS:
+                        return CompactCodec.readLocations(body.byteStream());
+                    default:
+                        return CompactCodec.readPotatoPosts(body.byteStream());
+                }
+            } finally {
+                body.close();
+            }
+        }
+    }
+}
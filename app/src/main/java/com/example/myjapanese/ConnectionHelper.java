@@ -1,38 +1,38 @@
 package com.example.myjapanese;
 
-import android.annotation.SuppressLint;
-import android.os.StrictMode;
 import android.util.Log;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.SQLException;
 
+// Opens physical PostgreSQL connections. Blocking I/O, so never call it on the UI thread,
+// go through DatabaseClient which pools the connections on its own executor.
 public class ConnectionHelper {
-    Connection con;
-    String username, password, ip, port, database;
+    private static final String IP = "10.0.2.2";
+    private static final String PORT = "5432";
+    private static final String DATABASE = "tomato";
+    private static final String USERNAME = "tomato";
+    private static final String PASSWORD = "tomato";
 
-    @SuppressLint("NewApi")
-    public Connection connectionclass() {
-        ip = "10.0.2.2";
-        database = "tomato";
-        username = "tomato";
-        password = "tomato";
-        port = "5432";
-
-        StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder().permitAll().build();
-        StrictMode.setThreadPolicy(policy);
-        Connection connection = null;
-        String ConnectionURL = null;
+    private static final String CONNECTION_URL = "jdbc:postgresql://" + IP + ":" + PORT + "/" + DATABASE;
 
+    public Connection openConnection() throws SQLException {
         try {
             Class.forName("org.postgresql.Driver"); // PostgreSQL JDBC driver
-            ConnectionURL = "jdbc:postgresql://" + ip + ":" + port + "/" + database;
-            connection = DriverManager.getConnection(ConnectionURL, username, password);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("PostgreSQL driver not found", e);
+        }
+        return DriverManager.getConnection(CONNECTION_URL, USERNAME, PASSWORD);
+    }
 
-        } catch (Exception ex) {
+    // Returns null when the connection fails, kept for callers that only log the error
+    public Connection connectionclass() {
+        try {
+            return openConnection();
+        } catch (SQLException ex) {
             Log.e("Error", ex.getMessage());
+            return null;
         }
-
-        return connection;
     }
 }
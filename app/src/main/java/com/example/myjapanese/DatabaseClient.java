@@ -0,0 +1,130 @@
+package com.example.myjapanese;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Entry point for PostgreSQL access. Work runs on a dedicated executor with a pooled connection,
+// results are delivered on the main thread, so no JDBC call ever touches the UI thread.
+public class DatabaseClient {
+
+    private static final String TAG = "DatabaseClient";
+
+    private static final int POOL_SIZE = 4;
+    private static final long IDLE_TIMEOUT_MS = 60_000;
+    private static final int STATEMENT_CACHE_SIZE = 32;
+    private static final long BORROW_TIMEOUT_MS = 10_000;
+
+    public interface Work<T> {
+        T run(PooledConnection connection) throws SQLException;
+    }
+
+    public interface ResultCallback<T> {
+        void onResult(T result);
+
+        void onError(Exception e);
+    }
+
+    private static volatile DatabaseClient instance = null;
+
+    private final JdbcConnectionPool pool;
+    private final ExecutorService executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static DatabaseClient getInstance() {
+        DatabaseClient result = instance;
+        if (result == null) {
+            synchronized (DatabaseClient.class) {
+                result = instance;
+                if (result == null) {
+                    result = new DatabaseClient();
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private DatabaseClient() {
+        final ConnectionHelper connectionHelper = new ConnectionHelper();
+        pool = new JdbcConnectionPool(new JdbcConnectionPool.ConnectionFactory() {
+            @Override
+            public Connection create() throws SQLException {
+                return connectionHelper.openConnection();
+            }
+        }, POOL_SIZE, IDLE_TIMEOUT_MS, STATEMENT_CACHE_SIZE);
+
+        // One worker per connection, more threads would only queue on the pool
+        executor = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jdbc-worker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // Runs the work off the UI thread and posts its result or error to the main thread
+    public <T> Future<T> submit(final Work<T> work, final ResultCallback<T> callback) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                try {
+                    final T result = execute(work);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onResult(result);
+                        }
+                    });
+                    return result;
+                } catch (final Exception e) {
+                    Log.e(TAG, "Database work failed", e);
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onError(e);
+                        }
+                    });
+                    throw e;
+                }
+            }
+        });
+    }
+
+    // Blocking variant for code that is already on a background thread
+    public <T> T execute(Work<T> work) throws SQLException {
+        PooledConnection connection = pool.borrow(BORROW_TIMEOUT_MS);
+        try {
+            return work.run(connection);
+        } catch (SQLException e) {
+            // SQLState class 08 is a connection exception, don't hand that connection out again
+            if (e.getSQLState() != null && e.getSQLState().startsWith("08")) {
+                connection.markBroken();
+            }
+            throw e;
+        } finally {
+            connection.close();
+        }
+    }
+
+    public JdbcConnectionPool.Stats getStats() {
+        return pool.getStats();
+    }
+
+    public void logStats() {
+        Log.i(TAG, "Pool: " + pool.getStats());
+    }
+}
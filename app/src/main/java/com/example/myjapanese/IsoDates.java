@@ -0,0 +1,202 @@
+package com.example.myjapanese;
+
+// Fixed-format ISO 8601 parsing and formatting for the dates Django REST framework sends,
+// e.g. "2024-05-01T10:15:30.123456Z" or "2024-05-01T10:15:30+09:00", or a plain "2024-05-01" (UTC).
+// Works on the characters directly, no Calendar, no SimpleDateFormat, no exceptions on the happy path.
+public final class IsoDates {
+
+    // Returned by parse() when the text is not in one of the formats above
+    public static final long INVALID = Long.MIN_VALUE;
+
+    // Returned by parseEpochDay() for anything but a plain date
+    public static final int INVALID_DAY = Integer.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private IsoDates() {
+    }
+
+    // Epoch millis, or INVALID
+    public static long parse(String text) {
+        int length = text.length();
+        if (length < 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        if (length == 10) {
+            return millis;
+        }
+
+        // Time of day, seconds and fraction are optional, the zone is not
+        if (length < 17 || text.charAt(10) != 'T' || text.charAt(13) != ':') {
+            return INVALID;
+        }
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = 0;
+        int millisOfSecond = 0;
+        int pos = 16;
+        if (pos < length && text.charAt(pos) == ':') {
+            second = digits(text, pos + 1, 2);
+            pos += 3;
+            if (pos < length && text.charAt(pos) == '.') {
+                pos++;
+                int fractionStart = pos;
+                int scale = 100;
+                while (pos < length && isDigit(text.charAt(pos))) {
+                    // Only milliseconds fit a Date, further digits are dropped
+                    millisOfSecond += (text.charAt(pos) - '0') * scale;
+                    scale /= 10;
+                    pos++;
+                }
+                if (pos == fractionStart) {
+                    return INVALID;
+                }
+            }
+        }
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || pos >= length) {
+            return INVALID;
+        }
+
+        int offsetMinutes;
+        char zone = text.charAt(pos);
+        if (zone == 'Z' && pos + 1 == length) {
+            offsetMinutes = 0;
+        } else if ((zone == '+' || zone == '-') && (pos + 3 == length || pos + 5 == length || pos + 6 == length)) {
+            int offsetHours = digits(text, pos + 1, 2);
+            int offsetMins = 0;
+            if (pos + 6 == length && text.charAt(pos + 3) == ':') {
+                offsetMins = digits(text, pos + 4, 2);
+            } else if (pos + 5 == length) {
+                offsetMins = digits(text, pos + 3, 2);
+            } else if (pos + 3 != length) {
+                return INVALID;
+            }
+            if (offsetHours < 0 || offsetMins < 0) {
+                return INVALID;
+            }
+            offsetMinutes = (offsetHours * 60 + offsetMins) * (zone == '-' ? -1 : 1);
+        } else {
+            return INVALID;
+        }
+
+        millis += hour * 3_600_000L + minute * 60_000L + second * 1_000L + millisOfSecond;
+        return millis - offsetMinutes * 60_000L;
+    }
+
+    // Days since 1970-01-01 for "yyyy-MM-dd", or the unpadded "yyyy-M-d" the date picker writes
+    public static int parseEpochDay(String text) {
+        if (text == null) {
+            return INVALID_DAY;
+        }
+        int length = text.length();
+        int firstDash = text.indexOf('-');
+        int secondDash = firstDash < 0 ? -1 : text.indexOf('-', firstDash + 1);
+        if (firstDash != 4 || secondDash < 6 || secondDash > 7 || length - secondDash < 2 || length - secondDash > 3) {
+            return INVALID_DAY;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, secondDash - 5);
+        int day = digits(text, secondDash + 1, length - secondDash - 1);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID_DAY;
+        }
+        return (int) daysFromCivil(year, month, day);
+    }
+
+    // "yyyy-MM-dd"
+    public static String formatEpochDay(int epochDay) {
+        char[] out = new char[10];
+        putDate(out, epochDay);
+        return new String(out);
+    }
+
+    // "yyyy-MM-ddTHH:mm:ss.SSSZ" in UTC, which parse() reads back exactly
+    public static String format(long epochMillis) {
+        long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+
+        char[] out = new char[24];
+        putDate(out, days);
+        out[10] = 'T';
+        put(out, 11, millisOfDay / 3_600_000, 2);
+        out[13] = ':';
+        put(out, 14, millisOfDay / 60_000 % 60, 2);
+        out[16] = ':';
+        put(out, 17, millisOfDay / 1_000 % 60, 2);
+        out[19] = '.';
+        put(out, 20, millisOfDay % 1_000, 3);
+        out[23] = 'Z';
+        return new String(out);
+    }
+
+    // Days since 1970-01-01 in the proleptic Gregorian calendar (H. Hinnant's days_from_civil)
+    static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+
+    // Writes "yyyy-MM-dd" for the day to the start of out, the inverse of daysFromCivil
+    private static void putDate(char[] out, long epochDay) {
+        long z = epochDay + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+
+        put(out, 0, year, 4);
+        out[4] = '-';
+        put(out, 5, month, 2);
+        out[7] = '-';
+        put(out, 8, day, 2);
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // -1 if any of the count chars at start is not a digit or past the end
+    private static int digits(String text, int start, int count) {
+        if (start + count > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static void put(char[] out, int start, int value, int width) {
+        for (int i = start + width - 1; i >= start; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -31,6 +31,11 @@ public class Item {
         return itemLocation;
     }
 
+    // A copy under another id. Items shared with ItemRepository are values, an id change makes a new one.
+    public Item withId(int id) {
+        return new Item(id, itemName, date_added, itemLocation);
+    }
+
     public void setId(int id) {
         this.id = id;
     }
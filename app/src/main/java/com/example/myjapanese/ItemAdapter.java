@@ -0,0 +1,217 @@
+package com.example.myjapanese;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// Shows ItemRepository snapshots. Rows are diffed against the displayed list on a background thread,
+// so only inserted, moved, removed or changed rows get rebound.
+public class ItemAdapter extends ListAdapter<Item, ItemAdapter.ItemViewHolder> {
+
+    public interface OnItemActionListener {
+        void onItemClick(Item item);
+
+        void onDeleteClick(int itemId);
+    }
+
+    // Payloads used to repaint only the row stripe when positions shift, or only the location name
+    private static final Object PAYLOAD_STRIPE = new Object();
+    private static final Object PAYLOAD_LOCATION = new Object();
+
+    private static final DiffUtil.ItemCallback<Item> DIFF_CALLBACK = new DiffUtil.ItemCallback<Item>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Item oldItem, @NonNull Item newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Item oldItem, @NonNull Item newItem) {
+            return oldItem.getItemLocationId() == newItem.getItemLocationId()
+                    && TextUtils.equals(oldItem.getItemName(), newItem.getItemName())
+                    && TextUtils.equals(oldItem.getDateAdded(), newItem.getDateAdded());
+        }
+    };
+
+    private final OnItemActionListener listener;
+    private final LocationIndex locationIndex;
+    private final ItemRepository repository;
+    private final Executor mainThread;
+
+    // Last snapshot's items, getCurrentList() lags behind them until the background diff finishes
+    private List<Item> latestItems = Collections.emptyList();
+
+    // While a query is set only its results are shown, latestItems stays the whole list. The repository
+    // searches on its writer thread, results of an earlier query or an older snapshot are dropped.
+    private ItemSearchIndex.Query query;
+    private long resultsVersion = -1;
+    private final ItemRepository.SearchCallback searchCallback = new ItemRepository.SearchCallback() {
+        @Override
+        public void onResults(ItemSearchIndex.Query resultsQuery, List<Item> results, long version) {
+            if (resultsQuery != query || version < resultsVersion) {
+                return;
+            }
+            resultsVersion = version;
+            submitList(results);
+        }
+    };
+
+    // Resolved once instead of on every reload
+    private final int evenRowColor;
+    private final int oddRowColor;
+
+    // One handler shared by every row, the holder in the view tag tells it which item was clicked
+    private final View.OnClickListener clickHandler = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            ItemViewHolder holder = (ItemViewHolder) v.getTag();
+            int position = holder.getBindingAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            if (v.getId() == R.id.item_delete_btn) {
+                listener.onDeleteClick(holder.itemId);
+            } else {
+                listener.onItemClick(getItem(position));
+            }
+        }
+    };
+
+    // The repository's search results are delivered on mainThread
+    public ItemAdapter(@NonNull Context context, @NonNull LocationIndex locationIndex,
+                       @NonNull ItemRepository repository, @NonNull Executor mainThread,
+                       @NonNull OnItemActionListener listener) {
+        super(DIFF_CALLBACK);
+        this.locationIndex = locationIndex;
+        this.repository = repository;
+        this.mainThread = mainThread;
+        this.listener = listener;
+        this.evenRowColor = ContextCompat.getColor(context, android.R.color.darker_gray);
+        this.oddRowColor = ContextCompat.getColor(context, android.R.color.white);
+        setHasStableIds(true);
+    }
+
+    // Shows a repository snapshot, or while searching asks for the query's results in it
+    public void show(@NonNull ItemRepository.Snapshot snapshot) {
+        if (snapshot.items == latestItems) {
+            return;
+        }
+        latestItems = snapshot.items;
+        if (query == null) {
+            submitList(latestItems);
+        } else {
+            repository.search(query, mainThread, searchCallback);
+        }
+    }
+
+    // Shows only the items matching the query, null shows everything again
+    public void setQuery(ItemSearchIndex.Query query) {
+        this.query = query;
+        resultsVersion = -1;
+        if (query == null) {
+            submitList(latestItems);
+        } else {
+            repository.search(query, mainThread, searchCallback);
+        }
+    }
+
+    // Call after the location index changed so the rows show the new names
+    public void onLocationsChanged() {
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_LOCATION);
+    }
+
+    @Override
+    public void onCurrentListChanged(@NonNull List<Item> previousList, @NonNull List<Item> currentList) {
+        // Inserts, moves and removals shift the stripes below them, repaint without a full rebind
+        if (!previousList.isEmpty()) {
+            notifyItemRangeChanged(0, currentList.size(), PAYLOAD_STRIPE);
+        }
+    }
+
+    @NonNull
+    @Override
+    public ItemViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_row, parent, false);
+        ItemViewHolder holder = new ItemViewHolder(view);
+
+        view.setTag(holder);
+        view.setOnClickListener(clickHandler);
+        holder.deleteButton.setTag(holder);
+        holder.deleteButton.setOnClickListener(clickHandler);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ItemViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_STRIPE) {
+                bindStripe(holder, position);
+            } else if (payload == PAYLOAD_LOCATION) {
+                bindLocation(holder, getItem(position));
+            } else {
+                onBindViewHolder(holder, position);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ItemViewHolder holder, int position) {
+        Item item = getItem(position);
+        holder.itemId = item.getId();
+        holder.itemNameView.setText(item.getItemName());
+        holder.dateAddedView.setText(item.getDateAdded());
+        bindLocation(holder, item);
+        bindStripe(holder, position);
+    }
+
+    private void bindLocation(ItemViewHolder holder, Item item) {
+        String locationName = locationIndex.nameOf(item.getItemLocationId());
+        // Fall back to the raw id until the locations are loaded
+        holder.itemLocationView.setText(locationName != null ? locationName : String.valueOf(item.getItemLocationId()));
+    }
+
+    private void bindStripe(ItemViewHolder holder, int position) {
+        // Set the background color of the row based on its position (even or odd)
+        holder.itemView.setBackgroundColor(position % 2 == 0 ? evenRowColor : oddRowColor);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    static class ItemViewHolder extends RecyclerView.ViewHolder {
+        final TextView itemNameView;
+        final TextView dateAddedView;
+        final TextView itemLocationView;
+        final Button deleteButton;
+        int itemId;
+
+        ItemViewHolder(@NonNull View itemView) {
+            super(itemView);
+            itemNameView = itemView.findViewById(R.id.item_name);
+            dateAddedView = itemView.findViewById(R.id.item_date_added);
+            itemLocationView = itemView.findViewById(R.id.item_location);
+            deleteButton = itemView.findViewById(R.id.item_delete_btn);
+        }
+    }
+}
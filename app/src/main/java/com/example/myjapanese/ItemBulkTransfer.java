@@ -0,0 +1,267 @@
+package com.example.myjapanese;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+// Moves items in bulk over the JDBC connection instead of one createItem POST per item:
+//   importItems()  streams the rows to the server with COPY FROM STDIN, the table gets new ids
+//   exportCsv()    COPY TO STDOUT straight into a Writer, the rows never become objects
+//   readItems()    a server-side cursor, the rows come in fetchSize at a time and are handed over in chunks
+// None of them holds more than a buffer or a chunk of the table in memory. Progress is reported every
+// PROGRESS_INTERVAL rows with the rate so far. Blocking, run through DatabaseClient.
+public class ItemBulkTransfer {
+
+    // Django's table for the Item model, <app label>_item
+    public static final String DEFAULT_TABLE = "api_item";
+
+    public static final int DEFAULT_FETCH_SIZE = 5_000;
+
+    private static final int PROGRESS_INTERVAL = 50_000;
+
+    // Rows are encoded and sent whenever this much text is waiting
+    private static final int COPY_BUFFER_CHARS = 64 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public interface Progress {
+        void onProgress(long rows, long elapsedNanos);
+    }
+
+    public interface ChunkHandler {
+        // The list is not reused, the handler may keep it
+        void onChunk(List<Item> chunk) throws SQLException;
+    }
+
+    public static class Result {
+        public final long rows;
+        // Items the table would reject, without a name or with a date that is not yyyy-MM-dd
+        public final long skipped;
+        public final long bytes;
+        public final long nanos;
+
+        Result(long rows, long skipped, long bytes, long nanos) {
+            this.rows = rows;
+            this.skipped = skipped;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d rows (%d skipped), %.1f MB in %.2f s, %.0f rows/s",
+                    rows, skipped, bytes / (1024.0 * 1024.0), nanos / 1e9, rowsPerSecond());
+        }
+    }
+
+    private final String table;
+
+    public ItemBulkTransfer() {
+        this(DEFAULT_TABLE);
+    }
+
+    // The name goes into the SQL as is, it must come from code and not from input
+    public ItemBulkTransfer(String table) {
+        this.table = table;
+    }
+
+    // One COPY, so either every valid item is in or, if the server rejects a row, none is.
+    // The ids of the items are ignored, the server assigns new ones.
+    public Result importItems(Connection connection, Iterable<Item> items, Progress progress) throws SQLException {
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        long start = System.nanoTime();
+        long rows = 0;
+        long skipped = 0;
+        long bytes = 0;
+        StringBuilder buffer = new StringBuilder(COPY_BUFFER_CHARS + 256);
+        CopyIn copyIn = copyManager.copyIn("COPY " + table + " (\"itemName\", date_added, \"itemLocation_id\") FROM STDIN");
+        try {
+            for (Iterator<Item> it = items.iterator(); it.hasNext(); ) {
+                Item item = it.next();
+                if (!appendRow(buffer, item)) {
+                    skipped++;
+                    continue;
+                }
+                rows++;
+                if (buffer.length() >= COPY_BUFFER_CHARS) {
+                    bytes += send(copyIn, buffer);
+                }
+                if (progress != null && rows % PROGRESS_INTERVAL == 0) {
+                    progress.onProgress(rows, System.nanoTime() - start);
+                }
+            }
+            bytes += send(copyIn, buffer);
+            long copied = copyIn.endCopy();
+            if (copied != rows) {
+                throw new SQLException("COPY stored " + copied + " of " + rows + " items");
+            }
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (progress != null) {
+            progress.onProgress(rows, nanos);
+        }
+        return new Result(rows, skipped, bytes, nanos);
+    }
+
+    // CSV with a header line, in id order
+    public Result exportCsv(Connection connection, final Writer out, final Progress progress) throws SQLException, IOException {
+        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        final long start = System.nanoTime();
+        // Counts lines on their way to the writer, the header included
+        final long[] counts = new long[2];
+        Writer counting = new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                for (int i = offset; i < offset + length; i++) {
+                    if (chars[i] == '\n' && ++counts[0] % PROGRESS_INTERVAL == 0 && progress != null) {
+                        progress.onProgress(counts[0] - 1, System.nanoTime() - start);
+                    }
+                }
+                counts[1] += length;
+                out.write(chars, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+        long rows = copyManager.copyOut("COPY (SELECT id, \"itemName\", date_added, \"itemLocation_id\" FROM " + table
+                + " ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER true)", counting);
+        counting.flush();
+        long nanos = System.nanoTime() - start;
+        if (progress != null) {
+            progress.onProgress(rows, nanos);
+        }
+        return new Result(rows, 0, counts[1], nanos);
+    }
+
+    // Reads the table in id order through a cursor. The driver only keeps a cursor open inside a
+    // transaction, so auto-commit is off for the duration and restored afterwards.
+    public Result readItems(Connection connection, int fetchSize, int chunkSize, ChunkHandler handler,
+                            Progress progress) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        long start = System.nanoTime();
+        long rows = 0;
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            PreparedStatement statement = connection.prepareStatement("SELECT id, \"itemName\", date_added, \"itemLocation_id\" FROM "
+                    + table + " ORDER BY id", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            try {
+                statement.setFetchSize(fetchSize);
+                ResultSet resultSet = statement.executeQuery();
+                try {
+                    List<Item> chunk = new ArrayList<>(chunkSize);
+                    while (resultSet.next()) {
+                        // getString keeps the date as the yyyy-MM-dd text the API sends
+                        chunk.add(new Item(resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3), resultSet.getInt(4)));
+                        rows++;
+                        if (chunk.size() == chunkSize) {
+                            handler.onChunk(chunk);
+                            chunk = new ArrayList<>(chunkSize);
+                        }
+                        if (progress != null && rows % PROGRESS_INTERVAL == 0) {
+                            progress.onProgress(rows, System.nanoTime() - start);
+                        }
+                    }
+                    if (!chunk.isEmpty()) {
+                        handler.onChunk(chunk);
+                    }
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                statement.close();
+            }
+            if (autoCommit) {
+                connection.commit();
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (progress != null) {
+            progress.onProgress(rows, nanos);
+        }
+        return new Result(rows, 0, 0, nanos);
+    }
+
+    // One line of COPY's text format, false for an item the table would refuse
+    static boolean appendRow(StringBuilder sb, Item item) {
+        String name = item.getItemName();
+        String date = item.getDateAdded();
+        if (name == null || date == null || IsoDates.parseEpochDay(date) == IsoDates.INVALID_DAY) {
+            return false;
+        }
+        appendEscaped(sb, name);
+        sb.append('\t').append(date).append('\t').append(item.getItemLocationId()).append('\n');
+        return true;
+    }
+
+    // Backslash, tab and line breaks are the only characters the text format treats specially
+    static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    private static long send(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.length() == 0) {
+            return 0;
+        }
+        byte[] bytes = buffer.toString().getBytes(UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+        return bytes.length;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.myjapanese;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Local copy of the last items and locations the server returned, so the list can be
+// shown at startup before the network replies. Call it from a background thread.
+public class ItemCache extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "item_cache.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE_ITEMS = "items";
+    private static final String TABLE_LOCATIONS = "locations";
+
+    // Delta sync token, written in the same transaction as the items it describes
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String KEY_ITEMS_TOKEN = "items_token";
+
+    public ItemCache(@NonNull Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ITEMS + " ("
+                + "id INTEGER PRIMARY KEY, "
+                + "item_name TEXT, "
+                + "date_added TEXT, "
+                + "item_location INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_LOCATIONS + " ("
+                + "id INTEGER PRIMARY KEY, "
+                + "location_name TEXT)");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + "key TEXT PRIMARY KEY, "
+                + "value TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // It is only a cache, start over and let the next fetch fill it again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ITEMS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_LOCATIONS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        onCreate(db);
+    }
+
+    @NonNull
+    public List<Item> loadItems() {
+        List<Item> items = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT id, item_name, date_added, item_location FROM " + TABLE_ITEMS + " ORDER BY id", null);
+        try {
+            while (cursor.moveToNext()) {
+                items.add(new Item(cursor.getInt(0), cursor.getString(1), cursor.getString(2), cursor.getInt(3)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return items;
+    }
+
+    @NonNull
+    public List<Location> loadLocations() {
+        List<Location> locations = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT id, location_name FROM " + TABLE_LOCATIONS + " ORDER BY id", null);
+        try {
+            while (cursor.moveToNext()) {
+                Location location = new Location();
+                location.setId(cursor.getInt(0));
+                location.setLocationName(cursor.getString(1));
+                locations.add(location);
+            }
+        } finally {
+            cursor.close();
+        }
+        return locations;
+    }
+
+    // Null when the cached items did not come with a token, a full download is needed then
+    @Nullable
+    public String loadItemsToken() {
+        Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT value FROM " + TABLE_SYNC_STATE + " WHERE key = ?", new String[]{KEY_ITEMS_TOKEN});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Replaces the cached items with a full list from the server in one transaction
+    public void replaceItems(@NonNull List<Item> items, @Nullable String token) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_ITEMS, null, null);
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_ITEMS
+                    + " (id, item_name, date_added, item_location) VALUES (?, ?, ?, ?)");
+            for (Item item : items) {
+                bindItem(insert, item);
+                insert.executeInsert();
+            }
+            insert.close();
+            saveItemsToken(db, token);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Applies a delta sync result and its new token in one transaction
+    public void applyChanges(@NonNull ItemChanges changes) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (changes.getUpserted() != null) {
+                SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_ITEMS
+                        + " (id, item_name, date_added, item_location) VALUES (?, ?, ?, ?)");
+                for (Item item : changes.getUpserted()) {
+                    bindItem(upsert, item);
+                    upsert.executeInsert();
+                }
+                upsert.close();
+            }
+            if (changes.getDeleted() != null) {
+                SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_ITEMS + " WHERE id = ?");
+                for (int id : changes.getDeleted()) {
+                    delete.bindLong(1, id);
+                    delete.executeUpdateDelete();
+                }
+                delete.close();
+            }
+            saveItemsToken(db, changes.getToken());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void saveItemsToken(SQLiteDatabase db, @Nullable String token) {
+        if (token == null) {
+            db.delete(TABLE_SYNC_STATE, "key = ?", new String[]{KEY_ITEMS_TOKEN});
+        } else {
+            ContentValues values = new ContentValues();
+            values.put("key", KEY_ITEMS_TOKEN);
+            values.put("value", token);
+            db.insertWithOnConflict(TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    public void replaceLocations(@NonNull List<Location> locations) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_LOCATIONS, null, null);
+            SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_LOCATIONS
+                    + " (id, location_name) VALUES (?, ?)");
+            for (Location location : locations) {
+                insert.clearBindings();
+                insert.bindLong(1, location.getId());
+                bindNullableString(insert, 2, location.getLocationName());
+                insert.executeInsert();
+            }
+            insert.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void applyLocationChanges(@NonNull List<Location> upserted, @NonNull int[] deleted) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_LOCATIONS
+                    + " (id, location_name) VALUES (?, ?)");
+            for (Location location : upserted) {
+                upsert.clearBindings();
+                upsert.bindLong(1, location.getId());
+                bindNullableString(upsert, 2, location.getLocationName());
+                upsert.executeInsert();
+            }
+            upsert.close();
+            SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_LOCATIONS + " WHERE id = ?");
+            for (int id : deleted) {
+                delete.bindLong(1, id);
+                delete.executeUpdateDelete();
+            }
+            delete.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void upsertItem(@NonNull Item item) {
+        ContentValues values = new ContentValues();
+        values.put("id", item.getId());
+        values.put("item_name", item.getItemName());
+        values.put("date_added", item.getDateAdded());
+        values.put("item_location", item.getItemLocationId());
+        getWritableDatabase().insertWithOnConflict(TABLE_ITEMS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    public void deleteItem(int itemId) {
+        getWritableDatabase().delete(TABLE_ITEMS, "id = ?", new String[]{String.valueOf(itemId)});
+    }
+
+    private static void bindItem(SQLiteStatement statement, Item item) {
+        statement.clearBindings();
+        statement.bindLong(1, item.getId());
+        bindNullableString(statement, 2, item.getItemName());
+        bindNullableString(statement, 3, item.getDateAdded());
+        statement.bindLong(4, item.getItemLocationId());
+    }
+
+    private static void bindNullableString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
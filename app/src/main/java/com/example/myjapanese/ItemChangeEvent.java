@@ -0,0 +1,53 @@
+package com.example.myjapanese;
+
+import com.google.gson.annotations.SerializedName;
+
+// One message of the change stream, see ItemChangeStream
+public class ItemChangeEvent {
+
+    public static final String TYPE_ITEM_UPSERTED = "item_upserted";
+    public static final String TYPE_ITEM_DELETED = "item_deleted";
+    public static final String TYPE_LOCATION_UPSERTED = "location_upserted";
+    public static final String TYPE_LOCATION_DELETED = "location_deleted";
+    // The server no longer has the events after the requested id, the client has to sync in full
+    public static final String TYPE_RESET = "reset";
+
+    // Also a sync token: "since" for the stream and for the delta sync endpoint
+    @SerializedName("id")
+    private String id;
+
+    @SerializedName("type")
+    private String type;
+
+    // For item_upserted
+    @SerializedName("item")
+    private Item item;
+
+    // For location_upserted
+    @SerializedName("location")
+    private Location location;
+
+    // The item or location id for the deletes
+    @SerializedName("deleted_id")
+    private int deletedId;
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Item getItem() {
+        return item;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public int getDeletedId() {
+        return deletedId;
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+// Changes other clients make to items and locations, pushed by the server instead of found by reloading.
+// GET item/events/?since=<token> is upgraded to a WebSocket that sends every change after the token, then each
+// new one as it happens, one ItemChangeEvent as JSON per text message. Event ids are sync tokens too, so a
+// delta sync can carry on from the last event that was applied.
+//   reconnect  a dropped connection is opened again after a jittered exponential backoff, from the id of the
+//              last event received, so no change is missed
+//   batching   events are merged per item and per location id, the newest state wins, and handed to the
+//              listener at most every batchDelayMs on the stream's own thread. Thousands of events per second
+//              become a few batches. The next batch is only taken once onChanges returned, so a listener
+//              that waits until its batch has been applied makes the batches larger instead of piling up.
+//   resync     a reset event, a 410 Gone for the since token, or more than MAX_PENDING_CHANGES changes
+//              waiting for the listener stop the stream and ask for a full sync instead
+//   missing    a server without the endpoint (404, 405, 501) stops the stream until the next start()
+public class ItemChangeStream {
+
+    public interface Listener {
+        // One call at a time, on the stream's thread, which may block until the batch has been applied
+        void onChanges(Batch batch);
+
+        // The stream has stopped. Sync in full, then start it again from the new token.
+        void onResyncNeeded();
+    }
+
+    public static final class Batch {
+        // Upserted items and deleted ids with the last event id as token, null if no item changed
+        public final ItemChanges items;
+        public final List<Location> upsertedLocations;
+        public final int[] deletedLocations;
+        public final String lastEventId;
+        // Events merged into this batch
+        public final int events;
+
+        Batch(ItemChanges items, List<Location> upsertedLocations, int[] deletedLocations, String lastEventId,
+              int events) {
+            this.items = items;
+            this.upsertedLocations = upsertedLocations;
+            this.deletedLocations = deletedLocations;
+            this.lastEventId = lastEventId;
+            this.events = events;
+        }
+
+        public boolean hasLocationChanges() {
+            return !upsertedLocations.isEmpty() || deletedLocations.length > 0;
+        }
+    }
+
+    public static final String EVENTS_PATH = "item/events/";
+
+    private static final long BATCH_DELAY_MS = 100;
+    private static final long BASE_RECONNECT_MS = 500;
+    private static final long MAX_RECONNECT_MS = 60_000;
+    // A connection that stayed up this long starts the backoff over when it drops
+    private static final long STABLE_CONNECTION_MS = 30_000;
+    static final int MAX_PENDING_CHANGES = 50_000;
+
+    private static final int NORMAL_CLOSURE = 1000;
+    private static final int GONE = 410;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int NOT_IMPLEMENTED = 501;
+
+    private final OkHttpClient client;
+    private final HttpUrl eventsUrl;
+    private final Gson gson;
+    private final Listener listener;
+    private final long batchDelayMs;
+    private final long baseReconnectMs;
+    private final ScheduledExecutorService executor;
+    private final Random random = new Random();
+
+    // Guarded by this
+    private boolean running = false;
+    // The current connection, null while waiting to reconnect
+    private WebSocket socket;
+    private boolean connected = false;
+    private long connectedAt;
+    private int failures = 0;
+    private ScheduledFuture<?> reconnect;
+    private String lastEventId;
+    // The token the listener's items are at: the one start() got, then the last event of each batch delivered
+    private String appliedId;
+    // Newest state per id, null for a delete
+    private final Map<Integer, Item> pendingItems = new LinkedHashMap<>();
+    private final Map<Integer, Location> pendingLocations = new LinkedHashMap<>();
+    private int pendingEvents = 0;
+    private boolean flushScheduled = false;
+
+    // For the logs and the load test
+    final AtomicLong eventsReceived = new AtomicLong();
+    final AtomicLong batchesDelivered = new AtomicLong();
+    final AtomicLong reconnects = new AtomicLong();
+
+    // The client should send pings, see ApiClient.newChangeStream, its read timeout does not apply after the upgrade
+    public ItemChangeStream(OkHttpClient client, HttpUrl baseUrl, Gson gson, Listener listener) {
+        this(client, baseUrl, gson, listener, BATCH_DELAY_MS, BASE_RECONNECT_MS);
+    }
+
+    // Package-private for tests, which use short delays
+    ItemChangeStream(OkHttpClient client, HttpUrl baseUrl, Gson gson, Listener listener, long batchDelayMs,
+                     long baseReconnectMs) {
+        this.client = client;
+        this.eventsUrl = baseUrl.resolve(EVENTS_PATH);
+        this.gson = gson;
+        this.listener = listener;
+        this.batchDelayMs = batchDelayMs;
+        this.baseReconnectMs = baseReconnectMs;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "item-change-stream");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // Connects from the token of the last sync, or starts over from it if the stream was running
+    public synchronized void start(String since) {
+        disconnect();
+        running = true;
+        lastEventId = since;
+        appliedId = since;
+        failures = 0;
+        connect();
+    }
+
+    // For the token of each sync the listener applied. A running stream keeps its connection, unless the sync
+    // is older than the last batch it delivered: the list it brought lacks the changes since, and the stream
+    // would not send them again. Ids are compared as numbers, a token that is not one counts as older.
+    public synchronized void syncedTo(String token) {
+        if (!running || isOlder(token, appliedId)) {
+            start(token);
+        }
+    }
+
+    static boolean isOlder(String token, String than) {
+        if (than == null || token.equals(than)) {
+            return false;
+        }
+        try {
+            return Long.parseLong(token) < Long.parseLong(than);
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    // Events the listener has not got yet are dropped, start again from the last token it applied.
+    // A batch that is being delivered right now still completes.
+    public synchronized void stop() {
+        running = false;
+        disconnect();
+    }
+
+    // Stops for good and ends the stream's thread
+    public void shutdown() {
+        stop();
+        executor.shutdown();
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    private void connect() {
+        Request request = new Request.Builder()
+                .url(eventsUrl.newBuilder().setQueryParameter("since", lastEventId).build())
+                .build();
+        socket = client.newWebSocket(request, new SocketListener());
+    }
+
+    private void disconnect() {
+        if (reconnect != null) {
+            reconnect.cancel(false);
+            reconnect = null;
+        }
+        if (socket != null) {
+            socket.close(NORMAL_CLOSURE, null);
+            socket = null;
+        }
+        connected = false;
+        pendingItems.clear();
+        pendingLocations.clear();
+        pendingEvents = 0;
+    }
+
+    // Called with the lock held, once per connection that ended without stop()
+    private void onDisconnected() {
+        if (connected && System.currentTimeMillis() - connectedAt >= STABLE_CONNECTION_MS) {
+            failures = 0;
+        }
+        socket = null;
+        connected = false;
+        if (!running) {
+            return;
+        }
+        failures++;
+        reconnects.incrementAndGet();
+        // Full jitter like ApiResilience, so clients that lost the server together do not come back together
+        long ceiling = Math.min(MAX_RECONNECT_MS, baseReconnectMs << Math.min(failures - 1, 20));
+        long delayMs = (long) (random.nextDouble() * ceiling);
+        reconnect = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ItemChangeStream.this) {
+                    reconnect = null;
+                    if (running && socket == null) {
+                        connect();
+                    }
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Called with the lock held
+    private void resync() {
+        running = false;
+        disconnect();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onResyncNeeded();
+            }
+        });
+    }
+
+    // Called with the lock held
+    private void merge(ItemChangeEvent event) {
+        String type = event.getType();
+        if (ItemChangeEvent.TYPE_ITEM_UPSERTED.equals(type) && event.getItem() != null) {
+            pendingItems.put(event.getItem().getId(), event.getItem());
+        } else if (ItemChangeEvent.TYPE_ITEM_DELETED.equals(type)) {
+            pendingItems.put(event.getDeletedId(), null);
+        } else if (ItemChangeEvent.TYPE_LOCATION_UPSERTED.equals(type) && event.getLocation() != null) {
+            pendingLocations.put(event.getLocation().getId(), event.getLocation());
+        } else if (ItemChangeEvent.TYPE_LOCATION_DELETED.equals(type)) {
+            pendingLocations.put(event.getDeletedId(), null);
+        }
+        // Types this version does not know still move the resume point past them
+        if (event.getId() != null) {
+            lastEventId = event.getId();
+        }
+        pendingEvents++;
+    }
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            Batch batch;
+            synchronized (ItemChangeStream.this) {
+                flushScheduled = false;
+                if (pendingEvents == 0) {
+                    return;
+                }
+                batch = takePending();
+                appliedId = batch.lastEventId;
+            }
+            batchesDelivered.incrementAndGet();
+            listener.onChanges(batch);
+        }
+    };
+
+    // Called with the lock held
+    private Batch takePending() {
+        ItemChanges items = null;
+        if (!pendingItems.isEmpty()) {
+            List<Item> upserted = new ArrayList<>();
+            int[] deleted = new int[pendingItems.size()];
+            int deletedCount = 0;
+            for (Map.Entry<Integer, Item> entry : pendingItems.entrySet()) {
+                if (entry.getValue() != null) {
+                    upserted.add(entry.getValue());
+                } else {
+                    deleted[deletedCount++] = entry.getKey();
+                }
+            }
+            items = new ItemChanges(lastEventId, upserted, Arrays.copyOf(deleted, deletedCount));
+        }
+        List<Location> upsertedLocations = Collections.emptyList();
+        int[] deletedLocations = new int[0];
+        if (!pendingLocations.isEmpty()) {
+            upsertedLocations = new ArrayList<>();
+            deletedLocations = new int[pendingLocations.size()];
+            int deletedCount = 0;
+            for (Map.Entry<Integer, Location> entry : pendingLocations.entrySet()) {
+                if (entry.getValue() != null) {
+                    upsertedLocations.add(entry.getValue());
+                } else {
+                    deletedLocations[deletedCount++] = entry.getKey();
+                }
+            }
+            deletedLocations = Arrays.copyOf(deletedLocations, deletedCount);
+        }
+        Batch batch = new Batch(items, upsertedLocations, deletedLocations, lastEventId, pendingEvents);
+        pendingItems.clear();
+        pendingLocations.clear();
+        pendingEvents = 0;
+        return batch;
+    }
+
+    // Callbacks come on OkHttp's reader thread of each connection, those of a connection that has been
+    // replaced are ignored
+    private final class SocketListener extends WebSocketListener {
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            synchronized (ItemChangeStream.this) {
+                if (webSocket == socket) {
+                    connected = true;
+                    connectedAt = System.currentTimeMillis();
+                }
+            }
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            // Parsed before taking the lock, the reader threads of old connections never wait for it long
+            ItemChangeEvent event;
+            try {
+                event = gson.fromJson(text, ItemChangeEvent.class);
+            } catch (JsonParseException e) {
+                event = null;
+            }
+            synchronized (ItemChangeStream.this) {
+                if (webSocket != socket) {
+                    return;
+                }
+                if (event == null || event.getType() == null) {
+                    // Skipping it could lose a change, start over after it instead
+                    webSocket.cancel();
+                    onDisconnected();
+                    return;
+                }
+                if (ItemChangeEvent.TYPE_RESET.equals(event.getType())) {
+                    resync();
+                    return;
+                }
+                eventsReceived.incrementAndGet();
+                failures = 0;
+                merge(event);
+                if (pendingItems.size() + pendingLocations.size() > MAX_PENDING_CHANGES) {
+                    resync();
+                } else if (!flushScheduled) {
+                    flushScheduled = true;
+                    executor.schedule(flush, batchDelayMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(NORMAL_CLOSURE, null);
+            synchronized (ItemChangeStream.this) {
+                if (webSocket == socket) {
+                    onDisconnected();
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            synchronized (ItemChangeStream.this) {
+                if (webSocket != socket) {
+                    return;
+                }
+                int code = response != null ? response.code() : 0;
+                if (code == GONE) {
+                    resync();
+                } else if (code == NOT_FOUND || code == METHOD_NOT_ALLOWED || code == NOT_IMPLEMENTED) {
+                    // Retrying would only poll the error, the periodic sync carries on without the stream
+                    running = false;
+                    disconnect();
+                } else {
+                    onDisconnected();
+                }
+            }
+        }
+    }
+}
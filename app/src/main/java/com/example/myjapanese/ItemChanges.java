@@ -0,0 +1,43 @@
+package com.example.myjapanese;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+// Response of the delta sync endpoint: what changed since the token the client sent
+public class ItemChanges {
+
+    // Pass this as "since" on the next sync
+    @SerializedName("token")
+    private String token;
+
+    // Created or updated items
+    @SerializedName("upserted")
+    private List<Item> upserted;
+
+    // Ids of deleted items
+    @SerializedName("deleted")
+    private int[] deleted;
+
+    ItemChanges() {
+    }
+
+    // For changes that did not come from the delta endpoint, e.g. a batch of ItemChangeStream events
+    public ItemChanges(String token, List<Item> upserted, int[] deleted) {
+        this.token = token;
+        this.upserted = upserted;
+        this.deleted = deleted;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public List<Item> getUpserted() {
+        return upserted;
+    }
+
+    public int[] getDeleted() {
+        return deleted;
+    }
+}
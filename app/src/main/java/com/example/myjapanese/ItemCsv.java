@@ -0,0 +1,692 @@
+package com.example.myjapanese;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import retrofit2.Response;
+
+// The item list as a spreadsheet, for stock-takes: name, date added, location name, one header line (RFC 4180,
+// UTF-8). Both directions run in constant memory whatever the file size:
+//   export()       encodes rows into one 64 KB buffer that is written through a FileChannel
+//   importItems()  parses the file through memory-mapped windows, validates every row, maps location names
+//                  to ids and creates the items in batches of batchSize through the bulk endpoint. At most
+//                  concurrency batches are in flight, the parser waits for a free slot before it reads on.
+// Blocking, keep it off the UI thread. After an import the new items arrive with the next ItemLoader.sync.
+public class ItemCsv {
+
+    public static final String HEADER = "name,date_added,location";
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    // Only the first problems are kept, the counts in ImportResult cover all of them
+    public static final int MAX_PROBLEMS = 1_000;
+
+    private static final int PROGRESS_INTERVAL = 50_000;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // Rows are encoded whenever this much text is waiting
+    private static final int ROW_BUFFER_CHARS = 16 * 1024;
+    // Mapped at a time, a row that does not fit one window fails the import
+    private static final int WINDOW_SIZE = 16 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public interface Progress {
+        void onProgress(long rows, long elapsedNanos);
+    }
+
+    // Sends one batch of creates, one result per mutation. An IOException stops the import.
+    public interface BatchSender {
+        List<ItemMutationResult> send(List<ItemMutation> batch, String idempotencyKey) throws IOException;
+    }
+
+    // A row that was not imported. Rows are numbered as a spreadsheet shows them, the header is row 1.
+    public static class Problem {
+        public final long row;
+        public final String message;
+
+        Problem(long row, String message) {
+            this.row = row;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "row " + row + ": " + message;
+        }
+    }
+
+    public static class ExportResult {
+        public final long rows;
+        public final long bytes;
+        public final long nanos;
+
+        ExportResult(long rows, long bytes, long nanos) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d rows, %.1f MB in %.2f s, %.0f rows/s",
+                    rows, bytes / (1024.0 * 1024.0), nanos / 1e9, rowsPerSecond());
+        }
+    }
+
+    public static class ImportResult {
+        // Valid rows, all of them were sent
+        public final long rows;
+        public final long saved;
+        // Refused by the validation, never sent
+        public final long invalid;
+        // Sent but refused by the server
+        public final long rejected;
+        public final long bytes;
+        public final long nanos;
+        public final List<Problem> problems;
+
+        ImportResult(long rows, long saved, long invalid, long rejected, long bytes, long nanos, List<Problem> problems) {
+            this.rows = rows;
+            this.saved = saved;
+            this.invalid = invalid;
+            this.rejected = rejected;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.problems = problems;
+        }
+
+        public double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d rows (%d saved, %d invalid, %d rejected), %.1f MB in %.2f s, %.0f rows/s",
+                    rows, saved, invalid, rejected, bytes / (1024.0 * 1024.0), nanos / 1e9, rowsPerSecond());
+        }
+    }
+
+    // Through ApiService.bulkItems, which ApiResilience may retry because of the idempotency key
+    public static BatchSender sender(final ApiService apiService) {
+        return new BatchSender() {
+            @Override
+            public List<ItemMutationResult> send(List<ItemMutation> batch, String idempotencyKey) throws IOException {
+                Response<List<ItemMutationResult>> response = apiService.bulkItems(batch, idempotencyKey).execute();
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IOException("Bulk import failed with HTTP " + response.code());
+                }
+                return response.body();
+            }
+        };
+    }
+
+    // Written to a temporary file next to the target and renamed at the end, a failed export leaves no half file.
+    // A location id that is not in locations is written as the number.
+    public static ExportResult export(Iterable<Item> items, List<Location> locations, File file, Progress progress)
+            throws IOException {
+        LocationIndex locationIndex = new LocationIndex();
+        locationIndex.update(locations);
+        long start = System.nanoTime();
+        long rows = 0;
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        boolean done = false;
+        try {
+            FileChannel channel = stream.getChannel();
+            CharsetEncoder encoder = UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            StringBuilder text = new StringBuilder(ROW_BUFFER_CHARS + 256);
+            text.append(HEADER).append("\r\n");
+            for (Iterator<Item> it = items.iterator(); it.hasNext(); ) {
+                Item item = it.next();
+                appendRow(text, item, locationIndex);
+                rows++;
+                if (text.length() >= ROW_BUFFER_CHARS) {
+                    encode(text, encoder, buffer, channel, false);
+                }
+                if (progress != null && rows % PROGRESS_INTERVAL == 0) {
+                    progress.onProgress(rows, System.nanoTime() - start);
+                }
+            }
+            encode(text, encoder, buffer, channel, true);
+            long bytes = channel.position();
+            stream.getFD().sync();
+            stream.close();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Could not rename " + tmp + " to " + file);
+            }
+            done = true;
+            long nanos = System.nanoTime() - start;
+            if (progress != null) {
+                progress.onProgress(rows, nanos);
+            }
+            return new ExportResult(rows, bytes, nanos);
+        } finally {
+            if (!done) {
+                stream.close();
+                tmp.delete();
+            }
+        }
+    }
+
+    static void appendRow(StringBuilder sb, Item item, LocationIndex locationIndex) {
+        appendField(sb, neutralized(item.getItemName()));
+        sb.append(',');
+        appendField(sb, item.getDateAdded());
+        sb.append(',');
+        String location = locationIndex.nameOf(item.getItemLocationId());
+        if (location != null) {
+            appendField(sb, location);
+        } else {
+            sb.append(item.getItemLocationId());
+        }
+        sb.append("\r\n");
+    }
+
+    // Quoted only when it has to be, quotes inside are doubled. Null is written as an empty field.
+    static void appendField(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = !value.isEmpty() && (value.charAt(0) == ' ' || value.charAt(value.length() - 1) == ' ');
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    // A spreadsheet runs a cell that starts like a formula. An apostrophe in front makes it text,
+    // importItems() takes it off again.
+    static String neutralized(String name) {
+        return name != null && !name.isEmpty() && isFormulaStart(name.charAt(0)) ? "'" + name : name;
+    }
+
+    private static String restored(String name) {
+        return name.length() > 1 && name.charAt(0) == '\'' && isFormulaStart(name.charAt(1)) ? name.substring(1) : name;
+    }
+
+    private static boolean isFormulaStart(char c) {
+        return c == '=' || c == '+' || c == '-' || c == '@' || c == '\t' || c == '\r';
+    }
+
+    private static void encode(StringBuilder text, CharsetEncoder encoder, ByteBuffer buffer, FileChannel channel,
+                               boolean endOfInput) throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, endOfInput);
+            if (result.isOverflow()) {
+                write(buffer, channel);
+            } else if (result.isError()) {
+                result.throwException();
+            } else {
+                break;
+            }
+        }
+        // Only a high surrogate waiting for its pair can be left, it goes out with the next rows
+        text.delete(0, text.length() - chars.remaining());
+        if (endOfInput) {
+            while (encoder.flush(buffer).isOverflow()) {
+                write(buffer, channel);
+            }
+            write(buffer, channel);
+        }
+    }
+
+    private static void write(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public static ImportResult importItems(File file, List<Location> locations, BatchSender sender, Progress progress)
+            throws IOException {
+        return importItems(file, locations, sender, DEFAULT_BATCH_SIZE, DEFAULT_CONCURRENCY, progress);
+    }
+
+    // Stops at the first batch that fails, after the batches in flight have finished, and throws. Each batch is
+    // sent with a key made from the import's own id and its rows: a request ApiResilience retries keeps its key,
+    // so the server does not apply the batch twice, while importing the same file again creates its items anew.
+    public static ImportResult importItems(File file, List<Location> locations, BatchSender sender, int batchSize,
+                                           int concurrency, Progress progress) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        Map<String, Integer> locationIds = new HashMap<>();
+        LocationIndex locationIndex = new LocationIndex();
+        locationIndex.update(locations);
+        for (Location location : locations) {
+            if (location.getLocationName() != null && !locationIds.containsKey(location.getLocationName().trim())) {
+                locationIds.put(location.getLocationName().trim(), location.getId());
+            }
+        }
+
+        long start = System.nanoTime();
+        Uploader uploader = new Uploader(sender, concurrency);
+        RowParser parser = new RowParser();
+        List<ItemMutation> batch = new ArrayList<>(batchSize);
+        long rows = 0;
+        long invalid = 0;
+        long size;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            size = channel.size();
+            long offset = 0;
+            long rowNumber = 0;
+            while (offset < size) {
+                int length = (int) Math.min(WINDOW_SIZE, size - offset);
+                boolean last = offset + length == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                int pos = offset == 0 ? skipByteOrderMark(window) : 0;
+                while (pos < length) {
+                    int end = parser.parse(window, pos, length, last);
+                    if (end < 0) {
+                        break;
+                    }
+                    pos = end;
+                    rowNumber++;
+                    List<String> fields = parser.fields;
+                    if (parser.isBlank() || (rowNumber == 1 && isHeader(fields))) {
+                        continue;
+                    }
+                    String problem = parser.malformed;
+                    Item item = null;
+                    if (problem == null) {
+                        item = new Item(0, null, null, 0);
+                        problem = validate(fields, parser.quoted, locationIds, locationIndex, item);
+                    }
+                    if (problem != null) {
+                        invalid++;
+                        uploader.addProblem(rowNumber, problem);
+                        continue;
+                    }
+                    // Row numbers are unique in the file, they double as client ids and temporary item ids
+                    int clientId = (int) -Math.min(rowNumber, Integer.MAX_VALUE);
+                    item.setId(clientId);
+                    batch.add(new ItemMutation(clientId, ItemMutation.OP_CREATE, item));
+                    rows++;
+                    if (batch.size() == batchSize) {
+                        uploader.submit(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                    if (progress != null && rows % PROGRESS_INTERVAL == 0) {
+                        progress.onProgress(rows, System.nanoTime() - start);
+                    }
+                }
+                if (pos == 0 && !last) {
+                    throw new IOException("Row " + (rowNumber + 1) + " is longer than " + WINDOW_SIZE + " bytes");
+                }
+                offset += pos;
+            }
+            if (!batch.isEmpty()) {
+                uploader.submit(batch);
+            }
+            uploader.finish();
+        } finally {
+            uploader.shutdown();
+            raf.close();
+        }
+        long nanos = System.nanoTime() - start;
+        if (progress != null) {
+            progress.onProgress(rows, nanos);
+        }
+        return new ImportResult(rows, uploader.saved.get(), invalid, uploader.rejected.get(), size, nanos,
+                uploader.problems());
+    }
+
+    private static int skipByteOrderMark(ByteBuffer window) {
+        return window.limit() >= 3 && (window.get(0) & 0xff) == 0xef && (window.get(1) & 0xff) == 0xbb
+                && (window.get(2) & 0xff) == 0xbf ? 3 : 0;
+    }
+
+    private static boolean isHeader(List<String> fields) {
+        String first = fields.get(0).trim();
+        return first.equalsIgnoreCase("name") || first.equalsIgnoreCase("itemName");
+    }
+
+    // Fills in the item and returns null, or returns what is wrong with the row.
+    // Spaces around an unquoted field are dropped, a quoted field is taken as it is.
+    static String validate(List<String> fields, BitSet quoted, Map<String, Integer> locationIds,
+                           LocationIndex locationIndex, Item item) {
+        if (fields.size() != 3) {
+            return "expected 3 columns, found " + fields.size();
+        }
+        String name = restored(field(fields, quoted, 0));
+        if (name.trim().isEmpty()) {
+            return "name is empty";
+        }
+        String date = field(fields, quoted, 1);
+        int day = IsoDates.parseEpochDay(date);
+        if (day == IsoDates.INVALID_DAY) {
+            return "date is not yyyy-MM-dd: " + date;
+        }
+        String location = field(fields, quoted, 2);
+        Integer locationId = locationIds.get(location);
+        if (locationId == null) {
+            // export() writes the id of a location it does not know
+            int id = parseId(location);
+            if (id < 0 || locationIndex.positionOf(id) < 0) {
+                return "unknown location: " + location;
+            }
+            locationId = id;
+        }
+        item.setItemName(name);
+        item.setDateAdded(IsoDates.formatEpochDay(day));
+        item.setItemLocationId(locationId);
+        return null;
+    }
+
+    private static String field(List<String> fields, BitSet quoted, int index) {
+        return quoted.get(index) ? fields.get(index) : fields.get(index).trim();
+    }
+
+    // -1 for anything but a plain non-negative int
+    private static int parseId(String text) {
+        if (text.isEmpty() || text.length() > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Splits a window into rows. Quoted fields may hold commas, doubled quotes and line breaks,
+    // lines end with \n or \r\n.
+    static final class RowParser {
+        final List<String> fields = new ArrayList<>();
+        // Bit n is set when field n was quoted
+        final BitSet quoted = new BitSet();
+        // Set for a row whose quoting is broken, the row is reported instead of guessed at
+        String malformed;
+        private byte[] scratch = new byte[256];
+        private int rowLength;
+
+        boolean isBlank() {
+            return rowLength == 0 && malformed == null;
+        }
+
+        // Reads the row starting at pos, returns the position after it. -1 if the row does not end before
+        // limit and more of the file follows in the next window.
+        int parse(ByteBuffer window, int pos, int limit, boolean last) {
+            fields.clear();
+            quoted.clear();
+            malformed = null;
+            int start = pos;
+            int i = pos;
+            while (true) {
+                int length = 0;
+                if (i < limit && window.get(i) == '"') {
+                    quoted.set(fields.size());
+                    i++;
+                    while (true) {
+                        if (i >= limit) {
+                            if (!last) {
+                                return -1;
+                            }
+                            malformed = "quoted field is not closed";
+                            break;
+                        }
+                        byte b = window.get(i++);
+                        if (b == '"') {
+                            if (i < limit && window.get(i) == '"') {
+                                i++;
+                            } else if (i >= limit && !last) {
+                                return -1;
+                            } else {
+                                break;
+                            }
+                        }
+                        length = put(length, b);
+                    }
+                    // Anything between the closing quote and the next comma or line end breaks the row
+                    int junk = i;
+                    i = scanField(window, i, limit);
+                    if (i > junk && malformed == null) {
+                        malformed = "text after a closing quote";
+                    }
+                } else {
+                    int fieldStart = i;
+                    i = scanField(window, i, limit);
+                    length = i - fieldStart;
+                    ensureScratch(length);
+                    window.position(fieldStart);
+                    window.get(scratch, 0, length);
+                }
+                if (i >= limit && !last) {
+                    return -1;
+                }
+                fields.add(new String(scratch, 0, length, UTF_8));
+                if (i >= limit) {
+                    rowLength = i - start;
+                    return limit;
+                }
+                byte b = window.get(i);
+                if (b == ',') {
+                    i++;
+                    continue;
+                }
+                rowLength = i - start;
+                if (b == '\r') {
+                    if (i + 1 >= limit) {
+                        return last ? limit : -1;
+                    }
+                    return window.get(i + 1) == '\n' ? i + 2 : i + 1;
+                }
+                return i + 1;
+            }
+        }
+
+        // Position of the comma or line end that closes the field, or limit
+        private static int scanField(ByteBuffer window, int i, int limit) {
+            while (i < limit) {
+                byte b = window.get(i);
+                if (b == ',' || b == '\n' || b == '\r') {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        private int put(int length, byte b) {
+            ensureScratch(length + 1);
+            scratch[length] = b;
+            return length + 1;
+        }
+
+        private void ensureScratch(int length) {
+            if (length > scratch.length) {
+                byte[] grown = new byte[Math.max(length, scratch.length * 2)];
+                System.arraycopy(scratch, 0, grown, 0, scratch.length);
+                scratch = grown;
+            }
+        }
+    }
+
+    // Sends batches on its own threads, at most concurrency at a time
+    private static final class Uploader {
+        final BatchSender sender;
+        final int concurrency;
+        final Semaphore slots;
+        final ExecutorService executor;
+        final AtomicLong saved = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        // New for every import, the keys of an earlier import of the same rows must not match
+        final String importId = UUID.randomUUID().toString();
+        private final List<Problem> problems = new ArrayList<>();
+
+        Uploader(BatchSender sender, int concurrency) {
+            this.sender = sender;
+            this.concurrency = concurrency;
+            this.slots = new Semaphore(concurrency);
+            this.executor = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "item-csv-import");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        // Blocks while concurrency batches are in flight
+        void submit(final List<ItemMutation> batch) throws IOException {
+            acquire(1);
+            if (failure.get() != null) {
+                slots.release();
+                finish();
+            }
+            final String key = idempotencyKey(importId, batch);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        record(batch, sender.send(batch, key));
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, new IOException("Batch starting at row "
+                                + -batch.get(0).getClientId() + " failed: " + e.getMessage(), e));
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, new IOException("Batch starting at row "
+                                + -batch.get(0).getClientId() + " failed", e));
+                    } finally {
+                        slots.release();
+                    }
+                }
+            });
+        }
+
+        // Waits for the batches in flight
+        void finish() throws IOException {
+            acquire(concurrency);
+            slots.release(concurrency);
+            throwIfFailed();
+        }
+
+        void shutdown() {
+            executor.shutdownNow();
+        }
+
+        private void acquire(int permits) throws IOException {
+            try {
+                slots.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            }
+        }
+
+        private void throwIfFailed() throws IOException {
+            IOException e = failure.get();
+            if (e != null) {
+                throw new IOException(e.getMessage() + " (" + saved.get() + " items saved before)", e);
+            }
+        }
+
+        private void record(List<ItemMutation> batch, List<ItemMutationResult> results) {
+            int ok = 0;
+            for (ItemMutationResult result : results) {
+                if (result.isOk()) {
+                    ok++;
+                } else {
+                    rejected.incrementAndGet();
+                    addProblem(-result.getClientId(), result.getError() != null ? result.getError() : "rejected by the server");
+                }
+            }
+            saved.addAndGet(ok);
+            // The endpoint answers every mutation, a short list means rows were dropped
+            int missing = batch.size() - results.size();
+            if (missing > 0) {
+                rejected.addAndGet(missing);
+                addProblem(-batch.get(0).getClientId(), missing + " rows of this batch got no result");
+            }
+        }
+
+        synchronized void addProblem(long row, String message) {
+            if (problems.size() < MAX_PROBLEMS) {
+                problems.add(new Problem(row, message));
+            }
+        }
+
+        synchronized List<Problem> problems() {
+            List<Problem> sorted = new ArrayList<>(problems);
+            Collections.sort(sorted, new Comparator<Problem>() {
+                @Override
+                public int compare(Problem a, Problem b) {
+                    return a.row < b.row ? -1 : a.row == b.row ? 0 : 1;
+                }
+            });
+            return Collections.unmodifiableList(sorted);
+        }
+    }
+
+    // The same rows in the same import give the same key
+    static String idempotencyKey(String importId, List<ItemMutation> batch) {
+        StringBuilder content = new StringBuilder(importId).append('\n');
+        for (ItemMutation mutation : batch) {
+            Item item = mutation.getItem();
+            content.append(mutation.getClientId()).append('\u0000').append(item.getItemName()).append('\u0000')
+                    .append(item.getDateAdded()).append('\u0000').append(item.getItemLocationId()).append('\n');
+        }
+        return ItemMutation.idempotencyKey("items-csv", content);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.myjapanese;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Applies an ItemChanges delta to a snapshot of the item list without touching the network again.
+// Updated items keep their position, new ones are appended, deleted ones are dropped.
+public class ItemDeltaMerger {
+
+    private ItemDeltaMerger() {
+    }
+
+    public static List<Item> merge(List<Item> snapshot, ItemChanges changes) {
+        return merge(snapshot, changes.getUpserted(), changes.getDeleted());
+    }
+
+    // Either argument may be null for none
+    public static List<Item> merge(List<Item> snapshot, List<Item> upserted, int[] deleted) {
+        if (upserted == null) {
+            upserted = Collections.emptyList();
+        }
+        if (deleted == null) {
+            deleted = new int[0];
+        }
+        if (upserted.isEmpty() && deleted.length == 0) {
+            return snapshot;
+        }
+
+        // Position of every changed id in the delta, -1 marks a deletion
+        IntIntHashMap changeById = new IntIntHashMap(upserted.size() + deleted.length);
+        for (int id : deleted) {
+            changeById.put(id, -1);
+        }
+        for (int i = 0; i < upserted.size(); i++) {
+            changeById.put(upserted.get(i).getId(), i);
+        }
+
+        List<Item> merged = new ArrayList<>(snapshot.size() + upserted.size());
+        boolean[] applied = new boolean[upserted.size()];
+        for (Item item : snapshot) {
+            int change = changeById.get(item.getId(), Integer.MIN_VALUE);
+            if (change == Integer.MIN_VALUE) {
+                merged.add(item);
+            } else if (change >= 0) {
+                merged.add(upserted.get(change));
+                applied[change] = true;
+            }
+        }
+        for (int i = 0; i < upserted.size(); i++) {
+            if (!applied[i] && changeById.get(upserted.get(i).getId(), -1) == i) {
+                merged.add(upserted.get(i));
+            }
+        }
+        return merged;
+    }
+}
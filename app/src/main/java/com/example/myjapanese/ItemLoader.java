@@ -0,0 +1,118 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+
+// Blocking item downloads, shared by the startup pipeline and the later reloads.
+// Both run the call on the calling thread, so keep them off the UI thread.
+public class ItemLoader {
+
+    // Starting point for the next delta sync, sent along with a full download
+    public static final String SYNC_TOKEN_HEADER = "X-Sync-Token";
+
+    // The server no longer keeps changes that far back
+    private static final int HTTP_GONE = 410;
+
+    public static class Snapshot {
+        public final List<Item> items;
+        public final String token;
+
+        Snapshot(List<Item> items, String token) {
+            this.items = items;
+            this.token = token;
+        }
+    }
+
+    // Result of sync(), either the full list or the changes since the token that was passed in
+    public static class Update {
+        public final List<Item> items;
+        public final ItemChanges changes;
+        public final String token;
+
+        Update(List<Item> items, ItemChanges changes, String token) {
+            this.items = items;
+            this.changes = changes;
+            this.token = token;
+        }
+    }
+
+    // Sees the list loadAll is building after each chunk was added to it. The list is only valid during the
+    // call and must not be kept or changed, copy what should outlive it.
+    public interface ProgressListener {
+        void onProgress(List<Item> received);
+    }
+
+    private ItemLoader() {
+    }
+
+    // A delta when there is a token the server still knows, otherwise the full list
+    public static Update sync(ApiService apiService, String token, Gson gson, int chunkSize,
+                              ProgressListener listener, CallTracker calls) throws IOException {
+        if (token != null) {
+            ItemChanges changes = loadChanges(calls.track(apiService.getItemChanges(token)));
+            if (changes != null) {
+                return new Update(null, changes, changes.getToken());
+            }
+        }
+        Snapshot snapshot = loadAll(calls.track(apiService.streamItems()), gson, chunkSize, listener);
+        return new Update(snapshot.items, null, snapshot.token);
+    }
+
+    // Streams the whole list into one ArrayList, listener (may be null) sees it grow chunk by chunk
+    public static Snapshot loadAll(Call<ResponseBody> call, Gson gson, int chunkSize,
+                                   final ProgressListener listener) throws IOException {
+        final List<Item> received = new ArrayList<>();
+        String token = stream(call, gson, chunkSize, new ItemStreamReader.ChunkListener() {
+            @Override
+            public void onChunk(List<Item> chunk) {
+                received.addAll(chunk);
+                if (listener != null) {
+                    listener.onProgress(received);
+                }
+            }
+        });
+        return new Snapshot(received, token);
+    }
+
+    // Hands every chunk to the listener as soon as it is parsed and keeps none of them, so the memory it
+    // needs is one chunk plus the reader's buffers however long the list is. Returns the sync token.
+    public static String stream(Call<ResponseBody> call, Gson gson, int chunkSize,
+                                ItemStreamReader.ChunkListener listener) throws IOException {
+        Response<ResponseBody> response = call.execute();
+        ResponseBody body = response.body();
+        if (!response.isSuccessful() || body == null) {
+            throw new IOException("Failed to load items: HTTP " + response.code());
+        }
+
+        String token = response.headers().get(SYNC_TOKEN_HEADER);
+        try {
+            if (CompactConverterFactory.isCompact(body.contentType())) {
+                CompactCodec.readItems(body.byteStream(), chunkSize, listener);
+            } else {
+                new ItemStreamReader(gson, chunkSize).read(body.charStream(), listener);
+            }
+        } finally {
+            body.close();
+        }
+        return token;
+    }
+
+    // Returns null when the token has expired and a full download is needed instead
+    public static ItemChanges loadChanges(Call<ItemChanges> call) throws IOException {
+        Response<ItemChanges> response = call.execute();
+        if (response.code() == HTTP_GONE) {
+            return null;
+        }
+        if (!response.isSuccessful() || response.body() == null) {
+            throw new IOException("Failed to load item changes: HTTP " + response.code());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.myjapanese;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// One pending create, update or delete, as sent to the bulk item endpoint
+public class ItemMutation {
+
+    public static final String OP_CREATE = "create";
+    public static final String OP_UPDATE = "update";
+    public static final String OP_DELETE = "delete";
+
+    // Negative for items created locally that have no server id yet, echoed back in the result
+    @SerializedName("client_id")
+    private int clientId;
+
+    @SerializedName("op")
+    private String op;
+
+    // Null for deletes
+    @SerializedName("item")
+    private Item item;
+
+    // Newest OutboxJournal record folded into this mutation, never sent to the server
+    private transient long journalSeq;
+
+    public ItemMutation(int clientId, String op, Item item) {
+        this.clientId = clientId;
+        this.op = op;
+        this.item = item;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public Item getItem() {
+        return item;
+    }
+
+    public long getJournalSeq() {
+        return journalSeq;
+    }
+
+    public void setJournalSeq(long journalSeq) {
+        this.journalSeq = journalSeq;
+    }
+
+    public boolean isCreate() {
+        return OP_CREATE.equals(op);
+    }
+
+    public boolean isUpdate() {
+        return OP_UPDATE.equals(op);
+    }
+
+    public boolean isDelete() {
+        return OP_DELETE.equals(op);
+    }
+
+    // Idempotency-Key for a bulk batch: the prefix and 128 bits of a SHA-256 of content, which has to
+    // describe the batch completely so the same batch always gets the same key
+    static String idempotencyKey(String prefix, CharSequence content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(content.toString().getBytes(Charset.forName("UTF-8")));
+        StringBuilder key = new StringBuilder(prefix).append('-');
+        for (int i = 0; i < 16; i++) {
+            key.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.myjapanese;
+
+import com.google.gson.annotations.SerializedName;
+
+// Per mutation outcome returned by the bulk item endpoint
+public class ItemMutationResult {
+
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_CONFLICT = "conflict";
+    public static final String STATUS_ERROR = "error";
+
+    @SerializedName("client_id")
+    private int clientId;
+
+    @SerializedName("status")
+    private String status;
+
+    // Saved item for ok, the server's current item for conflict
+    @SerializedName("item")
+    private Item item;
+
+    @SerializedName("error")
+    private String error;
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Item getItem() {
+        return item;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isOk() {
+        return STATUS_OK.equals(status);
+    }
+
+    public boolean isConflict() {
+        return STATUS_CONFLICT.equals(status);
+    }
+}
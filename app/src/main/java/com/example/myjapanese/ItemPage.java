@@ -0,0 +1,34 @@
+package com.example.myjapanese;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+import okhttp3.HttpUrl;
+
+// One page of the cursor paginated /item/ endpoint
+public class ItemPage {
+
+    @SerializedName("next")
+    private String next;
+
+    @SerializedName("results")
+    private List<Item> results;
+
+    public String getNext() {
+        return next;
+    }
+
+    public List<Item> getResults() {
+        return results;
+    }
+
+    // The server returns the next page as a full URL, only its cursor is passed back
+    public String getNextCursor() {
+        if (next == null) {
+            return null;
+        }
+        HttpUrl url = HttpUrl.parse(next);
+        return url != null ? url.queryParameter("cursor") : null;
+    }
+}
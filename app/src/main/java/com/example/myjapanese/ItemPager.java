@@ -0,0 +1,80 @@
+package com.example.myjapanese;
+
+import java.util.List;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+// Walks the cursor paginated /item/ endpoint one page at a time. Only the current page is held,
+// so memory stays bounded by the page size however many items the server has.
+public class ItemPager {
+
+    public interface PageListener {
+        void onPage(List<Item> items);
+
+        void onComplete();
+
+        void onError(Throwable t);
+    }
+
+    private final ApiService apiService;
+    private final int pageSize;
+
+    private Call<ItemPage> currentCall;
+    private boolean cancelled = false;
+
+    public ItemPager(ApiService apiService, int pageSize) {
+        this.apiService = apiService;
+        this.pageSize = pageSize;
+    }
+
+    public void start(PageListener listener) {
+        loadPage(null, listener);
+    }
+
+    public void cancel() {
+        cancelled = true;
+        if (currentCall != null) {
+            currentCall.cancel();
+        }
+    }
+
+    private void loadPage(String cursor, final PageListener listener) {
+        if (cancelled) {
+            return;
+        }
+        currentCall = apiService.getItemsPage(cursor, pageSize);
+        currentCall.enqueue(new Callback<ItemPage>() {
+            @Override
+            public void onResponse(Call<ItemPage> call, Response<ItemPage> response) {
+                if (cancelled) {
+                    return;
+                }
+                ItemPage page = response.body();
+                if (!response.isSuccessful() || page == null) {
+                    listener.onError(new IllegalStateException("Failed to load items page: HTTP " + response.code()));
+                    return;
+                }
+
+                if (page.getResults() != null && !page.getResults().isEmpty()) {
+                    listener.onPage(page.getResults());
+                }
+
+                String nextCursor = page.getNextCursor();
+                if (nextCursor == null) {
+                    listener.onComplete();
+                } else {
+                    loadPage(nextCursor, listener);
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ItemPage> call, Throwable t) {
+                if (!cancelled) {
+                    listener.onError(t);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.myjapanese;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The items and locations for the whole process, so they outlive MainActivity and are not fetched again when
+// it is recreated. Every change runs on one writer thread in the order it was made and ends in a new
+// immutable Snapshot published through a volatile field: any thread reads snapshot() without a lock, and
+// snapshots share the item chunks a change did not touch (see ChunkedItemList).
+// Observers get snapshots on their own executor. One that falls behind skips to the newest snapshot
+// instead of working through a queue of stale ones.
+// Searches run on the writer too, against an ItemSearchIndex that is built on the first one and then follows
+// every change, so neither building nor updating it costs the UI thread anything.
+// Items handed in are treated as values, nothing may modify them afterwards.
+public final class ItemRepository {
+
+    public interface Observer {
+        void onSnapshot(Snapshot snapshot);
+    }
+
+    public interface SearchCallback {
+        // version is the snapshot the results were found in
+        void onResults(ItemSearchIndex.Query query, List<Item> results, long version);
+    }
+
+    public static final class Snapshot {
+        // Goes up by one per published snapshot
+        public final long version;
+        public final ChunkedItemList items;
+        public final List<Location> locations;
+        // For the next delta sync, null while the items did not come with one
+        public final String itemsToken;
+        // True once a network sync set the items, a cached or partial list does not count
+        public final boolean synced;
+        // Where the last change came from, for logging
+        public final String source;
+
+        // What changed since version - 1, so an observer can update its own index instead of rebuilding it.
+        // itemsReplaced means the whole list is new, otherwise removed ids went first and upserted came after.
+        public final boolean itemsReplaced;
+        public final List<Item> upserted;
+        public final int[] removed;
+
+        Snapshot(long version, ChunkedItemList items, List<Location> locations, String itemsToken, boolean synced,
+                 String source, boolean itemsReplaced, List<Item> upserted, int[] removed) {
+            this.version = version;
+            this.items = items;
+            this.locations = locations;
+            this.itemsToken = itemsToken;
+            this.synced = synced;
+            this.source = source;
+            this.itemsReplaced = itemsReplaced;
+            this.upserted = upserted;
+            this.removed = removed;
+        }
+    }
+
+    private static final List<Item> NO_ITEMS = Collections.emptyList();
+    private static final int[] NO_IDS = new int[0];
+
+    private static final Snapshot INITIAL = new Snapshot(0, ChunkedItemList.EMPTY, Collections.<Location>emptyList(),
+            null, false, "none", true, NO_ITEMS, NO_IDS);
+
+    private static final ItemRepository INSTANCE = new ItemRepository(newWriter());
+
+    public static ItemRepository get() {
+        return INSTANCE;
+    }
+
+    private final Executor writer;
+    // Written only by the writer
+    private volatile Snapshot current = INITIAL;
+    private final CopyOnWriteArrayList<Registration> observers = new CopyOnWriteArrayList<>();
+    // Null until the first search, written and read only by the writer
+    private ItemSearchIndex searchIndex;
+
+    // Package-private for tests, which pass a writer that runs each change on the calling thread
+    ItemRepository(Executor writer) {
+        this.writer = writer;
+    }
+
+    private static ExecutorService newWriter() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "item-repository");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    // The executor must run one task at a time, like the main thread. The observer gets the current
+    // snapshot first, then every later one it keeps up with.
+    public void observe(Observer observer, Executor executor) {
+        final Registration registration = new Registration(observer, executor);
+        observers.add(registration);
+        // Through the writer, so the first snapshot cannot overtake a newer one published meanwhile
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                registration.offer(current);
+            }
+        });
+    }
+
+    // Nothing reaches the observer after this returns, as long as it is called on the observer's executor
+    public void removeObserver(Observer observer) {
+        for (Registration registration : observers) {
+            if (registration.observer == observer) {
+                registration.removed = true;
+                observers.remove(registration);
+            }
+        }
+    }
+
+    // Runs the query against the newest snapshot once the changes made before this call are in, and hands
+    // the results to the callback on the executor. The query must not be changed afterwards.
+    public void search(final ItemSearchIndex.Query query, final Executor executor, final SearchCallback callback) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (searchIndex == null) {
+                    searchIndex = new ItemSearchIndex();
+                    searchIndex.setItems(current.items);
+                }
+                final List<Item> results = searchIndex.search(query);
+                final long version = current.version;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onResults(query, results, version);
+                    }
+                });
+            }
+        });
+    }
+
+    // A cached or partially downloaded list. Copied before this returns, the caller may go on changing its list.
+    public void replaceItems(List<Item> items, final String token, final String source) {
+        final ChunkedItemList list = ChunkedItemList.of(items);
+        write(new Edit() {
+            @Override
+            Snapshot apply(Snapshot s) {
+                return new Snapshot(s.version + 1, list, s.locations, token, false, source, true, NO_ITEMS, NO_IDS);
+            }
+        });
+    }
+
+    // The result of ItemLoader.sync, either a full list or a delta on top of the current one
+    public void applyUpdate(final ItemLoader.Update update) {
+        if (update.changes == null) {
+            final ChunkedItemList list = ChunkedItemList.of(update.items);
+            write(new Edit() {
+                @Override
+                Snapshot apply(Snapshot s) {
+                    return new Snapshot(s.version + 1, list, s.locations, update.token, true, "network", true,
+                            NO_ITEMS, NO_IDS);
+                }
+            });
+            return;
+        }
+        final List<Item> upserted = update.changes.getUpserted() != null ? update.changes.getUpserted() : NO_ITEMS;
+        final int[] deleted = update.changes.getDeleted() != null ? update.changes.getDeleted() : NO_IDS;
+        write(new Edit() {
+            @Override
+            Snapshot apply(Snapshot s) {
+                return new Snapshot(s.version + 1, s.items.apply(upserted, deleted), s.locations, update.token, true,
+                        "network (delta)", false, upserted, deleted);
+            }
+        });
+    }
+
+    // A local edit, replaces the item with the same id or appends it
+    public void upsertItem(Item item) {
+        replaceItem(item.getId(), item);
+    }
+
+    // Same as upsertItem, for an item whose id changed, e.g. a temporary id replaced by the server's
+    public void replaceItem(final int oldId, final Item item) {
+        write(new Edit() {
+            @Override
+            Snapshot apply(Snapshot s) {
+                return replaceRow(s, oldId, item);
+            }
+        });
+    }
+
+    // A created item trades its temporary id for the server's and keeps the values it has, for when the user
+    // edited it again before the server answered the create
+    public void changeItemId(final int oldId, final int newId) {
+        write(new Edit() {
+            @Override
+            Snapshot apply(Snapshot s) {
+                int index = s.items.indexOfId(oldId);
+                if (index < 0) {
+                    return s;
+                }
+                return replaceRow(s, oldId, s.items.get(index).withId(newId));
+            }
+        });
+    }
+
+    // Puts item where the row with oldId is, or where its own id is, or at the end. When the id changes, a row
+    // that already has the new one goes: a delta sync or a pushed change can bring a created item before the
+    // bulk answer that tells its id.
+    private static Snapshot replaceRow(Snapshot s, int oldId, Item item) {
+        ChunkedItemList items = s.items;
+        int[] removed = NO_IDS;
+        int index = items.indexOfId(oldId);
+        if (oldId != item.getId()) {
+            removed = new int[]{oldId};
+            int duplicate = index >= 0 ? items.indexOfId(item.getId()) : -1;
+            if (duplicate >= 0) {
+                items = items.delete(duplicate);
+                index = items.indexOfId(oldId);
+                removed = new int[]{oldId, item.getId()};
+            }
+        }
+        items = index >= 0 ? items.replace(index, item) : items.upsert(item);
+        return new Snapshot(s.version + 1, items, s.locations, s.itemsToken, s.synced, "edit", false,
+                Collections.singletonList(item), removed);
+    }
+
+    public void removeItem(final int itemId) {
+        write(new Edit() {
+            @Override
+            Snapshot apply(Snapshot s) {
+                int index = s.items.indexOfId(itemId);
+                if (index < 0) {
+                    return s;
+                }
+                return new Snapshot(s.version + 1, s.items.delete(index), s.locations, s.itemsToken, s.synced, "edit",
+                        false, NO_ITEMS, new int[]{itemId});
+            }
+        });
+    }
+
+    public void setLocations(List<Location> locations) {
+        final List<Location> copy = Collections.unmodifiableList(new ArrayList<>(locations));
+        write(new Edit() {
+            @Override
+            Snapshot apply(Snapshot s) {
+                return new Snapshot(s.version + 1, s.items, copy, s.itemsToken, s.synced, "locations", false,
+                        NO_ITEMS, NO_IDS);
+            }
+        });
+    }
+
+    // Pushed by ItemChangeStream: replaces the locations with the same id in place, appends new ones
+    public void applyLocationChanges(final List<Location> upserted, final int[] deleted) {
+        write(new Edit() {
+            @Override
+            Snapshot apply(Snapshot s) {
+                List<Location> merged = mergeLocations(s.locations, upserted, deleted);
+                return new Snapshot(s.version + 1, s.items, merged, s.itemsToken, s.synced, "network (push)", false,
+                        NO_ITEMS, NO_IDS);
+            }
+        });
+    }
+
+    private static List<Location> mergeLocations(List<Location> current, List<Location> upserted, int[] deleted) {
+        Map<Integer, Location> byId = new LinkedHashMap<>();
+        for (Location location : current) {
+            byId.put(location.getId(), location);
+        }
+        for (int id : deleted) {
+            byId.remove(id);
+        }
+        for (Location location : upserted) {
+            byId.put(location.getId(), location);
+        }
+        return Collections.unmodifiableList(new ArrayList<>(byId.values()));
+    }
+
+    // Runs on the writer, returns the snapshot to publish or the one it was given for no change
+    private abstract static class Edit {
+        abstract Snapshot apply(Snapshot snapshot);
+    }
+
+    private void write(final Edit edit) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                Snapshot next = edit.apply(current);
+                if (next == current) {
+                    return;
+                }
+                current = next;
+                for (Registration registration : observers) {
+                    registration.offer(next);
+                }
+                // After the observers were offered the snapshot, a rebuild does not hold it back
+                if (searchIndex != null) {
+                    updateSearchIndex(next);
+                }
+            }
+        });
+    }
+
+    private void updateSearchIndex(Snapshot snapshot) {
+        if (snapshot.itemsReplaced) {
+            searchIndex.setItems(snapshot.items);
+            return;
+        }
+        for (int id : snapshot.removed) {
+            searchIndex.remove(id);
+        }
+        for (Item item : snapshot.upserted) {
+            searchIndex.put(item);
+        }
+    }
+
+    // At most one delivery task is queued per observer, it hands over whatever snapshot is newest when it runs
+    private static final class Registration implements Runnable {
+        final Observer observer;
+        final Executor executor;
+        final AtomicReference<Snapshot> pending = new AtomicReference<>();
+        volatile boolean removed = false;
+        // Only touched by the delivery task
+        long deliveredVersion = -1;
+
+        Registration(Observer observer, Executor executor) {
+            this.observer = observer;
+            this.executor = executor;
+        }
+
+        // Called by the writer only
+        void offer(Snapshot snapshot) {
+            if (pending.getAndSet(snapshot) == null) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            Snapshot snapshot = pending.getAndSet(null);
+            // The initial offer can repeat a snapshot the observer already got
+            if (snapshot == null || removed || snapshot.version <= deliveredVersion) {
+                return;
+            }
+            deliveredVersion = snapshot.version;
+            observer.onSnapshot(snapshot);
+        }
+    }
+}
@@ -0,0 +1,636 @@
+package com.example.myjapanese;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Finds items by name, location and date without scanning the whole list. Four indexes over the same items:
+//   trigrams: a posting list per trigram of the folded names, for substring search
+//   names:    all items ordered by folded name, for prefix search and sorting
+//   location: a posting list per location id
+//   date:     all items ordered by date_added, for ranges
+// A query walks the smallest candidate set any of its conditions gives and checks the rest per item.
+// Names are compared case-insensitively, with katakana folded to hiragana and full-width ASCII to ASCII,
+// so "ミソ" finds "みそ" and "ＡＢＣ" finds "abc".
+// put() and remove() update the indexes in place: postings are appended or swap-removed, and dropped once
+// empty, the two sorted orders are binary searched and shifted by one.
+// Not thread safe, ItemRepository keeps it on its writer thread.
+public class ItemSearchIndex {
+
+    public static final int SORT_NONE = 0;
+    public static final int SORT_NAME = 1;
+    public static final int SORT_DATE = 2;
+
+    // Texts shorter than this cannot use the trigram postings
+    private static final int GRAM = 3;
+
+    // Conditions are ANDed, an empty query matches everything
+    public static class Query {
+        String text = "";
+        boolean prefix = false;
+        boolean hasLocation = false;
+        int locationId;
+        int fromDay = Integer.MIN_VALUE;
+        int toDay = Integer.MAX_VALUE;
+        int sort = SORT_NONE;
+        int limit = Integer.MAX_VALUE;
+
+        // Names containing the text
+        public Query contains(String text) {
+            this.text = fold(text);
+            this.prefix = false;
+            return this;
+        }
+
+        // Names starting with the text
+        public Query startsWith(String text) {
+            this.text = fold(text);
+            this.prefix = true;
+            return this;
+        }
+
+        public Query location(int locationId) {
+            this.hasLocation = true;
+            this.locationId = locationId;
+            return this;
+        }
+
+        // Epoch days, both inclusive, see IsoDates.parseEpochDay. Items without a readable date never match.
+        public Query dates(int fromDay, int toDay) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            return this;
+        }
+
+        public Query sortBy(int sort) {
+            this.sort = sort;
+            return this;
+        }
+
+        public Query limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        boolean hasDates() {
+            return fromDay != Integer.MIN_VALUE || toDay != Integer.MAX_VALUE;
+        }
+    }
+
+    // Growable int list, removal swaps in the last element
+    private static final class Postings {
+        int[] values = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    // Per slot, a slot is reused once its item is removed
+    private Item[] items = new Item[16];
+    private String[] keys = new String[16];
+    private int[] days = new int[16];
+    private int slotCount = 0;
+    private int[] freeSlots = new int[16];
+    private int freeCount = 0;
+    private final IntIntHashMap slotById = new IntIntHashMap();
+
+    private final IntIntHashMap postingsByLocation = new IntIntHashMap();
+    private final IntIntHashMap postingsByGram = new IntIntHashMap();
+    private final List<Postings> postings = new ArrayList<>();
+    // Positions in postings whose list went empty, reused before the list grows
+    private int[] freePostings = new int[16];
+    private int freePostingsCount = 0;
+    private int[] gramBuffer = new int[32];
+
+    // Slots ordered by (key, slot)
+    private int[] nameOrder = new int[16];
+    // (day << 32 | slot), items without a date first
+    private long[] dateOrder = new long[16];
+    private int size = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public Item get(int itemId) {
+        int slot = slotById.get(itemId, -1);
+        return slot < 0 ? null : items[slot];
+    }
+
+    // Starts over with the given items, for a full reload
+    public void setItems(List<Item> newItems) {
+        int capacity = Math.max(16, newItems.size());
+        items = new Item[capacity];
+        keys = new String[capacity];
+        days = new int[capacity];
+        slotCount = 0;
+        freeCount = 0;
+        slotById.clear();
+        postingsByLocation.clear();
+        postingsByGram.clear();
+        postings.clear();
+        freePostingsCount = 0;
+        size = 0;
+
+        for (Item item : newItems) {
+            int slot = slotById.get(item.getId(), -1);
+            if (slot >= 0) {
+                // A repeated id replaces the earlier item, as put() would
+                removeSlot(slot);
+            }
+            addSlot(item);
+        }
+
+        // Sorted once instead of a shifting insert per item
+        nameOrder = new int[capacity];
+        dateOrder = new long[capacity];
+        int count = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (items[slot] != null) {
+                nameOrder[count] = slot;
+                dateOrder[count] = packDate(slot);
+                count++;
+            }
+        }
+        sortByName(nameOrder, size);
+        Arrays.sort(dateOrder, 0, size);
+    }
+
+    // Adds the item or replaces the one with the same id
+    public void put(Item item) {
+        int slot = slotById.get(item.getId(), -1);
+        if (slot >= 0) {
+            replaceSlot(slot, item);
+            return;
+        }
+        slot = addSlot(item);
+        insertIntoOrders(slot);
+    }
+
+    public boolean remove(int itemId) {
+        int slot = slotById.get(itemId, -1);
+        if (slot < 0) {
+            return false;
+        }
+        removeFromOrders(slot);
+        removeSlot(slot);
+        return true;
+    }
+
+    // Same as the list ItemDeltaMerger produces, without a rebuild
+    public void apply(ItemChanges changes) {
+        if (changes.getDeleted() != null) {
+            for (int id : changes.getDeleted()) {
+                remove(id);
+            }
+        }
+        if (changes.getUpserted() != null) {
+            for (Item item : changes.getUpserted()) {
+                put(item);
+            }
+        }
+    }
+
+    public List<Item> search(Query query) {
+        // Candidates come from whichever condition narrows them most: one of the two sorted orders
+        // (a slice of it) or a posting list. Without any, every slot is a candidate, walked in name
+        // or date order if that is the order asked for, in slot order otherwise (closer to the list order).
+        boolean byName = query.sort == SORT_NAME;
+        int[] slots = byName ? nameOrder : null;
+        long[] datedSlots = query.sort == SORT_DATE ? dateOrder : null;
+        int from = 0;
+        int to = byName || datedSlots != null ? size : slotCount;
+
+        if (query.hasDates()) {
+            from = lowerBoundDate(query.fromDay);
+            to = query.toDay == Integer.MAX_VALUE ? size : lowerBoundDate(query.toDay + 1);
+            slots = null;
+            datedSlots = dateOrder;
+            byName = false;
+        }
+        if (query.prefix && !query.text.isEmpty()) {
+            int prefixFrom = lowerBoundName(query.text, -1);
+            int prefixTo = lowerBoundName(query.text + Character.MAX_VALUE, -1);
+            if (prefixTo - prefixFrom < to - from) {
+                from = prefixFrom;
+                to = prefixTo;
+                slots = nameOrder;
+                datedSlots = null;
+                byName = true;
+            }
+        }
+
+        Postings narrowest = null;
+        if (query.hasLocation) {
+            narrowest = postingsOf(postingsByLocation, query.locationId);
+            if (narrowest == null) {
+                return new ArrayList<>(0);
+            }
+        }
+        // Every trigram of the text is in a matching name, the rarest one gives the fewest candidates.
+        // One or two characters are too common to index, those are only checked per candidate.
+        if (!query.prefix && query.text.length() >= GRAM) {
+            for (int i = 0; i + GRAM <= query.text.length(); i++) {
+                Postings gramPostings = postingsOf(postingsByGram, gram(query.text, i));
+                if (gramPostings == null) {
+                    return new ArrayList<>(0);
+                }
+                if (narrowest == null || gramPostings.size < narrowest.size) {
+                    narrowest = gramPostings;
+                }
+            }
+        }
+        if (narrowest != null && narrowest.size < to - from) {
+            slots = narrowest.values;
+            datedSlots = null;
+            from = 0;
+            to = narrowest.size;
+            byName = false;
+        }
+
+        // Candidates already in the requested order can stop at the limit
+        boolean ordered = query.sort == SORT_NONE
+                || query.sort == SORT_NAME && byName
+                || query.sort == SORT_DATE && datedSlots != null;
+        int limit = ordered ? query.limit : Integer.MAX_VALUE;
+        int[] matches = new int[Math.max(0, Math.min(to - from, 64))];
+        int count = 0;
+        for (int i = from; i < to && count < limit; i++) {
+            int slot = datedSlots != null ? (int) datedSlots[i] : slots != null ? slots[i] : i;
+            if (items[slot] != null && matches(slot, query)) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, Math.max(16, count * 2));
+                }
+                matches[count++] = slot;
+            }
+        }
+
+        if (!ordered && query.sort == SORT_DATE) {
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                packed[i] = packDate(matches[i]);
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < count; i++) {
+                matches[i] = (int) packed[i];
+            }
+        } else if (!ordered && query.sort == SORT_NAME) {
+            sortByName(matches, count);
+        }
+
+        int resultSize = Math.min(count, query.limit);
+        List<Item> result = new ArrayList<>(resultSize);
+        for (int i = 0; i < resultSize; i++) {
+            result.add(items[matches[i]]);
+        }
+        return result;
+    }
+
+    private boolean matches(int slot, Query query) {
+        if (query.hasLocation && items[slot].getItemLocationId() != query.locationId) {
+            return false;
+        }
+        if (query.hasDates()) {
+            int day = days[slot];
+            if (day == IsoDates.INVALID_DAY || day < query.fromDay || day > query.toDay) {
+                return false;
+            }
+        }
+        if (!query.text.isEmpty()) {
+            String key = keys[slot];
+            if (key == null) {
+                return false;
+            }
+            return query.prefix ? key.startsWith(query.text) : key.contains(query.text);
+        }
+        return true;
+    }
+
+    // Fills the slot and its postings, the sorted orders are up to the caller
+    private int addSlot(Item item) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == items.length) {
+                int capacity = slotCount * 2;
+                items = Arrays.copyOf(items, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                days = Arrays.copyOf(days, capacity);
+            }
+            slot = slotCount++;
+        }
+        String key = item.getItemName() == null ? null : fold(item.getItemName());
+        items[slot] = item;
+        keys[slot] = key;
+        days[slot] = IsoDates.parseEpochDay(item.getDateAdded());
+        slotById.put(item.getId(), slot);
+
+        postingsFor(postingsByLocation, item.getItemLocationId()).add(slot);
+        int gramCount = grams(key);
+        for (int i = 0; i < gramCount; i++) {
+            postingsFor(postingsByGram, gramBuffer[i]).add(slot);
+        }
+        size++;
+        return slot;
+    }
+
+    // An edit keeps the slot: only the postings that differ are touched, and each order entry moves
+    // from its old position to the new one instead of being removed and inserted again
+    private void replaceSlot(int slot, Item item) {
+        Item old = items[slot];
+        String oldKey = keys[slot];
+        int namePosition = lowerBoundName(oldKey, slot);
+        int datePosition = Arrays.binarySearch(dateOrder, 0, size, packDate(slot));
+
+        String key = item.getItemName() == null ? null : fold(item.getItemName());
+        if (old.getItemLocationId() != item.getItemLocationId()) {
+            removePosting(postingsByLocation, old.getItemLocationId(), slot);
+            postingsFor(postingsByLocation, item.getItemLocationId()).add(slot);
+        }
+        if (oldKey == null ? key != null : !oldKey.equals(key)) {
+            int gramCount = grams(oldKey);
+            for (int i = 0; i < gramCount; i++) {
+                removePosting(postingsByGram, gramBuffer[i], slot);
+            }
+            gramCount = grams(key);
+            for (int i = 0; i < gramCount; i++) {
+                postingsFor(postingsByGram, gramBuffer[i]).add(slot);
+            }
+        }
+        items[slot] = item;
+        keys[slot] = key;
+        days[slot] = IsoDates.parseEpochDay(item.getDateAdded());
+
+        repositionName(namePosition);
+        dateOrder[datePosition] = packDate(slot);
+        repositionDate(datePosition);
+    }
+
+    private void removeSlot(int slot) {
+        Item item = items[slot];
+        removePosting(postingsByLocation, item.getItemLocationId(), slot);
+        int gramCount = grams(keys[slot]);
+        for (int i = 0; i < gramCount; i++) {
+            removePosting(postingsByGram, gramBuffer[i], slot);
+        }
+        slotById.remove(item.getId());
+        items[slot] = null;
+        keys[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    private Postings postingsOf(IntIntHashMap byKey, int key) {
+        int index = byKey.get(key, -1);
+        return index < 0 ? null : postings.get(index);
+    }
+
+    private Postings postingsFor(IntIntHashMap byKey, int key) {
+        int index = byKey.get(key, -1);
+        if (index < 0) {
+            if (freePostingsCount > 0) {
+                index = freePostings[--freePostingsCount];
+                postings.set(index, new Postings());
+            } else {
+                index = postings.size();
+                postings.add(new Postings());
+            }
+            byKey.put(key, index);
+        }
+        return postings.get(index);
+    }
+
+    // An empty list is dropped with its key, or the trigrams of every name ever deleted would stay around
+    private void removePosting(IntIntHashMap byKey, int key, int slot) {
+        int index = byKey.get(key, -1);
+        Postings list = postings.get(index);
+        list.remove(slot);
+        if (list.size == 0) {
+            byKey.remove(key);
+            postings.set(index, null);
+            if (freePostingsCount == freePostings.length) {
+                freePostings = Arrays.copyOf(freePostings, freePostingsCount * 2);
+            }
+            freePostings[freePostingsCount++] = index;
+        }
+    }
+
+    // Posting lists in use, for tests
+    int postingsCount() {
+        return postings.size() - freePostingsCount;
+    }
+
+    // Called after addSlot(), size already counts the slot
+    private void insertIntoOrders(int slot) {
+        int count = size - 1;
+        if (count == nameOrder.length) {
+            nameOrder = Arrays.copyOf(nameOrder, count * 2);
+            dateOrder = Arrays.copyOf(dateOrder, count * 2);
+        }
+        int position = lowerBoundName(keys[slot], slot, 0, count);
+        System.arraycopy(nameOrder, position, nameOrder, position + 1, count - position);
+        nameOrder[position] = slot;
+
+        long packed = packDate(slot);
+        position = -Arrays.binarySearch(dateOrder, 0, count, packed) - 1;
+        System.arraycopy(dateOrder, position, dateOrder, position + 1, count - position);
+        dateOrder[position] = packed;
+    }
+
+    // Called before removeSlot(), while the slot still has its key and day
+    private void removeFromOrders(int slot) {
+        int position = lowerBoundName(keys[slot], slot);
+        System.arraycopy(nameOrder, position + 1, nameOrder, position, size - position - 1);
+
+        position = Arrays.binarySearch(dateOrder, 0, size, packDate(slot));
+        System.arraycopy(dateOrder, position + 1, dateOrder, position, size - position - 1);
+    }
+
+    // The entry at position changed its key, the rest is still in order: moves it to where it belongs
+    private void repositionName(int position) {
+        int slot = nameOrder[position];
+        String key = keys[slot];
+        if (position + 1 < size && compareName(nameOrder[position + 1], key, slot) < 0) {
+            int target = lowerBoundName(key, slot, position + 1, size) - 1;
+            System.arraycopy(nameOrder, position + 1, nameOrder, position, target - position);
+            nameOrder[target] = slot;
+        } else if (position > 0 && compareName(nameOrder[position - 1], key, slot) > 0) {
+            int target = lowerBoundName(key, slot, 0, position);
+            System.arraycopy(nameOrder, target, nameOrder, target + 1, position - target);
+            nameOrder[target] = slot;
+        }
+    }
+
+    private void repositionDate(int position) {
+        long packed = dateOrder[position];
+        if (position + 1 < size && dateOrder[position + 1] < packed) {
+            int target = -Arrays.binarySearch(dateOrder, position + 1, size, packed) - 2;
+            System.arraycopy(dateOrder, position + 1, dateOrder, position, target - position);
+            dateOrder[target] = packed;
+        } else if (position > 0 && dateOrder[position - 1] > packed) {
+            int target = -Arrays.binarySearch(dateOrder, 0, position, packed) - 1;
+            System.arraycopy(dateOrder, target, dateOrder, target + 1, position - target);
+            dateOrder[target] = packed;
+        }
+    }
+
+    private long packDate(int slot) {
+        return ((long) days[slot] << 32) | slot;
+    }
+
+    // First position in dateOrder dated day or later
+    private int lowerBoundDate(int day) {
+        int position = Arrays.binarySearch(dateOrder, 0, size, (long) day << 32);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private int lowerBoundName(String key, int slot) {
+        return lowerBoundName(key, slot, 0, size);
+    }
+
+    // First position in nameOrder[from, to) at or after (key, slot), null keys first
+    private int lowerBoundName(String key, int slot, int from, int to) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareName(nameOrder[mid], key, slot) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compareName(int slot, String key, int otherSlot) {
+        String slotKey = keys[slot];
+        if (slotKey != key) {
+            if (slotKey == null) {
+                return -1;
+            }
+            if (key == null) {
+                return 1;
+            }
+            int byKey = slotKey.compareTo(key);
+            if (byKey != 0) {
+                return byKey;
+            }
+        }
+        return Integer.compare(slot, otherSlot);
+    }
+
+    // Merge sort by (key, slot) without boxing the slots for a Comparator
+    private void sortByName(int[] slots, int count) {
+        mergeSort(Arrays.copyOf(slots, count), slots, 0, count);
+    }
+
+    // Sorts [from, to) into dst, src starts out with the same values and is used as scratch space
+    private void mergeSort(int[] src, int[] dst, int from, int to) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int slot = dst[i];
+                int j = i;
+                while (j > from && compareName(dst[j - 1], keys[slot], slot) > 0) {
+                    dst[j] = dst[j - 1];
+                    j--;
+                }
+                dst[j] = slot;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(dst, src, from, mid);
+        mergeSort(dst, src, mid, to);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || left < mid && compareName(src[left], keys[src[right]], src[right]) <= 0) {
+                dst[i] = src[left++];
+            } else {
+                dst[i] = src[right++];
+            }
+        }
+    }
+
+    // Distinct trigrams of a folded name into gramBuffer, returns how many
+    private int grams(String key) {
+        if (key == null || key.length() < GRAM) {
+            return 0;
+        }
+        int total = key.length() - GRAM + 1;
+        if (gramBuffer.length < total) {
+            gramBuffer = new int[total];
+        }
+        int count = 0;
+        for (int i = 0; i < total; i++) {
+            int gram = gram(key, i);
+            boolean seen = false;
+            for (int j = 0; j < count && !seen; j++) {
+                seen = gramBuffer[j] == gram;
+            }
+            if (!seen) {
+                gramBuffer[count++] = gram;
+            }
+        }
+        return count;
+    }
+
+    // 10 bits per character. Different trigrams can share a key, every candidate is checked with contains().
+    private static int gram(String key, int start) {
+        int gram = 0;
+        for (int i = start; i < start + GRAM; i++) {
+            char c = key.charAt(i);
+            gram = (gram << 10) | ((c ^ (c >>> 10)) & 0x3FF);
+        }
+        return gram;
+    }
+
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        char[] folded = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char f = foldChar(c);
+            if (f != c && folded == null) {
+                folded = text.toCharArray();
+            }
+            if (folded != null) {
+                folded[i] = f;
+            }
+        }
+        return folded == null ? text : new String(folded);
+    }
+
+    private static char foldChar(char c) {
+        if (c >= 'ァ' && c <= 'ヶ') {
+            // Katakana to hiragana
+            return (char) (c - 0x60);
+        }
+        if (c >= '！' && c <= '～') {
+            // Full-width ASCII
+            c = (char) (c - 0xFEE0);
+        }
+        return Character.toLowerCase(c);
+    }
+}
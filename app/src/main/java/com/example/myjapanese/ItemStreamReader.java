@@ -0,0 +1,63 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Pulls Items out of a JSON array one at a time and hands them over in fixed size chunks,
+// so the first rows can be shown before the rest of the response has been read.
+public class ItemStreamReader {
+
+    public interface ChunkListener {
+        // The chunk list is not reused, the listener may keep it
+        void onChunk(List<Item> chunk);
+    }
+
+    private final TypeAdapter<Item> itemAdapter;
+    private final int chunkSize;
+
+    public ItemStreamReader(Gson gson, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.itemAdapter = gson.getAdapter(Item.class);
+        this.chunkSize = chunkSize;
+    }
+
+    // Returns the total number of items read
+    public int read(Reader in, ChunkListener listener) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            int total = 0;
+            List<Item> chunk = new ArrayList<>(chunkSize);
+
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return 0;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                chunk.add(itemAdapter.read(reader));
+                total++;
+                if (chunk.size() == chunkSize) {
+                    listener.onChunk(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            reader.endArray();
+
+            if (!chunk.isEmpty()) {
+                listener.onChunk(chunk);
+            }
+            return total;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.myjapanese;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded pool of JDBC connections. Idle connections are reused most recently used first,
+// checked with isValid() when they sat idle for a while, and closed after idleTimeoutMs.
+public class JdbcConnectionPool {
+
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    // Idle connections younger than this are handed out without a validation round trip
+    private static final long VALIDATE_AFTER_IDLE_MS = 5_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long idleTimeoutMs;
+    private final int statementCacheSize;
+    private final long validateAfterIdleMs;
+
+    // One permit per connection that may exist, idle or checked out
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // Metrics
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong checkoutNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+
+    public JdbcConnectionPool(ConnectionFactory factory, int maxSize, long idleTimeoutMs, int statementCacheSize) {
+        this(factory, maxSize, idleTimeoutMs, statementCacheSize, VALIDATE_AFTER_IDLE_MS);
+    }
+
+    // Package-private for tests, which validate after a short idle time
+    JdbcConnectionPool(ConnectionFactory factory, int maxSize, long idleTimeoutMs, int statementCacheSize,
+                       long validateAfterIdleMs) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.statementCacheSize = statementCacheSize;
+        this.validateAfterIdleMs = validateAfterIdleMs;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jdbc-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1_000, idleTimeoutMs / 2);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Blocks up to timeoutMs for a free slot, close() on the returned connection gives it back
+    public PooledConnection borrow(long timeoutMs) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + timeoutMs + " ms waiting for a connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        waitNanos.addAndGet(waited);
+        updateMax(maxWaitNanos, waited);
+
+        try {
+            PooledConnection connection = takeValidIdle();
+            if (connection == null) {
+                connection = new PooledConnection(this, factory.create(), statementCacheSize);
+                created.incrementAndGet();
+            }
+            connection.markBorrowed();
+            checkouts.incrementAndGet();
+            checkoutNanos.addAndGet(System.nanoTime() - start);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    void release(PooledConnection connection, boolean broken) {
+        if (broken || closed) {
+            connection.closePhysical();
+        } else {
+            connection.markIdle();
+            synchronized (idle) {
+                idle.addFirst(connection);
+            }
+        }
+        permits.release();
+    }
+
+    private PooledConnection takeValidIdle() {
+        while (true) {
+            PooledConnection connection;
+            synchronized (idle) {
+                connection = idle.pollFirst();
+            }
+            if (connection == null) {
+                return null;
+            }
+            if (connection.idleMillis() < validateAfterIdleMs || connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return connection;
+            }
+            invalidated.incrementAndGet();
+            connection.closePhysical();
+        }
+    }
+
+    // Runs on the evictor, package-private so tests need not wait for it
+    void evictIdle() {
+        List<PooledConnection> expired = new ArrayList<>();
+        synchronized (idle) {
+            // Least recently used connections sit at the tail
+            while (!idle.isEmpty() && idle.peekLast().idleMillis() >= idleTimeoutMs) {
+                expired.add(idle.pollLast());
+            }
+        }
+        for (PooledConnection connection : expired) {
+            connection.closePhysical();
+            evicted.incrementAndGet();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        List<PooledConnection> toClose;
+        synchronized (idle) {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        for (PooledConnection connection : toClose) {
+            connection.closePhysical();
+        }
+    }
+
+    public Stats getStats() {
+        int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
+        }
+        int inUse = maxSize - permits.availablePermits();
+        return new Stats(Math.max(0, inUse), idleCount, permits.getQueueLength(), checkouts.get(),
+                checkoutNanos.get(), waitNanos.get(), maxWaitNanos.get(),
+                created.get(), evicted.get(), invalidated.get());
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    // Point in time view of the pool, cheap enough to log periodically
+    public static class Stats {
+        public final int active;
+        public final int idle;
+        public final int waiting;
+        public final long checkouts;
+        public final long totalCheckoutNanos;
+        public final long totalWaitNanos;
+        public final long maxWaitNanos;
+        public final long created;
+        public final long evicted;
+        public final long invalidated;
+
+        Stats(int active, int idle, int waiting, long checkouts, long totalCheckoutNanos, long totalWaitNanos,
+              long maxWaitNanos, long created, long evicted, long invalidated) {
+            this.active = active;
+            this.idle = idle;
+            this.waiting = waiting;
+            this.checkouts = checkouts;
+            this.totalCheckoutNanos = totalCheckoutNanos;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.created = created;
+            this.evicted = evicted;
+            this.invalidated = invalidated;
+        }
+
+        public double averageCheckoutMillis() {
+            return checkouts == 0 ? 0 : totalCheckoutNanos / 1e6 / checkouts;
+        }
+
+        public double averageWaitMillis() {
+            return checkouts == 0 ? 0 : totalWaitNanos / 1e6 / checkouts;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US,
+                    "active=%d idle=%d waiting=%d checkouts=%d avgCheckout=%.3fms avgWait=%.3fms maxWait=%.3fms created=%d evicted=%d invalidated=%d",
+                    active, idle, waiting, checkouts, averageCheckoutMillis(), averageWaitMillis(), maxWaitNanos / 1e6,
+                    created, evicted, invalidated);
+        }
+    }
+}
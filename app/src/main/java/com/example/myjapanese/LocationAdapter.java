@@ -10,8 +10,12 @@ import java.util.List;
 
 public class LocationAdapter extends ArrayAdapter<Location> {
 
+    // Always describes the locations this adapter currently shows
+    private final LocationIndex index = new LocationIndex();
+
     public LocationAdapter(@NonNull Context context, int resource, @NonNull List<Location> locations) {
         super(context, resource, locations);
+        index.update(locations);
     }
 
     @NonNull
@@ -24,4 +28,24 @@ public class LocationAdapter extends ArrayAdapter<Location> {
     public String getItemAsString(int position) {
         return getItem(position).getLocationName();
     }
+
+    // Replaces the shown locations, returns true if any id, position or name changed
+    public boolean setLocations(@NonNull List<Location> locations) {
+        setNotifyOnChange(false);
+        clear();
+        addAll(locations);
+        boolean changed = index.update(locations);
+        notifyDataSetChanged();
+        return changed;
+    }
+
+    // -1 if no location has this id
+    public int getPositionForId(int locationId) {
+        return index.positionOf(locationId);
+    }
+
+    @NonNull
+    public LocationIndex getIndex() {
+        return index;
+    }
 }
@@ -0,0 +1,67 @@
+package com.example.myjapanese;
+
+import java.util.List;
+
+// Location id -> spinner position and id -> name, both O(1) and without boxing.
+// Kept in step with LocationAdapter, update() only touches the ids whose position or name changed.
+public class LocationIndex {
+
+    private final IntIntHashMap positionById = new IntIntHashMap();
+    private int[] ids = new int[0];
+    private String[] names = new String[0];
+
+    // Returns true if any id, position or name changed
+    public boolean update(List<Location> locations) {
+        int count = locations.size();
+        int[] newIds = new int[count];
+        String[] newNames = new String[count];
+        boolean changed = count != ids.length;
+
+        for (int position = 0; position < count; position++) {
+            Location location = locations.get(position);
+            int id = location.getId();
+            newIds[position] = id;
+            newNames[position] = location.getLocationName();
+
+            int oldPosition = positionById.get(id, -1);
+            if (oldPosition != position) {
+                positionById.put(id, position);
+                changed = true;
+            } else if (!equals(names[oldPosition], newNames[position])) {
+                changed = true;
+            }
+        }
+
+        // Ids that are no longer listed, or duplicates now pointing elsewhere, are left over from the old list
+        for (int oldId : ids) {
+            int position = positionById.get(oldId, -1);
+            if (position >= 0 && (position >= count || newIds[position] != oldId)) {
+                positionById.remove(oldId);
+                changed = true;
+            }
+        }
+
+        ids = newIds;
+        names = newNames;
+        return changed;
+    }
+
+    // -1 if the id is unknown
+    public int positionOf(int locationId) {
+        return positionById.get(locationId, -1);
+    }
+
+    // null if the id is unknown
+    public String nameOf(int locationId) {
+        int position = positionById.get(locationId, -1);
+        return position >= 0 ? names[position] : null;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -3,57 +3,185 @@ package com.example.myjapanese;
 import android.annotation.SuppressLint;
 import android.app.AlertDialog;
 import android.app.DatePickerDialog;
+import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.icu.text.SimpleDateFormat;
+import android.net.ConnectivityManager;
+import android.net.Network;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.DatePicker;
 import android.widget.Spinner;
-import android.widget.TableLayout;
-import android.widget.TableRow;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
-
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
 
-    private TableLayout itemTable;
+    private static final String TAG = "MainActivity";
+
+    private RecyclerView itemList;
+    private ItemAdapter itemAdapter;
 
     private ApiService apiService;
-    private Button addButton, reloadButton;
+    private MutationQueue mutationQueue;
+    // Other clients' changes while the activity is in the foreground, started from the token of each sync
+    private ItemChangeStream changeStream;
+    private boolean resumed = false;
+    private ConnectivityManager connectivityManager;
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isDestroyed() && mutationQueue != null) {
+                        mutationQueue.flushNow();
+                    }
+                }
+            });
+        }
+    };
+    private Button addButton, reloadButton, csvImportButton;
 
     private Spinner locationSpinner;
-    private List<Location> locationsList;
     private LocationAdapter locationAdapter;
 
     private TextView selectedDateText, itemNameText;
 
     private int selectedItemId = -1; // Variable to store the ID of the item to edit
 
+    // Items, locations and the sync token live here and survive the activity, the views follow its snapshots
+    private final ItemRepository repository = ItemRepository.get();
+    private List<Location> shownLocations;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mainThread = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            mainHandler.post(task);
+        }
+    };
+
+    // Last server data is kept on disk so the list shows up before the network replies
+    private ItemCache itemCache;
+    private final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor();
+
+    // Export and import can take a while on a big list, they get their own thread and run one at a time
+    private static final String CSV_FILE = "items.csv";
+    private final ExecutorService csvExecutor = Executors.newSingleThreadExecutor();
+
+    // The item list is read off the UI thread in chunks while it downloads
+    private static final int STREAM_CHUNK_SIZE = 200;
+
+    // Item reloads go through here so overlapping ones share a request and stale answers are dropped
+    private static final String REQUEST_ITEMS = "items";
+    private final RequestCoordinator requests = new RequestCoordinator();
+
+    // Client, cache, items and locations for the first screen, see StartupLoader
+    private StartupLoader startupLoader;
+    private StartupTrace startupTrace;
+    private boolean firstRowsShown = false;
+    private String firstRowSource;
+    private boolean startupLoaded = false;
+    private boolean startupLogged = false;
+
+    // Edits are applied to the list directly, a periodic full reload catches anything they missed.
+    // Not while the change stream is connected, it brings every change as it happens.
+    private static final long RESYNC_INTERVAL_MS = 5 * 60 * 1000;
+    private final Handler resyncHandler = new Handler(Looper.getMainLooper());
+    private final Runnable resyncRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (apiService != null && (changeStream == null || !changeStream.isConnected())) {
+                fetchItems();
+            }
+            resyncHandler.postDelayed(this, RESYNC_INTERVAL_MS);
+        }
+    };
+
     @SuppressLint("MissingInflatedId")
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        startupTrace = StartupTrace.begin();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        itemTable = findViewById(R.id.item_table);  // Make sure item_table exists in your layout XML
+        itemCache = new ItemCache(this);
+
+        locationSpinner = findViewById(R.id.item_location_id_text);
+        locationAdapter = new LocationAdapter(this, android.R.layout.simple_spinner_item, new ArrayList<Location>());
+        locationAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        locationSpinner.setAdapter(locationAdapter);
+
+        itemList = findViewById(R.id.item_list);  // Make sure item_list exists in your layout XML
+        itemAdapter = new ItemAdapter(this, locationAdapter.getIndex(), repository, mainThread,
+                new ItemAdapter.OnItemActionListener() {
+            @Override
+            public void onItemClick(Item item) {
+                // Set the selected values to the TextViews and Spinner
+                selectedDateText.setText(item.getDateAdded());
+                itemNameText.setText(item.getItemName());
+                selectedItemId = item.getId();  // Set the selected item ID for editing
+
+                // Find the location in the spinner by its ID
+                int locationPosition = locationAdapter.getPositionForId(item.getItemLocationId());
+                if (locationPosition >= 0) {
+                    locationSpinner.setSelection(locationPosition);
+                }
+            }
+
+            @Override
+            public void onDeleteClick(int itemId) {
+                showDeleteConfirmationDialog(itemId);
+            }
+        });
+        itemList.setLayoutManager(new LinearLayoutManager(this));
+        itemList.setHasFixedSize(true);
+        itemList.setAdapter(itemAdapter);
 
         itemNameText = findViewById(R.id.item_name_text);
         selectedDateText = findViewById(R.id.date_added_text);
 
+        // Filters the table as the user types, matching anywhere in the name
+        TextView searchText = findViewById(R.id.search_text);
+        searchText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                String text = s.toString().trim();
+                itemAdapter.setQuery(text.isEmpty() ? null
+                        : new ItemSearchIndex.Query().contains(text).sortBy(ItemSearchIndex.SORT_NAME));
+            }
+        });
+
         selectedDateText.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -61,28 +189,46 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        locationSpinner = findViewById(R.id.item_location_id_text);
-        locationsList = new ArrayList<>();
-        locationAdapter = new LocationAdapter(this, android.R.layout.simple_spinner_item, locationsList);
-        locationAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        locationSpinner.setAdapter(locationAdapter);
-
         addButton = findViewById(R.id.save_btn);
         reloadButton = findViewById(R.id.reload_btn);
 
-        // Initialize Retrofit
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl("http://192.168.196.137:8000/")
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
+        // Nothing can be saved or reloaded until the HTTP client is ready
+        addButton.setEnabled(false);
+        reloadButton.setEnabled(false);
 
-        apiService = retrofit.create(ApiService.class);
+        // Send queued edits as soon as the network is back instead of waiting for the retry timer
+        connectivityManager = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        connectivityManager.registerDefaultNetworkCallback(networkCallback);
 
         reloadButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 clearInputFields();
-                fetchItems();
+                syncItems();
+            }
+        });
+
+        findViewById(R.id.csv_export_btn).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                exportCsv();
+            }
+        });
+
+        // Sends the rows to the server, so it waits for the HTTP client like the other buttons
+        csvImportButton = findViewById(R.id.csv_import_btn);
+        csvImportButton.setEnabled(false);
+        csvImportButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                importCsv();
+            }
+        });
+
+        findViewById(R.id.potato_feed_btn).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startActivity(new Intent(MainActivity.this, PotatoFeedActivity.class));
             }
         });
 
@@ -113,201 +259,484 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
-        fetchLocations();
+        repository.observe(snapshotObserver, mainThread);
+        startupLoader = new StartupLoader(this, itemCache, startupTrace);
+        if (repository.snapshot().synced) {
+            // Recreated, e.g. after a rotation: the repository still has what the last sync brought
+            startupLoader.startClientOnly(startupListener);
+        } else {
+            startupLoader.start(startupListener);
+        }
+    }
 
-        fetchItems();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (changeStream != null) {
+            changeStream.shutdown();
+        }
+        repository.removeObserver(snapshotObserver);
+        startupLoader.cancel();
+        startupTrace.end();
+        logStartupTrace(true);
+        requests.cancelAll();
+        Log.i(TAG, "Item requests: " + requests);
+        connectivityManager.unregisterNetworkCallback(networkCallback);
+        if (mutationQueue != null) {
+            // The queue lives on with the process and keeps sending, the next activity gets the results
+            mutationQueue.removeListener(mutationListener);
+        }
+
+        // A running export or import is interrupted, export() leaves no half file behind
+        csvExecutor.shutdownNow();
+
+        // Let pending cache writes finish, then close the database
+        cacheExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                itemCache.close();
+            }
+        });
+        cacheExecutor.shutdown();
     }
 
+    private final StartupLoader.Listener startupListener = new StartupLoader.Listener() {
+        // Shows the cached items and locations right away, the network results replace them once joined
+        @Override
+        public void onCacheLoaded(StartupLoader.Cached cached) {
+            if (!cached.locations.isEmpty()) {
+                repository.setLocations(cached.locations);
+            }
+            if (!cached.items.isEmpty()) {
+                repository.replaceItems(cached.items, cached.itemsToken, "cache");
+            }
+        }
+
+        @Override
+        public void onClientReady(ApiService service) {
+            apiService = service;
+            mutationQueue = MutationQueue.get(MainActivity.this);
+            mutationQueue.setListener(mutationListener);
+            addButton.setEnabled(true);
+            reloadButton.setEnabled(true);
+            csvImportButton.setEnabled(true);
+
+            changeStream = ApiClient.newChangeStream(MainActivity.this, changeListener);
+            ItemRepository.Snapshot snapshot = repository.snapshot();
+            if (snapshot.synced) {
+                startChangeStream(snapshot.itemsToken);
+            }
+        }
+
+        @Override
+        public void onLoaded(StartupLoader.Result result) {
+            if (result.locations != null) {
+                final List<Location> locations = result.locations;
+                repository.setLocations(locations);
+                runOnCacheThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        itemCache.replaceLocations(locations);
+                    }
+                });
+            }
+
+            if (result.items != null) {
+                applyItemUpdate(result.items);
+                startChangeStream(result.items.token);
+            }
 
-    private void fetchItems() {
-        Call<List<Item>> call = apiService.getItems();
-        call.enqueue(new Callback<List<Item>>() {
+            if (result.error != null) {
+                Toast.makeText(MainActivity.this, "Error: " + result.error.getMessage(), Toast.LENGTH_SHORT).show();
+            }
+            startupTrace.end();
+            startupLoaded = true;
+            logStartupTrace(false);
+        }
+    };
+
+    // Latency, size and error numbers per endpoint so far, to the log and to files/api_metrics.txt
+    private void dumpApiMetrics() {
+        final String report = ApiMetrics.get().report();
+        Log.i(TAG, "API metrics:\n" + report);
+        Log.i(TAG, "API resilience:\n" + ApiResilience.get().report());
+        runOnCacheThread(new Runnable() {
             @Override
-            public void onResponse(Call<List<Item>> call, Response<List<Item>> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    List<Item> items = response.body();
-                    populateTable(items);
-                } else {
-                    Toast.makeText(MainActivity.this, "Failed to load items", Toast.LENGTH_SHORT).show();
+            public void run() {
+                try {
+                    ApiMetrics.get().writeReport(new File(getFilesDir(), "api_metrics.txt"));
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to write API metrics", e);
                 }
             }
+        });
+    }
+
+    // Next to the app's other files on shared storage when there is some, so the file can be copied off
+    // and back over USB without any permission
+    private File csvFile() {
+        File dir = getExternalFilesDir(null);
+        return new File(dir != null ? dir : getFilesDir(), CSV_FILE);
+    }
 
+    // Writes the list as it is shown right now, later changes go into the next export
+    private void exportCsv() {
+        final ItemRepository.Snapshot snapshot = repository.snapshot();
+        final File file = csvFile();
+        csvExecutor.execute(new Runnable() {
             @Override
-            public void onFailure(Call<List<Item>> call, Throwable t) {
-                Toast.makeText(MainActivity.this, "Error: " + t.getMessage(), Toast.LENGTH_SHORT).show();
+            public void run() {
+                try {
+                    ItemCsv.ExportResult result = ItemCsv.export(snapshot.items, snapshot.locations, file, null);
+                    Log.i(TAG, "CSV export to " + file + ": " + result);
+                    showToast("Exported " + result.rows + " items to " + file.getName());
+                } catch (IOException e) {
+                    Log.e(TAG, "CSV export failed", e);
+                    showToast("Export failed: " + e.getMessage());
+                }
             }
         });
     }
 
-    private void populateTable(final List<Item> items) {
-        runOnUiThread(new Runnable() {
+    // The server creates the items, they show up with the sync that follows
+    private void importCsv() {
+        final File file = csvFile();
+        final List<Location> locations = repository.snapshot().locations;
+        final ApiService service = apiService;
+        csvExecutor.execute(new Runnable() {
             @Override
             public void run() {
-                // Preserve the header by removing only the rows after the header
-                int childCount = itemTable.getChildCount();
-                if (childCount > 1) {  // Assuming the first row is the header
-                    itemTable.removeViews(1, childCount - 1);
+                if (!file.exists()) {
+                    showToast("Put " + file.getName() + " in " + file.getParent() + " to import it");
+                    return;
                 }
+                try {
+                    ItemCsv.ImportResult result = ItemCsv.importItems(file, locations, ItemCsv.sender(service), null);
+                    Log.i(TAG, "CSV import from " + file + ": " + result);
+                    for (ItemCsv.Problem problem : result.problems) {
+                        Log.w(TAG, "CSV import " + problem);
+                    }
+                    showToast("Imported " + result.saved + " items, " + (result.invalid + result.rejected)
+                            + " rows skipped");
+                } catch (IOException e) {
+                    Log.e(TAG, "CSV import failed", e);
+                    showToast("Import failed: " + e.getMessage());
+                }
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isDestroyed()) {
+                            syncItems();
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-                // Define the colors for even and odd rows
-                int evenRowColor = getResources().getColor(android.R.color.darker_gray);  // Example color for even rows
-                int oddRowColor = getResources().getColor(android.R.color.white);         // Example color for odd rows
-
-                for (int i = 0; i < items.size(); i++) {
-                    final Item item = items.get(i);
-                    TableRow tableRow = new TableRow(MainActivity.this);
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        ItemRepository.Snapshot snapshot = repository.snapshot();
+        if (snapshot.synced) {
+            startChangeStream(snapshot.itemsToken);
+        }
+        resyncHandler.postDelayed(resyncRunnable, RESYNC_INTERVAL_MS);
+    }
 
-                    TextView itemNameView = new TextView(MainActivity.this);
-                    itemNameView.setText(item.getItemName());
-                    itemNameView.setPadding(8, 8, 8, 8);
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+        // No open connection in the background, onResume picks up from the last token applied
+        if (changeStream != null) {
+            changeStream.stop();
+        }
+        resyncHandler.removeCallbacks(resyncRunnable);
+        if (mutationQueue != null) {
+            mutationQueue.flushNow();  // Don't leave edits waiting for the timer while in the background
+        }
+        dumpApiMetrics();
+    }
 
-                    TextView dateAddedView = new TextView(MainActivity.this);
-                    dateAddedView.setText(item.getDateAdded());
-                    dateAddedView.setPadding(8, 8, 8, 8);
+    // Fetches only what changed since the last sync when there is a token, otherwise the whole list.
+    // Joins a load that is already running, so tapping reload repeatedly sends one request.
+    private void syncItems() {
+        loadItems(repository.snapshot().itemsToken, false);
+    }
 
-                    TextView itemLocationIdView = new TextView(MainActivity.this);
-                    itemLocationIdView.setText(String.valueOf(item.getItemLocationId()));
-                    itemLocationIdView.setPadding(8, 8, 8, 8);
+    // Full download that replaces whatever is in flight, its answer may predate what made the list stale
+    private void fetchItems() {
+        loadItems(null, true);
+    }
 
-                    Button deleteButton = new Button(MainActivity.this);
-                    deleteButton.setText("Delete");
-                    deleteButton.setPadding(8, 8, 8, 8);
+    private void loadItems(final String token, boolean supersede) {
+        // Partial lists only while the list is empty, a shown list is not replaced by a partial one
+        final boolean showPartial = repository.snapshot().items.isEmpty();
+        RequestCoordinator.Loader<ItemLoader.Update> loader = new RequestCoordinator.Loader<ItemLoader.Update>() {
+            @Override
+            public ItemLoader.Update load(final CallTracker calls) throws IOException {
+                ItemLoader.ProgressListener partialListener = !showPartial ? null : new ItemLoader.ProgressListener() {
+                    private int nextPublishAt = STREAM_CHUNK_SIZE;
 
-                    // Set the background color of the row based on its position (even or odd)
-                    if (i % 2 == 0) {
-                        tableRow.setBackgroundColor(evenRowColor);  // Even row color
-                    } else {
-                        tableRow.setBackgroundColor(oddRowColor);   // Odd row color
+                    @Override
+                    public void onProgress(List<Item> received) {
+                        // Publish at doubling sizes so the snapshot copies add up to O(n). replaceItems copies
+                        // the loader's list, so no second list of everything received is kept here.
+                        if (received.size() >= nextPublishAt && !calls.isCancelled()) {
+                            nextPublishAt = received.size() * 2;
+                            repository.replaceItems(received, null, "network (partial)");
+                        }
                     }
+                };
+                return ItemLoader.sync(apiService, token, ApiClient.getGson(), STREAM_CHUNK_SIZE, partialListener, calls);
+            }
+        };
+        if (supersede) {
+            requests.runLatest(REQUEST_ITEMS, loader, itemsCallback);
+        } else {
+            requests.run(REQUEST_ITEMS, loader, itemsCallback);
+        }
+    }
 
-                    // Add views to the row
-                    tableRow.addView(itemNameView);
-                    tableRow.addView(dateAddedView);
-                    tableRow.addView(itemLocationIdView);
-                    tableRow.addView(deleteButton);
-
-                    // Add OnClickListener to each row
-                    tableRow.setOnClickListener(new View.OnClickListener() {
-                        @Override
-                        public void onClick(View v) {
-                            // Set the selected values to the TextViews and Spinner
-                            selectedDateText.setText(item.getDateAdded());
-                            itemNameText.setText(item.getItemName());
-                            selectedItemId = item.getId();  // Set the selected item ID for editing
-
-                            // Find the location in the spinner by its ID
-                            int locationPosition = -1;
-                            for (int i = 0; i < locationAdapter.getCount(); i++) {
-                                if (locationAdapter.getItem(i).getId() == item.getItemLocationId()) {
-                                    locationPosition = i;
-                                    break;
-                                }
-                            }
-
-                            if (locationPosition >= 0) {
-                                locationSpinner.setSelection(locationPosition);
-                            }
-                        }
-                    });
+    // One instance, so callers that joined the same load apply its result once
+    private final RequestCoordinator.Callback<ItemLoader.Update> itemsCallback = new RequestCoordinator.Callback<ItemLoader.Update>() {
+        @Override
+        public void onResult(ItemLoader.Update update) {
+            applyItemUpdate(update);
+            startChangeStream(update.token);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (error instanceof ApiResilience.CircuitOpenException) {
+                // Nothing was sent, the list keeps what the cache or the last sync showed
+                Toast.makeText(MainActivity.this, "Server unavailable, showing saved items", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            Toast.makeText(MainActivity.this, "Error: " + error.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    };
+
+    private void applyItemUpdate(ItemLoader.Update update) {
+        final String token = update.token;
+        repository.applyUpdate(update);
+        if (update.changes != null) {
+            final ItemChanges changes = update.changes;
+            runOnCacheThread(new Runnable() {
+                @Override
+                public void run() {
+                    itemCache.applyChanges(changes);
+                }
+            });
+        } else {
+            final List<Item> items = update.items;
+            runOnCacheThread(new Runnable() {
+                @Override
+                public void run() {
+                    itemCache.replaceItems(items, token);
+                }
+            });
+        }
+    }
 
-                    // Handle delete button click
-                    deleteButton.setOnClickListener(new View.OnClickListener() {
-                        @Override
-                        public void onClick(View v) {
-                            showDeleteConfirmationDialog(item.getId(), tableRow);
-                        }
-                    });
+    // Starts a stream that stopped, e.g. after asking for a resync, from the token of the sync that was just
+    // applied. A running one keeps its connection unless the sync went back behind it.
+    private void startChangeStream(String token) {
+        if (changeStream != null && resumed && token != null) {
+            changeStream.syncedTo(token);
+        }
+    }
+
+    // Batches arrive at most every few hundred milliseconds however busy the server is, see ItemChangeStream.
+    // The stream's thread waits until the UI thread has applied each one, so while it is busy the events
+    // merge into the next batch instead of queueing up as messages.
+    private final ItemChangeStream.Listener changeListener = new ItemChangeStream.Listener() {
+        @Override
+        public void onChanges(final ItemChangeStream.Batch batch) {
+            final CountDownLatch applied = new CountDownLatch(1);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        apply(batch);
+                    } finally {
+                        applied.countDown();
+                    }
+                }
+            });
+            try {
+                applied.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
 
-                    itemTable.addView(tableRow);
+        private void apply(final ItemChangeStream.Batch batch) {
+            if (isDestroyed()) {
+                return;
+            }
+            if (batch.hasLocationChanges()) {
+                repository.applyLocationChanges(batch.upsertedLocations, batch.deletedLocations);
+                runOnCacheThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        itemCache.applyLocationChanges(batch.upsertedLocations, batch.deletedLocations);
+                    }
+                });
+            }
+            if (batch.items != null) {
+                applyItemUpdate(new ItemLoader.Update(null, batch.items, batch.items.getToken()));
+            }
+        }
+
+        @Override
+        public void onResyncNeeded() {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isDestroyed() && apiService != null) {
+                        fetchItems();
+                    }
                 }
+            });
+        }
+    };
+
+    private void showToast(final String message) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
             }
         });
     }
 
-    private void showDeleteConfirmationDialog(final int itemId, final TableRow tableRow) {
+    private final ItemRepository.Observer snapshotObserver = new ItemRepository.Observer() {
+        @Override
+        public void onSnapshot(ItemRepository.Snapshot snapshot) {
+            // Locations first, so the rows bind with their names in the same pass
+            if (snapshot.locations != shownLocations) {
+                shownLocations = snapshot.locations;
+                showLocations(snapshot.locations);
+            }
+            // The adapter only binds the rows that are on screen
+            itemAdapter.show(snapshot);
+
+            if (!firstRowsShown && !snapshot.items.isEmpty()) {
+                firstRowsShown = true;
+                firstRowSource = snapshot.source;
+                startupTrace.mark(StartupTrace.FIRST_ROW);
+                logStartupTrace(false);
+            }
+        }
+    };
+
+    // Once startup has loaded and the first row is on screen, whichever comes last, so the trace holds every
+    // milestone. A list that stays empty never shows a row, its trace is logged when the activity goes.
+    private void logStartupTrace(boolean evenIfIncomplete) {
+        if (startupLogged || !evenIfIncomplete && !(startupLoaded && firstRowsShown)) {
+            return;
+        }
+        startupLogged = true;
+        Log.i(TAG, "Startup trace: " + startupTrace
+                + (firstRowSource != null ? " (first row from " + firstRowSource + ")" : ""));
+    }
+
+    private void showDeleteConfirmationDialog(final int itemId) {
         new AlertDialog.Builder(this)
                 .setTitle("Delete Item")
                 .setMessage("Are you sure you want to delete this item?")
                 .setPositiveButton("Yes", new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        deleteItem(itemId, tableRow);
+                        deleteItem(itemId);
                     }
                 })
                 .setNegativeButton("No", null)
                 .show();
     }
 
-    private void deleteItem(int itemId, final TableRow tableRow) {
-        Call<Void> call = apiService.deleteItem(itemId);
-        call.enqueue(new Callback<Void>() {
-            @Override
-            public void onResponse(Call<Void> call, Response<Void> response) {
-                if (response.isSuccessful()) {
-                    //itemTable.removeView(tableRow);
-                    fetchItems();  // Refresh the table to display the newly added item
-                    Toast.makeText(MainActivity.this, "Item deleted successfully!", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(MainActivity.this, "Failed to delete item", Toast.LENGTH_SHORT).show();
-                }
-            }
-
-            @Override
-            public void onFailure(Call<Void> call, Throwable t) {
-                Toast.makeText(MainActivity.this, "Error: " + t.getMessage(), Toast.LENGTH_SHORT).show();
-            }
-        });
+    // Edits show up in the list right away, MutationQueue sends them to the server in batches
+    private void deleteItem(int itemId) {
+        repository.removeItem(itemId);
+        mutationQueue.delete(itemId);
     }
 
-
     // Method to add a new item to the database
     private void addItem(String itemName, String dateAdded, int itemLocationId) {
         Item item = new Item(0, itemName, dateAdded, itemLocationId);
-
-        Call<Item> call = apiService.createItem(item);
-        call.enqueue(new Callback<Item>() {
-            @Override
-            public void onResponse(Call<Item> call, Response<Item> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    fetchItems();  // Refresh the table to display the newly added item
-                    Toast.makeText(MainActivity.this, "Item added successfully", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(MainActivity.this, "Failed to add item", Toast.LENGTH_SHORT).show();
-                }
-            }
-
-            @Override
-            public void onFailure(Call<Item> call, Throwable t) {
-                Toast.makeText(MainActivity.this, "Error: " + t.getMessage(), Toast.LENGTH_SHORT).show();
-            }
-        });
+        mutationQueue.create(item);  // Assigns a temporary id until the server saves it
+        repository.upsertItem(item);
     }
 
     // Method to update an existing item in the database
     private void updateItem(int itemId, String itemName, String dateAdded, int itemLocationId) {
         Item updatedItem = new Item(itemId, itemName, dateAdded, itemLocationId);
+        mutationQueue.update(updatedItem);
+        repository.upsertItem(updatedItem);
+        selectedItemId = -1;  // Reset to add mode
+        clearInputFields();  // Clear input fields after update
+    }
 
-        Call<Item> call = apiService.updateItem(itemId, updatedItem);
-        call.enqueue(new Callback<Item>() {
-            @Override
-            public void onResponse(Call<Item> call, Response<Item> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    fetchItems();  // Refresh the table to display the updated item
-                    Toast.makeText(MainActivity.this, "Item updated successfully", Toast.LENGTH_SHORT).show();
-                    selectedItemId = -1;  // Reset to add mode
-                    clearInputFields();  // Clear input fields after update
-                } else {
-                    Toast.makeText(MainActivity.this, "Failed to update item", Toast.LENGTH_SHORT).show();
+    private final MutationQueue.Listener mutationListener = new MutationQueue.Listener() {
+        @Override
+        public void onApplied(ItemMutation mutation, Item serverItem) {
+            if (mutation.isDelete()) {
+                final int itemId = mutation.getClientId();
+                runOnCacheThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        itemCache.deleteItem(itemId);
+                    }
+                });
+            } else if (serverItem != null) {
+                if (selectedItemId == mutation.getClientId()) {
+                    selectedItemId = serverItem.getId();
+                }
+                if (!mutationQueue.hasPendingEdit(serverItem.getId())) {
+                    // A created item trades its temporary id for the server's
+                    repository.replaceItem(mutation.getClientId(), serverItem);
+                    cacheItem(serverItem);
+                } else if (mutation.isCreate()) {
+                    // Edited again meanwhile: the row keeps the newer values, the cache waits for their answer
+                    repository.changeItemId(mutation.getClientId(), serverItem.getId());
                 }
             }
+        }
+
+        @Override
+        public void onRejected(ItemMutation mutation, Item currentItem, String reason) {
+            Toast.makeText(MainActivity.this, "Failed to save item: " + reason, Toast.LENGTH_SHORT).show();
+            if (currentItem != null) {
+                // Conflict, show what the server has
+                repository.replaceItem(mutation.getClientId(), currentItem);
+            } else if (mutation.isCreate()) {
+                repository.removeItem(mutation.getClientId());
+            } else {
+                // The optimistic change can't be undone locally, reload to get back in sync
+                fetchItems();
+            }
+        }
+    };
 
+    private void cacheItem(final Item item) {
+        runOnCacheThread(new Runnable() {
             @Override
-            public void onFailure(Call<Item> call, Throwable t) {
-                Toast.makeText(MainActivity.this, "Error: " + t.getMessage(), Toast.LENGTH_SHORT).show();
+            public void run() {
+                itemCache.upsertItem(item);
             }
         });
     }
 
+    // Callbacks can still arrive after onDestroy shut the cache thread down, those writes are dropped
+    private void runOnCacheThread(Runnable task) {
+        if (!cacheExecutor.isShutdown()) {
+            cacheExecutor.execute(task);
+        }
+    }
+
     // Method to clear input fields after adding or updating an item
     private void clearInputFields() {
         itemNameText.setText("");
@@ -324,27 +753,11 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
-    private void fetchLocations() {
-        Call<List<Location>> call = apiService.getLocations();
-        call.enqueue(new Callback<List<Location>>() {
-            @Override
-            public void onResponse(Call<List<Location>> call, Response<List<Location>> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    locationsList.clear();
-                    locationsList.addAll(response.body());
-
-                    // Notify the adapter that the data has changed
-                    locationAdapter.notifyDataSetChanged();
-                } else {
-                    Toast.makeText(MainActivity.this, "Failed to load locations", Toast.LENGTH_SHORT).show();
-                }
-            }
-
-            @Override
-            public void onFailure(Call<List<Location>> call, Throwable t) {
-                Toast.makeText(MainActivity.this, "Error: " + t.getMessage(), Toast.LENGTH_SHORT).show();
-            }
-        });
+    private void showLocations(List<Location> locations) {
+        // The index behind the spinner is updated in place, rows only rebind their names if something changed
+        if (locationAdapter.setLocations(locations)) {
+            itemAdapter.onLocationsChanged();
+        }
     }
 
     private void showDatePickerDialog() {
@@ -0,0 +1,193 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Date;
+
+// Hand-written streaming adapters for the API models, used instead of Gson's reflective binding:
+// no reflection on first use, no per-field bookkeeping per object, and the same JSON field names
+// as the reflective path. Repeated strings (item dates, location names) are deduped through a
+// StringPool, PotatoPost.published_date goes through IsoDates instead of Gson's DateFormat chain.
+// Models that are not listed here (ItemMutation, ItemChanges, ...) still bind reflectively and
+// pick these adapters up for their Item fields.
+public final class ModelTypeAdapters implements TypeAdapterFactory {
+
+    private static final int DATE_POOL_SIZE = 4096;
+    private static final int NAME_POOL_SIZE = 512;
+
+    private final StringPool dates = new StringPool(DATE_POOL_SIZE);
+    private final StringPool locationNames = new StringPool(NAME_POOL_SIZE);
+
+    // The Gson every API call and the item stream reader share
+    public static Gson createGson() {
+        return new GsonBuilder()
+                .registerTypeAdapterFactory(new ModelTypeAdapters())
+                .create();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == Item.class) {
+            return (TypeAdapter<T>) new ItemAdapter().nullSafe();
+        }
+        if (rawType == Location.class) {
+            return (TypeAdapter<T>) new LocationAdapter().nullSafe();
+        }
+        if (rawType == PotatoPost.class) {
+            return (TypeAdapter<T>) new PotatoPostAdapter(gson.getAdapter(Date.class)).nullSafe();
+        }
+        return null;
+    }
+
+    private final class ItemAdapter extends TypeAdapter<Item> {
+        @Override
+        public void write(JsonWriter out, Item item) throws IOException {
+            out.beginObject();
+            out.name("id").value(item.getId());
+            out.name("itemName").value(item.getItemName());
+            out.name("date_added").value(item.getDateAdded());
+            out.name("itemLocation").value(item.getItemLocationId());
+            out.endObject();
+        }
+
+        @Override
+        public Item read(JsonReader in) throws IOException {
+            int id = 0;
+            String itemName = null;
+            String dateAdded = null;
+            int itemLocation = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        id = nextInt(in);
+                        break;
+                    case "itemName":
+                        itemName = nextString(in);
+                        break;
+                    case "date_added":
+                        dateAdded = dates.intern(nextString(in));
+                        break;
+                    case "itemLocation":
+                        itemLocation = nextInt(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Item(id, itemName, dateAdded, itemLocation);
+        }
+    }
+
+    private final class LocationAdapter extends TypeAdapter<Location> {
+        @Override
+        public void write(JsonWriter out, Location location) throws IOException {
+            out.beginObject();
+            out.name("id").value(location.getId());
+            out.name("locationName").value(location.getLocationName());
+            out.endObject();
+        }
+
+        @Override
+        public Location read(JsonReader in) throws IOException {
+            Location location = new Location();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        location.setId(nextInt(in));
+                        break;
+                    case "locationName":
+                        location.setLocationName(locationNames.intern(nextString(in)));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return location;
+        }
+    }
+
+    private static final class PotatoPostAdapter extends TypeAdapter<PotatoPost> {
+        // For dates IsoDates does not understand, so nothing the reflective path accepted is rejected
+        private final TypeAdapter<Date> fallbackDateAdapter;
+
+        PotatoPostAdapter(TypeAdapter<Date> fallbackDateAdapter) {
+            this.fallbackDateAdapter = fallbackDateAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, PotatoPost post) throws IOException {
+            out.beginObject();
+            out.name("title").value(post.getTitle());
+            out.name("content").value(post.getContent());
+            Date publishedDate = post.getPublishedDate();
+            out.name("published_date").value(publishedDate != null ? IsoDates.format(publishedDate.getTime()) : null);
+            out.endObject();
+        }
+
+        @Override
+        public PotatoPost read(JsonReader in) throws IOException {
+            PotatoPost post = new PotatoPost();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "title":
+                        post.setTitle(nextString(in));
+                        break;
+                    case "content":
+                        post.setContent(nextString(in));
+                        break;
+                    case "published_date":
+                        post.setPublishedDate(parseDate(nextString(in)));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return post;
+        }
+
+        private Date parseDate(String text) {
+            if (text == null) {
+                return null;
+            }
+            long millis = IsoDates.parse(text);
+            if (millis != IsoDates.INVALID) {
+                return new Date(millis);
+            }
+            return fallbackDateAdapter.fromJsonTree(new JsonPrimitive(text));
+        }
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    // A null number leaves the field at 0, as the reflective binding did
+    private static int nextInt(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextInt();
+    }
+}
@@ -0,0 +1,487 @@
+package com.example.myjapanese;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+// Write-behind queue for item edits. The caller applies each edit to the list right away,
+// the queue coalesces them per item and sends them through the bulk endpoint, either when
+// MAX_BATCH_SIZE edits are waiting or FLUSH_DELAY_MS after the first one. Main thread only.
+// Every edit is written to the OutboxJournal first, and a batch is only sent after the journal
+// has been synced, so edits survive a failed request or a killed process and are replayed by restore().
+// A drained batch keeps its contents and Idempotency-Key until the server answers it, newer edits wait
+// for the next one. The key is journaled with the batch, so the batch goes out again as it was even after
+// a restart, and the server does not apply a create twice when only its answer got lost.
+// One queue per process, see get(): a recreated activity attaches to the queue that already owns the journal
+// instead of opening the file a second time and sending edits the old queue may have sent already.
+public class MutationQueue {
+
+    private static final String TAG = "MutationQueue";
+
+    private static final String JOURNAL_FILE = "outbox.journal";
+
+    // Main thread only
+    private static MutationQueue instance;
+
+    public interface Listener {
+        // The server accepted the mutation, serverItem is null for deletes
+        void onApplied(ItemMutation mutation, Item serverItem);
+
+        // The server refused the mutation, currentItem is its version of the item if it has one
+        void onRejected(ItemMutation mutation, Item currentItem, String reason);
+    }
+
+    // Where the queue runs and schedules its flushes, a Handler on the main looper outside of tests
+    interface MainThread {
+        void post(Runnable task);
+
+        void postDelayed(Runnable task, long delayMs);
+
+        void removeCallbacks(Runnable task);
+    }
+
+    static final int MAX_BATCH_SIZE = 100;
+    static final long FLUSH_DELAY_MS = 500;
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+
+    private final ApiService apiService;
+    // The activity that shows the results, null while there is none. Results that arrive in between
+    // wait here for the next one.
+    private Listener listener;
+    private final List<Outcome> undelivered = new ArrayList<>();
+    private final PendingMutations pending = new PendingMutations();
+    private final MainThread handler;
+
+    // Journal I/O runs in order on its own thread, the main thread never waits for the disk
+    private final OutboxJournal journal;
+    private final Executor journalExecutor;
+    private final String journalId;
+    private long nextJournalSeq;
+    private boolean syncing = false;
+
+    // Drained and not answered yet, sent again as it is after a failed attempt
+    private Batch unacked;
+
+    private Call<List<ItemMutationResult>> inFlight;
+    private boolean flushScheduled = false;
+    private long retryDelayMs = FLUSH_DELAY_MS;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    // Opens the journal and queues the edits it still holds the first time it is called
+    public static MutationQueue get(Context context) {
+        if (instance == null) {
+            OutboxJournal journal = openJournal(new File(context.getFilesDir(), JOURNAL_FILE));
+            instance = new MutationQueue(ApiClient.getService(context), journal);
+            // Edits that were not confirmed before the app was last stopped go out again
+            instance.restore(journal.pending(), journal.sentBatch());
+        }
+        return instance;
+    }
+
+    // The journal is small, acknowledged edits are compacted away, so it is read right here
+    private static OutboxJournal openJournal(File file) {
+        try {
+            return new OutboxJournal(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Unreadable outbox journal, starting a new one", e);
+            if (!file.delete()) {
+                Log.e(TAG, "Could not delete " + file);
+            }
+            try {
+                return new OutboxJournal(file);
+            } catch (IOException retry) {
+                throw new IllegalStateException("Could not open outbox journal", retry);
+            }
+        }
+    }
+
+    // The journal must already be open, its pending edits are picked up by restore()
+    MutationQueue(ApiService apiService, OutboxJournal journal) {
+        this(apiService, journal, new MainThread() {
+            private final Handler handler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void post(Runnable task) {
+                handler.post(task);
+            }
+
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+        }, Executors.newSingleThreadExecutor());
+    }
+
+    // Package-private for tests, which run the main thread's tasks themselves and may write the journal
+    // on the calling thread. The executor must run one task at a time, in order.
+    MutationQueue(ApiService apiService, OutboxJournal journal, MainThread mainThread, Executor journalExecutor) {
+        this.apiService = apiService;
+        this.journal = journal;
+        this.handler = mainThread;
+        this.journalExecutor = journalExecutor;
+        this.journalId = journal.getId();
+        this.nextJournalSeq = journal.getLastSeq() + 1;
+    }
+
+    // Gets the results that came in while no listener was set first
+    public void setListener(Listener listener) {
+        this.listener = listener;
+        List<Outcome> waiting = new ArrayList<>(undelivered);
+        undelivered.clear();
+        for (Outcome outcome : waiting) {
+            report(outcome);
+        }
+    }
+
+    // Nothing reaches the listener after this returns, sending and journaling carry on
+    public void removeListener(Listener listener) {
+        if (this.listener == listener) {
+            this.listener = null;
+        }
+    }
+
+    // Queues the edits that were still unacknowledged when the app last stopped, in their original order.
+    // The ones in sent, a batch that got no answer, are folded into that batch again and go out first.
+    public void restore(List<OutboxJournal.Entry> entries, OutboxJournal.SentBatch sent) {
+        PendingMutations resent = new PendingMutations();
+        for (OutboxJournal.Entry entry : entries) {
+            queue(sent != null && sent.covers(entry) ? resent : pending, entry);
+        }
+        if (!resent.isEmpty()) {
+            List<ItemMutation> batch = resent.drain(Integer.MAX_VALUE);
+            for (ItemMutation mutation : batch) {
+                if (mutation.isCreate()) {
+                    pending.createSent(mutation.getClientId());
+                }
+            }
+            unacked = new Batch(batch, sent.key);
+        }
+        if (unacked != null || !pending.isEmpty()) {
+            scheduleFlush(FLUSH_DELAY_MS);
+        }
+    }
+
+    private void queue(PendingMutations target, OutboxJournal.Entry entry) {
+        ItemMutation mutation = entry.mutation;
+        if (mutation.isCreate()) {
+            target.create(mutation.getItem(), entry.seq);
+        } else if (mutation.isUpdate()) {
+            target.update(mutation.getItem(), entry.seq);
+        } else if (!target.delete(mutation.getClientId(), entry.seq)) {
+            ackJournal(mutation.getClientId(), entry.seq, mutation.getClientId());
+        }
+    }
+
+    // Returns the temporary id the new item is shown under until the server saves it, and sets it on item.
+    // The queue keeps its own copy, item goes on to the list.
+    public int create(Item item) {
+        item.setId(pending.allocateTemporaryId());
+        Item copy = item.withId(item.getId());
+        long seq = appendJournal(new ItemMutation(copy.getId(), ItemMutation.OP_CREATE, copy));
+        pending.create(copy, seq);
+        onEnqueued();
+        return copy.getId();
+    }
+
+    public void update(Item item) {
+        Item copy = item.withId(item.getId());
+        long seq = appendJournal(new ItemMutation(copy.getId(), ItemMutation.OP_UPDATE, copy));
+        pending.update(copy, seq);
+        onEnqueued();
+    }
+
+    public void delete(int itemId) {
+        long seq = appendJournal(new ItemMutation(itemId, ItemMutation.OP_DELETE, null));
+        if (!pending.delete(itemId, seq)) {
+            // Cancelled a create that never left the device, nothing to replay for it
+            ackJournal(itemId, seq, itemId);
+        }
+        onEnqueued();
+    }
+
+    // True while an edit of the item has not been answered, e.g. it was edited again while a batch was out
+    public boolean hasPendingEdit(int itemId) {
+        if (pending.contains(itemId)) {
+            return true;
+        }
+        if (unacked != null) {
+            for (ItemMutation mutation : unacked.mutations) {
+                if (mutation.getClientId() == itemId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int pendingCount() {
+        return pending.size() + (unacked != null ? unacked.mutations.size() : 0);
+    }
+
+    // Sends whatever is waiting now, e.g. when the activity goes to the background
+    public void flushNow() {
+        handler.removeCallbacks(flushRunnable);
+        flushScheduled = false;
+        flush();
+    }
+
+    private void onEnqueued() {
+        if (pending.size() >= MAX_BATCH_SIZE) {
+            flushNow();
+        } else {
+            scheduleFlush(FLUSH_DELAY_MS);
+        }
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, delayMs);
+        }
+    }
+
+    private void flush() {
+        // One batch at a time keeps the server's view of each item in order
+        if (inFlight != null || syncing) {
+            return;
+        }
+        if (unacked == null) {
+            List<ItemMutation> mutations = pending.drain(MAX_BATCH_SIZE);
+            if (mutations.isEmpty()) {
+                return;
+            }
+            unacked = new Batch(mutations, idempotencyKey(journalId, mutations));
+            appendBatch(unacked);
+        }
+        final Batch batch = unacked;
+
+        // One fsync covers every edit appended since the last batch
+        syncing = true;
+        journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean synced = false;
+                try {
+                    journal.sync();
+                    synced = true;
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to sync outbox journal", e);
+                }
+                final boolean durable = synced;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        syncing = false;
+                        if (durable) {
+                            send(batch);
+                        } else {
+                            // Nothing is sent before it is on disk, the batch waits and the sync is tried again
+                            scheduleRetry();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void send(final Batch batch) {
+        inFlight = apiService.bulkItems(batch.mutations, batch.key);
+        inFlight.enqueue(new Callback<List<ItemMutationResult>>() {
+            @Override
+            public void onResponse(Call<List<ItemMutationResult>> call, Response<List<ItemMutationResult>> response) {
+                inFlight = null;
+                if (response.isSuccessful() && response.body() != null) {
+                    unacked = null;
+                    retryDelayMs = FLUSH_DELAY_MS;
+                    deliverResults(batch.mutations, response.body());
+                    flushIfPending();
+                } else {
+                    retryLater();
+                }
+            }
+
+            @Override
+            public void onFailure(Call<List<ItemMutationResult>> call, Throwable t) {
+                inFlight = null;
+                if (!call.isCanceled()) {
+                    retryLater();
+                }
+            }
+        });
+    }
+
+    private void deliverResults(List<ItemMutation> batch, List<ItemMutationResult> results) {
+        // Results are matched by client id, a mutation the server did not answer is sent again
+        Map<Integer, ItemMutationResult> byClientId = new HashMap<>();
+        for (ItemMutationResult result : results) {
+            byClientId.put(result.getClientId(), result);
+        }
+
+        for (ItemMutation mutation : batch) {
+            ItemMutationResult result = byClientId.get(mutation.getClientId());
+            if (result == null) {
+                // The answer is in, so this one goes out in a new batch under a new key
+                pending.requeue(Collections.singletonList(mutation));
+                continue;
+            }
+
+            if (result.isOk()) {
+                int serverId = mutation.getClientId();
+                if (mutation.isCreate()) {
+                    if (result.getItem() != null) {
+                        serverId = result.getItem().getId();
+                        pending.onCreated(mutation.getClientId(), serverId);
+                    } else {
+                        pending.onCreateFailed(mutation.getClientId());
+                    }
+                }
+                ackJournal(mutation.getClientId(), mutation.getJournalSeq(), serverId);
+                report(new Outcome(mutation, result.getItem(), null));
+            } else {
+                if (mutation.isCreate()) {
+                    // Later edits of the item were dropped along with it
+                    pending.onCreateFailed(mutation.getClientId());
+                    ackJournal(mutation.getClientId(), Long.MAX_VALUE, mutation.getClientId());
+                } else {
+                    ackJournal(mutation.getClientId(), mutation.getJournalSeq(), mutation.getClientId());
+                }
+                String reason = result.getError() != null ? result.getError() : result.getStatus();
+                report(new Outcome(mutation, result.getItem(), reason));
+            }
+        }
+    }
+
+    private long appendJournal(final ItemMutation mutation) {
+        final long seq = nextJournalSeq++;
+        // Its item is the queue's own copy, nothing changes it while the journal writes it on its own thread
+        journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    journal.append(seq, mutation);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to journal item edit", e);
+                }
+            }
+        });
+        return seq;
+    }
+
+    private void appendBatch(Batch batch) {
+        final String key = batch.key;
+        final List<ItemMutation> mutations = batch.mutations;
+        journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    journal.appendBatch(key, mutations);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to journal item batch", e);
+                }
+            }
+        });
+    }
+
+    private void ackJournal(final int clientId, final long uptoSeq, final int serverId) {
+        journalExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    journal.ack(clientId, uptoSeq, serverId);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to acknowledge journaled edit", e);
+                }
+            }
+        });
+    }
+
+    private void report(Outcome outcome) {
+        if (listener == null) {
+            undelivered.add(outcome);
+        } else if (outcome.rejectReason == null) {
+            listener.onApplied(outcome.mutation, outcome.item);
+        } else {
+            listener.onRejected(outcome.mutation, outcome.item, outcome.rejectReason);
+        }
+    }
+
+    // Made once per batch, the batch keeps it until it is answered. The journal seq stands for the edit's
+    // content, and seqs never repeat within a journal, so no two batches of one install share a key.
+    static String idempotencyKey(String journalId, List<ItemMutation> batch) {
+        StringBuilder content = new StringBuilder(journalId).append('\n');
+        for (ItemMutation mutation : batch) {
+            content.append(mutation.getClientId()).append(' ').append(mutation.getOp()).append(' ')
+                    .append(mutation.getJournalSeq()).append('\n');
+        }
+        return ItemMutation.idempotencyKey("outbox", content);
+    }
+
+    // ApiResilience retries a failed attempt right away, a batch that still failed is sent again from here
+    private void retryLater() {
+        ApiMetrics.get().recordRetry("bulkItems");
+        scheduleRetry();
+    }
+
+    private void scheduleRetry() {
+        scheduleFlush(retryDelayMs);
+        retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+    }
+
+    private void flushIfPending() {
+        if (pending.size() >= MAX_BATCH_SIZE) {
+            flush();
+        } else if (!pending.isEmpty()) {
+            scheduleFlush(FLUSH_DELAY_MS);
+        }
+    }
+
+    private static final class Batch {
+        final List<ItemMutation> mutations;
+        final String key;
+
+        Batch(List<ItemMutation> mutations, String key) {
+            this.mutations = mutations;
+            this.key = key;
+        }
+    }
+
+    // What the server said about one mutation, rejectReason is null if it was applied
+    private static final class Outcome {
+        final ItemMutation mutation;
+        final Item item;
+        final String rejectReason;
+
+        Outcome(ItemMutation mutation, Item item, String rejectReason) {
+            this.mutation = mutation;
+            this.item = item;
+            this.rejectReason = rejectReason;
+        }
+    }
+}
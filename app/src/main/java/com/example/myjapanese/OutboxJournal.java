@@ -0,0 +1,472 @@
+package com.example.myjapanese;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+// Append-only log of item edits that have not been confirmed by the server yet.
+// Every edit is written before it is sent, and an ack record once the server answered it,
+// so after a crash pending() returns exactly the edits that still have to be replayed.
+//
+// Record layout: [int length][int crc32 of body][body]. A torn record at the end of the file
+// (process killed mid-write) fails its length or checksum and is cut off when the journal opens.
+// Writes are buffered, sync() pushes them to the file and fsyncs, so callers can batch fsyncs.
+// A header record holds the journal's id and its last seq, compaction writes it first so neither
+// starts over. The last batch sent to the server is journaled too, see sentBatch().
+// Thread safe, but every method does file I/O, keep it off the UI thread.
+public class OutboxJournal {
+
+    private static final byte TYPE_MUTATION = 1;
+    private static final byte TYPE_ACK = 2;
+    private static final byte TYPE_HEADER = 3;
+    private static final byte TYPE_BATCH = 4;
+
+    private static final byte OP_CREATE = 1;
+    private static final byte OP_UPDATE = 2;
+    private static final byte OP_DELETE = 3;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    // Rewrite the file once this many records are dead and they outnumber the live ones
+    private static final int COMPACT_MIN_DEAD_RECORDS = 1_000;
+
+    // A journaled edit that has not been acknowledged yet
+    public static class Entry {
+        public final long seq;
+        public final ItemMutation mutation;
+
+        Entry(long seq, ItemMutation mutation) {
+            this.seq = seq;
+            this.mutation = mutation;
+        }
+    }
+
+    // A batch of folded edits as it was sent: per client id, the newest seq folded into its mutation
+    public static class SentBatch {
+        public final String key;
+        final LinkedHashMap<Integer, Long> seqs;
+
+        SentBatch(String key, LinkedHashMap<Integer, Long> seqs) {
+            this.key = key;
+            this.seqs = seqs;
+        }
+
+        // True if the entry was folded into one of the batch's mutations
+        public boolean covers(Entry entry) {
+            Long seq = seqs.get(entry.mutation.getClientId());
+            return seq != null && entry.seq <= seq;
+        }
+    }
+
+    private final File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream body = new DataOutputStream(bodyBytes);
+    private final CRC32 crc = new CRC32();
+
+    // Live entries in journal order, plus their seqs per client id for acks
+    private final LinkedHashMap<Long, Entry> live = new LinkedHashMap<>();
+    private final Map<Integer, List<Long>> seqsByClientId = new HashMap<>();
+    private long lastSeq = 0;
+    private int deadRecords = 0;
+    private String id;
+    private SentBatch lastBatch;
+
+    public OutboxJournal(File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    // Random, from when the file was created. Seqs never repeat within one journal, the id tells them
+    // apart from those of an earlier install or of a journal that was thrown away.
+    public synchronized String getId() {
+        return id;
+    }
+
+    // Buffers an edit, it is durable after the next sync()
+    public synchronized void append(long seq, ItemMutation mutation) throws IOException {
+        writeRecord(encodeMutation(seq, mutation));
+        // Keep a private copy, the caller goes on using its Item on another thread
+        Item item = mutation.getItem();
+        Item copy = item == null ? null : item.withId(item.getId());
+        addLive(new Entry(seq, new ItemMutation(mutation.getClientId(), mutation.getOp(), copy)));
+        lastSeq = Math.max(lastSeq, seq);
+    }
+
+    // Marks every edit of clientId up to uptoSeq as done. Later edits of a created item
+    // were made against its temporary id, they are moved over to the server's id.
+    public synchronized void ack(int clientId, long uptoSeq, int serverId) throws IOException {
+        writeRecord(encodeAck(clientId, uptoSeq, serverId));
+        deadRecords++;
+        applyAck(clientId, uptoSeq, serverId);
+        maybeCompact();
+    }
+
+    // Records the batch the caller is about to send, durable after the next sync()
+    public synchronized void appendBatch(String key, List<ItemMutation> batch) throws IOException {
+        LinkedHashMap<Integer, Long> seqs = new LinkedHashMap<>();
+        for (ItemMutation mutation : batch) {
+            seqs.put(mutation.getClientId(), mutation.getJournalSeq());
+        }
+        lastBatch = new SentBatch(key, seqs);
+        writeRecord(encodeBatch(lastBatch));
+        deadRecords++;
+    }
+
+    // The last batch appended, as long as none of its edits has been acknowledged. The server may have
+    // applied it without the answer coming back, so it has to go out again as it was, under the same key.
+    public synchronized SentBatch sentBatch() {
+        if (lastBatch == null) {
+            return null;
+        }
+        for (Map.Entry<Integer, Long> member : lastBatch.seqs.entrySet()) {
+            Entry entry = live.get(member.getValue());
+            if (entry == null || entry.mutation.getClientId() != member.getKey()) {
+                return null;
+            }
+        }
+        return lastBatch;
+    }
+
+    public synchronized void sync() throws IOException {
+        flushBuffer();
+        channel.force(false);
+    }
+
+    // Unacknowledged edits in the order they were made
+    public synchronized List<Entry> pending() {
+        return new ArrayList<>(live.values());
+    }
+
+    public synchronized int pendingCount() {
+        return live.size();
+    }
+
+    // Rewrites the file with only the live entries, atomically replacing the old one
+    public synchronized void compact() throws IOException {
+        sync();
+        File tmp = new File(file.getPath() + ".tmp");
+        RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(0);
+            FileChannel outChannel = out.getChannel();
+            List<byte[]> records = new ArrayList<>(live.size() + 2);
+            records.add(encodeHeader());
+            for (Entry entry : live.values()) {
+                records.add(encodeMutation(entry.seq, entry.mutation));
+            }
+            SentBatch batch = sentBatch();
+            if (batch != null) {
+                records.add(encodeBatch(batch));
+            }
+            for (byte[] body : records) {
+                ByteBuffer record = frame(body);
+                while (record.hasRemaining()) {
+                    outChannel.write(record);
+                }
+            }
+            outChannel.force(false);
+        } finally {
+            out.close();
+        }
+
+        channel.close();
+        raf.close();
+        boolean replaced = rename(tmp, file);
+        // The compacted file or, if the rename failed, the synced original: appends go on either way
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        channel.position(channel.size());
+        if (!replaced) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file + " with compacted journal");
+        }
+        deadRecords = 0;
+    }
+
+    // Package-private for tests, which make it fail
+    boolean rename(File from, File to) {
+        return from.renameTo(to);
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+            raf.close();
+        }
+    }
+
+    private void open() throws IOException {
+        // A leftover from a compaction that did not finish, the original file is still complete
+        File tmp = new File(file.getPath() + ".tmp");
+        if (tmp.exists() && !tmp.delete()) {
+            throw new IOException("Could not delete " + tmp);
+        }
+
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        long validLength = replay();
+        if (validLength < channel.size()) {
+            channel.truncate(validLength);
+            channel.force(false);
+        }
+        channel.position(validLength);
+        if (id == null) {
+            // A new file, or one from before the header existed
+            id = UUID.randomUUID().toString();
+            writeRecord(encodeHeader());
+        }
+    }
+
+    // Rebuilds the live entries from the file and returns the length of its intact prefix
+    private long replay() throws IOException {
+        // Not closed, that would close the channel as well
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0)), WRITE_BUFFER_SIZE));
+        long position = 0;
+        byte[] buffer = new byte[256];
+        while (true) {
+            int length;
+            int checksum;
+            try {
+                length = in.readInt();
+                checksum = in.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                break;
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            try {
+                in.readFully(buffer, 0, length);
+            } catch (EOFException e) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            applyRecord(new DataInputStream(new ByteArrayInputStream(buffer, 0, length)));
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private void applyRecord(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        if (type == TYPE_MUTATION) {
+            long seq = in.readLong();
+            ItemMutation mutation = decodeMutation(in);
+            addLive(new Entry(seq, mutation));
+            lastSeq = Math.max(lastSeq, seq);
+        } else if (type == TYPE_ACK) {
+            int clientId = in.readInt();
+            long uptoSeq = in.readLong();
+            int serverId = in.readInt();
+            deadRecords++;
+            applyAck(clientId, uptoSeq, serverId);
+        } else if (type == TYPE_HEADER) {
+            id = in.readUTF();
+            lastSeq = Math.max(lastSeq, in.readLong());
+        } else if (type == TYPE_BATCH) {
+            String key = in.readUTF();
+            int size = in.readInt();
+            LinkedHashMap<Integer, Long> seqs = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                int clientId = in.readInt();
+                seqs.put(clientId, in.readLong());
+            }
+            deadRecords++;
+            lastBatch = new SentBatch(key, seqs);
+        }
+    }
+
+    private void addLive(Entry entry) {
+        live.put(entry.seq, entry);
+        List<Long> seqs = seqsByClientId.get(entry.mutation.getClientId());
+        if (seqs == null) {
+            seqs = new ArrayList<>(2);
+            seqsByClientId.put(entry.mutation.getClientId(), seqs);
+        }
+        seqs.add(entry.seq);
+    }
+
+    private void applyAck(int clientId, long uptoSeq, int serverId) {
+        List<Long> seqs = seqsByClientId.remove(clientId);
+        if (seqs == null) {
+            return;
+        }
+        List<Long> remaining = new ArrayList<>(0);
+        for (long seq : seqs) {
+            if (seq <= uptoSeq) {
+                live.remove(seq);
+                deadRecords++;
+            } else {
+                remaining.add(seq);
+            }
+        }
+        if (remaining.isEmpty()) {
+            return;
+        }
+
+        for (long seq : remaining) {
+            Entry entry = live.get(seq);
+            if (serverId != clientId) {
+                // A new item, pending() has handed the old one out
+                Item item = entry.mutation.getItem();
+                live.put(seq, new Entry(seq, new ItemMutation(serverId, entry.mutation.getOp(),
+                        item == null ? null : item.withId(serverId))));
+            }
+        }
+        List<Long> target = seqsByClientId.get(serverId);
+        if (target == null) {
+            seqsByClientId.put(serverId, remaining);
+        } else {
+            target.addAll(remaining);
+        }
+    }
+
+    private void maybeCompact() throws IOException {
+        if (deadRecords >= COMPACT_MIN_DEAD_RECORDS && deadRecords > live.size()) {
+            compact();
+        }
+    }
+
+    private byte[] encodeMutation(long seq, ItemMutation mutation) throws IOException {
+        bodyBytes.reset();
+        body.writeByte(TYPE_MUTATION);
+        body.writeLong(seq);
+        body.writeInt(mutation.getClientId());
+        body.writeByte(mutation.isCreate() ? OP_CREATE : mutation.isUpdate() ? OP_UPDATE : OP_DELETE);
+        Item item = mutation.getItem();
+        body.writeBoolean(item != null);
+        if (item != null) {
+            body.writeInt(item.getId());
+            writeNullableString(item.getItemName());
+            writeNullableString(item.getDateAdded());
+            body.writeInt(item.getItemLocationId());
+        }
+        body.flush();
+        return bodyBytes.toByteArray();
+    }
+
+    private byte[] encodeAck(int clientId, long uptoSeq, int serverId) throws IOException {
+        bodyBytes.reset();
+        body.writeByte(TYPE_ACK);
+        body.writeInt(clientId);
+        body.writeLong(uptoSeq);
+        body.writeInt(serverId);
+        body.flush();
+        return bodyBytes.toByteArray();
+    }
+
+    private byte[] encodeHeader() throws IOException {
+        bodyBytes.reset();
+        body.writeByte(TYPE_HEADER);
+        body.writeUTF(id);
+        body.writeLong(lastSeq);
+        body.flush();
+        return bodyBytes.toByteArray();
+    }
+
+    private byte[] encodeBatch(SentBatch batch) throws IOException {
+        bodyBytes.reset();
+        body.writeByte(TYPE_BATCH);
+        body.writeUTF(batch.key);
+        body.writeInt(batch.seqs.size());
+        for (Map.Entry<Integer, Long> member : batch.seqs.entrySet()) {
+            body.writeInt(member.getKey());
+            body.writeLong(member.getValue());
+        }
+        body.flush();
+        return bodyBytes.toByteArray();
+    }
+
+    private static ItemMutation decodeMutation(DataInputStream in) throws IOException {
+        int clientId = in.readInt();
+        byte op = in.readByte();
+        Item item = null;
+        if (in.readBoolean()) {
+            int id = in.readInt();
+            String name = readNullableString(in);
+            String dateAdded = readNullableString(in);
+            item = new Item(id, name, dateAdded, in.readInt());
+        }
+        String opName = op == OP_CREATE ? ItemMutation.OP_CREATE
+                : op == OP_UPDATE ? ItemMutation.OP_UPDATE : ItemMutation.OP_DELETE;
+        return new ItemMutation(clientId, opName, item);
+    }
+
+    private void writeNullableString(String value) throws IOException {
+        body.writeBoolean(value != null);
+        if (value != null) {
+            body.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private ByteBuffer frame(byte[] record) {
+        crc.reset();
+        crc.update(record, 0, record.length);
+        ByteBuffer framed = ByteBuffer.allocate(HEADER_SIZE + record.length);
+        framed.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        framed.flip();
+        return framed;
+    }
+
+    private void writeRecord(byte[] record) throws IOException {
+        ByteBuffer framed = frame(record);
+        if (framed.remaining() > writeBuffer.remaining()) {
+            flushBuffer();
+        }
+        if (framed.remaining() > writeBuffer.capacity()) {
+            while (framed.hasRemaining()) {
+                channel.write(framed);
+            }
+        } else {
+            writeBuffer.put(framed);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+}
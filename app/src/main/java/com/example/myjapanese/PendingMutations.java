@@ -0,0 +1,170 @@
+package com.example.myjapanese;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Item edits waiting to be sent, at most one per item id. A new edit is folded into the pending one:
+//   create + update -> create with the new values
+//   create + delete -> nothing, the server never hears about the item
+//   update + update -> the last update
+//   update + delete -> delete
+// Each mutation remembers the newest journal seq folded into it, so acking it covers every edit it replaced.
+// Not thread safe, MutationQueue only touches it from the main thread.
+public class PendingMutations {
+
+    private LinkedHashMap<Integer, ItemMutation> pending = new LinkedHashMap<>();
+
+    // Temporary ids whose create has been sent but not answered yet
+    private final Set<Integer> createsInFlight = new HashSet<>();
+
+    private int nextTemporaryId = -1;
+
+    public int allocateTemporaryId() {
+        return nextTemporaryId--;
+    }
+
+    // Returns the temporary id the item is known by until the server assigns one
+    public int create(Item item) {
+        item.setId(allocateTemporaryId());
+        create(item, 0);
+        return item.getId();
+    }
+
+    // For an item that already carries a temporary id, e.g. replayed from the journal
+    public void create(Item item, long journalSeq) {
+        int temporaryId = item.getId();
+        nextTemporaryId = Math.min(nextTemporaryId, temporaryId - 1);
+        put(new ItemMutation(temporaryId, ItemMutation.OP_CREATE, item), journalSeq);
+    }
+
+    public void update(Item item) {
+        update(item, 0);
+    }
+
+    public void update(Item item, long journalSeq) {
+        int id = item.getId();
+        ItemMutation existing = pending.get(id);
+        if (existing == null) {
+            put(new ItemMutation(id, ItemMutation.OP_UPDATE, item), journalSeq);
+        } else if (existing.isCreate()) {
+            put(new ItemMutation(id, ItemMutation.OP_CREATE, item), journalSeq);
+        } else if (existing.isUpdate()) {
+            put(new ItemMutation(id, ItemMutation.OP_UPDATE, item), journalSeq);
+        } else {
+            // An update after a delete is dropped, the item is gone
+            existing.setJournalSeq(Math.max(existing.getJournalSeq(), journalSeq));
+        }
+    }
+
+    public void delete(int id) {
+        delete(id, 0);
+    }
+
+    // Returns false when the delete cancelled a create that was never sent
+    public boolean delete(int id, long journalSeq) {
+        ItemMutation existing = pending.get(id);
+        if (existing != null && existing.isCreate()) {
+            pending.remove(id);
+            return false;
+        }
+        put(new ItemMutation(id, ItemMutation.OP_DELETE, null), journalSeq);
+        return true;
+    }
+
+    private void put(ItemMutation mutation, long journalSeq) {
+        ItemMutation existing = pending.get(mutation.getClientId());
+        long seq = existing == null ? journalSeq : Math.max(existing.getJournalSeq(), journalSeq);
+        mutation.setJournalSeq(seq);
+        pending.put(mutation.getClientId(), mutation);
+    }
+
+    // Removes and returns up to max mutations in the order they were first queued.
+    // Edits of an item whose create is still in flight wait until the server id is known.
+    public List<ItemMutation> drain(int max) {
+        List<ItemMutation> batch = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<Map.Entry<Integer, ItemMutation>> it = pending.entrySet().iterator();
+        while (it.hasNext() && batch.size() < max) {
+            Map.Entry<Integer, ItemMutation> entry = it.next();
+            if (createsInFlight.contains(entry.getKey())) {
+                continue;
+            }
+            ItemMutation mutation = entry.getValue();
+            if (mutation.isCreate()) {
+                createsInFlight.add(mutation.getClientId());
+            }
+            batch.add(mutation);
+            it.remove();
+        }
+        return batch;
+    }
+
+    // A create that is already on its way, e.g. in a batch sent again after a restart. Later edits of its
+    // temporary id wait for the server id, and the id is not handed out again.
+    public void createSent(int temporaryId) {
+        createsInFlight.add(temporaryId);
+        nextTemporaryId = Math.min(nextTemporaryId, temporaryId - 1);
+    }
+
+    // The server assigned an id to a created item, later edits of the temporary id now target it
+    public void onCreated(int temporaryId, int serverId) {
+        createsInFlight.remove(temporaryId);
+        ItemMutation later = pending.remove(temporaryId);
+        if (later == null) {
+            return;
+        }
+        if (later.isDelete()) {
+            put(new ItemMutation(serverId, ItemMutation.OP_DELETE, null), later.getJournalSeq());
+        } else {
+            // The create went out already, what is left is an update of the saved item. A copy, the
+            // caller may still show the item under its temporary id.
+            put(new ItemMutation(serverId, ItemMutation.OP_UPDATE, later.getItem().withId(serverId)),
+                    later.getJournalSeq());
+        }
+    }
+
+    // The create was rejected, anything queued for its temporary id has nothing to apply to
+    public void onCreateFailed(int temporaryId) {
+        createsInFlight.remove(temporaryId);
+        pending.remove(temporaryId);
+    }
+
+    // Puts a batch that could not be sent back in front of the queue, newer edits still win
+    public void requeue(List<ItemMutation> batch) {
+        LinkedHashMap<Integer, ItemMutation> merged = new LinkedHashMap<>();
+        for (ItemMutation mutation : batch) {
+            if (mutation.isCreate()) {
+                createsInFlight.remove(mutation.getClientId());
+            }
+            merged.put(mutation.getClientId(), mutation);
+        }
+
+        LinkedHashMap<Integer, ItemMutation> newer = pending;
+        pending = merged;
+        for (ItemMutation mutation : newer.values()) {
+            if (mutation.isDelete()) {
+                delete(mutation.getClientId(), mutation.getJournalSeq());
+            } else if (mutation.isCreate() && !pending.containsKey(mutation.getClientId())) {
+                pending.put(mutation.getClientId(), mutation);
+            } else {
+                update(mutation.getItem(), mutation.getJournalSeq());
+            }
+        }
+    }
+
+    public boolean contains(int id) {
+        return pending.containsKey(id);
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.myjapanese;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A pooled JDBC connection with its own prepared statement cache.
+// close() hands it back to the pool, the physical connection stays open.
+public class PooledConnection implements AutoCloseable {
+
+    private final JdbcConnectionPool pool;
+    private final Connection connection;
+    private final int statementCacheSize;
+
+    // Access ordered, so the first entry is the least recently used statement
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    private long idleSince = System.currentTimeMillis();
+    private boolean broken = false;
+    private boolean borrowed = false;
+
+    PooledConnection(JdbcConnectionPool pool, Connection connection, int statementCacheSize) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statementCacheSize = statementCacheSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    // Returns a cached statement for this SQL, parameters from the previous use are cleared
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            statement.clearParameters();
+            return statement;
+        }
+
+        statement = connection.prepareStatement(sql);
+        if (statementCacheSize > 0) {
+            statements.put(sql, statement);
+            if (statements.size() > statementCacheSize) {
+                Iterator<Map.Entry<String, PreparedStatement>> eldest = statements.entrySet().iterator();
+                closeQuietly(eldest.next().getValue());
+                eldest.remove();
+            }
+        }
+        return statement;
+    }
+
+    // Tells the pool not to reuse this connection, e.g. after an I/O error
+    public void markBroken() {
+        broken = true;
+    }
+
+    @Override
+    public void close() {
+        if (!borrowed) {
+            return;
+        }
+        borrowed = false;
+        try {
+            if (!broken && !connection.getAutoCommit()) {
+                // Never hand out a connection in the middle of someone else's transaction
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            broken = true;
+        }
+        pool.release(this, broken);
+    }
+
+    void markBorrowed() {
+        borrowed = true;
+        broken = false;
+    }
+
+    void markIdle() {
+        idleSince = System.currentTimeMillis();
+    }
+
+    long idleMillis() {
+        return System.currentTimeMillis() - idleSince;
+    }
+
+    boolean isValid(int timeoutSeconds) {
+        try {
+            return connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void closePhysical() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Already gone
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // Nothing to do, the statement is dropped either way
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.myjapanese;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.Executor;
+
+// Scrollable list of potato posts, paged and cached by PotatoPostFeed
+public class PotatoFeedActivity extends AppCompatActivity {
+
+    private static final String TAG = "PotatoFeedActivity";
+
+    private static final int PAGE_SIZE = 20;
+    // About two screens of posts ahead and behind
+    private static final int PREFETCH_DISTANCE = 30;
+    private static final long CACHE_BYTES = 2L * 1024 * 1024;
+
+    private PotatoPostFeed feed;
+    private PotatoPostAdapter adapter;
+    private LinearLayoutManager layoutManager;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_potato_feed);
+
+        final Handler handler = new Handler(Looper.getMainLooper());
+        Executor mainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                handler.post(task);
+            }
+        };
+        feed = new PotatoPostFeed(PotatoPostFeed.apiLoader(ApiClient.getService(this)), mainExecutor,
+                PAGE_SIZE, PREFETCH_DISTANCE, CACHE_BYTES);
+        adapter = new PotatoPostAdapter(feed);
+
+        RecyclerView postList = findViewById(R.id.post_list);
+        layoutManager = new LinearLayoutManager(this);
+        postList.setLayoutManager(layoutManager);
+        postList.setAdapter(adapter);
+        postList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                reportVisibleRange();
+            }
+        });
+
+        feed.start(new PotatoPostFeed.Listener() {
+            @Override
+            public void onPageLoaded(int firstPosition, int count, int total) {
+                adapter.onPageLoaded(firstPosition, count, total);
+                reportVisibleRange();
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                Log.e(TAG, "Failed to load potato posts", error);
+                Toast.makeText(PotatoFeedActivity.this, "Error: " + error.getMessage(), Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        Log.i(TAG, "Feed cache: " + feed.stats());
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        feed.close();
+    }
+
+    private void reportVisibleRange() {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first != RecyclerView.NO_POSITION) {
+            feed.onVisibleRange(first, last);
+        }
+    }
+}
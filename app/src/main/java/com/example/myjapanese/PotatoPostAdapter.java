@@ -0,0 +1,78 @@
+package com.example.myjapanese;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.DateFormat;
+
+// Rows of the PotatoPostFeed. The adapter holds no posts itself, a row whose page is not loaded yet
+// shows a placeholder and is rebound once PotatoFeedActivity hears the page arrived.
+public class PotatoPostAdapter extends RecyclerView.Adapter<PotatoPostAdapter.PostViewHolder> {
+
+    private final PotatoPostFeed feed;
+    private final DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.MEDIUM);
+    private int count = 0;
+
+    public PotatoPostAdapter(@NonNull PotatoPostFeed feed) {
+        this.feed = feed;
+    }
+
+    // Called with the feed's size after every loaded page
+    public void onPageLoaded(int firstPosition, int pageCount, int total) {
+        if (total != count) {
+            int previous = count;
+            count = total;
+            if (total > previous) {
+                notifyItemRangeInserted(previous, total - previous);
+            } else {
+                notifyItemRangeRemoved(total, previous - total);
+            }
+        }
+        if (firstPosition < count) {
+            notifyItemRangeChanged(firstPosition, Math.min(pageCount, count - firstPosition));
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return count;
+    }
+
+    @NonNull
+    @Override
+    public PostViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return new PostViewHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.potato_post_row, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PostViewHolder holder, int position) {
+        PotatoPost post = feed.get(position);
+        if (post == null) {
+            holder.titleView.setText("…");
+            holder.dateView.setText("");
+            holder.contentView.setText("");
+            return;
+        }
+        holder.titleView.setText(post.getTitle());
+        holder.dateView.setText(post.getPublishedDate() != null ? dateFormat.format(post.getPublishedDate()) : "");
+        holder.contentView.setText(post.getContent());
+    }
+
+    static class PostViewHolder extends RecyclerView.ViewHolder {
+        final TextView titleView;
+        final TextView dateView;
+        final TextView contentView;
+
+        PostViewHolder(@NonNull View itemView) {
+            super(itemView);
+            titleView = itemView.findViewById(R.id.post_title);
+            dateView = itemView.findViewById(R.id.post_date);
+            contentView = itemView.findViewById(R.id.post_content);
+        }
+    }
+}
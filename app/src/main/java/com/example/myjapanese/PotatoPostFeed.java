@@ -0,0 +1,331 @@
+package com.example.myjapanese;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Response;
+
+// The PotatoPost feed as fixed-size pages fetched on demand. Only the most recently used pages are held,
+// up to a budget in estimated bytes, so memory stays the same however far the user scrolls:
+//   get(position)            the post if its page is cached, otherwise null and the page is requested
+//   onVisibleRange(first, last)  requests the pages within prefetchDistance posts of the visible ones,
+//                            ahead and behind, so they are usually in before they scroll into view
+// Pages with a visible post are never evicted. Counters for the hit rate and for how early the
+// prefetched pages arrived are in stats(). Everything but the page loads runs on the callback executor
+// (the main thread in the app).
+public class PotatoPostFeed {
+
+    public interface PageLoader {
+        // page starts at 1, runs on a background thread
+        PotatoPostPage load(int page, int pageSize) throws IOException;
+    }
+
+    public interface Listener {
+        // Posts [firstPosition, firstPosition + count) can now be shown, total is the size of the whole feed
+        void onPageLoaded(int firstPosition, int count, int total);
+
+        void onError(Throwable error);
+    }
+
+    // Rough heap cost of a post besides its text: PotatoPost, two Strings, their arrays and a Date
+    private static final int POST_OVERHEAD_BYTES = 128;
+
+    private static final class Page {
+        final List<PotatoPost> posts;
+        final long bytes;
+        final boolean prefetched;
+        final long loadedAtNanos;
+        boolean used = false;
+
+        Page(List<PotatoPost> posts, long bytes, boolean prefetched) {
+            this.posts = posts;
+            this.bytes = bytes;
+            this.prefetched = prefetched;
+            this.loadedAtNanos = System.nanoTime();
+        }
+    }
+
+    private static final class Load {
+        final long startNanos = System.nanoTime();
+        final boolean prefetch;
+        boolean waitedFor = false;
+
+        Load(boolean prefetch) {
+            this.prefetch = prefetch;
+        }
+    }
+
+    private final PageLoader loader;
+    private final Executor callbackExecutor;
+    private final ExecutorService loadExecutor;
+    private final int pageSize;
+    private final int prefetchDistance;
+    private final long maxBytes;
+
+    // Access ordered, the eldest entry is the least recently used page
+    private final LinkedHashMap<Integer, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, Load> loading = new HashMap<>();
+    private long cachedBytes = 0;
+    private int total = -1;
+    private int firstVisible = 0;
+    private int lastVisible = -1;
+    private Listener listener;
+    private boolean closed = false;
+
+    // Counters, see Stats
+    private long hits;
+    private long misses;
+    private long prefetches;
+    private long latePrefetches;
+    private long unusedPrefetches;
+    private long evictions;
+    private long failures;
+    private final LatencyHistogram loadMicros = new LatencyHistogram();
+    private final LatencyHistogram prefetchLeadMicros = new LatencyHistogram();
+
+    public PotatoPostFeed(PageLoader loader, Executor callbackExecutor, int pageSize, int prefetchDistance, long maxBytes) {
+        this(loader, callbackExecutor, Executors.newFixedThreadPool(2), pageSize, prefetchDistance, maxBytes);
+    }
+
+    PotatoPostFeed(PageLoader loader, Executor callbackExecutor, ExecutorService loadExecutor,
+                   int pageSize, int prefetchDistance, long maxBytes) {
+        this.loader = loader;
+        this.callbackExecutor = callbackExecutor;
+        this.loadExecutor = loadExecutor;
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+        this.maxBytes = maxBytes;
+    }
+
+    public static PageLoader apiLoader(final ApiService apiService) {
+        return new PageLoader() {
+            @Override
+            public PotatoPostPage load(int page, int pageSize) throws IOException {
+                Response<PotatoPostPage> response = apiService.getPotatoPostsPage(page, pageSize).execute();
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IOException("Failed to load potato posts page " + page + ": HTTP " + response.code());
+                }
+                return response.body();
+            }
+        };
+    }
+
+    // Loads the first page, the total is known once it is in
+    public void start(Listener listener) {
+        this.listener = listener;
+        request(0, false);
+    }
+
+    public void close() {
+        closed = true;
+        loadExecutor.shutdownNow();
+        pages.clear();
+        cachedBytes = 0;
+    }
+
+    // Posts in the feed, 0 until the first page is in
+    public int size() {
+        return Math.max(total, 0);
+    }
+
+    // Null while the post's page is loading
+    public PotatoPost get(int position) {
+        int pageIndex = position / pageSize;
+        Page page = pages.get(pageIndex);
+        if (page == null) {
+            misses++;
+            Load load = loading.get(pageIndex);
+            if (load == null) {
+                request(pageIndex, false);
+            } else if (load.prefetch && !load.waitedFor) {
+                // Prefetched, but not early enough
+                load.waitedFor = true;
+                latePrefetches++;
+            }
+            return null;
+        }
+        hits++;
+        if (!page.used) {
+            page.used = true;
+            if (page.prefetched) {
+                prefetchLeadMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - page.loadedAtNanos));
+            }
+        }
+        int offset = position - pageIndex * pageSize;
+        return offset < page.posts.size() ? page.posts.get(offset) : null;
+    }
+
+    // Call whenever the list scrolls
+    public void onVisibleRange(int first, int last) {
+        firstVisible = first;
+        lastVisible = last;
+        if (total < 0) {
+            return;
+        }
+        int lastPage = (total - 1) / pageSize;
+        int from = Math.max(0, (first - prefetchDistance) / pageSize);
+        int to = Math.min(lastPage, (last + prefetchDistance) / pageSize);
+        // Ahead first, scrolling down is more common than up
+        for (int page = last / pageSize; page <= to; page++) {
+            prefetch(page);
+        }
+        for (int page = first / pageSize; page >= from; page--) {
+            prefetch(page);
+        }
+    }
+
+    private void prefetch(int page) {
+        if (!pages.containsKey(page) && !loading.containsKey(page)) {
+            prefetches++;
+            request(page, true);
+        }
+    }
+
+    private void request(final int pageIndex, boolean prefetch) {
+        if (closed) {
+            return;
+        }
+        final Load load = new Load(prefetch);
+        loading.put(pageIndex, load);
+        loadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PotatoPostPage result = null;
+                Throwable error = null;
+                try {
+                    result = loader.load(pageIndex + 1, pageSize);
+                } catch (Exception e) {
+                    error = e;
+                }
+                final PotatoPostPage finalResult = result;
+                final Throwable finalError = error;
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(pageIndex, load, finalResult, finalError);
+                    }
+                });
+            }
+        });
+    }
+
+    private void finish(int pageIndex, Load load, PotatoPostPage result, Throwable error) {
+        loading.remove(pageIndex);
+        if (closed) {
+            return;
+        }
+        if (error != null) {
+            failures++;
+            if (listener != null) {
+                listener.onError(error);
+            }
+            return;
+        }
+        loadMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - load.startNanos));
+        List<PotatoPost> posts = result.getResults() != null ? result.getResults() : Collections.<PotatoPost>emptyList();
+        Page page = new Page(posts, estimateBytes(posts), load.prefetch && !load.waitedFor);
+        Page replaced = pages.put(pageIndex, page);
+        if (replaced != null) {
+            cachedBytes -= replaced.bytes;
+        }
+        cachedBytes += page.bytes;
+        total = result.getCount();
+        evict();
+        if (listener != null) {
+            listener.onPageLoaded(pageIndex * pageSize, posts.size(), total);
+        }
+    }
+
+    // Least recently used first, the pages on screen stay
+    private void evict() {
+        int firstPinned = firstVisible / pageSize;
+        int lastPinned = lastVisible < 0 ? -1 : lastVisible / pageSize;
+        Iterator<Map.Entry<Integer, Page>> eldest = pages.entrySet().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Integer, Page> entry = eldest.next();
+            int pageIndex = entry.getKey();
+            if (pageIndex >= firstPinned && pageIndex <= lastPinned) {
+                continue;
+            }
+            Page page = entry.getValue();
+            if (page.prefetched && !page.used) {
+                unusedPrefetches++;
+            }
+            cachedBytes -= page.bytes;
+            evictions++;
+            eldest.remove();
+        }
+    }
+
+    static long estimateBytes(List<PotatoPost> posts) {
+        long bytes = 0;
+        for (PotatoPost post : posts) {
+            bytes += POST_OVERHEAD_BYTES + 2L * (length(post.getTitle()) + length(post.getContent()));
+        }
+        return bytes;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        public final long prefetches;
+        // Prefetched pages a visible post had to wait for
+        public final long latePrefetches;
+        // Prefetched pages evicted before any of their posts was shown
+        public final long unusedPrefetches;
+        public final long evictions;
+        public final long failures;
+        public final int cachedPages;
+        public final long cachedBytes;
+        public final LatencyHistogram.Snapshot loadMicros;
+        // From a prefetched page arriving to its first post being shown
+        public final LatencyHistogram.Snapshot prefetchLeadMicros;
+
+        Stats(PotatoPostFeed feed) {
+            hits = feed.hits;
+            misses = feed.misses;
+            prefetches = feed.prefetches;
+            latePrefetches = feed.latePrefetches;
+            unusedPrefetches = feed.unusedPrefetches;
+            evictions = feed.evictions;
+            failures = feed.failures;
+            cachedPages = feed.pages.size();
+            cachedBytes = feed.cachedBytes;
+            loadMicros = feed.loadMicros.snapshot();
+            prefetchLeadMicros = feed.prefetchLeadMicros.snapshot();
+        }
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "hit rate %.1f%% (%d/%d), prefetches %d (late %d, unused %d), evictions %d, failures %d, "
+                            + "cached %d pages / %.1f KB, load p50/p95 %.1f/%.1f ms, prefetch lead p50 %.1f ms",
+                    hitRate() * 100, hits, hits + misses, prefetches, latePrefetches, unusedPrefetches, evictions,
+                    failures, cachedPages, cachedBytes / 1024.0, loadMicros.p50 / 1000.0, loadMicros.p95 / 1000.0,
+                    prefetchLeadMicros.p50 / 1000.0);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(this);
+    }
+}
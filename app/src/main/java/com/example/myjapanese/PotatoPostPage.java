@@ -0,0 +1,31 @@
+package com.example.myjapanese;
+
+import com.google.gson.annotations.SerializedName;
+
+import java.util.List;
+
+// One page of the page-number paginated /potato_posts/ endpoint
+public class PotatoPostPage {
+
+    // Total number of posts on the server
+    @SerializedName("count")
+    private int count;
+
+    @SerializedName("next")
+    private String next;
+
+    @SerializedName("results")
+    private List<PotatoPost> results;
+
+    public int getCount() {
+        return count;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public List<PotatoPost> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.myjapanese;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import retrofit2.Call;
+
+// Runs blocking loads keyed by what they fetch ("items", ...), at most one per key at a time:
+//   run()       joins the load already in flight for the key, so a burst of reloads makes one request
+//   runLatest() cancels the one in flight and starts over, for when its answer is already known to be stale
+// Every load gets a sequence number. Only the newest load of a key is applied, anything older that still
+// finishes (a cancel can lose the race with the response) is dropped. Main thread only.
+public class RequestCoordinator {
+
+    public interface Loader<T> {
+        // Runs on a background thread, calls are passed through the tracker so they can be cancelled
+        T load(CallTracker calls) throws IOException;
+    }
+
+    // On the main thread, never called for a load that was superseded or cancelled
+    public interface Callback<T> {
+        void onResult(T result);
+
+        void onError(Throwable error);
+    }
+
+    // The Retrofit calls of one load, cancelled together
+    public static final class Calls implements CallTracker {
+        private final List<Call<?>> calls = new ArrayList<>(2);
+        private boolean cancelled = false;
+
+        @Override
+        public synchronized <T> Call<T> track(Call<T> call) throws IOException {
+            if (cancelled) {
+                throw new IOException("Canceled");
+            }
+            calls.add(call);
+            return call;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        public synchronized void cancel() {
+            cancelled = true;
+            for (Call<?> call : calls) {
+                call.cancel();
+            }
+        }
+    }
+
+    private static final class Flight<T> {
+        final long seq;
+        final Calls calls = new Calls();
+        final List<Callback<T>> callbacks = new ArrayList<>(1);
+
+        Flight(long seq) {
+            this.seq = seq;
+        }
+    }
+
+    private final ExecutorService executor;
+    // Where finished loads are applied, the thread every other method is called on
+    private final Executor mainThread;
+    private final Map<String, Flight<?>> inFlight = new HashMap<>();
+    private final Map<String, Long> appliedSeq = new HashMap<>();
+    private long nextSeq = 1;
+    private boolean shutDown = false;
+
+    // How much work the coordination saved, for the logs
+    private int started = 0;
+    private int joined = 0;
+    private int superseded = 0;
+    private int dropped = 0;
+
+    public RequestCoordinator() {
+        this(Executors.newFixedThreadPool(2), new Executor() {
+            private final Handler handler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable task) {
+                handler.post(task);
+            }
+        });
+    }
+
+    // Package-private for tests, which stand in for the main thread
+    RequestCoordinator(ExecutorService executor, Executor mainThread) {
+        this.executor = executor;
+        this.mainThread = mainThread;
+    }
+
+    public <T> void run(String key, Loader<T> loader, Callback<T> callback) {
+        Flight<T> flight = current(key);
+        if (flight != null) {
+            joined++;
+            addCallback(flight, callback);
+            return;
+        }
+        start(key, loader, callback, null);
+    }
+
+    // The callers waiting for the superseded load get the new one's result instead
+    public <T> void runLatest(String key, Loader<T> loader, Callback<T> callback) {
+        Flight<T> previous = current(key);
+        if (previous != null) {
+            superseded++;
+            previous.calls.cancel();
+        }
+        start(key, loader, callback, previous);
+    }
+
+    public boolean isLoading(String key) {
+        return inFlight.containsKey(key);
+    }
+
+    public void cancel(String key) {
+        Flight<?> flight = inFlight.remove(key);
+        if (flight != null) {
+            flight.calls.cancel();
+        }
+    }
+
+    // For onDestroy, no callbacks after this
+    public void cancelAll() {
+        shutDown = true;
+        for (Flight<?> flight : inFlight.values()) {
+            flight.calls.cancel();
+        }
+        inFlight.clear();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "started=" + started + ", joined=" + joined + ", superseded=" + superseded + ", dropped=" + dropped;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Flight<T> current(String key) {
+        return (Flight<T>) inFlight.get(key);
+    }
+
+    private <T> void start(final String key, final Loader<T> loader, Callback<T> callback, Flight<T> previous) {
+        if (shutDown) {
+            return;
+        }
+        final Flight<T> flight = new Flight<>(nextSeq++);
+        if (previous != null) {
+            flight.callbacks.addAll(previous.callbacks);
+        }
+        addCallback(flight, callback);
+        inFlight.put(key, flight);
+        started++;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result = null;
+                Throwable error = null;
+                try {
+                    result = loader.load(flight.calls);
+                } catch (Exception e) {
+                    error = e;
+                }
+                final T finalResult = result;
+                final Throwable finalError = error;
+                mainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(key, flight, finalResult, finalError);
+                    }
+                });
+            }
+        });
+    }
+
+    // A caller that passes the same callback again is answered once, not once per request it made
+    private static <T> void addCallback(Flight<T> flight, Callback<T> callback) {
+        if (!flight.callbacks.contains(callback)) {
+            flight.callbacks.add(callback);
+        }
+    }
+
+    private <T> void finish(String key, Flight<T> flight, T result, Throwable error) {
+        Long applied = appliedSeq.get(key);
+        if (shutDown || inFlight.get(key) != flight || (applied != null && flight.seq <= applied)) {
+            dropped++;
+            return;
+        }
+        inFlight.remove(key);
+        if (error == null) {
+            appliedSeq.put(key, flight.seq);
+        }
+        for (Callback<T> callback : flight.callbacks) {
+            if (error == null) {
+                callback.onResult(result);
+            } else {
+                callback.onError(error);
+            }
+        }
+    }
+}
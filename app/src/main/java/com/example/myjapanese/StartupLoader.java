@@ -0,0 +1,265 @@
+package com.example.myjapanese;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import retrofit2.Response;
+
+// Everything the first screen needs, loaded as a dependency graph instead of independent callbacks:
+//
+//   cache  ---------------+
+//   client --+-- items ---+--+
+//            +-- locations --+-- onLoaded
+//
+// The cache read and the HTTP client (Retrofit, OkHttp, Gson) are built off the main thread side by side,
+// then items and locations are requested at the same time. onLoaded gets both at once, so the list is
+// rendered a single time with every location name already known. Milestones go to the StartupTrace.
+public class StartupLoader {
+
+    private static final String TAG = "StartupLoader";
+
+    // Main thread callbacks, in this order. onLoaded always comes, with null for whatever failed.
+    public interface Listener {
+        void onCacheLoaded(Cached cached);
+
+        void onClientReady(ApiService apiService);
+
+        void onLoaded(Result result);
+    }
+
+    public static class Cached {
+        public final List<Item> items;
+        public final List<Location> locations;
+        public final String itemsToken;
+
+        Cached(List<Item> items, List<Location> locations, String itemsToken) {
+            this.items = items;
+            this.locations = locations;
+            this.itemsToken = itemsToken;
+        }
+    }
+
+    public static class Result {
+        public final List<Location> locations;
+        // A delta on top of the cached list when the cache had a token
+        public final ItemLoader.Update items;
+        public final Throwable error;
+
+        Result(List<Location> locations, ItemLoader.Update items, Throwable error) {
+            this.locations = locations;
+            this.items = items;
+            this.error = error;
+        }
+    }
+
+    private static final int STREAM_CHUNK_SIZE = 200;
+
+    private final Supplier<Cached> cacheReader;
+    private final Supplier<ApiService> clientFactory;
+    private final StartupTrace trace;
+    private final Executor mainThread;
+
+    // Two stages of two parallel tasks each
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Executor mainExecutor = new Executor() {
+        @Override
+        public void execute(final Runnable task) {
+            mainThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        task.run();
+                    }
+                }
+            });
+        }
+    };
+
+    private volatile boolean cancelled = false;
+    private volatile Throwable firstError;
+    private final RequestCoordinator.Calls calls = new RequestCoordinator.Calls();
+
+    public StartupLoader(Context context, final ItemCache itemCache, StartupTrace trace) {
+        this(new Supplier<Cached>() {
+            @Override
+            public Cached get() {
+                return new Cached(itemCache.loadItems(), itemCache.loadLocations(), itemCache.loadItemsToken());
+            }
+        }, clientOf(context.getApplicationContext()), trace, new Executor() {
+            private final Handler handler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable task) {
+                handler.post(task);
+            }
+        });
+    }
+
+    // Package-private for tests, which read no database and stand in for the main thread
+    StartupLoader(Supplier<Cached> cacheReader, Supplier<ApiService> clientFactory, StartupTrace trace,
+                  Executor mainThread) {
+        this.cacheReader = cacheReader;
+        this.clientFactory = clientFactory;
+        this.trace = trace;
+        this.mainThread = mainThread;
+    }
+
+    private static Supplier<ApiService> clientOf(final Context context) {
+        return new Supplier<ApiService>() {
+            @Override
+            public ApiService get() {
+                return ApiClient.getService(context);
+            }
+        };
+    }
+
+    public void start(final Listener listener) {
+        CompletableFuture<Cached> cache = CompletableFuture.supplyAsync(new Supplier<Cached>() {
+            @Override
+            public Cached get() {
+                return readCache();
+            }
+        }, executor);
+
+        CompletableFuture<ApiService> client = CompletableFuture.supplyAsync(clientSupplier, executor);
+
+        cache.thenAcceptAsync(new Consumer<Cached>() {
+            @Override
+            public void accept(Cached cached) {
+                listener.onCacheLoaded(cached);
+            }
+        }, mainExecutor);
+        client.thenAcceptAsync(new Consumer<ApiService>() {
+            @Override
+            public void accept(ApiService apiService) {
+                listener.onClientReady(apiService);
+            }
+        }, mainExecutor);
+
+        CompletableFuture<List<Location>> locations = client.thenApplyAsync(new Function<ApiService, List<Location>>() {
+            @Override
+            public List<Location> apply(ApiService apiService) {
+                return loadLocations(apiService);
+            }
+        }, executor).exceptionally(this.<List<Location>>recordError());
+
+        // Items wait for the cache too, its token decides between a delta and a full download
+        CompletableFuture<ItemLoader.Update> items = client.thenCombineAsync(cache,
+                new BiFunction<ApiService, Cached, ItemLoader.Update>() {
+                    @Override
+                    public ItemLoader.Update apply(ApiService apiService, Cached cached) {
+                        return loadItems(apiService, cached.itemsToken);
+                    }
+                }, executor).exceptionally(this.<ItemLoader.Update>recordError());
+
+        locations.thenCombine(items, new BiFunction<List<Location>, ItemLoader.Update, Result>() {
+            @Override
+            public Result apply(List<Location> locations, ItemLoader.Update items) {
+                trace.mark(StartupTrace.JOINED);
+                return new Result(locations, items, firstError);
+            }
+        }).thenAcceptAsync(new Consumer<Result>() {
+            @Override
+            public void accept(Result result) {
+                executor.shutdown();
+                listener.onLoaded(result);
+            }
+        }, mainExecutor);
+    }
+
+    // For when ItemRepository still holds the last sync, e.g. the activity was recreated: only the client is
+    // built, onCacheLoaded does not come and onLoaded follows onClientReady with nothing loaded
+    public void startClientOnly(final Listener listener) {
+        CompletableFuture.supplyAsync(clientSupplier, executor).thenAcceptAsync(new Consumer<ApiService>() {
+            @Override
+            public void accept(ApiService apiService) {
+                executor.shutdown();
+                listener.onClientReady(apiService);
+                listener.onLoaded(new Result(null, null, null));
+            }
+        }, mainExecutor);
+    }
+
+    private final Supplier<ApiService> clientSupplier = new Supplier<ApiService>() {
+        @Override
+        public ApiService get() {
+            ApiService apiService = clientFactory.get();
+            trace.mark(StartupTrace.CLIENT_READY);
+            return apiService;
+        }
+    };
+
+    // No callbacks after this, requests still running are cancelled
+    public void cancel() {
+        cancelled = true;
+        calls.cancel();
+        executor.shutdownNow();
+    }
+
+    private Cached readCache() {
+        try {
+            Cached cached = cacheReader.get();
+            trace.mark(StartupTrace.CACHE_READ);
+            return cached;
+        } catch (RuntimeException e) {
+            // Startup goes on without it, the network fills the cache again
+            Log.e(TAG, "Failed to read the item cache", e);
+            return new Cached(Collections.<Item>emptyList(), Collections.<Location>emptyList(), null);
+        }
+    }
+
+    private List<Location> loadLocations(ApiService apiService) {
+        try {
+            Response<List<Location>> response = calls.track(apiService.getLocations()).execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("Failed to load locations: HTTP " + response.code());
+            }
+            trace.mark(StartupTrace.LOCATIONS_LOADED);
+            return response.body();
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private ItemLoader.Update loadItems(ApiService apiService, String token) {
+        try {
+            ItemLoader.Update update = ItemLoader.sync(apiService, token, ApiClient.getGson(), STREAM_CHUNK_SIZE, null, calls);
+            trace.mark(StartupTrace.ITEMS_LOADED);
+            return update;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // Turns a failed branch into null so the join still happens with whatever did load
+    private <T> Function<Throwable, T> recordError() {
+        return new Function<Throwable, T>() {
+            @Override
+            public T apply(Throwable t) {
+                Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                if (!cancelled) {
+                    Log.e(TAG, "Startup load failed", cause);
+                }
+                if (firstError == null) {
+                    firstError = cause;
+                }
+                return null;
+            }
+        };
+    }
+}
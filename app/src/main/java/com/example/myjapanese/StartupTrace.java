@@ -0,0 +1,72 @@
+package com.example.myjapanese;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Milestones of one app start, in ms since the trace began. Only the first time a milestone
+// is reached counts. The trace of the start in progress is reachable through active(), so the
+// HTTP stack can record first bytes without every call being handed the trace. Thread safe.
+public class StartupTrace {
+
+    public static final String CACHE_READ = "cache read";
+    public static final String CLIENT_READY = "client ready";
+    public static final String FIRST_BYTE = "first byte ";  // followed by the request path
+    public static final String LOCATIONS_LOADED = "locations loaded";
+    public static final String ITEMS_LOADED = "items loaded";
+    public static final String JOINED = "joined";
+    public static final String FIRST_ROW = "first row";
+
+    private static volatile StartupTrace active;
+
+    private final long startNanos = System.nanoTime();
+    private final LinkedHashMap<String, Long> marks = new LinkedHashMap<>();
+
+    // Starts a trace and makes it the active one
+    public static StartupTrace begin() {
+        StartupTrace trace = new StartupTrace();
+        active = trace;
+        return trace;
+    }
+
+    // Null when no start is being traced
+    public static StartupTrace active() {
+        return active;
+    }
+
+    public synchronized void mark(String milestone) {
+        if (!marks.containsKey(milestone)) {
+            marks.put(milestone, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        }
+    }
+
+    public void markFirstByte(String path) {
+        mark(FIRST_BYTE + path);
+    }
+
+    // -1 if the milestone was not reached
+    public synchronized long elapsedMs(String milestone) {
+        Long ms = marks.get(milestone);
+        return ms != null ? ms : -1;
+    }
+
+    // Later milestones are no longer recorded by the HTTP stack
+    public void end() {
+        if (active == this) {
+            active = null;
+        }
+    }
+
+    // e.g. "client ready=41ms, first byte /location/=187ms, ..."
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : marks.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append("ms");
+        }
+        return sb.toString();
+    }
+}
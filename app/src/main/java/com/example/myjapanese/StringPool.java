@@ -0,0 +1,32 @@
+package com.example.myjapanese;
+
+// Dedupes strings that repeat across many parsed objects (dates, location names), so a 10k item list
+// keeps a few hundred distinct date strings alive instead of 10k copies. A direct-mapped cache:
+// a colliding string simply replaces the slot, so memory stays bounded and lookups never probe.
+// Safe to share between threads, a racy slot write can only cost a missed dedupe.
+public final class StringPool {
+
+    private final String[] slots;
+    private final int mask;
+
+    // capacity is rounded up to a power of two
+    public StringPool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new String[size];
+        mask = size - 1;
+    }
+
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int hash = value.hashCode();
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String cached = slots[index];
+        if (cached != null && cached.equals(value)) {
+            return cached;
+        }
+        slots[index] = value;
+        return value;
+    }
+}
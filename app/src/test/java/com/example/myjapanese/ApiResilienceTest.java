@@ -0,0 +1,190 @@
+package com.example.myjapanese;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Cache;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+public class ApiResilienceTest {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private MockWebServer server;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        cacheDir = Files.createTempDirectory("http_cache").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    @Test
+    public void retriesOnlyIdempotentCalls() throws IOException {
+        OkHttpClient client = client(new ApiResilience(3, 10, 50, 200, 100, 10_000, new Random(1)));
+
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setBody("ok"));
+        assertEquals("ok", body(client, get("/item/")));
+        assertEquals(3, server.getRequestCount());
+
+        server.enqueue(new MockResponse().setResponseCode(503));
+        try (Response response = client.newCall(post("/item/", null)).execute()) {
+            assertEquals(503, response.code());
+        }
+        assertEquals(4, server.getRequestCount());
+
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("created"));
+        assertEquals("created", body(client, post("/item/", "key-1")));
+        assertEquals(6, server.getRequestCount());
+    }
+
+    @Test
+    public void timeoutFollowsObservedLatency() throws IOException {
+        OkHttpClient client = client(new ApiResilience(3, 10, 50, 200, 100, 10_000, new Random(1)));
+        for (int i = 0; i < 10; i++) {
+            server.enqueue(new MockResponse().setBody("fast"));
+            assertEquals("fast", body(client, get("/item/")));
+        }
+
+        // Hangs far past the estimate but within the client's 10 s read timeout, the retry gets the answer
+        server.enqueue(new MockResponse().setBody("hung").setHeadersDelay(5, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setBody("fast"));
+        long start = System.nanoTime();
+        assertEquals("fast", body(client, get("/item/")));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 3_000);
+        assertEquals(12, server.getRequestCount());
+    }
+
+    @Test
+    public void openBreakerServesCacheAndFailsFast() throws Exception {
+        ApiResilience resilience = new ApiResilience(1, 10, 50, 200, 2, 300, new Random(1));
+        OkHttpClient client = client(resilience);
+
+        server.enqueue(new MockResponse().setBody("cached").setHeader("Cache-Control", "max-age=0").setHeader("ETag", "\"v1\""));
+        assertEquals("cached", body(client, get("/item/")));
+
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        client.newCall(get("/item/")).execute().close();
+        try {
+            client.newCall(get("/item/")).execute();
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(ApiResilience.OPEN, resilience.state(server.url("/")));
+        int requests = server.getRequestCount();
+
+        assertEquals("cached", body(client, get("/item/")));
+        try {
+            client.newCall(get("/location/")).execute();
+            fail();
+        } catch (ApiResilience.CircuitOpenException expected) {
+        }
+        try {
+            client.newCall(post("/item/", "key-2")).execute();
+            fail();
+        } catch (ApiResilience.CircuitOpenException expected) {
+        }
+        assertEquals(requests, server.getRequestCount());
+
+        // After the open period one probe goes out, its success closes the breaker
+        Thread.sleep(400);
+        server.enqueue(new MockResponse().setBody("fresh"));
+        assertEquals("fresh", body(client, get("/item/")));
+        assertEquals(ApiResilience.CLOSED, resilience.state(server.url("/")));
+    }
+
+    @Test
+    public void probeThatThrowsLetsTheNextCallProbe() throws Exception {
+        ApiResilience resilience = new ApiResilience(1, 10, 50, 200, 1, 100, new Random(1));
+        final AtomicBoolean crash = new AtomicBoolean();
+        OkHttpClient client = client(resilience).newBuilder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        if (crash.getAndSet(false)) {
+                            throw new IllegalStateException("converter bug");
+                        }
+                        return chain.proceed(chain.request());
+                    }
+                })
+                .build();
+
+        server.enqueue(new MockResponse().setResponseCode(500));
+        client.newCall(get("/item/")).execute().close();
+        assertEquals(ApiResilience.OPEN, resilience.state(server.url("/")));
+
+        Thread.sleep(150);
+        crash.set(true);
+        try {
+            client.newCall(get("/item/")).execute();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        server.enqueue(new MockResponse().setBody("ok"));
+        assertEquals("ok", body(client, get("/item/")));
+        assertEquals(ApiResilience.CLOSED, resilience.state(server.url("/")));
+    }
+
+    private OkHttpClient client(ApiResilience resilience) {
+        return new OkHttpClient.Builder()
+                .cache(new Cache(cacheDir, 1024 * 1024))
+                .readTimeout(10, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(false)
+                .addInterceptor(resilience.interceptor())
+                .build();
+    }
+
+    private Request get(String path) {
+        return new Request.Builder().url(server.url(path)).build();
+    }
+
+    private Request post(String path, String idempotencyKey) {
+        Request.Builder builder = new Request.Builder().url(server.url(path)).post(RequestBody.create(JSON, "{}"));
+        if (idempotencyKey != null) {
+            builder.header("Idempotency-Key", idempotencyKey);
+        }
+        return builder.build();
+    }
+
+    private static String body(OkHttpClient client, Request request) throws IOException {
+        try (Response response = client.newCall(request).execute()) {
+            assertTrue(response.isSuccessful());
+            return response.body().string();
+        }
+    }
+}
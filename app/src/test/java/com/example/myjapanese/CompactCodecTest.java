@@ -0,0 +1,169 @@
+package com.example.myjapanese;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+public class CompactCodecTest {
+
+    @Test
+    public void itemsRoundTrip() throws IOException {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 3_000; i++) {
+            longName.append("味噌");
+        }
+        List<Item> items = new ArrayList<>();
+        items.add(new Item(5, "rice", "2024-05-01", 3));
+        items.add(new Item(2, null, "2024-5-1", 300));
+        items.add(new Item(-7, "", null, 3));
+        items.add(new Item(Integer.MAX_VALUE, longName.toString(), "someday", -1));
+        for (int i = 0; i < 2_000; i++) {
+            items.add(new Item(100 + i, "miso " + i, IsoDates.formatEpochDay(19_000 + i % 400), i % 50));
+        }
+
+        final List<List<Item>> chunks = new ArrayList<>();
+        int count = CompactCodec.readItems(new ByteArrayInputStream(encodeItems(items)), 512, new ItemStreamReader.ChunkListener() {
+            @Override
+            public void onChunk(List<Item> chunk) {
+                chunks.add(chunk);
+            }
+        });
+        assertEquals(items.size(), count);
+        assertEquals(4, chunks.size());
+
+        List<Item> read = new ArrayList<>();
+        for (List<Item> chunk : chunks) {
+            read.addAll(chunk);
+        }
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(items.get(i).getId(), read.get(i).getId());
+            assertEquals(items.get(i).getItemName(), read.get(i).getItemName());
+            assertEquals(items.get(i).getDateAdded(), read.get(i).getDateAdded());
+            assertEquals(items.get(i).getItemLocationId(), read.get(i).getItemLocationId());
+        }
+        // One String per distinct date
+        assertSame(read.get(4).getDateAdded(), read.get(404).getDateAdded());
+    }
+
+    @Test
+    public void locationsAndPostsRoundTrip() throws IOException {
+        Location location = new Location();
+        location.setId(12);
+        location.setLocationName("冷蔵庫");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactCodec.writeLocations(Arrays.asList(location, new Location()), out);
+        List<Location> locations = CompactCodec.readLocations(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, locations.size());
+        assertEquals(12, locations.get(0).getId());
+        assertEquals("冷蔵庫", locations.get(0).getLocationName());
+        assertNull(locations.get(1).getLocationName());
+
+        PotatoPost dated = new PotatoPost();
+        dated.setTitle("Harvest");
+        dated.setContent("Dug up the potatoes");
+        dated.setPublishedDate(new Date(1_714_521_600_123L));
+        PotatoPost earlier = new PotatoPost();
+        earlier.setPublishedDate(new Date(-86_400_000L));
+        out.reset();
+        CompactCodec.writePotatoPosts(Arrays.asList(dated, new PotatoPost(), earlier), out);
+        List<PotatoPost> posts = CompactCodec.readPotatoPosts(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("Harvest", posts.get(0).getTitle());
+        assertEquals("Dug up the potatoes", posts.get(0).getContent());
+        assertEquals(dated.getPublishedDate(), posts.get(0).getPublishedDate());
+        assertNull(posts.get(1).getPublishedDate());
+        assertEquals(earlier.getPublishedDate(), posts.get(2).getPublishedDate());
+    }
+
+    @Test
+    public void rejectsTruncatedAndMismatchedMessages() throws IOException {
+        List<Item> items = Arrays.asList(new Item(1, "rice", "2024-05-01", 3), new Item(2, "miso", "2024-05-02", 4));
+        byte[] bytes = encodeItems(items);
+        try {
+            CompactCodec.readItems(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 2)));
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            CompactCodec.readLocations(new ByteArrayInputStream(bytes));
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            CompactCodec.readItems(new ByteArrayInputStream("[{\"id\":1}]".getBytes("UTF-8")));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void corruptDictionaryLengthsFailWithoutAllocatingThem() throws IOException {
+        // One item, then a location dictionary and a date dictionary claiming Integer.MAX_VALUE entries
+        byte[] header = {'M', 'J', 1, CompactCodec.KIND_ITEMS, 1};
+        byte[] huge = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        ByteArrayOutputStream locations = new ByteArrayOutputStream();
+        locations.write(header);
+        locations.write(huge);
+        locations.write(new byte[]{2, 4});
+        ByteArrayOutputStream dates = new ByteArrayOutputStream();
+        dates.write(header);
+        dates.write(new byte[]{1, 6});
+        dates.write(huge);
+        dates.write(new byte[]{0, 1});
+        for (ByteArrayOutputStream message : Arrays.asList(locations, dates)) {
+            try {
+                CompactCodec.readItems(new ByteArrayInputStream(message.toByteArray()));
+                fail();
+            } catch (IOException expected) {
+                // Runs out of input, rather than of memory
+            }
+        }
+    }
+
+    @Test
+    public void converterPicksFormatFromContentType() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.start();
+        try {
+            ApiService service = new Retrofit.Builder()
+                    .baseUrl(server.url("/"))
+                    .addConverterFactory(CompactConverterFactory.create())
+                    .addConverterFactory(GsonConverterFactory.create(ModelTypeAdapters.createGson()))
+                    .build()
+                    .create(ApiService.class);
+
+            Buffer compact = new Buffer();
+            compact.write(encodeItems(Arrays.asList(new Item(1, "rice", "2024-05-01", 3))));
+            server.enqueue(new MockResponse().setHeader("Content-Type", CompactCodec.MEDIA_TYPE).setBody(compact));
+            server.enqueue(new MockResponse().setHeader("Content-Type", "application/json; charset=utf-8")
+                    .setBody("[{\"id\":2,\"itemName\":\"miso\",\"date_added\":\"2024-05-02\",\"itemLocation\":4}]"));
+
+            List<Item> fromCompact = service.getItems().execute().body();
+            assertEquals("rice", fromCompact.get(0).getItemName());
+            assertTrue(server.takeRequest().getHeader("Accept").startsWith(CompactCodec.MEDIA_TYPE));
+            List<Item> fromJson = service.getItems().execute().body();
+            assertEquals("miso", fromJson.get(0).getItemName());
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static byte[] encodeItems(List<Item> items) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompactCodec.writeItems(items, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.myjapanese;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IsoDatesTest {
+
+    @Test
+    public void epochDaysRoundTrip() {
+        assertEquals(0, IsoDates.parseEpochDay("1970-01-01"));
+        assertEquals(IsoDates.parseEpochDay("2024-03-05"), IsoDates.parseEpochDay("2024-3-5"));
+        assertEquals(IsoDates.INVALID_DAY, IsoDates.parseEpochDay("2023-02-29"));
+        assertEquals(IsoDates.INVALID_DAY, IsoDates.parseEpochDay("2024-03-05T10:00:00Z"));
+        assertEquals(IsoDates.INVALID_DAY, IsoDates.parseEpochDay(null));
+        for (int day = -1000; day < 30_000; day += 7) {
+            assertEquals(day, IsoDates.parseEpochDay(IsoDates.formatEpochDay(day)));
+        }
+    }
+}
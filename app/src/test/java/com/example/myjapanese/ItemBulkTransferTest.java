@@ -0,0 +1,104 @@
+package com.example.myjapanese;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ItemBulkTransferTest {
+
+    // e.g. -Dtest.postgres.url=jdbc:postgresql://localhost:5432/postgres?user=tomato&password=tomato
+    private static final String POSTGRES_URL = System.getProperty("test.postgres.url", System.getenv("TEST_POSTGRES_URL"));
+
+    private static final String TABLE = "bulk_transfer_test_item";
+
+    @Test
+    public void encodesRowsForCopy() {
+        StringBuilder sb = new StringBuilder();
+        assertTrue(ItemBulkTransfer.appendRow(sb, new Item(0, "a\tb\nc\\d\re", "2024-05-01", 3)));
+        assertTrue(ItemBulkTransfer.appendRow(sb, new Item(0, "味噌", "2024-5-1", 4)));
+        assertEquals("a\\tb\\nc\\\\d\\re\t2024-05-01\t3\n味噌\t2024-5-1\t4\n", sb.toString());
+
+        assertFalse(ItemBulkTransfer.appendRow(sb, new Item(0, null, "2024-05-01", 3)));
+        assertFalse(ItemBulkTransfer.appendRow(sb, new Item(0, "rice", "someday", 3)));
+        assertFalse(ItemBulkTransfer.appendRow(sb, new Item(0, "rice", null, 3)));
+    }
+
+    @Test
+    public void importsReadsAndExportsAgainstPostgres() throws Exception {
+        Assume.assumeTrue("No test.postgres.url given", POSTGRES_URL != null);
+        Connection connection = DriverManager.getConnection(POSTGRES_URL);
+        try {
+            execute(connection, "DROP TABLE IF EXISTS " + TABLE);
+            execute(connection, "CREATE TABLE " + TABLE + " (id serial PRIMARY KEY, \"itemName\" varchar(100) NOT NULL, "
+                    + "date_added date NOT NULL, \"itemLocation_id\" integer NOT NULL)");
+
+            List<Item> items = new ArrayList<>();
+            for (int i = 0; i < 120_000; i++) {
+                String name = i % 1000 == 0 ? "tab\there \\ newline\n味噌 " + i : "rice " + i;
+                items.add(new Item(0, name, IsoDates.formatEpochDay(19_000 + i % 700), 1 + i % 50));
+            }
+            items.add(new Item(0, "bad date", "2024-13-40", 1));
+
+            ItemBulkTransfer transfer = new ItemBulkTransfer(TABLE);
+            final List<Long> progress = new ArrayList<>();
+            ItemBulkTransfer.Progress listener = new ItemBulkTransfer.Progress() {
+                @Override
+                public void onProgress(long rows, long elapsedNanos) {
+                    progress.add(rows);
+                }
+            };
+            ItemBulkTransfer.Result imported = transfer.importItems(connection, items, listener);
+            assertEquals(120_000, imported.rows);
+            assertEquals(1, imported.skipped);
+            assertEquals(Long.valueOf(50_000), progress.get(0));
+            assertEquals(Long.valueOf(120_000), progress.get(progress.size() - 1));
+
+            final List<Item> read = new ArrayList<>();
+            final int[] chunks = {0};
+            ItemBulkTransfer.Result result = transfer.readItems(connection, 1_000, 4_096, new ItemBulkTransfer.ChunkHandler() {
+                @Override
+                public void onChunk(List<Item> chunk) {
+                    assertTrue(chunk.size() <= 4_096);
+                    chunks[0]++;
+                    read.addAll(chunk);
+                }
+            }, null);
+            assertEquals(120_000, result.rows);
+            assertEquals((120_000 + 4_095) / 4_096, chunks[0]);
+            assertTrue(connection.getAutoCommit());
+            for (int i = 0; i < items.size() - 1; i += 997) {
+                Item expected = items.get(i);
+                Item actual = read.get(i);
+                assertEquals(expected.getItemName(), actual.getItemName());
+                assertEquals(expected.getDateAdded(), actual.getDateAdded());
+                assertEquals(expected.getItemLocationId(), actual.getItemLocationId());
+            }
+
+            StringWriter csv = new StringWriter();
+            ItemBulkTransfer.Result exported = transfer.exportCsv(connection, csv, null);
+            assertEquals(120_000, exported.rows);
+            assertTrue(csv.toString().startsWith("id,itemName,date_added,itemLocation_id\n1,\"tab\there \\ newline\n味噌 0\",2022-01-08,1\n"));
+        } finally {
+            execute(connection, "DROP TABLE IF EXISTS " + TABLE);
+            connection.close();
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.myjapanese;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+public class ItemChangeStreamTest {
+
+    private MockWebServer server;
+    private ItemChangeStream stream;
+    private final List<ItemChangeStream.Batch> batches = Collections.synchronizedList(new ArrayList<ItemChangeStream.Batch>());
+    private final CountDownLatch resync = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        ItemChangeStream.Listener listener = new ItemChangeStream.Listener() {
+            @Override
+            public void onChanges(ItemChangeStream.Batch batch) {
+                batches.add(batch);
+            }
+
+            @Override
+            public void onResyncNeeded() {
+                resync.countDown();
+            }
+        };
+        stream = new ItemChangeStream(new OkHttpClient(), server.url("/api/"), ModelTypeAdapters.createGson(), listener,
+                20, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        stream.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void burstIsMergedAndResumedAfterTheServerCloses() throws Exception {
+        // 2,000 events on 10 items, then the connection goes away
+        server.enqueue(new MockResponse().withWebSocketUpgrade(new ServerSocket() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                for (int i = 1; i <= 2_000; i++) {
+                    int itemId = i % 10;
+                    webSocket.send(i % 7 == 0
+                            ? event(i, "{\"type\":\"item_deleted\",\"deleted_id\":" + itemId)
+                            : event(i, "{\"type\":\"item_upserted\",\"item\":{\"id\":" + itemId + ",\"itemName\":\"v" + i
+                            + "\",\"date_added\":\"2024-05-01\",\"itemLocation\":1}"));
+                }
+                webSocket.send(event(2_001, "{\"type\":\"location_upserted\",\"location\":{\"id\":3,\"locationName\":\"Attic\"}"));
+                webSocket.close(1001, "restarting");
+            }
+        }));
+        final CountDownLatch lastSent = new CountDownLatch(1);
+        server.enqueue(new MockResponse().withWebSocketUpgrade(new ServerSocket() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send(event(2_002, "{\"type\":\"item_deleted\",\"deleted_id\":1"));
+                webSocket.send(event(2_003, "{\"type\":\"some_future_type\""));
+                lastSent.countDown();
+            }
+        }));
+
+        stream.start("t0");
+        assertTrue(lastSent.await(5, TimeUnit.SECONDS));
+        assertEquals("/api/item/events/?since=t0", server.takeRequest().getPath());
+        assertEquals("/api/item/events/?since=2001", server.takeRequest().getPath());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (lastEventId() == null || !lastEventId().equals("2003")) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        // Replaying the batches gives the state after the last event
+        Map<Integer, String> names = new HashMap<>();
+        int events = 0;
+        for (ItemChangeStream.Batch batch : batches) {
+            events += batch.events;
+            if (batch.items != null) {
+                assertEquals(batch.lastEventId, batch.items.getToken());
+                for (int id : batch.items.getDeleted()) {
+                    names.remove(id);
+                }
+                for (Item item : batch.items.getUpserted()) {
+                    names.put(item.getId(), item.getItemName());
+                }
+            }
+            if (batch.hasLocationChanges()) {
+                assertEquals("Attic", batch.upsertedLocations.get(0).getLocationName());
+            }
+        }
+        assertEquals(2_003, events);
+        assertTrue("batches " + batches.size(), batches.size() < 100);
+        // Item 5 was last deleted in the burst, item 1 after the reconnect
+        assertFalse(names.containsKey(5));
+        assertFalse(names.containsKey(1));
+        assertEquals("v1999", names.get(9));
+        assertEquals("v2000", names.get(0));
+        assertEquals(8, names.size());
+        assertTrue(stream.isRunning());
+    }
+
+    @Test
+    public void resetStopsTheStreamAndAsksForAResync() throws Exception {
+        server.enqueue(new MockResponse().withWebSocketUpgrade(new ServerSocket() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send("{\"type\":\"reset\"}");
+            }
+        }));
+        stream.start("expired");
+        assertTrue(resync.await(5, TimeUnit.SECONDS));
+        assertFalse(stream.isRunning());
+        assertTrue(batches.isEmpty());
+
+        // A token the server no longer knows can also be refused before the upgrade
+        server.enqueue(new MockResponse().setResponseCode(410));
+        final CountDownLatch secondResync = new CountDownLatch(1);
+        ItemChangeStream refused = new ItemChangeStream(new OkHttpClient(), server.url("/api/"),
+                ModelTypeAdapters.createGson(), new ItemChangeStream.Listener() {
+            @Override
+            public void onChanges(ItemChangeStream.Batch batch) {
+            }
+
+            @Override
+            public void onResyncNeeded() {
+                secondResync.countDown();
+            }
+        }, 20, 10);
+        refused.start("expired");
+        assertTrue(secondResync.await(5, TimeUnit.SECONDS));
+        refused.shutdown();
+    }
+
+    @Test
+    public void serverWithoutTheEndpointStopsTheStreamUntilTheNextSync() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        stream.start("5");
+        assertEquals("/api/item/events/?since=5", server.takeRequest().getPath());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (stream.isRunning()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        // No reconnect, and nothing to resync
+        Thread.sleep(100);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, resync.getCount());
+
+        // The next sync tries again
+        final CountDownLatch opened = new CountDownLatch(1);
+        server.enqueue(new MockResponse().withWebSocketUpgrade(new ServerSocket() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                opened.countDown();
+            }
+        }));
+        stream.syncedTo("6");
+        assertTrue(opened.await(5, TimeUnit.SECONDS));
+        assertEquals("/api/item/events/?since=6", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void syncsKeepARunningStreamUnlessTheyAreBehindIt() throws Exception {
+        final CountDownLatch sent = new CountDownLatch(1);
+        server.enqueue(new MockResponse().withWebSocketUpgrade(new ServerSocket() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                webSocket.send(event(11, "{\"type\":\"item_deleted\",\"deleted_id\":3"));
+                sent.countDown();
+            }
+        }));
+        server.enqueue(new MockResponse().withWebSocketUpgrade(new ServerSocket() {
+        }));
+        stream.start("10");
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!"11".equals(lastEventId())) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+
+        stream.syncedTo("11");
+        stream.syncedTo("12");
+        assertEquals(1, server.getRequestCount());
+        // A full load from before event 11 lost its change, the stream starts over from there
+        stream.syncedTo("10");
+        server.takeRequest();
+        assertEquals("/api/item/events/?since=10", server.takeRequest(5, TimeUnit.SECONDS).getPath());
+
+        assertFalse(ItemChangeStream.isOlder("12", "11"));
+        assertTrue(ItemChangeStream.isOlder("9", "11"));
+        assertTrue(ItemChangeStream.isOlder("opaque", "11"));
+        assertFalse(ItemChangeStream.isOlder("opaque", "opaque"));
+    }
+
+    // Answers the client's close frame, or MockWebServer.shutdown() waits for the connection
+    private abstract static class ServerSocket extends WebSocketListener {
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            webSocket.close(code, null);
+        }
+    }
+
+    private String lastEventId() {
+        synchronized (batches) {
+            return batches.isEmpty() ? null : batches.get(batches.size() - 1).lastEventId;
+        }
+    }
+
+    private static String event(int id, String fieldsWithoutClosingBrace) {
+        return fieldsWithoutClosingBrace + ",\"id\":\"" + id + "\"}";
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+public class ItemCsvTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void exportedFileImportsBackTheSameItems() throws IOException {
+        List<Location> locations = Arrays.asList(location(1, "冷蔵庫"), location(2, "Pantry, top shelf"));
+        List<Item> items = new ArrayList<>();
+        items.add(new Item(1, "rice", "2024-05-01", 1));
+        items.add(new Item(2, "miso \"red\"", "2024-05-02", 2));
+        items.add(new Item(3, "line\nbreak", "2024-05-03", 1));
+        items.add(new Item(4, "=SUM(A1)", "2024-05-04", 2));
+        items.add(new Item(5, " padded ", "2024-05-05", 1));
+        items.add(new Item(6, "lost", "2024-05-06", 9));
+        for (int i = 0; i < 2_000; i++) {
+            items.add(new Item(10 + i, "味噌 " + i, "2024-06-01", 1 + i % 2));
+        }
+        File file = folder.newFile("items.csv");
+        ItemCsv.ExportResult exported = ItemCsv.export(items, locations, file, null);
+        assertEquals(items.size(), exported.rows);
+        assertEquals(file.length(), exported.bytes);
+
+        // Location 9 is unknown to the import as well, that row is reported and the rest goes through
+        RecordingSender sender = new RecordingSender();
+        ItemCsv.ImportResult imported = ItemCsv.importItems(file, locations, sender, 300, 3, null);
+        assertEquals(items.size() - 1, imported.rows);
+        assertEquals(items.size() - 1, imported.saved);
+        assertEquals(1, imported.invalid);
+        assertEquals(7, sender.batches.get());
+        assertEquals(1, imported.problems.size());
+        assertEquals(7, imported.problems.get(0).row);
+        assertEquals("unknown location: 9", imported.problems.get(0).message);
+
+        List<Item> received = sender.sorted();
+        assertEquals("rice", received.get(0).getItemName());
+        assertEquals("miso \"red\"", received.get(1).getItemName());
+        assertEquals(2, received.get(1).getItemLocationId());
+        assertEquals("line\nbreak", received.get(2).getItemName());
+        assertEquals("=SUM(A1)", received.get(3).getItemName());
+        // Quoted, so its spaces are part of the name
+        assertEquals(" padded ", received.get(4).getItemName());
+        assertEquals("味噌 1999", received.get(received.size() - 1).getItemName());
+        assertEquals("2024-06-01", received.get(received.size() - 1).getDateAdded());
+    }
+
+    @Test
+    public void importValidatesRows() throws IOException {
+        File file = write("\uFEFFname,date_added,location\r\n"
+                + "rice,2024-5-1,Pantry\n"
+                + ",2024-05-01,Pantry\n"
+                + "miso,yesterday,Pantry\n"
+                + "natto,2024-05-01,Garage\n"
+                + "\"tofu\"x,2024-05-01,Pantry\n"
+                + "soy,2024-05-01\n"
+                + "\"  \",2024-05-01,Pantry\n"
+                + "\n"
+                + "\"nori, dried\",2024-05-01,1\n"
+                + " natto ,2024-05-01, Pantry ");
+        RecordingSender sender = new RecordingSender();
+        ItemCsv.ImportResult result = ItemCsv.importItems(file, Arrays.asList(location(1, "Pantry")), sender, null);
+
+        assertEquals(3, result.rows);
+        assertEquals(6, result.invalid);
+        List<String> problems = new ArrayList<>();
+        for (ItemCsv.Problem problem : result.problems) {
+            problems.add(problem.toString());
+        }
+        assertEquals(Arrays.asList("row 3: name is empty", "row 4: date is not yyyy-MM-dd: yesterday",
+                "row 5: unknown location: Garage", "row 6: text after a closing quote",
+                "row 7: expected 3 columns, found 2", "row 8: name is empty"), problems);
+        List<Item> received = sender.sorted();
+        assertEquals("2024-05-01", received.get(0).getDateAdded());
+        assertEquals("nori, dried", received.get(1).getItemName());
+        assertEquals(1, received.get(1).getItemLocationId());
+        assertEquals("natto", received.get(2).getItemName());
+        assertEquals(1, received.get(2).getItemLocationId());
+    }
+
+    @Test
+    public void importRefusesAnEmptyBatchOrPool() throws IOException {
+        File file = write("rice,2024-05-01,Pantry\n");
+        List<Location> locations = Arrays.asList(location(1, "Pantry"));
+        try {
+            ItemCsv.importItems(file, locations, new RecordingSender(), 0, 1, null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            ItemCsv.importItems(file, locations, new RecordingSender(), 10, 0, null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void rowCutByTheWindowEndIsReadAgainFromTheNextWindow() {
+        ItemCsv.RowParser parser = new ItemCsv.RowParser();
+        ByteBuffer window = ByteBuffer.wrap("a,\"b\nc\",d\r\ne".getBytes());
+        assertEquals(-1, parser.parse(window, 0, 6, false));
+        assertEquals(-1, parser.parse(window, 0, 10, false));
+        assertEquals(11, parser.parse(window, 0, 12, false));
+        assertEquals(Arrays.asList("a", "b\nc", "d"), parser.fields);
+        assertEquals(12, parser.parse(window, 11, 12, true));
+        assertEquals(Collections.singletonList("e"), parser.fields);
+    }
+
+    @Test
+    public void failedBatchStopsTheImport() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            csv.append("item ").append(i).append(",2024-05-01,Pantry\n");
+        }
+        final AtomicInteger sent = new AtomicInteger();
+        ItemCsv.BatchSender failing = new ItemCsv.BatchSender() {
+            @Override
+            public List<ItemMutationResult> send(List<ItemMutation> batch, String idempotencyKey) throws IOException {
+                sent.incrementAndGet();
+                throw new IOException("HTTP 500");
+            }
+        };
+        try {
+            ItemCsv.importItems(write(csv.toString()), Arrays.asList(location(1, "Pantry")), failing, 10, 1, null);
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Batch starting at row 1 failed: HTTP 500"));
+        }
+        assertTrue(sent.get() < 10);
+    }
+
+    @Test
+    public void retriesKeepTheKeyAndAnotherImportOfTheSameFileGetsItsOwn() throws Exception {
+        File file = write("rice,2024-05-01,Pantry\nmiso,2024-05-02,Pantry\n");
+        List<Location> locations = Arrays.asList(location(1, "Pantry"));
+        String saved = "[{\"client_id\":-1,\"status\":\"ok\"},{\"client_id\":-2,\"status\":\"ok\"}]";
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(saved));
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(saved));
+        server.start();
+        try {
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .addInterceptor(new ApiResilience(3, 10, 50, 200, 100, 10_000, new Random(1)).interceptor())
+                    .build();
+            ItemCsv.BatchSender sender = ItemCsv.sender(new Retrofit.Builder().baseUrl(server.url("/")).client(client)
+                    .addConverterFactory(GsonConverterFactory.create()).build().create(ApiService.class));
+
+            assertEquals(2, ItemCsv.importItems(file, locations, sender, null).saved);
+            String first = server.takeRequest().getHeader("Idempotency-Key");
+            assertEquals(first, server.takeRequest().getHeader("Idempotency-Key"));
+
+            assertEquals(2, ItemCsv.importItems(file, locations, sender, null).saved);
+            assertNotEquals(first, server.takeRequest().getHeader("Idempotency-Key"));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private File write(String text) throws IOException {
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+    private static Location location(int id, String name) {
+        Location location = new Location();
+        location.setId(id);
+        location.setLocationName(name);
+        return location;
+    }
+
+    // Saves everything and keeps the items, in row order once sorted by their temporary ids
+    private static class RecordingSender implements ItemCsv.BatchSender {
+        private static final Gson GSON = new Gson();
+        final AtomicInteger batches = new AtomicInteger();
+        final List<Item> items = Collections.synchronizedList(new ArrayList<Item>());
+
+        @Override
+        public List<ItemMutationResult> send(List<ItemMutation> batch, String idempotencyKey) {
+            batches.incrementAndGet();
+            List<ItemMutationResult> results = new ArrayList<>();
+            for (ItemMutation mutation : batch) {
+                items.add(mutation.getItem());
+                results.add(GSON.fromJson("{\"client_id\":" + mutation.getClientId() + ",\"status\":\"ok\"}",
+                        ItemMutationResult.class));
+            }
+            return results;
+        }
+
+        List<Item> sorted() {
+            List<Item> sorted = new ArrayList<>(items);
+            Collections.sort(sorted, new Comparator<Item>() {
+                @Override
+                public int compare(Item a, Item b) {
+                    return Integer.compare(b.getId(), a.getId());
+                }
+            });
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+public class ItemDeltaSyncTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final Gson gson = ModelTypeAdapters.createGson();
+    private MockWebServer server;
+    private ApiService service;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build()
+                .create(ApiService.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void mergerKeepsPositionsAndAppliesTheLastChangePerId() {
+        List<Item> snapshot = Arrays.asList(item(1, "a"), item(2, "b"), item(3, "c"));
+        List<Item> merged = ItemDeltaMerger.merge(snapshot,
+                Arrays.asList(item(2, "b2"), item(4, "d"), item(4, "d2"), item(3, "c2")),
+                new int[]{1, 3, 99});
+        // 3 was deleted and upserted in the same delta, the upsert wins; 99 was never there
+        assertEquals("b2,c2,d2", names(merged));
+        assertSame(snapshot, ItemDeltaMerger.merge(snapshot, null, null));
+    }
+
+    @Test
+    public void deltaSyncMergesChangesAndFallsBackToAFullLoadOnceTheTokenExpired() throws Exception {
+        Random random = new Random(3);
+        Map<Integer, Item> backend = new LinkedHashMap<>();
+        for (int id = 1; id <= 100_000; id++) {
+            backend.put(id, item(id, "item " + id));
+        }
+        ItemRepository repository = new ItemRepository(DIRECT);
+
+        enqueueFullList(backend.values(), "t1");
+        ItemLoader.Update full = sync(null);
+        assertNull(full.changes);
+        assertEquals("t1", full.token);
+        repository.applyUpdate(full);
+        assertEquals("/item/", server.takeRequest().getPath());
+
+        // 0.1% churn: 25 tombstones, one of them for an id the client never had, 50 edits and 25 new items
+        Set<Integer> deleted = new LinkedHashSet<>();
+        while (deleted.size() < 24) {
+            deleted.add(1 + random.nextInt(100_000));
+        }
+        deleted.add(999_999);
+        List<Item> upserted = new ArrayList<>();
+        while (upserted.size() < 50) {
+            int id = 1 + random.nextInt(100_000);
+            if (!deleted.contains(id)) {
+                upserted.add(item(id, "edited " + id + "." + upserted.size()));
+            }
+        }
+        for (int i = 0; i < 25; i++) {
+            upserted.add(item(200_000 + i, "new " + i));
+        }
+        int[] deletedIds = new int[deleted.size()];
+        int n = 0;
+        for (int id : deleted) {
+            backend.remove(id);
+            deletedIds[n++] = id;
+        }
+        for (Item item : upserted) {
+            backend.put(item.getId(), item);
+        }
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json")
+                .setBody(gson.toJson(new ItemChanges("t2", upserted, deletedIds))));
+
+        ItemLoader.Update delta = sync("t1");
+        assertNull(delta.items);
+        assertEquals("t2", delta.token);
+        assertEquals(upserted.size(), delta.changes.getUpserted().size());
+        assertEquals("/item/changes/?since=t1", server.takeRequest().getPath());
+        repository.applyUpdate(delta);
+        ItemRepository.Snapshot snapshot = repository.snapshot();
+        assertEquals("t2", snapshot.itemsToken);
+        assertEquals(100_000 - 24 + 25, snapshot.items.size());
+        // Edits in place, new items at the end, tombstones gone: the order the backend map keeps too
+        assertEquals(names(new ArrayList<>(backend.values())), names(snapshot.items));
+
+        // The server has forgotten t2, the loader downloads everything instead
+        server.enqueue(new MockResponse().setResponseCode(410));
+        backend.remove(1);
+        enqueueFullList(backend.values(), "t3");
+        ItemLoader.Update fallback = sync("t2");
+        assertNull(fallback.changes);
+        assertEquals("t3", fallback.token);
+        assertEquals("/item/changes/?since=t2", server.takeRequest().getPath());
+        assertEquals("/item/", server.takeRequest().getPath());
+        repository.applyUpdate(fallback);
+        assertEquals("t3", repository.snapshot().itemsToken);
+        assertEquals(names(new ArrayList<>(backend.values())), names(repository.snapshot().items));
+    }
+
+    private ItemLoader.Update sync(String token) throws Exception {
+        return ItemLoader.sync(service, token, gson, 500, null, new RequestCoordinator.Calls());
+    }
+
+    private void enqueueFullList(Iterable<Item> items, String token) {
+        StringBuilder body = new StringBuilder("[");
+        for (Item item : items) {
+            if (body.length() > 1) {
+                body.append(',');
+            }
+            body.append(gson.toJson(item));
+        }
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json")
+                .setHeader(ItemLoader.SYNC_TOKEN_HEADER, token)
+                .setBody(body.append(']').toString()));
+    }
+
+    private static Item item(int id, String name) {
+        return new Item(id, name, "2024-05-01", 1 + id % 7);
+    }
+
+    private static String names(List<Item> items) {
+        StringBuilder sb = new StringBuilder();
+        for (Item item : items) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(item.getItemName());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.myjapanese;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+public class ItemPagerTest {
+
+    private static final int ITEM_COUNT = 200_000;
+    private static final int PAGE_SIZE = 1_000;
+
+    private MockWebServer server;
+    private ApiService service;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        // Serves the items in id order, the cursor is the id the page starts at
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                HttpUrl url = request.getRequestUrl();
+                String cursor = url.queryParameter("cursor");
+                int from = cursor == null ? 0 : Integer.parseInt(cursor);
+                int to = Math.min(ITEM_COUNT, from + Integer.parseInt(url.queryParameter("page_size")));
+                StringBuilder body = new StringBuilder("{\"next\":");
+                body.append(to == ITEM_COUNT ? "null"
+                        : "\"" + url.newBuilder().setQueryParameter("cursor", String.valueOf(to)).build() + "\"");
+                body.append(",\"results\":[");
+                for (int id = from; id < to; id++) {
+                    body.append(id == from ? "" : ",").append("{\"id\":").append(id).append(",\"itemName\":\"item ")
+                            .append(id).append("\",\"date_added\":\"2024-01-01\",\"itemLocation\":1}");
+                }
+                return new MockResponse().setHeader("Content-Type", "application/json")
+                        .setBody(body.append("]}").toString());
+            }
+        });
+        server.start();
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addConverterFactory(GsonConverterFactory.create(ModelTypeAdapters.createGson()))
+                .build()
+                .create(ApiService.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void pagesFollowTheCursorOneRequestAtATime() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        final int[] received = {0};
+        final int[] requestsAtFirstPage = {-1};
+        final Throwable[] failure = {null};
+        new ItemPager(service, PAGE_SIZE).start(new ItemPager.PageListener() {
+            @Override
+            public void onPage(List<Item> items) {
+                if (requestsAtFirstPage[0] < 0) {
+                    requestsAtFirstPage[0] = server.getRequestCount();
+                }
+                // Only the current page is held, the next one is asked for once this one was handed over
+                assertTrue(items.size() <= PAGE_SIZE);
+                assertEquals(received[0], items.get(0).getId());
+                received[0] += items.size();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                failure[0] = t;
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertNull(failure[0]);
+        assertEquals(ITEM_COUNT, received[0]);
+        assertEquals(1, requestsAtFirstPage[0]);
+        assertEquals(ITEM_COUNT / PAGE_SIZE, server.getRequestCount());
+        assertEquals("/item/?page_size=" + PAGE_SIZE, server.takeRequest().getPath());
+        assertEquals("/item/?cursor=" + PAGE_SIZE + "&page_size=" + PAGE_SIZE,server.takeRequest().getPath());
+    }
+
+    @Test
+    public void cancelStopsBeforeTheNextPage() throws Exception {
+        final CountDownLatch thirdPage = new CountDownLatch(1);
+        final int[] pages = {0};
+        final ItemPager pager = new ItemPager(service, PAGE_SIZE);
+        pager.start(new ItemPager.PageListener() {
+            @Override
+            public void onPage(List<Item> items) {
+                if (++pages[0] == 3) {
+                    pager.cancel();
+                    thirdPage.countDown();
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                fail("cancelled pager completed");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail("cancelled pager failed: " + t);
+            }
+        });
+
+        assertTrue(thirdPage.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(3, pages[0]);
+        assertEquals(3, server.getRequestCount());
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.myjapanese;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ItemRepositoryTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void chunkedListMatchesDeltaMerger() {
+        Random random = new Random(7);
+        List<Item> expected = items(1, 1_000);
+        ChunkedItemList actual = ChunkedItemList.of(expected);
+        int nextId = 1_001;
+        for (int round = 0; round < 300; round++) {
+            // Mostly small deltas that are applied in place, now and then a large one that is merged
+            int changes = random.nextInt(10) == 0 ? 200 : 1 + random.nextInt(6);
+            List<Item> upserted = new ArrayList<>();
+            int[] deleted = new int[random.nextInt(changes + 1)];
+            for (int i = 0; i < deleted.length; i++) {
+                deleted[i] = expected.isEmpty() || random.nextInt(5) == 0 ? -1 - i
+                        : expected.get(random.nextInt(expected.size())).getId();
+            }
+            for (int i = deleted.length; i < changes; i++) {
+                int id = random.nextBoolean() || expected.isEmpty() ? nextId++ : expected.get(random.nextInt(expected.size())).getId();
+                upserted.add(new Item(id, "item " + id + "." + round, "2024-05-01", 1));
+            }
+            if (deleted.length > 0 && !upserted.isEmpty() && random.nextInt(4) == 0) {
+                deleted[0] = upserted.get(0).getId();
+            }
+
+            expected = ItemDeltaMerger.merge(expected, upserted, deleted);
+            actual = actual.apply(upserted, deleted);
+            assertEquals(ids(expected), ids(actual));
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame(expected.get(i), actual.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void snapshotsListChangesAndShareUntouchedChunks() {
+        ItemRepository repository = new ItemRepository(DIRECT);
+        final List<ItemRepository.Snapshot> seen = new ArrayList<>();
+        repository.observe(new ItemRepository.Observer() {
+            @Override
+            public void onSnapshot(ItemRepository.Snapshot snapshot) {
+                seen.add(snapshot);
+            }
+        }, DIRECT);
+        assertEquals(0, seen.get(0).version);
+
+        List<Item> cached = items(1, 500);
+        repository.replaceItems(cached, "t1", "cache");
+        ItemRepository.Snapshot first = repository.snapshot();
+        cached.clear();
+        assertEquals(500, first.items.size());
+        assertEquals("t1", first.itemsToken);
+        assertFalse(first.synced);
+        assertTrue(first.itemsReplaced);
+
+        Item edited = new Item(250, "edited", "2024-05-02", 2);
+        repository.upsertItem(edited);
+        ItemRepository.Snapshot second = repository.snapshot();
+        assertSame(edited, second.items.get(249));
+        assertEquals(Arrays.asList(edited), second.upserted);
+        // Only the chunk holding item 250 was copied
+        assertSame(first.items.get(0), second.items.get(0));
+        assertEquals("item 250", first.items.get(249).getItemName());
+
+        repository.replaceItem(250, new Item(900, "saved", "2024-05-02", 2));
+        repository.removeItem(1);
+        repository.removeItem(12_345);
+        ItemRepository.Snapshot last = repository.snapshot();
+        assertEquals(4, last.version);
+        assertArrayEquals(new int[]{1}, last.removed);
+        assertEquals(499, last.items.size());
+        assertEquals(-1, last.items.indexOfId(250));
+        assertEquals(248, last.items.indexOfId(900));
+        assertEquals(5, seen.size());
+        assertSame(last, seen.get(4));
+    }
+
+    @Test
+    public void slowObserverSkipsToNewestSnapshot() throws Exception {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        final ExecutorService observerThread = Executors.newSingleThreadExecutor();
+        try {
+            final ItemRepository repository = new ItemRepository(writer);
+            final CountDownLatch release = new CountDownLatch(1);
+            final List<Long> versions = Collections.synchronizedList(new ArrayList<Long>());
+            final AtomicReference<ItemRepository.Snapshot> latest = new AtomicReference<>();
+            repository.observe(new ItemRepository.Observer() {
+                @Override
+                public void onSnapshot(ItemRepository.Snapshot snapshot) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    versions.add(snapshot.version);
+                    latest.set(snapshot);
+                }
+            }, observerThread);
+
+            // Readers on other threads see consistent snapshots while the writer works
+            final AtomicReference<Throwable> readerFailure = new AtomicReference<>();
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10_000; i++) {
+                            ItemRepository.Snapshot snapshot = repository.snapshot();
+                            assertEquals(snapshot.version, snapshot.items.size());
+                        }
+                    } catch (Throwable t) {
+                        readerFailure.set(t);
+                    }
+                }
+            });
+            reader.start();
+            for (int i = 1; i <= 1_000; i++) {
+                repository.upsertItem(new Item(i, "item " + i, "2024-05-01", 1));
+            }
+            reader.join();
+            assertNull(readerFailure.get());
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+            release.countDown();
+            // Queued behind the one delivery that can be waiting for the blocked observer
+            observerThread.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+
+            assertEquals(1_000, latest.get().version);
+            assertEquals(1_000, latest.get().items.size());
+            assertTrue("delivered " + versions.size(), versions.size() < 10);
+            for (int i = 1; i < versions.size(); i++) {
+                assertTrue(versions.get(i) > versions.get(i - 1));
+            }
+        } finally {
+            writer.shutdown();
+            observerThread.shutdown();
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void searchesFollowTheChangesOnTheWriter() {
+        ItemRepository repository = new ItemRepository(DIRECT);
+        final List<List<Item>> results = new ArrayList<>();
+        final List<Long> versions = new ArrayList<>();
+        ItemRepository.SearchCallback callback = new ItemRepository.SearchCallback() {
+            @Override
+            public void onResults(ItemSearchIndex.Query query, List<Item> found, long version) {
+                results.add(found);
+                versions.add(version);
+            }
+        };
+        ItemSearchIndex.Query query = new ItemSearchIndex.Query().contains("item 12").sortBy(ItemSearchIndex.SORT_NAME);
+
+        repository.replaceItems(items(1, 200), null, "cache");
+        repository.search(query, DIRECT, callback);
+        assertEquals(Arrays.asList(12, 120, 121, 122, 123, 124, 125, 126, 127, 128, 129), ids(results.get(0)));
+        assertEquals(Long.valueOf(1), versions.get(0));
+
+        // Deltas and edits after the first search update the index in place, a full list rebuilds it
+        repository.applyUpdate(new ItemLoader.Update(null, new ItemChanges("t1",
+                Arrays.asList(new Item(1_200, "item 1200", "2024-05-01", 1)), new int[]{120, 121}), "t1"));
+        repository.replaceItem(12, new Item(12, "renamed", "2024-05-01", 1));
+        repository.search(query, DIRECT, callback);
+        assertEquals(Arrays.asList(1_200, 122, 123, 124, 125, 126, 127, 128, 129), ids(results.get(1)));
+        repository.applyUpdate(new ItemLoader.Update(items(115, 10), null, "t2"));
+        repository.search(query, DIRECT, callback);
+        assertEquals(Arrays.asList(120, 121, 122, 123, 124), ids(results.get(2)));
+        assertEquals(Long.valueOf(4), versions.get(2));
+    }
+
+    @Test
+    public void changeItemIdKeepsTheNewerValuesOfTheRow() {
+        ItemRepository repository = new ItemRepository(DIRECT);
+        repository.replaceItems(items(1, 3), null, "test");
+        Item edited = new Item(-1, "edited", "2024-05-02", 2);
+        repository.upsertItem(edited);
+        repository.changeItemId(-1, 42);
+
+        ItemRepository.Snapshot snapshot = repository.snapshot();
+        assertEquals(Arrays.asList(1, 2, 3, 42), ids(snapshot.items));
+        assertEquals("edited", snapshot.items.get(3).getItemName());
+        assertArrayEquals(new int[]{-1}, snapshot.removed);
+        // The row is a new item, the one handed in keeps its id
+        assertEquals(-1, edited.getId());
+    }
+
+    @Test
+    public void serverIdThatArrivedFirstIsNotListedTwice() {
+        ItemRepository repository = new ItemRepository(DIRECT);
+        repository.replaceItems(items(1, 3), null, "test");
+        repository.upsertItem(new Item(-1, "new", "2024-05-02", 2));
+        // A delta sync brings the created item before the bulk answer does
+        repository.applyUpdate(new ItemLoader.Update(null, new ItemChanges("t2",
+                Collections.singletonList(new Item(42, "new", "2024-05-02", 2)), new int[0]), "t2"));
+        assertEquals(Arrays.asList(1, 2, 3, -1, 42), ids(repository.snapshot().items));
+
+        Item saved = new Item(42, "new", "2024-05-02", 2);
+        repository.replaceItem(-1, saved);
+        ItemRepository.Snapshot snapshot = repository.snapshot();
+        assertEquals(Arrays.asList(1, 2, 3, 42), ids(snapshot.items));
+        assertSame(saved, snapshot.items.get(3));
+        assertArrayEquals(new int[]{-1, 42}, snapshot.removed);
+
+        // The same for an item edited again before the answer, it keeps its newer values
+        repository.upsertItem(new Item(-2, "newer", "2024-05-03", 2));
+        repository.upsertItem(new Item(43, "older", "2024-05-03", 2));
+        repository.changeItemId(-2, 43);
+        snapshot = repository.snapshot();
+        assertEquals(Arrays.asList(1, 2, 3, 42, 43), ids(snapshot.items));
+        assertEquals("newer", snapshot.items.get(4).getItemName());
+    }
+
+    private static List<Item> items(int firstId, int count) {
+        List<Item> items = new ArrayList<>();
+        for (int id = firstId; id < firstId + count; id++) {
+            items.add(new Item(id, "item " + id, "2024-05-01", 1 + id % 5));
+        }
+        return items;
+    }
+
+    private static List<Integer> ids(List<Item> items) {
+        List<Integer> ids = new ArrayList<>();
+        for (Item item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.myjapanese;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ItemSearchIndexTest {
+
+    private static final String[] WORDS = {"rice", "miso", "みそ", "soy sauce", "udon", "nori", "ＡＢＣ", "tofu"};
+
+    @Test
+    public void foldsCaseKanaAndWidth() {
+        ItemSearchIndex index = new ItemSearchIndex();
+        index.setItems(Arrays.asList(
+                new Item(1, "Miso Paste", "2024-01-01", 1),
+                new Item(2, "ミソ汁", "2024-01-02", 1),
+                new Item(3, "ＡＢＣ crackers", "2024-01-03", 2),
+                new Item(4, null, null, 2)));
+
+        assertEquals(ids(1), ids(index.search(new ItemSearchIndex.Query().contains("PASTE"))));
+        assertEquals(ids(2), ids(index.search(new ItemSearchIndex.Query().startsWith("みそ"))));
+        assertEquals(ids(3), ids(index.search(new ItemSearchIndex.Query().contains("abc"))));
+        assertEquals(ids(1, 2), ids(index.search(new ItemSearchIndex.Query().location(1).sortBy(ItemSearchIndex.SORT_DATE))));
+        assertTrue(index.search(new ItemSearchIndex.Query().location(9)).isEmpty());
+    }
+
+    @Test
+    public void incrementalUpdatesMatchAScan() {
+        Random random = new Random(11);
+        Map<Integer, Item> reference = new LinkedHashMap<>();
+        List<Item> initial = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            Item item = randomItem(random, id);
+            initial.add(item);
+            reference.put(id, item);
+        }
+        ItemSearchIndex index = new ItemSearchIndex();
+        index.setItems(initial);
+
+        for (int step = 0; step < 3_000; step++) {
+            int id = 1 + random.nextInt(700);
+            if (random.nextInt(3) == 0) {
+                assertEquals(reference.remove(id) != null, index.remove(id));
+            } else {
+                Item item = randomItem(random, id);
+                reference.put(id, item);
+                index.put(item);
+            }
+            assertEquals(reference.size(), index.size());
+
+            if (step % 50 == 0) {
+                for (int q = 0; q < 20; q++) {
+                    checkQuery(index, reference, randomQuery(random));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emptyPostingsAreDroppedAndReused() {
+        ItemSearchIndex index = new ItemSearchIndex();
+        index.setItems(Arrays.asList(new Item(1, "rice", "2024-01-01", 1), new Item(2, "miso", "2024-01-01", 2)));
+        // Location 1 and the trigrams "ric" and "ice"
+        index.remove(1);
+        int left = index.postingsCount();
+        for (int id = 10; id < 1_010; id++) {
+            index.put(new Item(id, "one-off name " + id, "2024-01-01", id));
+            index.remove(id);
+        }
+        assertEquals(left, index.postingsCount());
+        assertTrue(index.search(new ItemSearchIndex.Query().contains("rice")).isEmpty());
+        assertTrue(index.search(new ItemSearchIndex.Query().location(1)).isEmpty());
+
+        // Reused lists start out empty
+        index.put(new Item(3, "rice cake", "2024-01-02", 1));
+        assertEquals(ids(3), ids(index.search(new ItemSearchIndex.Query().contains("rice"))));
+        assertEquals(ids(3), ids(index.search(new ItemSearchIndex.Query().location(1))));
+        index.remove(2);
+        index.remove(3);
+        assertEquals(0, index.postingsCount());
+    }
+
+    private static void checkQuery(ItemSearchIndex index, Map<Integer, Item> reference, Object[] spec) {
+        String text = (String) spec[0];
+        boolean prefix = (Boolean) spec[1];
+        Integer location = (Integer) spec[2];
+        int from = (Integer) spec[3];
+        int to = (Integer) spec[4];
+        int sort = (Integer) spec[5];
+
+        ItemSearchIndex.Query query = new ItemSearchIndex.Query().sortBy(sort);
+        if (prefix) {
+            query.startsWith(text);
+        } else {
+            query.contains(text);
+        }
+        if (location != null) {
+            query.location(location);
+        }
+        if (from != Integer.MIN_VALUE || to != Integer.MAX_VALUE) {
+            query.dates(from, to);
+        }
+
+        List<Integer> expected = new ArrayList<>();
+        String folded = ItemSearchIndex.fold(text);
+        for (Item item : reference.values()) {
+            String name = item.getItemName() == null ? null : ItemSearchIndex.fold(item.getItemName());
+            int day = IsoDates.parseEpochDay(item.getDateAdded());
+            boolean textMatches = folded.isEmpty() || name != null && (prefix ? name.startsWith(folded) : name.contains(folded));
+            boolean dateMatches = from == Integer.MIN_VALUE && to == Integer.MAX_VALUE
+                    || day != IsoDates.INVALID_DAY && day >= from && day <= to;
+            if (textMatches && dateMatches && (location == null || item.getItemLocationId() == location)) {
+                expected.add(item.getId());
+            }
+        }
+
+        List<Item> found = index.search(query);
+        List<Integer> actual = ids(found);
+        List<Integer> sortedExpected = new ArrayList<>(expected);
+        List<Integer> sortedActual = new ArrayList<>(actual);
+        java.util.Collections.sort(sortedExpected);
+        java.util.Collections.sort(sortedActual);
+        assertEquals(Arrays.toString(spec), sortedExpected, sortedActual);
+
+        for (int i = 1; i < found.size(); i++) {
+            if (sort == ItemSearchIndex.SORT_DATE) {
+                assertTrue(IsoDates.parseEpochDay(found.get(i - 1).getDateAdded()) <= IsoDates.parseEpochDay(found.get(i).getDateAdded()));
+            } else if (sort == ItemSearchIndex.SORT_NAME && found.get(i - 1).getItemName() != null) {
+                assertTrue(ItemSearchIndex.fold(found.get(i - 1).getItemName()).compareTo(ItemSearchIndex.fold(found.get(i).getItemName())) <= 0);
+            }
+        }
+    }
+
+    private static Object[] randomQuery(Random random) {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        int start = random.nextInt(word.length());
+        String text = random.nextInt(4) == 0 ? "" : word.substring(start, Math.min(word.length(), start + 1 + random.nextInt(4)));
+        Integer location = random.nextBoolean() ? 1 + random.nextInt(6) : null;
+        int from = Integer.MIN_VALUE;
+        int to = Integer.MAX_VALUE;
+        if (random.nextBoolean()) {
+            from = IsoDates.parseEpochDay("2023-01-01") + random.nextInt(400);
+            to = from + random.nextInt(200);
+        }
+        return new Object[]{text, random.nextBoolean(), location, from, to, random.nextInt(3)};
+    }
+
+    private static Item randomItem(Random random, int id) {
+        String name = random.nextInt(20) == 0 ? null : WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(50);
+        String date = random.nextInt(20) == 0 ? "someday"
+                : IsoDates.formatEpochDay(IsoDates.parseEpochDay("2023-01-01") + random.nextInt(730));
+        return new Item(id, name, date, 1 + random.nextInt(6));
+    }
+
+    private static List<Integer> ids(Integer... ids) {
+        return Arrays.asList(ids);
+    }
+
+    private static List<Integer> ids(List<Item> items) {
+        List<Integer> ids = new ArrayList<>();
+        for (Item item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import retrofit2.Retrofit;
+
+import static org.junit.Assert.*;
+
+public class ItemStreamReaderTest {
+
+    private static final int ITEM_COUNT = 200_000;
+    private static final int CHUNK_SIZE = 500;
+
+    @Test
+    public void firstChunkArrivesBeforeWholePayloadIsRead() throws IOException {
+        final GeneratedItemsReader in = new GeneratedItemsReader(ITEM_COUNT);
+        final int[] chunks = {0};
+        final long[] consumedAtFirstChunk = {-1};
+
+        int total = new ItemStreamReader(new Gson(), CHUNK_SIZE).read(in, new ItemStreamReader.ChunkListener() {
+            @Override
+            public void onChunk(List<Item> chunk) {
+                assertTrue(chunk.size() <= CHUNK_SIZE);
+                if (chunks[0] == 0) {
+                    consumedAtFirstChunk[0] = in.charsProduced;
+                    assertEquals(0, chunk.get(0).getId());
+                }
+                chunks[0]++;
+            }
+        });
+
+        assertEquals(ITEM_COUNT, total);
+        assertEquals(ITEM_COUNT / CHUNK_SIZE, chunks[0]);
+        // Only a small window of the payload had been pulled when the first rows were handed over
+        assertTrue(consumedAtFirstChunk[0] < in.charsProduced / 100);
+    }
+
+    @Test
+    public void downloadHandsOverTheFirstChunkBeforeTheBodyHasArrived() throws Exception {
+        Buffer payload = new Buffer();
+        char[] buf = new char[8192];
+        GeneratedItemsReader generated = new GeneratedItemsReader(ITEM_COUNT);
+        for (int n; (n = generated.read(buf, 0, buf.length)) != -1; ) {
+            payload.writeUtf8(new String(buf, 0, n));
+        }
+        final long payloadBytes = payload.size();
+
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json")
+                .setHeader(ItemLoader.SYNC_TOKEN_HEADER, "t1").setBody(payload));
+        server.start();
+        final long[] bytesRead = {0};
+        try {
+            // Counts what the loader has pulled off the socket
+            OkHttpClient client = new OkHttpClient.Builder().addNetworkInterceptor(new Interceptor() {
+                @Override
+                public Response intercept(Chain chain) throws IOException {
+                    Response response = chain.proceed(chain.request());
+                    ResponseBody body = response.body();
+                    ForwardingSource counting = new ForwardingSource(body.source()) {
+                        @Override
+                        public long read(Buffer sink, long byteCount) throws IOException {
+                            long n = super.read(sink, byteCount);
+                            if (n > 0) {
+                                bytesRead[0] += n;
+                            }
+                            return n;
+                        }
+                    };
+                    return response.newBuilder()
+                            .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(counting)))
+                            .build();
+                }
+            }).build();
+            ApiService service = new Retrofit.Builder().baseUrl(server.url("/")).client(client).build()
+                    .create(ApiService.class);
+
+            final int[] chunks = {0};
+            final int[] items = {0};
+            final long[] readAtFirstChunk = {-1};
+            String token = ItemLoader.stream(service.streamItems(), new Gson(), CHUNK_SIZE,
+                    new ItemStreamReader.ChunkListener() {
+                        @Override
+                        public void onChunk(List<Item> chunk) {
+                            assertTrue(chunk.size() <= CHUNK_SIZE);
+                            if (chunks[0]++ == 0) {
+                                readAtFirstChunk[0] = bytesRead[0];
+                            }
+                            items[0] += chunk.size();
+                        }
+                    });
+
+            assertEquals(ITEM_COUNT, items[0]);
+            assertEquals("t1", token);
+            assertEquals(ITEM_COUNT / CHUNK_SIZE, chunks[0]);
+            assertEquals(payloadBytes, bytesRead[0]);
+            // The first rows were handed over with under 1% of the body off the socket
+            assertTrue(readAtFirstChunk[0] + " of " + payloadBytes, readAtFirstChunk[0] < payloadBytes / 100);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void streamingTheWholeListKeepsTheHeapFlat() throws Exception {
+        Buffer payload = new Buffer();
+        char[] buf = new char[8192];
+        GeneratedItemsReader generated = new GeneratedItemsReader(ITEM_COUNT);
+        for (int n; (n = generated.read(buf, 0, buf.length)) != -1; ) {
+            payload.writeUtf8(new String(buf, 0, n));
+        }
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setHeader("Content-Type", "application/json").setBody(payload));
+        server.start();
+        try {
+            ApiService service = new Retrofit.Builder().baseUrl(server.url("/")).build().create(ApiService.class);
+            // The payload is already in memory on the server side, only what the download adds is measured
+            final long baseline = usedHeap();
+            final long[] peak = {0};
+            final int[] chunks = {0};
+            ItemLoader.stream(service.streamItems(), new Gson(), CHUNK_SIZE, new ItemStreamReader.ChunkListener() {
+                @Override
+                public void onChunk(List<Item> chunk) {
+                    if (++chunks[0] % 40 == 0) {
+                        peak[0] = Math.max(peak[0], usedHeap() - baseline);
+                    }
+                }
+            });
+
+            assertEquals(ITEM_COUNT / CHUNK_SIZE, chunks[0]);
+            // Holding on to the 200k items takes tens of MB, a chunk and the buffers well under this
+            assertTrue("download kept " + peak[0] / 1024 + " KB", peak[0] < 8 * 1024 * 1024);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @Test
+    public void nullBodyReadsAsEmpty() throws IOException {
+        int total = new ItemStreamReader(new Gson(), CHUNK_SIZE).read(new StringReader("null"), new ItemStreamReader.ChunkListener() {
+            @Override
+            public void onChunk(List<Item> chunk) {
+                fail("No chunk expected");
+            }
+        });
+        assertEquals(0, total);
+    }
+
+    // Produces a JSON array of items on demand, so the payload never exists in memory as a whole
+    private static class GeneratedItemsReader extends Reader {
+        private final int count;
+        private int next = 0;
+        private String pending = "[";
+        private int pendingPos = 0;
+        long charsProduced = 0;
+
+        GeneratedItemsReader(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) {
+            if (pendingPos == pending.length()) {
+                if (next > count) {
+                    return -1;
+                }
+                if (next == count) {
+                    pending = "]";
+                } else {
+                    pending = (next == 0 ? "" : ",") + "{\"id\":" + next + ",\"itemName\":\"item " + next
+                            + "\",\"date_added\":\"2024-01-01\",\"itemLocation\":" + (next % 50) + "}";
+                }
+                next++;
+                pendingPos = 0;
+            }
+            int n = Math.min(len, pending.length() - pendingPos);
+            pending.getChars(pendingPos, pendingPos + n, buf, off);
+            pendingPos += n;
+            charsProduced += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
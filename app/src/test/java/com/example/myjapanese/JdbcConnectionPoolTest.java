@@ -0,0 +1,237 @@
+package com.example.myjapanese;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class JdbcConnectionPoolTest {
+
+    private final List<StubConnection> connections = new ArrayList<>();
+    private JdbcConnectionPool pool;
+
+    private final JdbcConnectionPool.ConnectionFactory factory = new JdbcConnectionPool.ConnectionFactory() {
+        @Override
+        public Connection create() {
+            StubConnection stub = new StubConnection();
+            synchronized (connections) {
+                connections.add(stub);
+            }
+            return stub.proxy;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void checkoutIsBoundedAndWaitersGetReleasedConnections() throws Exception {
+        pool = new JdbcConnectionPool(factory, 2, 60_000, 0);
+        PooledConnection first = pool.borrow(100);
+        PooledConnection second = pool.borrow(100);
+        try {
+            pool.borrow(50);
+            fail();
+        } catch (SQLTimeoutException expected) {
+        }
+        assertEquals(2, pool.getStats().active);
+
+        final AtomicReference<PooledConnection> third = new AtomicReference<>();
+        final CountDownLatch borrowed = new CountDownLatch(1);
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    third.set(pool.borrow(5_000));
+                    borrowed.countDown();
+                } catch (SQLException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        waiter.start();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pool.getStats().waiting == 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        first.close();
+        assertTrue(borrowed.await(5, TimeUnit.SECONDS));
+        // Handed the connection that was given back, no new one was opened
+        assertSame(first, third.get());
+
+        third.get().close();
+        second.close();
+        JdbcConnectionPool.Stats stats = pool.getStats();
+        assertEquals(0, stats.active);
+        assertEquals(2, stats.idle);
+        assertEquals(0, stats.waiting);
+        assertEquals(3, stats.checkouts);
+        assertEquals(2, stats.created);
+        assertTrue(stats.maxWaitNanos >= TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(2, connections.size());
+    }
+
+    @Test
+    public void idleConnectionsAreValidatedOnBorrowAndEvicted() throws Exception {
+        pool = new JdbcConnectionPool(factory, 4, 300, 0, 200);
+        PooledConnection connection = pool.borrow(100);
+        connection.close();
+
+        // Reused right away without a round trip
+        assertSame(connection, pool.borrow(100));
+        assertEquals(0, connections.get(0).validations);
+        connection.close();
+
+        // Idle long enough to be checked, and it went away meanwhile
+        Thread.sleep(250);
+        connections.get(0).valid = false;
+        PooledConnection replacement = pool.borrow(100);
+        assertNotSame(connection, replacement);
+        assertEquals(1, connections.get(0).validations);
+        assertTrue(connections.get(0).closed);
+        assertEquals(1, pool.getStats().invalidated);
+        replacement.close();
+
+        Thread.sleep(350);
+        pool.evictIdle();
+        assertTrue(connections.get(1).closed);
+        assertEquals(1, pool.getStats().evicted);
+        assertEquals(0, pool.getStats().idle);
+    }
+
+    @Test
+    public void brokenConnectionsAndOpenTransactionsAreNotHandedOut() throws Exception {
+        pool = new JdbcConnectionPool(factory, 2, 60_000, 0);
+        PooledConnection connection = pool.borrow(100);
+        connection.getConnection().setAutoCommit(false);
+        connection.close();
+        StubConnection stub = connections.get(0);
+        assertEquals(1, stub.rollbacks);
+        assertTrue(stub.autoCommit);
+        // A second close() does not give it back twice
+        connection.close();
+        assertEquals(1, pool.getStats().idle);
+
+        connection = pool.borrow(100);
+        connection.markBroken();
+        connection.close();
+        assertTrue(stub.closed);
+        assertEquals(0, pool.getStats().idle);
+        assertNotSame(connection, pool.borrow(100));
+    }
+
+    @Test
+    public void statementsAreCachedPerConnection() throws Exception {
+        pool = new JdbcConnectionPool(factory, 1, 60_000, 2);
+        PooledConnection connection = pool.borrow(100);
+        PreparedStatement select = connection.prepare("SELECT 1");
+        assertSame(select, connection.prepare("SELECT 1"));
+        StubConnection stub = connections.get(0);
+        assertEquals(1, stub.prepared.size());
+        assertEquals(1, stub.prepared.get(0).clears);
+
+        connection.prepare("SELECT 2");
+        connection.prepare("SELECT 1");
+        // The least recently used one makes room
+        connection.prepare("SELECT 3");
+        assertEquals(3, stub.prepared.size());
+        assertTrue(stub.prepared.get(1).closed);
+        assertFalse(stub.prepared.get(0).closed);
+        connection.close();
+
+        // Still there for the next borrower of the same connection
+        connection = pool.borrow(100);
+        assertSame(select, connection.prepare("SELECT 1"));
+        connection.close();
+
+        pool.close();
+        assertTrue(stub.closed);
+        assertTrue(stub.prepared.get(0).closed);
+        try {
+            pool.borrow(100);
+            fail();
+        } catch (SQLException expected) {
+        }
+    }
+
+    // Just enough of a JDBC connection for the pool
+    private static final class StubConnection implements InvocationHandler {
+        final Connection proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, this);
+        final List<StubStatement> prepared = new ArrayList<>();
+        volatile boolean valid = true;
+        boolean closed = false;
+        boolean autoCommit = true;
+        int validations = 0;
+        int rollbacks = 0;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "isValid":
+                    validations++;
+                    return valid && !closed;
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "rollback":
+                    rollbacks++;
+                    return null;
+                case "prepareStatement":
+                    StubStatement statement = new StubStatement();
+                    prepared.add(statement);
+                    return statement.proxy;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    private static final class StubStatement implements InvocationHandler {
+        final PreparedStatement proxy = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, this);
+        boolean closed = false;
+        int clears = 0;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "clearParameters":
+                    clears++;
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.myjapanese;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndCoverTheirValues() {
+        for (long value = 0; value < 1_000_000; value += 1 + value / 100) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(value + " above its bucket", value <= LatencyHistogram.upperBound(index));
+            if (index > 0) {
+                assertTrue(value + " below its bucket", value > LatencyHistogram.upperBound(index - 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentilesWithinOneSixteenth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Long tailed, like request latencies in microseconds
+            values[i] = (long) (20_000 * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.count);
+        assertEquals(values[values.length - 1], snapshot.max);
+        assertClose(values[values.length / 2 - 1], snapshot.p50);
+        assertClose(values[values.length * 95 / 100 - 1], snapshot.p95);
+        assertClose(values[values.length * 99 / 100 - 1], snapshot.p99);
+    }
+
+    @Test
+    public void emptyAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().p99);
+        histogram.record(5);
+        histogram.record(-3);
+        assertEquals(2, histogram.getCount());
+        assertEquals(5, histogram.snapshot().max);
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().count);
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(actual + " is below " + expected, actual >= expected);
+        assertTrue(actual + " is too far above " + expected, actual <= expected + expected / 16 + 1);
+    }
+}
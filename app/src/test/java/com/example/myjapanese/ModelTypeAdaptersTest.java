@@ -0,0 +1,70 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// The hand-written adapters must read and write exactly what the reflective binding did
+public class ModelTypeAdaptersTest {
+
+    private final Gson reflective = new Gson();
+    private final Gson codecs = ModelTypeAdapters.createGson();
+
+    @Test
+    public void itemsMatchReflectiveBinding() {
+        String json = "[{\"id\":1,\"itemName\":\"miso\",\"date_added\":\"2024-05-01\",\"itemLocation\":3,\"extra\":[1]},"
+                + "{\"id\":2,\"itemName\":null,\"date_added\":\"2024-05-01\",\"itemLocation\":4}]";
+        List<Item> expected = reflective.fromJson(json, new TypeToken<List<Item>>() {}.getType());
+        List<Item> actual = codecs.fromJson(json, new TypeToken<List<Item>>() {}.getType());
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getItemName(), actual.get(i).getItemName());
+            assertEquals(expected.get(i).getDateAdded(), actual.get(i).getDateAdded());
+            assertEquals(expected.get(i).getItemLocationId(), actual.get(i).getItemLocationId());
+        }
+        // Repeated dates share one String
+        assertSame(actual.get(0).getDateAdded(), actual.get(1).getDateAdded());
+    }
+
+    @Test
+    public void itemWritesSameJsonAsReflectiveBinding() {
+        Item item = new Item(5, "nori", null, 2);
+        assertEquals(reflective.toJson(item), codecs.toJson(item));
+        ItemMutation mutation = new ItemMutation(-1, ItemMutation.OP_CREATE, item);
+        assertEquals(reflective.toJson(mutation), codecs.toJson(mutation));
+    }
+
+    @Test
+    public void publishedDateMatchesReflectiveBinding() {
+        String[] dates = {
+                "2024-05-01T10:15:30Z",
+                "2024-05-01T10:15:30.123456Z",
+                "2024-02-29T23:59:59+09:00",
+                "1999-12-31T00:00-0530",
+                "2024-05-01",
+        };
+        for (String date : dates) {
+            String json = "{\"title\":\"t\",\"content\":\"c\",\"published_date\":\"" + date + "\"}";
+            PotatoPost expected = reflective.fromJson(json, PotatoPost.class);
+            PotatoPost actual = codecs.fromJson(json, PotatoPost.class);
+            assertEquals(date, expected.getPublishedDate(), actual.getPublishedDate());
+            assertEquals(IsoDates.parse(IsoDates.format(actual.getPublishedDate().getTime())),
+                    actual.getPublishedDate().getTime());
+        }
+    }
+
+    @Test
+    public void isoDatesRejectsMalformedInput() {
+        String[] invalid = {"", "2024-13-01", "2024-02-30", "2024-05-01T10:15:30", "2024-05-01T25:00:00Z", "2024-05-01T10:15:30.Z"};
+        for (String text : invalid) {
+            assertEquals(text, IsoDates.INVALID, IsoDates.parse(text));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+public class MutationQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = ModelTypeAdapters.createGson();
+    private final FakeMainThread mainThread = new FakeMainThread();
+    // Journal writes run on the calling thread, so they are done when the call returns
+    private final Executor sameThread = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+    private final List<String> outcomes = new ArrayList<>();
+    private MockWebServer server;
+    private ApiService service;
+    private File journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        // Answers are posted to the fake main thread, like Retrofit does on Android
+        service = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callbackExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable task) {
+                        mainThread.post(task);
+                    }
+                })
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build()
+                .create(ApiService.class);
+        journalFile = folder.newFile("outbox.journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void fullBatchIsSentWithoutWaitingForTheTimer() throws Exception {
+        server.enqueue(json("[]"));
+        MutationQueue queue = newQueue(new OutboxJournal(journalFile));
+        for (int id = 1; id < MutationQueue.MAX_BATCH_SIZE; id++) {
+            queue.update(item(id, "a"));
+        }
+        mainThread.runPosted();
+        assertEquals(0, server.getRequestCount());
+
+        queue.update(item(MutationQueue.MAX_BATCH_SIZE, "a"));
+        mainThread.runPosted();
+        RecordedRequest request = takeRequest();
+        assertEquals(MutationQueue.MAX_BATCH_SIZE, mutations(request).size());
+        assertEquals(0, mainThread.now);
+    }
+
+    @Test
+    public void editsWaitForTheFlushDelayAndAreCoalesced() throws Exception {
+        server.enqueue(json("[]"));
+        MutationQueue queue = newQueue(new OutboxJournal(journalFile));
+        queue.update(item(1, "a"));
+        queue.update(item(2, "b"));
+        queue.update(item(1, "c"));
+        mainThread.advance(MutationQueue.FLUSH_DELAY_MS - 1);
+        assertEquals(0, server.getRequestCount());
+
+        mainThread.advance(1);
+        List<Map<String, Object>> sent = mutations(takeRequest());
+        assertEquals(2, sent.size());
+        assertEquals("c", itemName(sent.get(0)));
+        assertEquals("b", itemName(sent.get(1)));
+    }
+
+    @Test
+    public void failedBatchIsSentAgainUnderTheSameKeyAndNewerEditsWait() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(json("[" + ok(1, item(1, "a")) + "]"));
+        server.enqueue(json("[" + ok(1, item(1, "b")) + "]"));
+        MutationQueue queue = newQueue(new OutboxJournal(journalFile));
+        queue.setListener(listener());
+        queue.update(item(1, "a"));
+        mainThread.advance(MutationQueue.FLUSH_DELAY_MS);
+        RecordedRequest first = takeRequest();
+        mainThread.awaitPosted();
+        // Edited again while the batch was out, it goes in the next one
+        queue.update(item(1, "b"));
+        assertTrue(queue.hasPendingEdit(1));
+        assertEquals(2, queue.pendingCount());
+
+        mainThread.advance(MutationQueue.FLUSH_DELAY_MS);
+        RecordedRequest retry = takeRequest();
+        assertEquals(first.getHeader("Idempotency-Key"), retry.getHeader("Idempotency-Key"));
+        assertEquals("a", itemName(mutations(retry).get(0)));
+        mainThread.awaitPosted();
+        assertEquals("[applied 1 a]", outcomes.toString());
+
+        mainThread.advance(MutationQueue.FLUSH_DELAY_MS);
+        RecordedRequest next = takeRequest();
+        assertNotEquals(first.getHeader("Idempotency-Key"), next.getHeader("Idempotency-Key"));
+        assertEquals("b", itemName(mutations(next).get(0)));
+        mainThread.awaitPosted();
+        assertFalse(queue.hasPendingEdit(1));
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    public void unansweredBatchGoesOutUnderItsKeyAfterARestart() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        OutboxJournal journal = new OutboxJournal(journalFile);
+        MutationQueue queue = newQueue(journal);
+        queue.update(item(1, "a"));
+        mainThread.advance(MutationQueue.FLUSH_DELAY_MS);
+        String key = takeRequest().getHeader("Idempotency-Key");
+        mainThread.awaitPosted();
+        // The process dies with the retry still scheduled
+        mainThread.delayed.clear();
+        mainThread.dueTimes.clear();
+        journal.close();
+
+        server.enqueue(json("[" + ok(1, item(1, "a")) + "]"));
+        OutboxJournal reopened = new OutboxJournal(journalFile);
+        MutationQueue restarted = newQueue(reopened);
+        restarted.restore(reopened.pending(), reopened.sentBatch());
+        mainThread.advance(10 * MutationQueue.FLUSH_DELAY_MS);
+        assertEquals(key, takeRequest().getHeader("Idempotency-Key"));
+        mainThread.awaitPosted();
+        assertEquals(0, reopened.pendingCount());
+    }
+
+    @Test
+    public void conflictsAndRejectedCreatesAreReportedAndLeaveTheJournal() throws Exception {
+        OutboxJournal journal = new OutboxJournal(journalFile);
+        MutationQueue queue = newQueue(journal);
+        queue.setListener(listener());
+        int tempId = queue.create(item(0, "new"));
+        queue.update(item(5, "mine"));
+        queue.update(item(6, "unanswered"));
+        server.enqueue(json("[{\"client_id\":" + tempId + ",\"status\":\"error\",\"error\":\"name taken\"},"
+                + "{\"client_id\":5,\"status\":\"conflict\",\"item\":" + gson.toJson(item(5, "theirs")) + "}]"));
+        server.enqueue(json("[" + ok(6, item(6, "unanswered")) + "]"));
+        mainThread.advance(MutationQueue.FLUSH_DELAY_MS);
+        RecordedRequest first = takeRequest();
+        assertEquals(3, mutations(first).size());
+        mainThread.awaitPosted();
+
+        assertEquals("[rejected " + tempId + " name taken, rejected 5 conflict theirs]", outcomes.toString());
+        // The answer is in, the edit it left out goes in a batch of its own under a new key
+        assertEquals(1, queue.pendingCount());
+        assertTrue(queue.hasPendingEdit(6));
+        mainThread.advance(MutationQueue.FLUSH_DELAY_MS);
+        RecordedRequest second = takeRequest();
+        assertEquals(1, mutations(second).size());
+        assertNotEquals(first.getHeader("Idempotency-Key"), second.getHeader("Idempotency-Key"));
+        mainThread.awaitPosted();
+        assertEquals(0, journal.pendingCount());
+    }
+
+    @Test
+    public void resultsWaitForAListener() throws Exception {
+        server.enqueue(json("[" + ok(1, item(1, "a")) + "]"));
+        MutationQueue queue = newQueue(new OutboxJournal(journalFile));
+        queue.update(item(1, "a"));
+        mainThread.advance(MutationQueue.FLUSH_DELAY_MS);
+        takeRequest();
+        mainThread.awaitPosted();
+        assertTrue(outcomes.isEmpty());
+
+        queue.setListener(listener());
+        assertEquals("[applied 1 a]", outcomes.toString());
+    }
+
+    private MutationQueue newQueue(OutboxJournal journal) {
+        return new MutationQueue(service, journal, mainThread, sameThread);
+    }
+
+    private MutationQueue.Listener listener() {
+        return new MutationQueue.Listener() {
+            @Override
+            public void onApplied(ItemMutation mutation, Item serverItem) {
+                outcomes.add("applied " + mutation.getClientId() + " " + serverItem.getItemName());
+            }
+
+            @Override
+            public void onRejected(ItemMutation mutation, Item currentItem, String reason) {
+                outcomes.add("rejected " + mutation.getClientId() + " " + reason
+                        + (currentItem != null ? " " + currentItem.getItemName() : ""));
+            }
+        };
+    }
+
+    private RecordedRequest takeRequest() throws InterruptedException {
+        RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull("no batch was sent", request);
+        assertEquals("/item/bulk/", request.getPath());
+        return request;
+    }
+
+    private List<Map<String, Object>> mutations(RecordedRequest request) {
+        return gson.fromJson(request.getBody().readUtf8(), new TypeToken<List<Map<String, Object>>>() {
+        }.getType());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String itemName(Map<String, Object> mutation) {
+        return (String) ((Map<String, Object>) mutation.get("item")).get("itemName");
+    }
+
+    private String ok(int clientId, Item item) {
+        return "{\"client_id\":" + clientId + ",\"status\":\"ok\",\"item\":" + gson.toJson(item) + "}";
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    private static Item item(int id, String name) {
+        return new Item(id, name, "2024-05-01", 1);
+    }
+
+    // The test thread is the main thread. Posted tasks run when the test asks for them, delayed ones once
+    // advance() has moved the clock past their time.
+    private static class FakeMainThread implements MutationQueue.MainThread {
+        final BlockingQueue<Runnable> posted = new LinkedBlockingQueue<>();
+        final List<long[]> dueTimes = new ArrayList<>();
+        final List<Runnable> delayed = new ArrayList<>();
+        long now = 0;
+
+        @Override
+        public void post(Runnable task) {
+            posted.add(task);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            dueTimes.add(new long[]{now + delayMs});
+            delayed.add(task);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            posted.remove(task);
+            for (int i = delayed.size() - 1; i >= 0; i--) {
+                if (delayed.get(i) == task) {
+                    delayed.remove(i);
+                    dueTimes.remove(i);
+                }
+            }
+        }
+
+        void runPosted() {
+            Runnable task;
+            while ((task = posted.poll()) != null) {
+                task.run();
+            }
+        }
+
+        // Waits for a task from another thread, e.g. the answer to a request, then runs what is posted
+        void awaitPosted() throws InterruptedException {
+            Runnable task = posted.poll(5, TimeUnit.SECONDS);
+            assertNotNull("nothing was posted", task);
+            task.run();
+            runPosted();
+        }
+
+        void advance(long ms) {
+            now += ms;
+            runPosted();
+            boolean ran = true;
+            while (ran) {
+                ran = false;
+                Iterator<Runnable> tasks = delayed.iterator();
+                Iterator<long[]> due = dueTimes.iterator();
+                while (tasks.hasNext()) {
+                    Runnable task = tasks.next();
+                    if (due.next()[0] <= now) {
+                        tasks.remove();
+                        due.remove();
+                        task.run();
+                        runPosted();
+                        ran = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
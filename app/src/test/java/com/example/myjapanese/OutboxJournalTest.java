@@ -0,0 +1,214 @@
+package com.example.myjapanese;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OutboxJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ItemMutation update(int id, String name) {
+        return new ItemMutation(id, ItemMutation.OP_UPDATE, new Item(id, name, "2024-01-01", 3));
+    }
+
+    @Test
+    public void unacknowledgedEditsSurviveReopen() throws IOException {
+        File file = folder.newFile("outbox.journal");
+        OutboxJournal journal = new OutboxJournal(file);
+        journal.append(1, update(10, "a"));
+        journal.append(2, update(11, "b"));
+        journal.append(3, update(10, "c"));
+        journal.ack(10, 1, 10);
+        journal.close();
+
+        OutboxJournal reopened = new OutboxJournal(file);
+        List<OutboxJournal.Entry> pending = reopened.pending();
+        assertEquals(2, pending.size());
+        assertEquals(2, pending.get(0).seq);
+        assertEquals("c", pending.get(1).mutation.getItem().getItemName());
+        assertEquals(3, reopened.getLastSeq());
+        reopened.close();
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsCutOff() throws IOException {
+        File file = folder.newFile("outbox.journal");
+        OutboxJournal journal = new OutboxJournal(file);
+        journal.append(1, update(10, "a"));
+        journal.close();
+        long intactLength = file.length();
+
+        // A record header promising more bytes than were written before the process died
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 1, 0});
+        out.close();
+
+        OutboxJournal reopened = new OutboxJournal(file);
+        assertEquals(1, reopened.pendingCount());
+        assertEquals(intactLength, file.length());
+        reopened.append(2, update(11, "b"));
+        reopened.close();
+
+        assertEquals(2, new OutboxJournal(file).pendingCount());
+    }
+
+    @Test
+    public void ackOfCreateMovesLaterEditsToServerId() throws IOException {
+        File file = folder.newFile("outbox.journal");
+        OutboxJournal journal = new OutboxJournal(file);
+        journal.append(1, new ItemMutation(-1, ItemMutation.OP_CREATE, new Item(-1, "new", "2024-01-01", 3)));
+        journal.append(2, update(-1, "renamed"));
+        Item handedOut = journal.pending().get(1).mutation.getItem();
+        journal.ack(-1, 1, 42);
+        assertEquals(-1, handedOut.getId());
+        journal.close();
+
+        List<OutboxJournal.Entry> pending = new OutboxJournal(file).pending();
+        assertEquals(1, pending.size());
+        assertEquals(42, pending.get(0).mutation.getClientId());
+        assertEquals(42, pending.get(0).mutation.getItem().getId());
+        assertTrue(pending.get(0).mutation.isUpdate());
+    }
+
+    @Test
+    public void acknowledgedEditsAreCompactedAway() throws IOException {
+        File file = folder.newFile("outbox.journal");
+        OutboxJournal journal = new OutboxJournal(file);
+        for (int i = 1; i <= 2_000; i++) {
+            journal.append(i, update(i, "item " + i));
+            journal.ack(i, i, i);
+        }
+        journal.append(2_001, update(7, "kept"));
+        journal.close();
+
+        assertTrue("journal was not compacted: " + file.length(), file.length() < 2_000 * 20);
+        OutboxJournal reopened = new OutboxJournal(file);
+        assertEquals(1, reopened.pendingCount());
+        reopened.close();
+    }
+
+    @Test
+    public void failedCompactionLeavesTheJournalUsable() throws IOException {
+        File file = folder.newFile("outbox.journal");
+        OutboxJournal journal = new OutboxJournal(file) {
+            @Override
+            boolean rename(File from, File to) {
+                return false;
+            }
+        };
+        journal.append(1, update(9_000, "kept"));
+        for (int i = 2; i <= 2_000; i++) {
+            journal.append(i, update(i, "item " + i));
+            try {
+                journal.ack(i, i, i);
+            } catch (IOException e) {
+                // The ack itself was written before the compaction it set off
+            }
+        }
+        journal.append(2_001, update(9_001, "after"));
+        journal.sync();
+        journal.close();
+
+        OutboxJournal reopened = new OutboxJournal(file);
+        List<OutboxJournal.Entry> pending = reopened.pending();
+        assertEquals(2, pending.size());
+        assertEquals("kept", pending.get(0).mutation.getItem().getItemName());
+        assertEquals("after", pending.get(1).mutation.getItem().getItemName());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        reopened.close();
+    }
+
+    @Test
+    public void idAndLastSeqOutliveCompaction() throws IOException {
+        File file = folder.newFile("outbox.journal");
+        OutboxJournal journal = new OutboxJournal(file);
+        String id = journal.getId();
+        for (int i = 1; i <= 2_000; i++) {
+            journal.append(i, update(i, "item " + i));
+            journal.ack(i, i, i);
+        }
+        journal.compact();
+        journal.close();
+
+        // Nothing is live any more, the seqs still go on where they were
+        OutboxJournal reopened = new OutboxJournal(file);
+        assertEquals(0, reopened.pendingCount());
+        assertEquals(2_000, reopened.getLastSeq());
+        assertEquals(id, reopened.getId());
+        reopened.close();
+
+        assertNotEquals(id, new OutboxJournal(folder.newFile("other.journal")).getId());
+    }
+
+    @Test
+    public void sentBatchIsKeptUntilOneOfItsEditsIsAcknowledged() throws IOException {
+        File file = folder.newFile("outbox.journal");
+        OutboxJournal journal = new OutboxJournal(file);
+        journal.append(1, new ItemMutation(-1, ItemMutation.OP_CREATE, new Item(-1, "new", "2024-01-01", 3)));
+        journal.append(2, update(-1, "renamed"));
+        journal.append(3, update(5, "a"));
+        ItemMutation create = new ItemMutation(-1, ItemMutation.OP_CREATE, new Item(-1, "renamed", "2024-01-01", 3));
+        create.setJournalSeq(2);
+        ItemMutation edit = update(5, "a");
+        edit.setJournalSeq(3);
+        journal.appendBatch("outbox-1", Arrays.asList(create, edit));
+        // Made while the batch was out, it goes in the next one
+        journal.append(4, update(5, "b"));
+        journal.compact();
+        journal.close();
+
+        OutboxJournal reopened = new OutboxJournal(file);
+        OutboxJournal.SentBatch sent = reopened.sentBatch();
+        assertEquals("outbox-1", sent.key);
+        List<OutboxJournal.Entry> pending = reopened.pending();
+        assertEquals(4, pending.size());
+        assertTrue(sent.covers(pending.get(0)));
+        assertTrue(sent.covers(pending.get(1)));
+        assertTrue(sent.covers(pending.get(2)));
+        assertFalse(sent.covers(pending.get(3)));
+
+        // An answer arrived, whatever it did not cover goes out under a new key
+        reopened.ack(-1, 2, 42);
+        assertNull(reopened.sentBatch());
+        reopened.close();
+        assertNull(new OutboxJournal(file).sentBatch());
+    }
+
+    @Test
+    public void tenThousandEditsAppendAndReplayInSeconds() throws IOException {
+        File file = folder.newFile("outbox.journal");
+        final int edits = 10_000;
+
+        OutboxJournal journal = new OutboxJournal(file);
+        long appendStart = System.nanoTime();
+        for (int i = 1; i <= edits; i++) {
+            journal.append(i, update(i, "item " + i));
+            if (i % 100 == 0) {
+                journal.sync();  // Batched like MutationQueue does before each send
+            }
+        }
+        long appendNanos = System.nanoTime() - appendStart;
+        journal.close();
+
+        long replayStart = System.nanoTime();
+        OutboxJournal reopened = new OutboxJournal(file);
+        List<OutboxJournal.Entry> pending = reopened.pending();
+        long replayNanos = System.nanoTime() - replayStart;
+        reopened.close();
+
+        assertEquals(edits, pending.size());
+        // Loose bounds, the point is that neither grows with a sync per edit or a read per entry
+        assertTrue("appending took " + appendNanos / 1e6 + " ms", appendNanos < 5_000_000_000L);
+        assertTrue("replay took " + replayNanos / 1e6 + " ms", replayNanos < 5_000_000_000L);
+    }
+}
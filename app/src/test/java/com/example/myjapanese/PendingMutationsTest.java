@@ -0,0 +1,85 @@
+package com.example.myjapanese;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PendingMutationsTest {
+
+    private static Item item(int id, String name) {
+        return new Item(id, name, "2024-01-01", 1);
+    }
+
+    @Test
+    public void createThenDeleteCancelsOut() {
+        PendingMutations pending = new PendingMutations();
+        int temporaryId = pending.create(item(0, "a"));
+        pending.delete(temporaryId);
+        assertTrue(pending.isEmpty());
+    }
+
+    @Test
+    public void createThenUpdateSendsOneCreateWithLatestValues() {
+        PendingMutations pending = new PendingMutations();
+        int temporaryId = pending.create(item(0, "a"));
+        pending.update(item(temporaryId, "b"));
+
+        List<ItemMutation> batch = pending.drain(10);
+        assertEquals(1, batch.size());
+        assertTrue(batch.get(0).isCreate());
+        assertEquals("b", batch.get(0).getItem().getItemName());
+    }
+
+    @Test
+    public void repeatedUpdatesCoalesceAndDeleteWins() {
+        PendingMutations pending = new PendingMutations();
+        pending.update(item(7, "a"));
+        pending.update(item(7, "b"));
+        pending.update(item(8, "c"));
+        pending.delete(8);
+
+        List<ItemMutation> batch = pending.drain(10);
+        assertEquals(2, batch.size());
+        assertEquals("b", batch.get(0).getItem().getItemName());
+        assertTrue(batch.get(1).isDelete());
+    }
+
+    @Test
+    public void editsOfInFlightCreateWaitForServerId() {
+        PendingMutations pending = new PendingMutations();
+        int temporaryId = pending.create(item(0, "a"));
+        assertEquals(1, pending.drain(10).size());
+
+        Item edited = item(temporaryId, "b");
+        pending.update(edited);
+        assertTrue(pending.drain(10).isEmpty());
+
+        pending.onCreated(temporaryId, 42);
+        List<ItemMutation> batch = pending.drain(10);
+        assertEquals(1, batch.size());
+        assertTrue(batch.get(0).isUpdate());
+        assertEquals(42, batch.get(0).getClientId());
+        assertEquals(42, batch.get(0).getItem().getId());
+        // The list may still show that item under the temporary id, it is not changed
+        assertEquals(temporaryId, edited.getId());
+    }
+
+    @Test
+    public void requeuedBatchKeepsNewerEdits() {
+        PendingMutations pending = new PendingMutations();
+        pending.update(item(1, "old"));
+        pending.update(item(2, "two"));
+        List<ItemMutation> batch = pending.drain(10);
+
+        pending.update(item(1, "new"));
+        pending.requeue(batch);
+
+        List<ItemMutation> retried = pending.drain(10);
+        assertEquals(2, retried.size());
+        assertEquals(Arrays.asList(1, 2), Arrays.asList(retried.get(0).getClientId(), retried.get(1).getClientId()));
+        assertEquals("new", retried.get(0).getItem().getItemName());
+    }
+}
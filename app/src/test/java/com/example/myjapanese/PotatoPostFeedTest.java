@@ -0,0 +1,140 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PotatoPostFeedTest {
+
+    private static final int TOTAL = 2_000;
+    private static final int PAGE_SIZE = 20;
+    private static final Gson GSON = ModelTypeAdapters.createGson();
+
+    // Stands in for the main thread: callbacks queue up until the test runs them
+    private final LinkedBlockingQueue<Runnable> mainQueue = new LinkedBlockingQueue<>();
+    private final Executor mainExecutor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            mainQueue.add(task);
+        }
+    };
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final PotatoPostFeed.PageLoader loader = new PotatoPostFeed.PageLoader() {
+        @Override
+        public PotatoPostPage load(int page, int pageSize) {
+            loads.incrementAndGet();
+            List<PotatoPost> posts = new ArrayList<>();
+            for (int i = (page - 1) * pageSize; i < Math.min(TOTAL, page * pageSize); i++) {
+                PotatoPost post = new PotatoPost();
+                post.setTitle("post " + i);
+                post.setContent(new String(new char[200]).replace('\0', 'x'));
+                posts.add(post);
+            }
+            return page(posts);
+        }
+    };
+
+    @Test
+    public void scrollingStaysWithinTheBudgetAndPrefetchesAhead() throws Exception {
+        long budget = 10 * PotatoPostFeed.estimateBytes(loader.load(1, PAGE_SIZE).getResults());
+        loads.set(0);
+        PotatoPostFeed feed = new PotatoPostFeed(loader, mainExecutor, loadExecutor, PAGE_SIZE, 40, budget);
+        final int[] loadedPosts = {0};
+        feed.start(new PotatoPostFeed.Listener() {
+            @Override
+            public void onPageLoaded(int firstPosition, int count, int total) {
+                loadedPosts[0] += count;
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                fail(error.toString());
+            }
+        });
+        settle();
+        assertEquals(TOTAL, feed.size());
+
+        // Scrolls down the whole feed a few posts at a time, then back up, binding what is on screen
+        for (int pass = 0; pass < 2; pass++) {
+            for (int step = 0; step <= (TOTAL - 10) / 4; step++) {
+                int first = pass == 0 ? step * 4 : TOTAL - 10 - step * 4;
+                feed.onVisibleRange(first, first + 9);
+                for (int position = first; position <= first + 9; position++) {
+                    PotatoPost post = feed.get(position);
+                    if (post != null) {
+                        assertEquals("post " + position, post.getTitle());
+                    }
+                }
+                settle();
+                PotatoPostFeed.Stats stats = feed.stats();
+                assertTrue(stats.toString(), stats.cachedBytes <= budget);
+            }
+        }
+
+        PotatoPostFeed.Stats stats = feed.stats();
+        // Nothing on screen ever waited, every page was prefetched in time
+        assertEquals(stats.toString(), 0, stats.misses);
+        assertEquals(0, stats.latePrefetches);
+        assertTrue(stats.evictions > 0);
+        assertTrue(stats.hitRate() > 0.99);
+        // Every page once each way, plus refetches of the pages just past either end of the budget
+        assertTrue(stats.toString(), loads.get() <= 2 * TOTAL / PAGE_SIZE + 10);
+        assertTrue(loadedPosts[0] >= TOTAL);
+        feed.close();
+    }
+
+    @Test
+    public void visiblePagesAreNotEvicted() throws Exception {
+        long onePage = PotatoPostFeed.estimateBytes(loader.load(1, PAGE_SIZE).getResults());
+        PotatoPostFeed feed = new PotatoPostFeed(loader, mainExecutor, loadExecutor, PAGE_SIZE, 0, onePage);
+        feed.start(null);
+        settle();
+
+        // Two pages on screen with room for one
+        feed.onVisibleRange(10, 29);
+        settle();
+        assertNotNull(feed.get(10));
+        assertNotNull(feed.get(29));
+        assertEquals(2, feed.stats().cachedPages);
+
+        feed.onVisibleRange(100, 105);
+        settle();
+        assertNotNull(feed.get(100));
+        assertEquals(1, feed.stats().cachedPages);
+        feed.close();
+    }
+
+    // Waits for the loads in flight and runs their callbacks on the test thread
+    private void settle() throws Exception {
+        loadExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(5, TimeUnit.SECONDS);
+        Runnable task;
+        while ((task = mainQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static PotatoPostPage page(List<PotatoPost> posts) {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", TOTAL);
+        json.add("results", GSON.toJsonTree(posts));
+        return GSON.fromJson(json, PotatoPostPage.class);
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.myjapanese;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RequestCoordinatorTest {
+
+    private static final String KEY = "items";
+
+    // The test thread is the main thread, it runs what the coordinator posts when it calls deliverNext()
+    private final BlockingQueue<Runnable> posted = new LinkedBlockingQueue<>();
+    private final Executor mainThread = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            posted.add(task);
+        }
+    };
+    private ExecutorService executor;
+    private RequestCoordinator requests;
+    private final List<String> delivered = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        requests = new RequestCoordinator(executor, mainThread);
+    }
+
+    @After
+    public void tearDown() {
+        requests.cancelAll();
+    }
+
+    @Test
+    public void runJoinsTheLoadInFlight() throws Exception {
+        GatedLoader loader = new GatedLoader("first");
+        RequestCoordinator.Callback<String> a = callback("a");
+        requests.run(KEY, loader, a);
+        requests.run(KEY, new GatedLoader("never started"), callback("b"));
+        // The same callback again is answered once
+        requests.run(KEY, new GatedLoader("never started"), a);
+        assertTrue(requests.isLoading(KEY));
+
+        loader.release.countDown();
+        deliverNext();
+        assertEquals(Arrays.asList("a:first", "b:first"), delivered);
+        assertEquals(1, loader.loads.get());
+        assertFalse(requests.isLoading(KEY));
+        assertEquals("started=1, joined=2, superseded=0, dropped=0", requests.toString());
+    }
+
+    @Test
+    public void runLatestCancelsTheLoadInFlightAndDropsItsLateAnswer() throws Exception {
+        GatedLoader stale = new GatedLoader("stale");
+        GatedLoader fresh = new GatedLoader("fresh");
+        requests.run(KEY, stale, callback("a"));
+        assertTrue(stale.started.await(5, TimeUnit.SECONDS));
+        requests.runLatest(KEY, fresh, callback("b"));
+        assertTrue(fresh.started.await(5, TimeUnit.SECONDS));
+        assertTrue(stale.calls.isCancelled());
+        assertFalse(fresh.calls.isCancelled());
+
+        // The cancel lost the race, the stale answer still arrives and is dropped
+        stale.release.countDown();
+        deliverNext();
+        assertTrue(delivered.isEmpty());
+
+        // Whoever waited for the stale load gets the fresh one's answer
+        fresh.release.countDown();
+        deliverNext();
+        assertEquals(Arrays.asList("a:fresh", "b:fresh"), delivered);
+        assertEquals("started=2, joined=0, superseded=1, dropped=1", requests.toString());
+    }
+
+    @Test
+    public void answerOlderThanTheAppliedOneIsDropped() throws Exception {
+        GatedLoader older = new GatedLoader("older");
+        GatedLoader newer = new GatedLoader("newer");
+        requests.run(KEY, older, callback("a"));
+        requests.runLatest(KEY, newer, callback("b"));
+        newer.release.countDown();
+        older.release.countDown();
+        // Both answers are posted, in whichever order the threads finish; only the newer one is applied
+        deliverNext();
+        deliverNext();
+        assertEquals(Arrays.asList("a:newer", "b:newer"), delivered);
+
+        // A later load of the same key is applied again
+        GatedLoader next = new GatedLoader("next");
+        next.release.countDown();
+        requests.run(KEY, next, callback("c"));
+        deliverNext();
+        assertEquals("c:next", delivered.get(2));
+    }
+
+    @Test
+    public void failedLoadReportsTheErrorAndCancelAllSilencesEverything() throws Exception {
+        requests.run(KEY, new RequestCoordinator.Loader<String>() {
+            @Override
+            public String load(CallTracker calls) throws IOException {
+                throw new IOException("HTTP 500");
+            }
+        }, callback("a"));
+        deliverNext();
+        assertEquals(Arrays.asList("a:error HTTP 500"), delivered);
+
+        GatedLoader loader = new GatedLoader("late");
+        requests.run(KEY, loader, callback("b"));
+        assertTrue(loader.started.await(5, TimeUnit.SECONDS));
+        requests.cancelAll();
+        assertTrue(loader.calls.isCancelled());
+        loader.release.countDown();
+        Runnable task = posted.poll(1, TimeUnit.SECONDS);
+        if (task != null) {
+            task.run();
+        }
+        assertEquals(1, delivered.size());
+        requests.run(KEY, new GatedLoader("after shutdown"), callback("c"));
+        assertFalse(requests.isLoading(KEY));
+    }
+
+    private void deliverNext() throws InterruptedException {
+        Runnable task = posted.poll(5, TimeUnit.SECONDS);
+        assertNotNull("nothing was posted to the main thread", task);
+        task.run();
+    }
+
+    private RequestCoordinator.Callback<String> callback(final String name) {
+        return new RequestCoordinator.Callback<String>() {
+            @Override
+            public void onResult(String result) {
+                delivered.add(name + ":" + result);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                delivered.add(name + ":error " + error.getMessage());
+            }
+        };
+    }
+
+    // Returns its answer once released, whether or not it was cancelled meanwhile
+    private static final class GatedLoader implements RequestCoordinator.Loader<String> {
+        final String answer;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        volatile CallTracker calls;
+
+        GatedLoader(String answer) {
+            this.answer = answer;
+        }
+
+        @Override
+        public String load(CallTracker calls) {
+            this.calls = calls;
+            loads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return answer;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.*;
+
+public class StartupLoaderTest {
+
+    // The test thread is the main thread, it runs what the loader posts until onLoaded has come
+    private final BlockingQueue<Runnable> posted = new LinkedBlockingQueue<>();
+    private final Executor mainThread = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            posted.add(task);
+        }
+    };
+    private final Gson gson = ModelTypeAdapters.createGson();
+    private final List<String> callbacks = new ArrayList<>();
+    private final StartupTrace trace = new StartupTrace();
+    private MockWebServer server;
+    private StartupLoader.Result result;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void cacheAndClientAreReadSideBySideAndBothRequestsRunAtOnce() throws Exception {
+        // Neither request is answered before the other has arrived
+        final CountDownLatch bothArrived = new CountDownLatch(2);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                bothArrived.countDown();
+                if (!bothArrived.await(5, TimeUnit.SECONDS)) {
+                    return new MockResponse().setResponseCode(504);
+                }
+                if (request.getPath().equals("/location/")) {
+                    return json(gson.toJson(Arrays.asList(location(1, "Kitchen"), location(2, "Attic"))));
+                }
+                return json(gson.toJson(Arrays.asList(item(1, "a"), item(2, "b"), item(3, "c"))))
+                        .setHeader(ItemLoader.SYNC_TOKEN_HEADER, "t1");
+            }
+        });
+        StartupLoader loader = new StartupLoader(cache(null), client(), trace, mainThread);
+        loader.start(listener());
+        awaitLoaded();
+
+        assertEquals(3, callbacks.size());
+        assertTrue(callbacks.containsAll(Arrays.asList("cache 1", "client")));
+        assertEquals("loaded", callbacks.get(2));
+        assertNull(result.error);
+        assertEquals(2, result.locations.size());
+        assertNull(result.items.changes);
+        assertEquals(3, result.items.items.size());
+        assertEquals("t1", result.items.token);
+        for (String milestone : Arrays.asList(StartupTrace.CACHE_READ, StartupTrace.CLIENT_READY,
+                StartupTrace.LOCATIONS_LOADED, StartupTrace.ITEMS_LOADED, StartupTrace.JOINED)) {
+            assertTrue(milestone, trace.elapsedMs(milestone) >= 0);
+        }
+        assertTrue(trace.elapsedMs(StartupTrace.JOINED) >= trace.elapsedMs(StartupTrace.ITEMS_LOADED));
+        assertTrue(trace.elapsedMs(StartupTrace.JOINED) >= trace.elapsedMs(StartupTrace.LOCATIONS_LOADED));
+    }
+
+    @Test
+    public void cachedTokenAsksForADeltaAndAFailedBranchStillJoins() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().equals("/location/")) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                assertEquals("/item/changes/?since=t1", request.getPath());
+                return json(gson.toJson(new ItemChanges("t2", Collections.singletonList(item(4, "d")), new int[]{1})));
+            }
+        });
+        StartupLoader loader = new StartupLoader(cache("t1"), client(), trace, mainThread);
+        loader.start(listener());
+        awaitLoaded();
+
+        assertNull(result.locations);
+        assertTrue(result.error.getMessage(), result.error.getMessage().contains("HTTP 500"));
+        assertNull(result.items.items);
+        assertEquals("t2", result.items.token);
+        assertEquals(1, result.items.changes.getUpserted().size());
+        assertEquals(-1, trace.elapsedMs(StartupTrace.LOCATIONS_LOADED));
+        assertTrue(trace.elapsedMs(StartupTrace.JOINED) >= 0);
+    }
+
+    @Test
+    public void cancelSilencesTheCallbacksAndTheRequestsInFlight() throws Exception {
+        final CountDownLatch arrived = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                arrived.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setResponseCode(500);
+            }
+        });
+        StartupLoader loader = new StartupLoader(cache(null), client(), trace, mainThread);
+        loader.start(listener());
+        assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        loader.cancel();
+        release.countDown();
+
+        // Whatever was already posted runs without reaching the listener
+        Runnable task;
+        while ((task = posted.poll(200, TimeUnit.MILLISECONDS)) != null) {
+            task.run();
+        }
+        assertTrue(callbacks.isEmpty());
+        assertNull(result);
+    }
+
+    private void awaitLoaded() throws InterruptedException {
+        while (result == null) {
+            Runnable task = posted.poll(5, TimeUnit.SECONDS);
+            assertNotNull("onLoaded never came", task);
+            task.run();
+        }
+    }
+
+    private StartupLoader.Listener listener() {
+        return new StartupLoader.Listener() {
+            @Override
+            public void onCacheLoaded(StartupLoader.Cached cached) {
+                callbacks.add("cache " + cached.items.size());
+            }
+
+            @Override
+            public void onClientReady(ApiService apiService) {
+                callbacks.add("client");
+            }
+
+            @Override
+            public void onLoaded(StartupLoader.Result loaded) {
+                callbacks.add("loaded");
+                result = loaded;
+            }
+        };
+    }
+
+    private static Supplier<StartupLoader.Cached> cache(final String token) {
+        return new Supplier<StartupLoader.Cached>() {
+            @Override
+            public StartupLoader.Cached get() {
+                return new StartupLoader.Cached(Collections.singletonList(item(1, "cached")),
+                        Collections.singletonList(location(1, "Kitchen")), token);
+            }
+        };
+    }
+
+    private Supplier<ApiService> client() {
+        return new Supplier<ApiService>() {
+            @Override
+            public ApiService get() {
+                return new Retrofit.Builder()
+                        .baseUrl(server.url("/"))
+                        .addConverterFactory(GsonConverterFactory.create(gson))
+                        .build()
+                        .create(ApiService.class);
+            }
+        };
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    private static Item item(int id, String name) {
+        return new Item(id, name, "2024-05-01", 1);
+    }
+
+    private static Location location(int id, String name) {
+        Location location = new Location();
+        location.setId(id);
+        location.setLocationName(name);
+        return location;
+    }
+}
@@ -0,0 +1,110 @@
+// Plain JVM module with JMH benchmarks for the app's hot paths, no device or emulator needed:
+//   ./gradlew :benchmarks:jmh
+// Results are written to benchmarks/build/results/jmh/results.json.
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// The app sources contain Japanese text, as the Android build they are read as UTF-8
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+// The app classes under test are compiled straight from app/src/main, so the benchmarks always
+// measure the shipped code. Only files without android.* imports can be listed here.
+val appSources = listOf(
+    "Item",
+    "Location",
+    "PotatoPost",
+    "IntIntHashMap",
+    "LocationIndex",
+    "ItemChanges",
+    "ItemDeltaMerger",
+    "ItemStreamReader",
+    "IsoDates",
+    "StringPool",
+    "ModelTypeAdapters",
+    "LatencyHistogram",
+    "ItemSearchIndex",
+    "ChunkedItemList",
+    "ItemRepository",
+    "CompactCodec",
+    "ItemCsv",
+    // The HTTP stack and loaders, for LoadTest
+    "ApiService",
+    "ApiMetrics",
+    "ApiResilience",
+    "CompactConverterFactory",
+    "CallTracker",
+    "ItemLoader",
+    "ItemPage",
+    "ItemMutation",
+    "ItemMutationResult",
+    // MutationQueue's batching without its Looper, for MutationThroughput
+    "PendingMutations",
+    "OutboxJournal",
+    "ItemChangeStream",
+    "ItemChangeEvent",
+    "PotatoPostPage",
+)
+
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            setIncludes(appSources.map { "com/example/myjapanese/$it.java" })
+        }
+    }
+}
+
+dependencies {
+    implementation(libs.gson)
+    implementation(libs.retrofit)
+    implementation(libs.converter.gson)
+    implementation(libs.okhttp)
+    jmhImplementation(libs.mockwebserver)
+    // ItemColumns lives with the benchmarks that measure it, its test runs against the jmh classes
+    testImplementation(sourceSets["jmh"].output)
+    testImplementation(libs.junit)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    // The tests use the jmh classes, not the other way round
+    includeTests.set(false)
+    // Fixed settings so runs on different machines are comparable.
+    // A subset can be run with e.g. -PjmhIncludes=ModelDeserialization
+    fork.set(2)
+    warmupIterations.set(5)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+    resultFormat.set("JSON")
+    // Allocation per operation (gc.alloc.rate.norm) next to the timings
+    profilers.set(listOf("gc"))
+    includes.set(providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(listOf(".*")))
+}
+
+// Many simulated users against a local mock backend, see LoadTest for the options:
+//   ./gradlew :benchmarks:loadTest --args="--users 50 --duration 60 --errors 0.01"
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the end-to-end load test against a local mock backend"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.example.myjapanese.LoadTest")
+}
+
+// ItemChangeStream against a mock change feed, see ChangeStreamLoadTest for the options:
+//   ./gradlew :benchmarks:changeStreamTest --args="--rate 5000 --duration 20 --drop-ms 3000"
+tasks.register<JavaExec>("changeStreamTest") {
+    group = "verification"
+    description = "Streams item changes from a local mock feed and checks the client ends up with the same data"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.example.myjapanese.ChangeStreamLoadTest")
+}
@@ -0,0 +1,27 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+
+// The Gson setups the deserialization benchmarks compare, selected by the "gson" @Param.
+// A new parsing path gets a name here and in the @Param list, next to the baseline.
+final class BenchmarkGson {
+
+    // What GsonConverterFactory.create() uses in the app
+    static final String DEFAULT = "default";
+
+    // The hand-written streaming adapters ApiClient registers
+    static final String CODECS = "codecs";
+
+    private BenchmarkGson() {
+    }
+
+    static Gson create(String name) {
+        if (DEFAULT.equals(name)) {
+            return new Gson();
+        }
+        if (CODECS.equals(name)) {
+            return ModelTypeAdapters.createGson();
+        }
+        throw new IllegalArgumentException("Unknown Gson setup " + name);
+    }
+}
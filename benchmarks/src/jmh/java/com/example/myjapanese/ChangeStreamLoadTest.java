@@ -0,0 +1,179 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+
+// ItemChangeStream against a MockBackend change feed making thousands of changes per second, with the connection
+// cut every few seconds. The batches go into an ItemRepository whose observer stands in for the UI thread and
+// takes uiMs per snapshot. Reports events and batches per second, how far the deliveries lag behind the feed
+// and how many snapshots the "UI" had to handle, then waits for the stream to catch up and checks that the
+// repository holds exactly the feed's items and locations. Exits with 1 if not.
+//   ./gradlew :benchmarks:changeStreamTest --args="--rate 5000 --duration 20 --drop-ms 3000 --ui-ms 16"
+public final class ChangeStreamLoadTest {
+
+    private static final long CATCH_UP_TIMEOUT_MS = 30_000;
+
+    private ChangeStreamLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        MockBackend.Config config = new MockBackend.Config();
+        config.latencyMs = 5;
+        config.jitterMs = 5;
+        config.streamDropMs = 3_000;
+        long durationSeconds = 20;
+        long uiMs = 16;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--rate":
+                    config.eventsPerSecond = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    durationSeconds = Long.parseLong(value);
+                    break;
+                case "--drop-ms":
+                    config.streamDropMs = Long.parseLong(value);
+                    break;
+                case "--ui-ms":
+                    uiMs = Long.parseLong(value);
+                    break;
+                case "--items":
+                    config.items = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        MockBackend backend = new MockBackend(config);
+        backend.start();
+        final MockChangeFeed feed = backend.changeFeed;
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        ExecutorService ui = Executors.newSingleThreadExecutor();
+        final ItemRepository repository = new ItemRepository(writer);
+        repository.replaceItems(Payloads.itemList(config.items), MockBackend.SYNC_TOKEN, "initial");
+        repository.setLocations(Payloads.locationList(Payloads.LOCATION_COUNT));
+
+        final long uiNanos = TimeUnit.MILLISECONDS.toNanos(uiMs);
+        final AtomicLong snapshotsShown = new AtomicLong();
+        repository.observe(new ItemRepository.Observer() {
+            @Override
+            public void onSnapshot(ItemRepository.Snapshot snapshot) {
+                snapshotsShown.incrementAndGet();
+                long until = System.nanoTime() + uiNanos;
+                while (System.nanoTime() < until) {
+                    Thread.yield();
+                }
+            }
+        }, ui);
+
+        final LatencyHistogram lagMicros = new LatencyHistogram();
+        final AtomicLong largestBatch = new AtomicLong();
+        final AtomicLong resyncs = new AtomicLong();
+        final AtomicLong deliveredId = new AtomicLong();
+        ItemChangeStream.Listener listener = new ItemChangeStream.Listener() {
+            @Override
+            public void onChanges(ItemChangeStream.Batch batch) {
+                long created = feed.createdNanos(Long.parseLong(batch.lastEventId));
+                if (created > 0) {
+                    lagMicros.record((System.nanoTime() - created) / 1_000);
+                }
+                largestBatch.set(Math.max(largestBatch.get(), batch.events));
+                if (batch.hasLocationChanges()) {
+                    repository.applyLocationChanges(batch.upsertedLocations, batch.deletedLocations);
+                }
+                if (batch.items != null) {
+                    repository.applyUpdate(new ItemLoader.Update(null, batch.items, batch.items.getToken()));
+                }
+                deliveredId.set(Long.parseLong(batch.lastEventId));
+            }
+
+            @Override
+            public void onResyncNeeded() {
+                resyncs.incrementAndGet();
+            }
+        };
+        OkHttpClient client = new OkHttpClient.Builder().pingInterval(30, TimeUnit.SECONDS).build();
+        Gson gson = ModelTypeAdapters.createGson();
+        ItemChangeStream stream = new ItemChangeStream(client, backend.url(), gson, listener);
+
+        stream.start(MockBackend.SYNC_TOKEN);
+        backend.startChangeFeed();
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        feed.stopGenerating();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long produced = feed.lastId();
+        long snapshotsDuringRun = snapshotsShown.get();
+        long batchesDuringRun = stream.batchesDelivered.get();
+
+        long deadline = System.currentTimeMillis() + CATCH_UP_TIMEOUT_MS;
+        while (deliveredId.get() < produced && resyncs.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        stream.shutdown();
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+        String mismatch = compare(repository.snapshot(), feed.items(), feed.locations());
+        if (deliveredId.get() < produced) {
+            mismatch = "stream stopped at event " + deliveredId.get() + " of " + produced;
+        }
+
+        System.out.println(String.format(Locale.US, "%d events in %.1f s (%.0f/s), %d reconnects, %d resyncs",
+                produced, seconds, produced / seconds, stream.reconnects.get(), resyncs.get()));
+        System.out.println(String.format(Locale.US, "%d batches (%.1f/s), %.0f events per batch on average, largest %d",
+                batchesDuringRun, batchesDuringRun / seconds, (double) produced / Math.max(1, stream.batchesDelivered.get()),
+                largestBatch.get()));
+        LatencyHistogram.Snapshot lag = lagMicros.snapshot();
+        System.out.println(String.format(Locale.US, "lag behind the feed: p50 %d ms, p99 %d ms, max %d ms",
+                lag.p50 / 1_000, lag.p99 / 1_000, lag.max / 1_000));
+        System.out.println(String.format(Locale.US, "UI thread: %d snapshots (%.1f/s) at %d ms each",
+                snapshotsDuringRun, snapshotsDuringRun / seconds, uiMs));
+        System.out.println(mismatch == null
+                ? "repository matches the feed: " + repository.snapshot().items.size() + " items"
+                : "MISMATCH: " + mismatch);
+
+        ui.shutdown();
+        writer.shutdown();
+        backend.shutdown();
+        System.exit(mismatch == null ? 0 : 1);
+    }
+
+    // null if the snapshot holds exactly the feed's items and locations
+    private static String compare(ItemRepository.Snapshot snapshot, Map<Integer, Item> items,
+                                  Map<Integer, Location> locations) {
+        if (snapshot.items.size() != items.size()) {
+            return snapshot.items.size() + " items, the feed has " + items.size();
+        }
+        for (Item item : snapshot.items) {
+            Item expected = items.get(item.getId());
+            if (expected == null || !expected.getItemName().equals(item.getItemName())
+                    || expected.getItemLocationId() != item.getItemLocationId()) {
+                return "item " + item.getId() + " differs";
+            }
+        }
+        Map<Integer, String> names = new HashMap<>();
+        for (Location location : snapshot.locations) {
+            names.put(location.getId(), location.getLocationName());
+        }
+        for (Location location : locations.values()) {
+            if (!location.getLocationName().equals(names.get(location.getId()))) {
+                return "location " + location.getId() + " differs";
+            }
+        }
+        return names.size() == locations.size() ? null : names.size() + " locations, the feed has " + locations.size();
+    }
+}
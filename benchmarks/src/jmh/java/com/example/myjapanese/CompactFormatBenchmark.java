@@ -0,0 +1,164 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Decoding the same lists from JSON, with the hand-written Gson adapters, and from CompactCodec. Both start from
+// the response bytes, so the JSON side includes the UTF-8 decoding GsonConverterFactory does on a body.
+// main() prints the payload sizes, raw and gzipped as they go over the wire:
+//   java -cp benchmarks/build/libs/benchmarks-jmh.jar com.example.myjapanese.CompactFormatBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompactFormatBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private Payload payload;
+    private TypeAdapter<List<Item>> itemsAdapter;
+    private TypeAdapter<List<Location>> locationsAdapter;
+    private TypeAdapter<List<PotatoPost>> postsAdapter;
+    private Gson gson;
+
+    @Setup
+    public void setUp() throws IOException {
+        payload = new Payload(size);
+        gson = ModelTypeAdapters.createGson();
+        itemsAdapter = gson.getAdapter(new TypeToken<List<Item>>() {});
+        locationsAdapter = gson.getAdapter(new TypeToken<List<Location>>() {});
+        postsAdapter = gson.getAdapter(new TypeToken<List<PotatoPost>>() {});
+    }
+
+    @Benchmark
+    public List<Item> itemsJson() throws IOException {
+        return itemsAdapter.read(json(payload.itemsJson));
+    }
+
+    @Benchmark
+    public List<Item> itemsCompact() throws IOException {
+        return CompactCodec.readItems(new ByteArrayInputStream(payload.itemsCompact));
+    }
+
+    @Benchmark
+    public List<Location> locationsJson() throws IOException {
+        return locationsAdapter.read(json(payload.locationsJson));
+    }
+
+    @Benchmark
+    public List<Location> locationsCompact() throws IOException {
+        return CompactCodec.readLocations(new ByteArrayInputStream(payload.locationsCompact));
+    }
+
+    @Benchmark
+    public List<PotatoPost> potatoPostsJson() throws IOException {
+        return postsAdapter.read(json(payload.postsJson));
+    }
+
+    @Benchmark
+    public List<PotatoPost> potatoPostsCompact() throws IOException {
+        return CompactCodec.readPotatoPosts(new ByteArrayInputStream(payload.postsCompact));
+    }
+
+    // The chunked paths ItemLoader.loadAll takes for either format
+    @Benchmark
+    public int itemsStreamedJson() throws IOException {
+        return new ItemStreamReader(gson, 200).read(new InputStreamReader(new ByteArrayInputStream(payload.itemsJson), UTF_8),
+                IGNORE_CHUNKS);
+    }
+
+    @Benchmark
+    public int itemsStreamedCompact() throws IOException {
+        return CompactCodec.readItems(new ByteArrayInputStream(payload.itemsCompact), 200, IGNORE_CHUNKS);
+    }
+
+    private static JsonReader json(byte[] bytes) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes), UTF_8));
+    }
+
+    private static final ItemStreamReader.ChunkListener IGNORE_CHUNKS = new ItemStreamReader.ChunkListener() {
+        @Override
+        public void onChunk(List<Item> chunk) {
+        }
+    };
+
+    // Both encodings of the Payloads lists
+    static final class Payload {
+        final byte[] itemsJson;
+        final byte[] itemsCompact;
+        final byte[] locationsJson;
+        final byte[] locationsCompact;
+        final byte[] postsJson;
+        final byte[] postsCompact;
+
+        Payload(int size) throws IOException {
+            Gson gson = ModelTypeAdapters.createGson();
+            String items = Payloads.items(size);
+            String locations = Payloads.locations(size);
+            String posts = Payloads.potatoPosts(size);
+            itemsJson = items.getBytes(UTF_8);
+            locationsJson = locations.getBytes(UTF_8);
+            postsJson = posts.getBytes(UTF_8);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CompactCodec.writeItems(gson.<List<Item>>fromJson(items, new TypeToken<List<Item>>() {}.getType()), out);
+            itemsCompact = out.toByteArray();
+            out.reset();
+            CompactCodec.writeLocations(gson.<List<Location>>fromJson(locations, new TypeToken<List<Location>>() {}.getType()), out);
+            locationsCompact = out.toByteArray();
+            out.reset();
+            CompactCodec.writePotatoPosts(gson.<List<PotatoPost>>fromJson(posts, new TypeToken<List<PotatoPost>>() {}.getType()), out);
+            postsCompact = out.toByteArray();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.out.println(String.format(Locale.US, "%-12s %7s %11s %11s %11s %11s %7s %7s",
+                "payload", "size", "json", "compact", "json.gz", "compact.gz", "raw", "gzip"));
+        for (int size : new int[]{1_000, 10_000, 100_000}) {
+            Payload payload = new Payload(size);
+            printSizes("items", size, payload.itemsJson, payload.itemsCompact);
+            printSizes("locations", size, payload.locationsJson, payload.locationsCompact);
+            printSizes("potatoPosts", size, payload.postsJson, payload.postsCompact);
+        }
+    }
+
+    private static void printSizes(String name, int size, byte[] json, byte[] compact) throws IOException {
+        int jsonGzip = gzipSize(json);
+        int compactGzip = gzipSize(compact);
+        System.out.println(String.format(Locale.US, "%-12s %7d %11d %11d %11d %11d %6.0f%% %6.0f%%",
+                name, size, json.length, compact.length, jsonGzip, compactGzip,
+                100.0 * compact.length / json.length, 100.0 * compactGzip / jsonGzip));
+    }
+
+    private static int gzipSize(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.size();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.myjapanese;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+// Rows per second of ItemCsv on a 500,000 row file: the export, the import with a sender that answers at once
+// (parsing and validation alone), and the import through the real ApiService stack against a MockBackend at a
+// few concurrency levels. Not a JMH benchmark: the local steps run WARM_UP_RUNS times on the full file first,
+// the first runs mostly measure the JIT compiling the parser. Then each step runs once:
+//   java -cp benchmarks/build/libs/benchmarks-jmh.jar com.example.myjapanese.CsvTransferThroughput [rows]
+public final class CsvTransferThroughput {
+
+    private static final int DEFAULT_ROWS = 500_000;
+    private static final int[] CONCURRENCY = {1, 4, 8};
+    private static final int WARM_UP_RUNS = 3;
+
+    private CsvTransferThroughput() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        List<Location> locations = Payloads.locationList(Payloads.LOCATION_COUNT);
+        File file = File.createTempFile("items", ".csv");
+        file.deleteOnExit();
+
+        List<Item> items = Payloads.itemList(rows);
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            ItemCsv.export(items, locations, file, null);
+            ItemCsv.importItems(file, locations, INSTANT, null);
+        }
+        System.out.println("export               " + ItemCsv.export(items, locations, file, null));
+        items = null;
+        System.out.println("import, parse only   " + ItemCsv.importItems(file, locations, INSTANT, null));
+
+        MockBackend.Config config = new MockBackend.Config();
+        config.items = 1_000;
+        MockBackend backend = new MockBackend(config);
+        backend.start();
+        try {
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(16, 5, TimeUnit.MINUTES))
+                    .readTimeout(30, TimeUnit.SECONDS)
+                    .addInterceptor(ApiResilience.get().interceptor())
+                    .addInterceptor(ApiMetrics.get().applicationInterceptor())
+                    .build();
+            ApiService api = new Retrofit.Builder()
+                    .baseUrl(backend.url())
+                    .client(client)
+                    .addConverterFactory(GsonConverterFactory.create(ModelTypeAdapters.createGson()))
+                    .build()
+                    .create(ApiService.class);
+            ItemCsv.BatchSender sender = ItemCsv.sender(api);
+            for (int concurrency : CONCURRENCY) {
+                ItemCsv.ImportResult result = ItemCsv.importItems(file, locations, sender, ItemCsv.DEFAULT_BATCH_SIZE,
+                        concurrency, null);
+                System.out.println(String.format(Locale.US, "import, %d in flight  %s", concurrency, result));
+            }
+            System.out.println(String.format(Locale.US, "backend: %d ms latency + up to %d ms jitter, %d requests",
+                    config.latencyMs, config.jitterMs, backend.requests.get()));
+        } finally {
+            backend.shutdown();
+        }
+    }
+
+    // Saves every row without a round trip
+    private static final ItemCsv.BatchSender INSTANT = new ItemCsv.BatchSender() {
+        @Override
+        public List<ItemMutationResult> send(List<ItemMutation> batch, String idempotencyKey) {
+            List<ItemMutationResult> results = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                results.add(OK);
+            }
+            return results;
+        }
+    };
+
+    private static final ItemMutationResult OK = ModelTypeAdapters.createGson()
+            .fromJson("{\"status\":\"ok\"}", ItemMutationResult.class);
+}
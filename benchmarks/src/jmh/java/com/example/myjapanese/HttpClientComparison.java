@@ -0,0 +1,230 @@
+package com.example.myjapanese;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+// Request latency and bytes on the wire for the HTTP stack the app had and the shared one in ApiClient, against a
+// MockBackend that sends ETags and gzips its bodies like the Django API behind nginx.
+//   before: two Retrofit instances on OkHttp's default client each, the one for the item list built anew in
+//           every MainActivity.onCreate, so its connections and nothing else outlive a session
+//   after:  one client set up like ApiClient.buildHttpClient (connection pool, 20 MB disk cache that revalidates
+//           with If-None-Match, explicit timeouts), without the ApiResilience and ApiMetrics interceptors
+// A session is what a start of the activity loads: the item list, the locations, the feed and its first page.
+// Not a JMH benchmark, both stacks warm up on their own instances first and then run the sessions once:
+//   java -cp benchmarks/build/libs/benchmarks-jmh.jar com.example.myjapanese.HttpClientComparison [sessions]
+public final class HttpClientComparison {
+
+    private static final int DEFAULT_SESSIONS = 30;
+    private static final int WARM_UP_SESSIONS = 5;
+    private static final int ITEMS = 10_000;
+    private static final int FEED_PAGE_SIZE = 20;
+
+    private HttpClientComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        MockBackend.Config config = new MockBackend.Config();
+        config.items = ITEMS;
+        config.validators = true;
+        config.gzip = true;
+        MockBackend backend = new MockBackend(config);
+        backend.start();
+        try {
+            new Before(backend.url(), new Traffic()).run(WARM_UP_SESSIONS);
+            After warmUp = new After(backend.url(), new Traffic());
+            warmUp.run(WARM_UP_SESSIONS);
+            warmUp.deleteCache();
+
+            Traffic before = new Traffic();
+            new Before(backend.url(), before).run(sessions);
+            long notModified = backend.notModified.get();
+            Traffic after = new Traffic();
+            After afterStack = new After(backend.url(), after);
+            afterStack.run(sessions);
+            afterStack.deleteCache();
+
+            System.out.println(before.report("before", sessions));
+            System.out.println(after.report("after", sessions));
+            System.out.println(String.format(Locale.US,
+                    "after: %d of %d calls answered 304, %.1fx fewer bytes received, p50 %.2fx of before",
+                    backend.notModified.get() - notModified, after.latency.getCount(),
+                    (double) before.received.get() / after.received.get(),
+                    (double) after.latency.snapshot().p50 / before.latency.snapshot().p50));
+            System.out.println(String.format(Locale.US, "backend: %d ms latency + up to %d ms jitter, %d items",
+                    config.latencyMs, config.jitterMs, ITEMS));
+        } finally {
+            backend.shutdown();
+        }
+    }
+
+    // What went over the wire, counted by an EventListener on every client of one stack
+    private static final class Traffic extends EventListener {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong sent = new AtomicLong();
+        final AtomicLong received = new AtomicLong();
+        final AtomicLong connections = new AtomicLong();
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connections.incrementAndGet();
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            sent.addAndGet(request.headers().byteCount());
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            sent.addAndGet(byteCount);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            received.addAndGet(response.headers().byteCount());
+        }
+
+        // Network bytes, before gunzipping. A body read from the cache never reaches here.
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            received.addAndGet(byteCount);
+        }
+
+        String report(String name, int sessions) {
+            LatencyHistogram.Snapshot s = latency.snapshot();
+            return String.format(Locale.US,
+                    "%-6s  %4d calls  p50 %6.1f ms  p95 %6.1f ms  mean %6.1f ms  %8.1f KB received/session"
+                            + "  %6.1f KB sent/session  %3d connections",
+                    name, s.count, s.p50 / 1000.0, s.p95 / 1000.0, s.mean / 1000.0,
+                    received.get() / 1024.0 / sessions, sent.get() / 1024.0 / sessions, connections.get());
+        }
+    }
+
+    private abstract static class Stack {
+        final HttpUrl url;
+        final Traffic traffic;
+
+        Stack(HttpUrl url, Traffic traffic) {
+            this.url = url;
+            this.traffic = traffic;
+        }
+
+        // Where the item list and the locations come from in the given session
+        abstract ApiService itemService();
+
+        abstract ApiService feedService();
+
+        void run(int sessions) throws IOException {
+            for (int i = 0; i < sessions; i++) {
+                ApiService items = itemService();
+                ApiService feed = feedService();
+                List<Item> itemList = timed(items.getItems());
+                timed(items.getLocations());
+                timed(feed.getPotatoPosts());
+                timed(feed.getPotatoPostsPage(1, FEED_PAGE_SIZE));
+                if (itemList.size() != ITEMS) {
+                    throw new IOException("Expected " + ITEMS + " items, got " + itemList.size());
+                }
+            }
+        }
+
+        // Until the body is converted, which includes reading it from the cache
+        private <T> T timed(retrofit2.Call<T> call) throws IOException {
+            long start = System.nanoTime();
+            retrofit2.Response<T> response = call.execute();
+            traffic.latency.record((System.nanoTime() - start) / 1_000);
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException(call.request().url() + " failed: HTTP " + response.code());
+            }
+            return response.body();
+        }
+
+        ApiService service(OkHttpClient client) {
+            return new Retrofit.Builder()
+                    .baseUrl(url)
+                    .client(client)
+                    .addConverterFactory(CompactConverterFactory.create())
+                    .addConverterFactory(GsonConverterFactory.create(ModelTypeAdapters.createGson()))
+                    .build()
+                    .create(ApiService.class);
+        }
+    }
+
+    private static final class Before extends Stack {
+        // ApiClient's old lazy singleton
+        private final ApiService shared;
+
+        Before(HttpUrl url, Traffic traffic) {
+            super(url, traffic);
+            shared = service(defaultClient());
+        }
+
+        // OkHttp's defaults plus the counting listener
+        private OkHttpClient defaultClient() {
+            return new OkHttpClient.Builder().eventListener(traffic).build();
+        }
+
+        @Override
+        ApiService itemService() {
+            return service(defaultClient());
+        }
+
+        @Override
+        ApiService feedService() {
+            return shared;
+        }
+    }
+
+    private static final class After extends Stack {
+        private final Cache cache;
+        private final ApiService shared;
+
+        After(HttpUrl url, Traffic traffic) throws IOException {
+            super(url, traffic);
+            File cacheDir = Files.createTempDirectory("http_cache").toFile();
+            cache = new Cache(cacheDir, 20L * 1024 * 1024);
+            shared = service(new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(8, 5, TimeUnit.MINUTES))
+                    .cache(cache)
+                    .connectTimeout(10, TimeUnit.SECONDS)
+                    .readTimeout(30, TimeUnit.SECONDS)
+                    .retryOnConnectionFailure(false)
+                    .eventListener(traffic)
+                    .build());
+        }
+
+        void deleteCache() throws IOException {
+            cache.delete();
+            cache.directory().delete();
+        }
+
+        @Override
+        ApiService itemService() {
+            return shared;
+        }
+
+        @Override
+        ApiService feedService() {
+            return shared;
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package com.example.myjapanese;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// The item list as columns instead of Item objects: ids, location ids and dates (as epoch days) in
+// int arrays, names as offsets into one shared char buffer with identical names stored once.
+// A million generated items take about 45 MB instead of 105 MB as a List<Item>, and sorting,
+// date ranges and grouping work on primitive arrays without touching a String.
+// Rows are appended in order, read() fills it straight from the JSON without creating Items.
+// Not thread safe, build it on one thread and hand it over.
+// Kept in the benchmarks module until the app loads into it: ItemLoader, ItemRepository and the adapter work on
+// Items, and a second copy next to them would cost the memory this saves. It can replace ChunkedItemList as the
+// repository's store once the list screens read rows by index instead of as Items, and move to the app then.
+public class ItemColumns {
+
+    // Date of a row whose date_added is missing or not a plain date
+    public static final int NO_DATE = IsoDates.INVALID_DAY;
+
+    // How far the location id range may exceed the row count before grouping switches to a hash map
+    private static final int DENSE_GROUP_SLACK = 4096;
+
+    private int size = 0;
+    private int[] ids;
+    private int[] locationIds;
+    private int[] epochDays;
+    private int[] nameIds;
+    private final NamePool names;
+
+    // Rows grouped by location id in compressed form: the rows of locationIds[i] are
+    // rows[offsets[i]] up to rows[offsets[i + 1]], each group in row order
+    public static class LocationGroups {
+        public final int[] locationIds;
+        public final int[] offsets;
+        public final int[] rows;
+
+        LocationGroups(int[] locationIds, int[] offsets, int[] rows) {
+            this.locationIds = locationIds;
+            this.offsets = offsets;
+            this.rows = rows;
+        }
+
+        public int groupCount() {
+            return locationIds.length;
+        }
+    }
+
+    public ItemColumns() {
+        this(16);
+    }
+
+    public ItemColumns(int expectedSize) {
+        int capacity = Math.max(1, expectedSize);
+        ids = new int[capacity];
+        locationIds = new int[capacity];
+        epochDays = new int[capacity];
+        nameIds = new int[capacity];
+        names = new NamePool(capacity);
+    }
+
+    public static ItemColumns of(List<Item> items) {
+        ItemColumns columns = new ItemColumns(items.size());
+        for (Item item : items) {
+            columns.add(item);
+        }
+        return columns;
+    }
+
+    // Reads a JSON array of items as the API sends them, the same fields ModelTypeAdapters reads
+    public static ItemColumns read(Reader json, int expectedSize) throws IOException {
+        ItemColumns columns = new ItemColumns(expectedSize);
+        JsonReader in = new JsonReader(json);
+        try {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return columns;
+            }
+            in.beginArray();
+            while (in.hasNext()) {
+                int id = 0;
+                String itemName = null;
+                int epochDay = NO_DATE;
+                int itemLocation = 0;
+                in.beginObject();
+                while (in.hasNext()) {
+                    String field = in.nextName();
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        continue;
+                    }
+                    switch (field) {
+                        case "id":
+                            id = in.nextInt();
+                            break;
+                        case "itemName":
+                            itemName = in.nextString();
+                            break;
+                        case "date_added":
+                            epochDay = IsoDates.parseEpochDay(in.nextString());
+                            break;
+                        case "itemLocation":
+                            itemLocation = in.nextInt();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                columns.add(id, itemName, epochDay, itemLocation);
+            }
+            in.endArray();
+            columns.trimToSize();
+            return columns;
+        } finally {
+            in.close();
+        }
+    }
+
+    // Drops the slack of the growing arrays and the name lookup table once loading is done,
+    // a later add() builds the table again
+    public void trimToSize() {
+        ids = Arrays.copyOf(ids, Math.max(1, size));
+        locationIds = Arrays.copyOf(locationIds, ids.length);
+        epochDays = Arrays.copyOf(epochDays, ids.length);
+        nameIds = Arrays.copyOf(nameIds, ids.length);
+        names.trimToSize();
+    }
+
+    public void add(Item item) {
+        add(item.getId(), item.getItemName(), IsoDates.parseEpochDay(item.getDateAdded()), item.getItemLocationId());
+    }
+
+    public void add(int id, String itemName, int epochDay, int locationId) {
+        if (size == ids.length) {
+            int capacity = Math.max(16, size * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            locationIds = Arrays.copyOf(locationIds, capacity);
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+        }
+        ids[size] = id;
+        locationIds[size] = locationId;
+        epochDays[size] = epochDay;
+        nameIds[size] = names.add(itemName);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public int getLocationId(int row) {
+        return locationIds[row];
+    }
+
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    public String getName(int row) {
+        return names.get(nameIds[row]);
+    }
+
+    // A new Item for the row, its date is written back as "yyyy-MM-dd"
+    public Item toItem(int row) {
+        int epochDay = epochDays[row];
+        return new Item(ids[row], getName(row), epochDay == NO_DATE ? null : IsoDates.formatEpochDay(epochDay),
+                locationIds[row]);
+    }
+
+    // Rows by date, oldest first, rows without a date first; equal dates keep row order
+    public int[] rowsSortedByDate() {
+        // The date in the high half and the row in the low half sort as one long
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = ((long) epochDays[row] << 32) | row;
+        }
+        Arrays.sort(keys);
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = (int) keys[i];
+        }
+        return rows;
+    }
+
+    // Rows by name, compared char by char like String.compareTo, nulls first; equal names keep row order
+    public int[] rowsSortedByName() {
+        // Sorting the distinct names once is cheaper than comparing rows, then the rank is an int key
+        int[] rankOfName = names.ranks();
+        long[] keys = new long[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = ((long) rankOfName[nameIds[row] + 1] << 32) | row;
+        }
+        Arrays.sort(keys);
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = (int) keys[i];
+        }
+        return rows;
+    }
+
+    // Rows dated fromDay to toDay, both inclusive, in row order
+    public int[] rowsInDateRange(int fromDay, int toDay) {
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            int day = epochDays[row];
+            if (day >= fromDay && day <= toDay && day != NO_DATE) {
+                count++;
+            }
+        }
+        int[] rows = new int[count];
+        int next = 0;
+        for (int row = 0; row < size; row++) {
+            int day = epochDays[row];
+            if (day >= fromDay && day <= toDay && day != NO_DATE) {
+                rows[next++] = row;
+            }
+        }
+        return rows;
+    }
+
+    // Same range over rows already sorted by date, found by binary search: returns {start, end} into sortedRows
+    public int[] dateRangeIn(int[] sortedRows, int fromDay, int toDay) {
+        return new int[]{lowerBound(sortedRows, fromDay), lowerBound(sortedRows, toDay == Integer.MAX_VALUE ? toDay : toDay + 1)};
+    }
+
+    private int lowerBound(int[] sortedRows, int day) {
+        int low = 0;
+        int high = sortedRows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[sortedRows[mid]] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Counting sort by location, two passes over the location column. Groups come in the order
+    // their location first appears.
+    public LocationGroups groupByLocation() {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int row = 0; row < size; row++) {
+            min = Math.min(min, locationIds[row]);
+            max = Math.max(max, locationIds[row]);
+        }
+        // Location ids are database ids, usually a small dense range that can index an array directly
+        long range = (long) max - min + 1;
+        int[] groupOfId = null;
+        IntIntHashMap groupOf = null;
+        if (range <= size + DENSE_GROUP_SLACK) {
+            groupOfId = new int[(int) range];
+            Arrays.fill(groupOfId, -1);
+        } else {
+            groupOf = new IntIntHashMap(64);
+        }
+
+        int[] counts = new int[16];
+        int[] groupIds = new int[16];
+        int groupCount = 0;
+        int[] groupOfRow = new int[size];
+        for (int row = 0; row < size; row++) {
+            int locationId = locationIds[row];
+            int group = groupOfId != null ? groupOfId[locationId - min] : groupOf.get(locationId, -1);
+            if (group < 0) {
+                group = groupCount++;
+                if (groupOfId != null) {
+                    groupOfId[locationId - min] = group;
+                } else {
+                    groupOf.put(locationId, group);
+                }
+                if (group == counts.length) {
+                    counts = Arrays.copyOf(counts, group * 2);
+                    groupIds = Arrays.copyOf(groupIds, group * 2);
+                }
+                groupIds[group] = locationId;
+            }
+            counts[group]++;
+            groupOfRow[row] = group;
+        }
+
+        int[] offsets = new int[groupCount + 1];
+        for (int group = 0; group < groupCount; group++) {
+            offsets[group + 1] = offsets[group] + counts[group];
+        }
+        int[] next = Arrays.copyOf(offsets, groupCount);
+        int[] rows = new int[size];
+        for (int row = 0; row < size; row++) {
+            rows[next[groupOfRow[row]]++] = row;
+        }
+        return new LocationGroups(Arrays.copyOf(groupIds, groupCount), offsets, rows);
+    }
+
+    // Heap held by the arrays, object headers aside
+    public long estimatedBytes() {
+        return 4L * (ids.length + locationIds.length + epochDays.length + nameIds.length) + names.estimatedBytes();
+    }
+
+    // Distinct names back to back in one char buffer, each added once and addressed by an int id
+    private static final class NamePool {
+        private static final int NULL_ID = -1;
+
+        private char[] chars;
+        private int charCount = 0;
+        private int[] offsets;  // name id -> start in chars, offsets[count] is the end of the last name
+        private int count = 0;
+        private int[] table;    // open addressing, name id + 1, 0 is free, null after trimToSize()
+        private int[] hashes;   // name id -> hash, so a rehash does not read the chars again
+
+        NamePool(int expectedNames) {
+            chars = new char[Math.max(16, expectedNames * 8)];
+            offsets = new int[Math.max(2, expectedNames + 1)];
+            hashes = new int[Math.max(1, expectedNames)];
+            table = new int[Integer.highestOneBit(Math.max(4, expectedNames * 2) - 1) << 1];
+        }
+
+        int add(String name) {
+            if (name == null) {
+                return NULL_ID;
+            }
+            if (table == null) {
+                rebuildTable();
+            }
+            int hash = name.hashCode();
+            int mask = table.length - 1;
+            int slot = mix(hash) & mask;
+            while (table[slot] != 0) {
+                int id = table[slot] - 1;
+                if (hashes[id] == hash && equalsAt(id, name)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            int id = count++;
+            if (count + 1 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                hashes = Arrays.copyOf(hashes, offsets.length);
+            }
+            int length = name.length();
+            if (charCount + length > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+            }
+            name.getChars(0, length, chars, charCount);
+            offsets[id] = charCount;
+            charCount += length;
+            offsets[id + 1] = charCount;
+            hashes[id] = hash;
+            table[slot] = id + 1;
+            if (count * 2 > table.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return id == NULL_ID ? null : new String(chars, offsets[id], offsets[id + 1] - offsets[id]);
+        }
+
+        // Rank in sorted order indexed by name id + 1, null (id -1) gets rank 0
+        int[] ranks() {
+            Integer[] order = new Integer[count];
+            for (int id = 0; id < count; id++) {
+                order[id] = id;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return compareNames(a, b);
+                }
+            });
+            int[] rankOf = new int[count + 1];
+            for (int rank = 0; rank < count; rank++) {
+                rankOf[order[rank] + 1] = rank + 1;
+            }
+            return rankOf;
+        }
+
+        void trimToSize() {
+            chars = Arrays.copyOf(chars, charCount);
+            offsets = Arrays.copyOf(offsets, count + 1);
+            table = null;
+            hashes = null;
+        }
+
+        long estimatedBytes() {
+            long bytes = 2L * chars.length + 4L * offsets.length;
+            if (table != null) {
+                bytes += 4L * (table.length + hashes.length);
+            }
+            return bytes;
+        }
+
+        private int compareNames(int a, int b) {
+            int aStart = offsets[a];
+            int aLength = offsets[a + 1] - aStart;
+            int bStart = offsets[b];
+            int bLength = offsets[b + 1] - bStart;
+            int common = Math.min(aLength, bLength);
+            for (int i = 0; i < common; i++) {
+                int diff = chars[aStart + i] - chars[bStart + i];
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return aLength - bLength;
+        }
+
+        private boolean equalsAt(int id, String name) {
+            int start = offsets[id];
+            int length = offsets[id + 1] - start;
+            if (length != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars[start + i] != name.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rebuildTable() {
+            hashes = new int[Math.max(1, offsets.length)];
+            for (int id = 0; id < count; id++) {
+                // Same as String.hashCode()
+                int hash = 0;
+                for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                    hash = 31 * hash + chars[i];
+                }
+                hashes[id] = hash;
+            }
+            table = new int[Integer.highestOneBit(Math.max(4, count * 2)) << 1];
+            rehashInto(table);
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            rehashInto(table);
+        }
+
+        private void rehashInto(int[] table) {
+            int mask = table.length - 1;
+            for (int id = 0; id < count; id++) {
+                int slot = mix(hashes[id]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id + 1;
+            }
+        }
+
+        private static int mix(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
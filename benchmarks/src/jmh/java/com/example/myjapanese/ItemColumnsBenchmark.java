@@ -0,0 +1,130 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// ItemColumns against the List<Item> it replaces for large inventories, the same work on both:
+// loading from the API JSON, sorting by date, a date range and grouping by location.
+// The date strings are zero padded, so the list side can compare them as strings.
+// Heap footprint is reported separately by ItemColumnsFootprint.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ItemColumnsBenchmark {
+
+    private static final String RANGE_FROM = "2022-03-01";
+    private static final String RANGE_TO = "2022-08-31";
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    private String itemsJson;
+    private TypeAdapter<List<Item>> itemsAdapter;
+    private List<Item> items;
+    private ItemColumns columns;
+    private int[] rowsByDate;
+    private int rangeFromDay;
+    private int rangeToDay;
+
+    @Setup
+    public void setUp() throws IOException {
+        itemsJson = Payloads.items(size);
+        Gson gson = BenchmarkGson.create(BenchmarkGson.CODECS);
+        itemsAdapter = gson.getAdapter(new TypeToken<List<Item>>() {});
+        items = listFromJson();
+        columns = columnsFromJson();
+        rowsByDate = columns.rowsSortedByDate();
+        rangeFromDay = IsoDates.parseEpochDay(RANGE_FROM);
+        rangeToDay = IsoDates.parseEpochDay(RANGE_TO);
+    }
+
+    @Benchmark
+    public List<Item> listFromJson() throws IOException {
+        return itemsAdapter.read(new JsonReader(new StringReader(itemsJson)));
+    }
+
+    @Benchmark
+    public ItemColumns columnsFromJson() throws IOException {
+        return ItemColumns.read(new StringReader(itemsJson), size);
+    }
+
+    @Benchmark
+    public List<Item> listSortByDate() {
+        List<Item> sorted = new ArrayList<>(items);
+        Collections.sort(sorted, new Comparator<Item>() {
+            @Override
+            public int compare(Item a, Item b) {
+                return a.getDateAdded().compareTo(b.getDateAdded());
+            }
+        });
+        return sorted;
+    }
+
+    @Benchmark
+    public int[] columnsSortByDate() {
+        return columns.rowsSortedByDate();
+    }
+
+    @Benchmark
+    public List<Item> listDateRange() {
+        List<Item> inRange = new ArrayList<>();
+        for (Item item : items) {
+            String date = item.getDateAdded();
+            if (date.compareTo(RANGE_FROM) >= 0 && date.compareTo(RANGE_TO) <= 0) {
+                inRange.add(item);
+            }
+        }
+        return inRange;
+    }
+
+    @Benchmark
+    public int[] columnsDateRange() {
+        return columns.rowsInDateRange(rangeFromDay, rangeToDay);
+    }
+
+    // Once the date order exists, as it does for a list shown by date
+    @Benchmark
+    public int[] columnsDateRangeSorted() {
+        return columns.dateRangeIn(rowsByDate, rangeFromDay, rangeToDay);
+    }
+
+    @Benchmark
+    public Map<Integer, List<Item>> listGroupByLocation() {
+        Map<Integer, List<Item>> groups = new HashMap<>();
+        for (Item item : items) {
+            List<Item> group = groups.get(item.getItemLocationId());
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(item.getItemLocationId(), group);
+            }
+            group.add(item);
+        }
+        return groups;
+    }
+
+    @Benchmark
+    public ItemColumns.LocationGroups columnsGroupByLocation() {
+        return columns.groupByLocation();
+    }
+}
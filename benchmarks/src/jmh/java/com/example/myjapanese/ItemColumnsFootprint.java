@@ -0,0 +1,49 @@
+package com.example.myjapanese;
+
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Locale;
+
+// Retained heap of the parsed item list as List<Item> and as ItemColumns, measured as the used heap
+// after a full GC with and without the structure alive. Run from the JMH jar:
+//   java -XX:+UseSerialGC -cp benchmarks/build/libs/benchmarks-jmh.jar com.example.myjapanese.ItemColumnsFootprint
+public final class ItemColumnsFootprint {
+
+    private static final int[] SIZES = {100_000, 1_000_000};
+
+    private ItemColumnsFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (int size : SIZES) {
+            String json = Payloads.items(size);
+
+            long before = usedHeap();
+            List<Item> items = BenchmarkGson.create(BenchmarkGson.CODECS)
+                    .fromJson(json, new TypeToken<List<Item>>() {}.getType());
+            long listBytes = usedHeap() - before;
+            int listSize = items.size();
+            items = null;
+
+            before = usedHeap();
+            ItemColumns columns = ItemColumns.read(new StringReader(json), size);
+            long columnsBytes = usedHeap() - before;
+
+            System.out.println(String.format(Locale.US,
+                    "%,9d items: List<Item> %,7.1f MB (%3d B/item), ItemColumns %,7.1f MB (%3d B/item, estimated %,.1f MB)",
+                    listSize, listBytes / 1e6, listBytes / size, columnsBytes / 1e6, columnsBytes / size,
+                    columns.estimatedBytes() / 1e6));
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.myjapanese;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// ItemSearchIndex queries as a search box would send them, next to the scan over List<Item> they replace,
+// plus building the index and keeping it up to date after an edit.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ItemSearchBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private List<Item> items;
+    private ItemSearchIndex index;
+    private ItemSearchIndex.Query substring;
+    private ItemSearchIndex.Query prefix;
+    private ItemSearchIndex.Query shortText;
+    private ItemSearchIndex.Query locationInRange;
+    private int fromDay;
+    private int toDay;
+    private Item edited;
+    private Item original;
+
+    @Setup
+    public void setUp() {
+        items = Payloads.itemList(size);
+        index = new ItemSearchIndex();
+        index.setItems(items);
+
+        // The item names are "<word> <id>", e.g. "katsuobushi 4711"
+        substring = new ItemSearchIndex.Query().contains("obushi 47").sortBy(ItemSearchIndex.SORT_NAME).limit(100);
+        prefix = new ItemSearchIndex.Query().startsWith("umeboshi 12").sortBy(ItemSearchIndex.SORT_NAME).limit(100);
+        shortText = new ItemSearchIndex.Query().contains("mi").limit(100);
+        fromDay = IsoDates.parseEpochDay("2022-03-01");
+        toDay = IsoDates.parseEpochDay("2022-03-31");
+        locationInRange = new ItemSearchIndex.Query().location(7).dates(fromDay, toDay)
+                .sortBy(ItemSearchIndex.SORT_DATE).limit(100);
+
+        original = items.get(size / 2);
+        edited = new Item(original.getId(), original.getItemName() + " (opened)", "2025-01-01", 3);
+    }
+
+    @Benchmark
+    public ItemSearchIndex build() {
+        ItemSearchIndex fresh = new ItemSearchIndex();
+        fresh.setItems(items);
+        return fresh;
+    }
+
+    @Benchmark
+    public List<Item> substring() {
+        return index.search(substring);
+    }
+
+    @Benchmark
+    public List<Item> scanSubstring() {
+        List<Item> found = new ArrayList<>();
+        for (Item item : items) {
+            if (item.getItemName().toLowerCase().contains("obushi 47")) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public List<Item> prefix() {
+        return index.search(prefix);
+    }
+
+    // Too short for the trigram postings, checked item by item until the limit
+    @Benchmark
+    public List<Item> shortText() {
+        return index.search(shortText);
+    }
+
+    @Benchmark
+    public List<Item> locationAndDates() {
+        return index.search(locationInRange);
+    }
+
+    @Benchmark
+    public List<Item> scanLocationAndDates() {
+        List<Item> found = new ArrayList<>();
+        for (Item item : items) {
+            int day = IsoDates.parseEpochDay(item.getDateAdded());
+            if (item.getItemLocationId() == 7 && day >= fromDay && day <= toDay) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    // One edit and its undo, so the index is the same for every invocation
+    @Benchmark
+    public int updateInPlace() {
+        index.put(edited);
+        index.put(original);
+        return index.size();
+    }
+}
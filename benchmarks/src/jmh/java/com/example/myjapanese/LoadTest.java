@@ -0,0 +1,536 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import retrofit2.Call;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+// End-to-end load test: many simulated users drive the app's fetch, mutate and row preparation code
+// through the real ApiService stack (ApiResilience, ApiMetrics, the model adapters) against a MockBackend.
+//   ./gradlew :benchmarks:loadTest --args="--users 50 --duration 60 --items 10000 --errors 0.01"
+// Each user loops with a random think time over the operations below, weighted like a session in the app.
+// Reported per operation: throughput, latency percentiles and bytes allocated on the user's thread,
+// followed by the ApiMetrics and ApiResilience reports. --save writes the numbers to a file and
+// --baseline compares against one, exiting with 1 when any operation got slower, allocates more or
+// does less per second than the tolerance allows.
+public final class LoadTest {
+
+    // Full download or delta sync of the item list, as ItemLoader.sync does for a reload
+    static final int OP_SYNC = 0;
+    // What follows a sync on the main thread: merging a delta, indexing the rows for search and
+    // resolving every row's location text
+    static final int OP_PREPARE_ROWS = 1;
+    static final int OP_LOCATIONS = 2;
+    // One page of the potato post feed
+    static final int OP_FEED_PAGE = 3;
+    // A MutationQueue batch
+    static final int OP_BULK = 4;
+    static final int OP_UPDATE = 5;
+    static final int OP_DELETE = 6;
+    // Substring search over the prepared rows
+    static final int OP_SEARCH = 7;
+
+    private static final String[] OP_NAMES = {
+            "sync", "prepareRows", "locations", "feedPage", "bulk", "update", "delete", "search",
+    };
+    // Relative frequency of the operations a user picks, prepareRows follows every sync instead
+    private static final int[] OP_WEIGHTS = {15, 0, 5, 40, 10, 10, 5, 15};
+
+    // How often a reload is a full download rather than a delta, like the periodic resync
+    private static final double FULL_SYNC_RATE = 0.2;
+    private static final int FEED_PAGE_SIZE = 20;
+    private static final int MAX_BULK_BATCH = 20;
+    private static final int STREAM_CHUNK_SIZE = 200;
+    private static final String[] SEARCH_TERMS = {"mi", "rice", "so", "natto 1", "sake", "dashi 2"};
+
+    // Loads are never cancelled here
+    private static final CallTracker NOT_CANCELLED = new CallTracker() {
+        @Override
+        public <T> Call<T> track(Call<T> call) {
+            return call;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    static final class OpStats {
+        final LatencyHistogram micros = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong allocatedBytes = new AtomicLong();
+    }
+
+    static final class Options {
+        int users = 20;
+        long warmupSeconds = 10;
+        long durationSeconds = 30;
+        long thinkMs = 100;
+        double tolerance = 0.2;
+        String save;
+        String baseline;
+        final MockBackend.Config backend = new MockBackend.Config();
+    }
+
+    private final Options options;
+    private final ApiService api;
+    private final Gson gson;
+    private final OpStats[] stats = new OpStats[OP_NAMES.length];
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private volatile boolean recording = false;
+    private volatile boolean stopped = false;
+    private double recordedSeconds;
+
+    LoadTest(Options options, ApiService api, Gson gson) {
+        this.options = options;
+        this.api = api;
+        this.gson = gson;
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new OpStats();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = parse(args);
+        MockBackend backend = new MockBackend(options.backend);
+        backend.start();
+
+        File cacheDir = Files.createTempDirectory("loadtest_http_cache").toFile();
+        Gson gson = ModelTypeAdapters.createGson();
+        // The same stack as ApiClient.buildHttpClient, minus the Android bits
+        OkHttpClient client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(Math.max(8, options.users), 5, TimeUnit.MINUTES))
+                .cache(new Cache(cacheDir, 20L * 1024 * 1024))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .addInterceptor(ApiResilience.get().interceptor())
+                .addInterceptor(ApiMetrics.get().applicationInterceptor())
+                .addNetworkInterceptor(ApiMetrics.get().networkInterceptor())
+                .build();
+        ApiService api = new Retrofit.Builder()
+                .baseUrl(backend.url())
+                .client(client)
+                .addConverterFactory(ApiMetrics.get().converterFactory(ApiService.class))
+                .addConverterFactory(CompactConverterFactory.create())
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build()
+                .create(ApiService.class);
+
+        LoadTest test = new LoadTest(options, api, gson);
+        String report = test.run();
+        System.out.println(report);
+        System.out.printf(Locale.US, "backend: %d requests, %d 503s, %d dropped, %d slow%n%n",
+                backend.requests.get(), backend.injectedErrors.get(), backend.injectedDrops.get(), backend.injectedSlow.get());
+        System.out.println(ApiMetrics.get().report());
+        System.out.println(ApiResilience.get().report());
+
+        Properties results = test.results();
+        if (options.save != null) {
+            OutputStream out = new FileOutputStream(options.save);
+            try {
+                results.store(out, "LoadTest " + String.join(" ", args));
+            } finally {
+                out.close();
+            }
+        }
+        int exitCode = 0;
+        if (options.baseline != null) {
+            Properties baseline = new Properties();
+            InputStream in = new FileInputStream(options.baseline);
+            try {
+                baseline.load(in);
+            } finally {
+                in.close();
+            }
+            List<String> regressions = compare(baseline, results, options.tolerance);
+            for (String regression : regressions) {
+                System.out.println("REGRESSION " + regression);
+            }
+            System.out.println(regressions.isEmpty() ? "No regressions against " + options.baseline
+                    : regressions.size() + " regressions against " + options.baseline);
+            exitCode = regressions.isEmpty() ? 0 : 1;
+        }
+
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        client.cache().delete();
+        backend.shutdown();
+        System.exit(exitCode);
+    }
+
+    String run() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(options.users);
+        for (int u = 0; u < options.users; u++) {
+            final long seed = u;
+            Thread user = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        new User(new Random(seed)).run();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "user-" + u);
+            user.setDaemon(true);
+            user.start();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.warmupSeconds));
+        // Only what happens from here on counts, including the endpoint numbers
+        ApiMetrics.get().reset();
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long start = System.nanoTime();
+        recording = true;
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.durationSeconds));
+        recording = false;
+        recordedSeconds = (System.nanoTime() - start) / 1e9;
+        long gcCount = gcCount() - gcCountBefore;
+        long gcMillis = gcMillis() - gcMillisBefore;
+        stopped = true;
+        done.await();
+        return report(recordedSeconds, gcCount, gcMillis);
+    }
+
+    // One simulated user, with its own copy of the list like the one MainActivity keeps
+    private final class User {
+        private final Random random;
+        private List<Item> items = new ArrayList<>();
+        private ItemChanges pendingChanges;
+        private final ItemSearchIndex searchIndex = new ItemSearchIndex();
+        private final LocationIndex locationIndex = new LocationIndex();
+        private String token;
+        private int nextTemporaryId = -1;
+
+        User(Random random) {
+            this.random = random;
+        }
+
+        void run() {
+            while (!stopped) {
+                int op = pick();
+                execute(op);
+                if (op == OP_SYNC) {
+                    execute(OP_PREPARE_ROWS);
+                }
+                if (options.thinkMs > 0) {
+                    try {
+                        Thread.sleep(ThreadLocalRandom.current().nextLong(2 * options.thinkMs + 1));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private int pick() {
+            int total = 0;
+            for (int weight : OP_WEIGHTS) {
+                total += weight;
+            }
+            int roll = random.nextInt(total);
+            for (int op = 0; op < OP_WEIGHTS.length; op++) {
+                roll -= OP_WEIGHTS[op];
+                if (roll < 0) {
+                    return op;
+                }
+            }
+            return OP_FEED_PAGE;
+        }
+
+        private void execute(int op) {
+            boolean record = recording;
+            long threadId = Thread.currentThread().getId();
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                ok = perform(op);
+            } catch (IOException | RuntimeException e) {
+                ok = false;
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            if (record && recording) {
+                OpStats opStats = stats[op];
+                if (ok) {
+                    opStats.micros.record(micros);
+                    opStats.allocatedBytes.addAndGet(allocated);
+                } else {
+                    opStats.errors.incrementAndGet();
+                }
+            }
+        }
+
+        private boolean perform(int op) throws IOException {
+            switch (op) {
+                case OP_SYNC: {
+                    String since = token != null && random.nextDouble() >= FULL_SYNC_RATE ? token : null;
+                    ItemLoader.Update update = ItemLoader.sync(api, since, gson, STREAM_CHUNK_SIZE, null, NOT_CANCELLED);
+                    token = update.token;
+                    if (update.changes != null) {
+                        pendingChanges = update.changes;
+                    } else {
+                        items = update.items;
+                        pendingChanges = null;
+                        searchIndex.setItems(items);
+                    }
+                    return true;
+                }
+                case OP_PREPARE_ROWS: {
+                    if (pendingChanges != null) {
+                        items = ItemDeltaMerger.merge(items, pendingChanges);
+                        searchIndex.apply(pendingChanges);
+                        pendingChanges = null;
+                    }
+                    // The text ItemAdapter binds for each row
+                    long length = 0;
+                    for (int i = 0; i < items.size(); i++) {
+                        Item item = items.get(i);
+                        String locationName = locationIndex.nameOf(item.getItemLocationId());
+                        length += locationName != null ? locationName.length() : 1;
+                        length += item.getItemName() != null ? item.getItemName().length() : 0;
+                    }
+                    return length >= 0;
+                }
+                case OP_LOCATIONS: {
+                    Response<List<Location>> response = api.getLocations().execute();
+                    if (!response.isSuccessful() || response.body() == null) {
+                        return false;
+                    }
+                    locationIndex.update(response.body());
+                    return true;
+                }
+                case OP_FEED_PAGE: {
+                    int pages = (options.backend.posts + FEED_PAGE_SIZE - 1) / FEED_PAGE_SIZE;
+                    int page = 1 + random.nextInt(Math.max(1, pages));
+                    Response<PotatoPostPage> response = api.getPotatoPostsPage(page, FEED_PAGE_SIZE).execute();
+                    return response.isSuccessful() && response.body() != null;
+                }
+                case OP_BULK: {
+                    int size = 1 + random.nextInt(MAX_BULK_BATCH);
+                    List<ItemMutation> batch = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        int kind = random.nextInt(3);
+                        if (kind == 0) {
+                            int clientId = nextTemporaryId--;
+                            batch.add(new ItemMutation(clientId, ItemMutation.OP_CREATE, randomItem(clientId)));
+                        } else if (kind == 1) {
+                            int id = randomItemId();
+                            batch.add(new ItemMutation(id, ItemMutation.OP_UPDATE, randomItem(id)));
+                        } else {
+                            batch.add(new ItemMutation(randomItemId(), ItemMutation.OP_DELETE, null));
+                        }
+                    }
+                    Response<List<ItemMutationResult>> response =
+                            api.bulkItems(batch, "load-test-" + UUID.randomUUID()).execute();
+                    return response.isSuccessful() && response.body() != null && response.body().size() == size;
+                }
+                case OP_UPDATE: {
+                    int id = randomItemId();
+                    Response<Item> response = api.updateItem(id, randomItem(id)).execute();
+                    return response.isSuccessful();
+                }
+                case OP_DELETE: {
+                    Response<Void> response = api.deleteItem(randomItemId()).execute();
+                    return response.isSuccessful();
+                }
+                case OP_SEARCH: {
+                    String term = SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)];
+                    List<Item> found = searchIndex.search(new ItemSearchIndex.Query().contains(term)
+                            .sortBy(ItemSearchIndex.SORT_NAME));
+                    return found != null;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + op);
+            }
+        }
+
+        private int randomItemId() {
+            return 1 + random.nextInt(options.backend.items);
+        }
+
+        private Item randomItem(int id) {
+            return new Item(id, "load test " + random.nextInt(1000), "2024-05-01", 1 + random.nextInt(Payloads.LOCATION_COUNT));
+        }
+    }
+
+    private String report(double seconds, long gcCount, long gcMillis) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "%d users for %.0f s (after %d s warmup), think time up to %d ms, "
+                        + "%d items, %d posts, latency %d+%d ms, slow %.1f%% +%d ms, 503s %.1f%%, drops %.1f%%%n",
+                options.users, seconds, options.warmupSeconds, 2 * options.thinkMs, options.backend.items,
+                options.backend.posts, options.backend.latencyMs, options.backend.jitterMs,
+                options.backend.slowRate * 100, options.backend.slowMs,
+                options.backend.errorRate * 100, options.backend.dropRate * 100));
+        sb.append(String.format(Locale.US, "GC: %d collections, %d ms%n%n", gcCount, gcMillis));
+        sb.append(String.format(Locale.US, "%-12s %8s %7s %9s | %-31s | %10s%n",
+                "operation", "ok", "errors", "ops/s", "latency p50/p95/p99/max ms", "alloc KB/op"));
+        long totalOk = 0;
+        for (int op = 0; op < stats.length; op++) {
+            OpStats opStats = stats[op];
+            LatencyHistogram.Snapshot snapshot = opStats.micros.snapshot();
+            totalOk += snapshot.count;
+            sb.append(String.format(Locale.US, "%-12s %8d %7d %9.1f | %-31s | %10.1f%n",
+                    OP_NAMES[op], snapshot.count, opStats.errors.get(), snapshot.count / seconds,
+                    millis(snapshot), allocatedKbPerOp(opStats, snapshot)));
+        }
+        sb.append(String.format(Locale.US, "%-12s %8d %7s %9.1f%n", "total", totalOk, "", totalOk / seconds));
+        return sb.toString();
+    }
+
+    // Throughput, p95 and allocation per operation, as compared by --baseline
+    Properties results() {
+        Properties results = new Properties();
+        for (int op = 0; op < stats.length; op++) {
+            LatencyHistogram.Snapshot snapshot = stats[op].micros.snapshot();
+            results.setProperty(OP_NAMES[op] + ".count", String.valueOf(snapshot.count));
+            results.setProperty(OP_NAMES[op] + ".opsPerSecond", String.format(Locale.US, "%.2f", snapshot.count / recordedSeconds));
+            results.setProperty(OP_NAMES[op] + ".p95Ms", String.format(Locale.US, "%.3f", snapshot.p95 / 1000.0));
+            results.setProperty(OP_NAMES[op] + ".allocKbPerOp", String.format(Locale.US, "%.1f", allocatedKbPerOp(stats[op], snapshot)));
+        }
+        return results;
+    }
+
+    // Operations with too few samples in either run are skipped, their percentiles are noise
+    static List<String> compare(Properties baseline, Properties current, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (String op : OP_NAMES) {
+            if (number(baseline, op + ".count") < 20 || number(current, op + ".count") < 20) {
+                continue;
+            }
+            double baseOps = number(baseline, op + ".opsPerSecond");
+            double ops = number(current, op + ".opsPerSecond");
+            if (ops < baseOps * (1 - tolerance)) {
+                regressions.add(String.format(Locale.US, "%s throughput %.1f -> %.1f ops/s", op, baseOps, ops));
+            }
+            double baseP95 = number(baseline, op + ".p95Ms");
+            double p95 = number(current, op + ".p95Ms");
+            if (p95 > baseP95 * (1 + tolerance)) {
+                regressions.add(String.format(Locale.US, "%s p95 %.1f -> %.1f ms", op, baseP95, p95));
+            }
+            double baseAlloc = number(baseline, op + ".allocKbPerOp");
+            double alloc = number(current, op + ".allocKbPerOp");
+            if (alloc > baseAlloc * (1 + tolerance)) {
+                regressions.add(String.format(Locale.US, "%s allocation %.1f -> %.1f KB/op", op, baseAlloc, alloc));
+            }
+        }
+        return regressions;
+    }
+
+    private static double number(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        return value == null ? 0 : Double.parseDouble(value);
+    }
+
+    private static double allocatedKbPerOp(OpStats opStats, LatencyHistogram.Snapshot snapshot) {
+        return snapshot.count == 0 ? 0 : opStats.allocatedBytes.get() / 1024.0 / snapshot.count;
+    }
+
+    private static String millis(LatencyHistogram.Snapshot snapshot) {
+        if (snapshot.count == 0) {
+            return "-";
+        }
+        return String.format(Locale.US, "%.1f/%.1f/%.1f/%.1f",
+                snapshot.p50 / 1000.0, snapshot.p95 / 1000.0, snapshot.p99 / 1000.0, snapshot.max / 1000.0);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        MockBackend.Config backend = options.backend;
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw usage("Missing value for " + name);
+            }
+            String value = args[++i];
+            if (name.equals("--users")) {
+                options.users = Integer.parseInt(value);
+            } else if (name.equals("--warmup")) {
+                options.warmupSeconds = Long.parseLong(value);
+            } else if (name.equals("--duration")) {
+                options.durationSeconds = Long.parseLong(value);
+            } else if (name.equals("--think")) {
+                options.thinkMs = Long.parseLong(value);
+            } else if (name.equals("--items")) {
+                backend.items = Integer.parseInt(value);
+            } else if (name.equals("--posts")) {
+                backend.posts = Integer.parseInt(value);
+            } else if (name.equals("--latency")) {
+                backend.latencyMs = Long.parseLong(value);
+            } else if (name.equals("--jitter")) {
+                backend.jitterMs = Long.parseLong(value);
+            } else if (name.equals("--slow")) {
+                backend.slowRate = Double.parseDouble(value);
+            } else if (name.equals("--slow-ms")) {
+                backend.slowMs = Long.parseLong(value);
+            } else if (name.equals("--errors")) {
+                backend.errorRate = Double.parseDouble(value);
+            } else if (name.equals("--drops")) {
+                backend.dropRate = Double.parseDouble(value);
+            } else if (name.equals("--compact")) {
+                backend.compact = Boolean.parseBoolean(value);
+            } else if (name.equals("--save")) {
+                options.save = value;
+            } else if (name.equals("--baseline")) {
+                options.baseline = value;
+            } else if (name.equals("--tolerance")) {
+                options.tolerance = Double.parseDouble(value);
+            } else {
+                throw usage("Unknown option " + name);
+            }
+        }
+        return options;
+    }
+
+    private static IllegalArgumentException usage(String problem) {
+        return new IllegalArgumentException(problem + "\nOptions: --users N --warmup S --duration S --think MS "
+                + "--items N --posts N --latency MS --jitter MS --slow RATE --slow-ms MS --errors RATE --drops RATE "
+                + "--compact true|false --save FILE --baseline FILE --tolerance FRACTION");
+    }
+}
@@ -0,0 +1,366 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+// Local stand-in for the Django API behind ApiService, on a MockWebServer:
+//   GET /item/ (with an X-Sync-Token), /item/changes/, /location/, /potato_posts/ (paged with page and page_size)
+//   POST /item/ and /item/bulk/, PUT and DELETE /item/{id}/
+//   GET /item/events/ upgraded to a WebSocket, see MockChangeFeed
+// The data is generated once from a fixed seed. Writes are acknowledged but not applied, so every
+// simulated user reads the same dataset however long the run. Each response waits latencyMs plus up to
+// jitterMs, a slowRate share of them slowMs more, and errorRate/dropRate of them fail with a 503 or a
+// connection closed before any response. The full lists go out in CompactCodec's format to requests that accept
+// it, unless compact is off. With validators on, the lists and pages carry an ETag and a matching If-None-Match
+// gets a 304 without a body. With gzip on, bodies over a kilobyte are gzipped for clients that accept it.
+final class MockBackend {
+
+    static final String SYNC_TOKEN = "v1";
+
+    // MockWebServer logs every request at INFO, held here so the level sticks
+    private static final Logger SERVER_LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+    static {
+        SERVER_LOGGER.setLevel(Level.WARNING);
+    }
+
+    static final class Config {
+        int items = 10_000;
+        int posts = 2_000;
+        long latencyMs = 20;
+        long jitterMs = 20;
+        double slowRate = 0;
+        long slowMs = 3_000;
+        double errorRate = 0;
+        double dropRate = 0;
+        boolean compact = true;
+        // Changes per second the change feed makes once startChangeFeed() is called
+        int eventsPerSecond = 5_000;
+        // Change stream connections are cut after a random time up to this, 0 keeps them open
+        long streamDropMs = 0;
+        boolean validators = false;
+        boolean gzip = false;
+    }
+
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    private final Config config;
+    private final MockWebServer server = new MockWebServer();
+    private final String itemsJson;
+    private final String locationsJson;
+    private final byte[] itemsCompact;
+    private final byte[] locationsCompact;
+    private final byte[] postsCompact;
+    private final JsonArray posts;
+    private final JsonArray items;
+    private final AtomicInteger nextItemId;
+    final MockChangeFeed changeFeed;
+
+    // What was served, to compare with what the clients saw
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong injectedErrors = new AtomicLong();
+    final AtomicLong injectedDrops = new AtomicLong();
+    final AtomicLong injectedSlow = new AtomicLong();
+    final AtomicLong notModified = new AtomicLong();
+
+    MockBackend(Config config) {
+        this.config = config;
+        this.itemsJson = Payloads.items(config.items);
+        this.locationsJson = Payloads.locations(Payloads.LOCATION_COUNT);
+        this.items = new JsonParser().parse(itemsJson).getAsJsonArray();
+        String postsJson = Payloads.potatoPosts(config.posts);
+        this.posts = new JsonParser().parse(postsJson).getAsJsonArray();
+
+        Gson gson = ModelTypeAdapters.createGson();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            List<Item> itemList = gson.fromJson(itemsJson, new TypeToken<List<Item>>() {}.getType());
+            List<Location> locationList = gson.fromJson(locationsJson, new TypeToken<List<Location>>() {}.getType());
+            this.changeFeed = new MockChangeFeed(itemList, locationList);
+            CompactCodec.writeItems(itemList, out);
+            this.itemsCompact = out.toByteArray();
+            out.reset();
+            CompactCodec.writeLocations(locationList, out);
+            this.locationsCompact = out.toByteArray();
+            out.reset();
+            CompactCodec.writePotatoPosts(gson.<List<PotatoPost>>fromJson(postsJson, new TypeToken<List<PotatoPost>>() {}.getType()), out);
+            this.postsCompact = out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.nextItemId = new AtomicInteger(config.items + 1);
+        server.setDispatcher(dispatcher);
+        server.setServerSocketFactory(NO_DELAY_SOCKETS);
+    }
+
+    void start() throws IOException {
+        server.start();
+    }
+
+    void startChangeFeed() {
+        changeFeed.startGenerating(config.eventsPerSecond);
+    }
+
+    void shutdown() throws IOException {
+        try {
+            changeFeed.stopGenerating();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.shutdown();
+    }
+
+    HttpUrl url() {
+        return server.url("/");
+    }
+
+    // MockWebServer flushes the headers and the body separately, with Nagle's algorithm on the body then
+    // waits for the client's delayed ACK and every response would look about 40 ms slower to parse.
+    // The bound variants bind the same unbound socket the way the ServerSocket constructors do, the
+    // default factory's sockets cannot set TCP_NODELAY on what they accept.
+    private static final ServerSocketFactory NO_DELAY_SOCKETS = new ServerSocketFactory() {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new NoDelayServerSocket();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return createServerSocket(port, 0, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            return createServerSocket(port, backlog, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            ServerSocket socket = new NoDelayServerSocket();
+            try {
+                socket.bind(new InetSocketAddress(address, port), backlog);
+            } catch (IOException | RuntimeException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
+        }
+    };
+
+    private static final class NoDelayServerSocket extends ServerSocket {
+        NoDelayServerSocket() throws IOException {
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            Socket socket = super.accept();
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+    }
+
+    private final Dispatcher dispatcher = new Dispatcher() {
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            requests.incrementAndGet();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            double roll = random.nextDouble();
+            MockResponse response;
+            if (roll < config.dropRate) {
+                injectedDrops.incrementAndGet();
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            } else if (roll < config.dropRate + config.errorRate) {
+                injectedErrors.incrementAndGet();
+                response = json(503, "{\"detail\":\"Service unavailable\"}");
+            } else {
+                response = encode(request, route(request, random));
+            }
+
+            long delayMs = config.latencyMs + (config.jitterMs > 0 ? random.nextLong(config.jitterMs + 1) : 0);
+            if (config.slowRate > 0 && random.nextDouble() < config.slowRate) {
+                injectedSlow.incrementAndGet();
+                delayMs += config.slowMs;
+            }
+            return response.setHeadersDelay(delayMs, TimeUnit.MILLISECONDS);
+        }
+    };
+
+    private MockResponse route(RecordedRequest request, Random random) {
+        HttpUrl url = request.getRequestUrl();
+        String path = url.encodedPath();
+        String method = request.getMethod();
+
+        if ("GET".equals(method)) {
+            String accept = request.getHeader("Accept");
+            boolean compact = config.compact && accept != null && accept.contains(CompactCodec.MEDIA_TYPE);
+            if (path.equals("/item/")) {
+                MockResponse response = compact ? compact(itemsCompact) : json(200, itemsJson);
+                return response.setHeader(ItemLoader.SYNC_TOKEN_HEADER, SYNC_TOKEN);
+            } else if (path.equals("/" + ItemChangeStream.EVENTS_PATH)) {
+                return changeFeed.subscribe(url.queryParameter("since"), config.streamDropMs, random);
+            } else if (path.equals("/item/changes/")) {
+                return json(200, changes(random));
+            } else if (path.equals("/location/")) {
+                return compact ? compact(locationsCompact) : json(200, locationsJson);
+            } else if (path.equals("/potato_posts/")) {
+                if (compact && url.queryParameter("page") == null) {
+                    return compact(postsCompact);
+                }
+                return json(200, postsPage(url));
+            }
+        } else if ("POST".equals(method)) {
+            if (path.equals("/item/bulk/")) {
+                return json(200, bulkResults(request.getBody().readUtf8()));
+            } else if (path.equals("/item/")) {
+                JsonObject item = new JsonParser().parse(request.getBody().readUtf8()).getAsJsonObject();
+                item.addProperty("id", nextItemId.getAndIncrement());
+                return json(201, item.toString());
+            }
+        } else if (path.startsWith("/item/")) {
+            if ("PUT".equals(method)) {
+                return json(200, request.getBody().readUtf8());
+            } else if ("DELETE".equals(method)) {
+                return new MockResponse().setResponseCode(204);
+            }
+        }
+        return json(404, "{\"detail\":\"Not found\"}");
+    }
+
+    // ETag and gzip for the GET lists, the data never changes so the ETag is a hash of the body
+    private MockResponse encode(RecordedRequest request, MockResponse response) {
+        Buffer body = response.getBody();
+        if (!"GET".equals(request.getMethod()) || !response.getStatus().startsWith("HTTP/1.1 200")
+                || response.getWebSocketListener() != null || body == null || body.size() == 0) {
+            return response;
+        }
+        if (config.validators) {
+            String etag = "\"" + body.md5().hex() + "\"";
+            if (etag.equals(request.getHeader("If-None-Match"))) {
+                notModified.incrementAndGet();
+                return new MockResponse().setResponseCode(304).setHeader("ETag", etag);
+            }
+            response.setHeader("ETag", etag);
+        }
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (config.gzip && body.size() >= GZIP_MIN_BYTES && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            Buffer gzipped = new Buffer();
+            try {
+                BufferedSink sink = Okio.buffer(new GzipSink(gzipped));
+                sink.writeAll(body);
+                sink.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            response.setBody(gzipped).setHeader("Content-Encoding", "gzip");
+        }
+        return response;
+    }
+
+    // A handful of edits by someone else since the last sync
+    private String changes(Random random) {
+        JsonArray upserted = new JsonArray();
+        int count = 1 + random.nextInt(10);
+        for (int i = 0; i < count; i++) {
+            upserted.add(items.get(random.nextInt(items.size())));
+        }
+        JsonArray deleted = new JsonArray();
+        if (random.nextInt(4) == 0) {
+            deleted.add(1 + random.nextInt(config.items));
+        }
+        JsonObject changes = new JsonObject();
+        changes.addProperty("token", SYNC_TOKEN);
+        changes.add("upserted", upserted);
+        changes.add("deleted", deleted);
+        return changes.toString();
+    }
+
+    // Page numbers from 1 like Django REST framework's PageNumberPagination, the whole list without one
+    private String postsPage(HttpUrl url) {
+        String pageParam = url.queryParameter("page");
+        if (pageParam == null) {
+            return posts.toString();
+        }
+        int page = Integer.parseInt(pageParam);
+        String sizeParam = url.queryParameter("page_size");
+        int pageSize = sizeParam != null ? Integer.parseInt(sizeParam) : 20;
+        int from = Math.min((page - 1) * pageSize, posts.size());
+        int to = Math.min(from + pageSize, posts.size());
+
+        JsonArray results = new JsonArray();
+        for (int i = from; i < to; i++) {
+            results.add(posts.get(i));
+        }
+        JsonObject body = new JsonObject();
+        body.addProperty("count", posts.size());
+        if (to < posts.size()) {
+            body.addProperty("next", url.newBuilder().setQueryParameter("page", String.valueOf(page + 1)).toString());
+        } else {
+            body.add("next", JsonNull.INSTANCE);
+        }
+        body.add("results", results);
+        return body.toString();
+    }
+
+    // Every mutation succeeds, creates get the next server id
+    private String bulkResults(String body) {
+        JsonArray results = new JsonArray();
+        for (JsonElement element : new JsonParser().parse(body).getAsJsonArray()) {
+            JsonObject mutation = element.getAsJsonObject();
+            JsonObject result = new JsonObject();
+            result.add("client_id", mutation.get("client_id"));
+            result.addProperty("status", ItemMutationResult.STATUS_OK);
+            JsonElement item = mutation.get("item");
+            if (item != null && item.isJsonObject()) {
+                JsonObject saved = item.getAsJsonObject();
+                if (ItemMutation.OP_CREATE.equals(mutation.get("op").getAsString())) {
+                    saved.addProperty("id", nextItemId.getAndIncrement());
+                }
+                result.add("item", saved);
+            }
+            results.add(result);
+        }
+        return results.toString();
+    }
+
+    private static MockResponse compact(byte[] body) {
+        return new MockResponse().setHeader("Content-Type", CompactCodec.MEDIA_TYPE).setHeader("Vary", "Accept")
+                .setBody(new Buffer().write(body));
+    }
+
+    private static MockResponse json(int code, String body) {
+        return new MockResponse().setResponseCode(code).setHeader("Content-Type", "application/json").setBody(body);
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+
+// The server side of ItemChangeStream for MockBackend. A generator thread makes eventsPerSecond changes to the
+// items (edits, new items, deletes) and a few to the locations, and keeps the last RETAINED events so a
+// client can resume. Event ids count up from 1, MockBackend.SYNC_TOKEN stands for 0. A since older than the
+// retained events gets a reset. Unlike the rest of MockBackend the changes are applied to a model of the data,
+// so a client can be checked against items() and locations() once it has caught up.
+final class MockChangeFeed {
+
+    static final int RETAINED = 1 << 18;
+
+    // Events are sent in runs of at most this many, and not while the socket has more than this queued
+    private static final int MAX_RUN = 1_000;
+    private static final long MAX_QUEUED_BYTES = 1 << 20;
+
+    private static final int NORMAL_CLOSURE = 1000;
+    private static final int GOING_AWAY = 1001;
+
+    private static final double NEW_ITEM_RATE = 0.15;
+    private static final double DELETE_RATE = 0.14;
+    private static final double LOCATION_RATE = 0.01;
+
+    private final Gson gson = ModelTypeAdapters.createGson();
+    private final Random random = new Random(7);
+
+    // Guarded by this
+    private final String[] log = new String[RETAINED];
+    private final long[] createdNanos = new long[RETAINED];
+    private long lastId = 0;
+    private final Map<Integer, Item> items = new HashMap<>();
+    private final List<Integer> liveIds = new ArrayList<>();
+    private final Map<Integer, Location> locations = new LinkedHashMap<>();
+    private int nextItemId;
+    private int nextVersion = 1;
+
+    private volatile Thread generator;
+
+    MockChangeFeed(List<Item> initialItems, List<Location> initialLocations) {
+        int maxId = 0;
+        for (Item item : initialItems) {
+            items.put(item.getId(), item);
+            liveIds.add(item.getId());
+            maxId = Math.max(maxId, item.getId());
+        }
+        for (Location location : initialLocations) {
+            locations.put(location.getId(), location);
+        }
+        nextItemId = maxId + 1;
+    }
+
+    // Makes eventsPerSecond changes until stopGenerating(), in steps of a millisecond
+    void startGenerating(final int eventsPerSecond) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                long made = 0;
+                while (generator == Thread.currentThread()) {
+                    long due = (System.nanoTime() - start) * eventsPerSecond / 1_000_000_000L;
+                    if (made < due) {
+                        synchronized (MockChangeFeed.this) {
+                            for (; made < due; made++) {
+                                append(nextEvent());
+                            }
+                            MockChangeFeed.this.notifyAll();
+                        }
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "mock-change-feed");
+        thread.setDaemon(true);
+        generator = thread;
+        thread.start();
+    }
+
+    void stopGenerating() throws InterruptedException {
+        Thread thread = generator;
+        generator = null;
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    synchronized long lastId() {
+        return lastId;
+    }
+
+    // When the event was made, 0 once it is no longer retained
+    synchronized long createdNanos(long id) {
+        return id > lastId - RETAINED && id <= lastId ? createdNanos[(int) (id % RETAINED)] : 0;
+    }
+
+    synchronized Map<Integer, Item> items() {
+        return new HashMap<>(items);
+    }
+
+    synchronized Map<Integer, Location> locations() {
+        return new LinkedHashMap<>(locations);
+    }
+
+    // For GET /item/events/, sends every event after since and then the new ones. dropAfterMs > 0 cuts the
+    // connection after a random time up to that, to make the client reconnect.
+    MockResponse subscribe(String since, long dropAfterMs, Random random) {
+        long cursor;
+        if (since == null || MockBackend.SYNC_TOKEN.equals(since)) {
+            cursor = 0;
+        } else {
+            try {
+                cursor = Long.parseLong(since);
+            } catch (NumberFormatException e) {
+                cursor = -1;
+            }
+        }
+        long dropAfterNanos = dropAfterMs > 0 ? TimeUnit.MILLISECONDS.toNanos(1 + random.nextInt((int) dropAfterMs)) : 0;
+        return new MockResponse().withWebSocketUpgrade(new Subscriber(cursor, dropAfterNanos));
+    }
+
+    // Called with the lock held
+    private String nextEvent() {
+        JsonObject event = new JsonObject();
+        double roll = random.nextDouble();
+        if (roll < LOCATION_RATE) {
+            Location location = new Location();
+            location.setId(1 + random.nextInt(locations.size()));
+            location.setLocationName("Shelf " + location.getId() + " v" + nextVersion++);
+            locations.put(location.getId(), location);
+            event.addProperty("type", ItemChangeEvent.TYPE_LOCATION_UPSERTED);
+            event.add("location", gson.toJsonTree(location));
+        } else if (roll < LOCATION_RATE + DELETE_RATE && !liveIds.isEmpty()) {
+            int index = random.nextInt(liveIds.size());
+            int id = liveIds.get(index);
+            liveIds.set(index, liveIds.get(liveIds.size() - 1));
+            liveIds.remove(liveIds.size() - 1);
+            items.remove(id);
+            event.addProperty("type", ItemChangeEvent.TYPE_ITEM_DELETED);
+            event.addProperty("deleted_id", id);
+        } else {
+            int id;
+            if (roll < LOCATION_RATE + DELETE_RATE + NEW_ITEM_RATE || liveIds.isEmpty()) {
+                id = nextItemId++;
+                liveIds.add(id);
+            } else {
+                id = liveIds.get(random.nextInt(liveIds.size()));
+            }
+            Item item = new Item(id, "item " + id + " v" + nextVersion++, "2024-05-01", 1 + random.nextInt(locations.size()));
+            items.put(id, item);
+            event.addProperty("type", ItemChangeEvent.TYPE_ITEM_UPSERTED);
+            event.add("item", gson.toJsonTree(item));
+        }
+        event.addProperty("id", String.valueOf(lastId + 1));
+        return event.toString();
+    }
+
+    // Called with the lock held
+    private void append(String event) {
+        lastId++;
+        int slot = (int) (lastId % RETAINED);
+        log[slot] = event;
+        createdNanos[slot] = System.nanoTime();
+    }
+
+    // One connection, with its own sender thread
+    private final class Subscriber extends WebSocketListener {
+        private long cursor;
+        private final long dropAfterNanos;
+        private volatile boolean open = true;
+
+        Subscriber(long cursor, long dropAfterNanos) {
+            this.cursor = cursor;
+            this.dropAfterNanos = dropAfterNanos;
+        }
+
+        @Override
+        public void onOpen(final WebSocket webSocket, Response response) {
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    send(webSocket);
+                }
+            }, "mock-change-feed-sender");
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            open = false;
+            webSocket.close(NORMAL_CLOSURE, null);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            open = false;
+        }
+
+        private void send(WebSocket webSocket) {
+            long openedAt = System.nanoTime();
+            List<String> run = new ArrayList<>(MAX_RUN);
+            try {
+                while (open) {
+                    if (dropAfterNanos > 0 && System.nanoTime() - openedAt > dropAfterNanos) {
+                        // A server side socket cannot be cut without a close frame, this is what a restart sends
+                        webSocket.close(GOING_AWAY, "restarting");
+                        return;
+                    }
+                    if (webSocket.queueSize() > MAX_QUEUED_BYTES) {
+                        Thread.sleep(1);
+                        continue;
+                    }
+                    run.clear();
+                    synchronized (MockChangeFeed.this) {
+                        if (cursor < 0 || cursor < lastId - RETAINED) {
+                            webSocket.send("{\"type\":\"" + ItemChangeEvent.TYPE_RESET + "\"}");
+                            webSocket.close(NORMAL_CLOSURE, null);
+                            return;
+                        }
+                        if (cursor == lastId) {
+                            MockChangeFeed.this.wait(50);
+                            continue;
+                        }
+                        while (cursor < lastId && run.size() < MAX_RUN) {
+                            cursor++;
+                            run.add(log[(int) (cursor % RETAINED)]);
+                        }
+                    }
+                    for (String event : run) {
+                        webSocket.send(event);
+                    }
+                }
+            } catch (InterruptedException e) {
+                webSocket.close(GOING_AWAY, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.myjapanese;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parsing the API responses the way GsonConverterFactory does: one TypeAdapter per response type
+// reading from a character stream. PotatoPost includes the Date parsing of published_date.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModelDeserializationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    @Param({BenchmarkGson.DEFAULT, BenchmarkGson.CODECS})
+    public String gson;
+
+    private String itemsJson;
+    private String locationsJson;
+    private String postsJson;
+
+    private Gson gsonInstance;
+    private TypeAdapter<List<Item>> itemsAdapter;
+    private TypeAdapter<List<Location>> locationsAdapter;
+    private TypeAdapter<List<PotatoPost>> postsAdapter;
+
+    @Setup
+    public void setUp() {
+        itemsJson = Payloads.items(size);
+        locationsJson = Payloads.locations(size);
+        postsJson = Payloads.potatoPosts(size);
+
+        gsonInstance = BenchmarkGson.create(gson);
+        itemsAdapter = gsonInstance.getAdapter(new TypeToken<List<Item>>() {});
+        locationsAdapter = gsonInstance.getAdapter(new TypeToken<List<Location>>() {});
+        postsAdapter = gsonInstance.getAdapter(new TypeToken<List<PotatoPost>>() {});
+    }
+
+    @Benchmark
+    public List<Item> items() throws IOException {
+        return itemsAdapter.read(new JsonReader(new StringReader(itemsJson)));
+    }
+
+    @Benchmark
+    public List<Location> locations() throws IOException {
+        return locationsAdapter.read(new JsonReader(new StringReader(locationsJson)));
+    }
+
+    @Benchmark
+    public List<PotatoPost> potatoPosts() throws IOException {
+        return postsAdapter.read(new JsonReader(new StringReader(postsJson)));
+    }
+
+    // The streaming path MainActivity uses for the item list
+    @Benchmark
+    public int itemsStreamed() throws IOException {
+        return new ItemStreamReader(gsonInstance, 200).read(new StringReader(itemsJson), new ItemStreamReader.ChunkListener() {
+            @Override
+            public void onChunk(List<Item> chunk) {
+            }
+        });
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.myjapanese;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+// Item edits per second through the path MutationQueue takes, against MockBackend's /item/bulk/: every edit is
+// journaled and coalesced in PendingMutations, and a batch goes out after an fsync, one at a time. Batches of 1
+// are the unbatched baseline, a request and an fsync per edit, 100 is MutationQueue.MAX_BATCH_SIZE.
+// MutationQueue itself needs a Looper, so the loop below stands in for its flush. Not a JMH benchmark, each
+// batch size runs once on the same edits after a warm-up run:
+//   java -cp benchmarks/build/libs/benchmarks-jmh.jar com.example.myjapanese.MutationThroughput [edits]
+public final class MutationThroughput {
+
+    private static final int DEFAULT_EDITS = 1_000;
+    private static final int[] BATCH_SIZES = {1, 10, 100};
+    private static final int ITEMS = 1_000;
+    // Share of the edits that create an item, the rest update one of the ITEMS
+    private static final double CREATE_RATE = 0.1;
+
+    private MutationThroughput() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int edits = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EDITS;
+        List<Item> items = Payloads.itemList(ITEMS);
+
+        MockBackend.Config config = new MockBackend.Config();
+        config.items = ITEMS;
+        MockBackend backend = new MockBackend(config);
+        backend.start();
+        try {
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .readTimeout(30, TimeUnit.SECONDS)
+                    .build();
+            ApiService api = new Retrofit.Builder()
+                    .baseUrl(backend.url())
+                    .client(client)
+                    .addConverterFactory(GsonConverterFactory.create(ModelTypeAdapters.createGson()))
+                    .build()
+                    .create(ApiService.class);
+
+            run(api, items, Math.min(edits, 200), 100);
+            double unbatched = 0;
+            for (int batchSize : BATCH_SIZES) {
+                long requestsBefore = backend.requests.get();
+                Result result = run(api, items, edits, batchSize);
+                double perSecond = edits * 1e9 / result.nanos;
+                if (batchSize == 1) {
+                    unbatched = perSecond;
+                }
+                System.out.println(String.format(Locale.US,
+                        "batch %3d  %8.0f edits/s  %5.1fx  %5d sent in %4d requests  %4d ms",
+                        batchSize, perSecond, perSecond / unbatched, result.sent,
+                        backend.requests.get() - requestsBefore, result.nanos / 1_000_000));
+            }
+            System.out.println(String.format(Locale.US, "backend: %d ms latency + up to %d ms jitter",
+                    config.latencyMs, config.jitterMs));
+        } finally {
+            backend.shutdown();
+        }
+    }
+
+    private static final class Result {
+        final long nanos;
+        final int sent;
+
+        Result(long nanos, int sent) {
+            this.nanos = nanos;
+            this.sent = sent;
+        }
+    }
+
+    // The same seeded edits for every batch size, so only the batching differs
+    private static Result run(ApiService api, List<Item> items, int edits, int batchSize) throws IOException {
+        File file = File.createTempFile("outbox", ".journal");
+        file.deleteOnExit();
+        OutboxJournal journal = new OutboxJournal(file);
+        PendingMutations pending = new PendingMutations();
+        Random random = new Random(42);
+        long seq = journal.getLastSeq();
+        int sent = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            Item source = items.get(random.nextInt(items.size()));
+            Item edited = new Item(source.getId(), source.getItemName() + " " + i, source.getDateAdded(),
+                    source.getItemLocationId());
+            ItemMutation mutation;
+            if (random.nextDouble() < CREATE_RATE) {
+                edited.setId(pending.allocateTemporaryId());
+                mutation = new ItemMutation(edited.getId(), ItemMutation.OP_CREATE, edited);
+                journal.append(++seq, mutation);
+                pending.create(edited, seq);
+            } else {
+                mutation = new ItemMutation(edited.getId(), ItemMutation.OP_UPDATE, edited);
+                journal.append(++seq, mutation);
+                pending.update(edited, seq);
+            }
+            if (pending.size() >= batchSize) {
+                sent += flush(api, journal, pending, batchSize);
+            }
+        }
+        while (!pending.isEmpty()) {
+            sent += flush(api, journal, pending, batchSize);
+        }
+        long nanos = System.nanoTime() - start;
+        journal.close();
+        return new Result(nanos, sent);
+    }
+
+    private static int flush(ApiService api, OutboxJournal journal, PendingMutations pending, int batchSize)
+            throws IOException {
+        List<ItemMutation> batch = pending.drain(batchSize);
+        StringBuilder content = new StringBuilder(journal.getId()).append('\n');
+        for (ItemMutation mutation : batch) {
+            content.append(mutation.getClientId()).append(' ').append(mutation.getJournalSeq()).append('\n');
+        }
+        String key = ItemMutation.idempotencyKey("outbox", content);
+        journal.appendBatch(key, batch);
+        journal.sync();
+
+        Response<List<ItemMutationResult>> response = api.bulkItems(batch, key).execute();
+        if (!response.isSuccessful() || response.body() == null) {
+            throw new IOException("Bulk request failed: HTTP " + response.code());
+        }
+        // MockBackend answers every mutation, in order
+        List<ItemMutationResult> results = response.body();
+        for (int i = 0; i < batch.size(); i++) {
+            ItemMutation mutation = batch.get(i);
+            int serverId = mutation.getClientId();
+            if (mutation.isCreate()) {
+                serverId = results.get(i).getItem().getId();
+                pending.onCreated(mutation.getClientId(), serverId);
+            }
+            journal.ack(mutation.getClientId(), mutation.getJournalSeq(), serverId);
+        }
+        return batch.size();
+    }
+}
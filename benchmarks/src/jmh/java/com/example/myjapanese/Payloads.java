@@ -0,0 +1,95 @@
+package com.example.myjapanese;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Generated JSON in the shape the Django API returns, from a fixed seed so every run parses the same bytes
+final class Payloads {
+
+    static final int LOCATION_COUNT = 50;
+
+    private static final String[] WORDS = {
+            "rice", "miso", "nori", "tofu", "soy sauce", "matcha", "udon", "soba", "mirin", "dashi",
+            "wasabi", "umeboshi", "sake", "panko", "katsuobushi", "shichimi", "natto", "kombu",
+    };
+
+    private Payloads() {
+    }
+
+    static String items(int count) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(count * 96).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i + 1)
+                    .append(",\"itemName\":\"").append(name(random)).append(' ').append(i + 1)
+                    .append("\",\"date_added\":\"").append(date(random))
+                    .append("\",\"itemLocation\":").append(1 + random.nextInt(LOCATION_COUNT))
+                    .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    static String locations(int count) {
+        StringBuilder sb = new StringBuilder(count * 40).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i + 1)
+                    .append(",\"locationName\":\"Shelf ").append(i + 1).append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    // published_date is ISO 8601 with a zone, as Django REST framework writes DateTimeFields
+    static String potatoPosts(int count) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(count * 256).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"title\":\"").append(name(random)).append(" post ").append(i + 1)
+                    .append("\",\"content\":\"");
+            for (int w = 0; w < 20; w++) {
+                sb.append(w > 0 ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            sb.append("\",\"published_date\":\"").append(date(random))
+                    .append(String.format("T%02d:%02d:%02dZ", random.nextInt(24), random.nextInt(60), random.nextInt(60)))
+                    .append("\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    static List<Item> itemList(int count) {
+        Random random = new Random(42);
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(i + 1, name(random) + ' ' + (i + 1), date(random), 1 + random.nextInt(LOCATION_COUNT)));
+        }
+        return items;
+    }
+
+    static List<Location> locationList(int count) {
+        List<Location> locations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Location location = new Location();
+            location.setId(i + 1);
+            location.setLocationName("Shelf " + (i + 1));
+            locations.add(location);
+        }
+        return locations;
+    }
+
+    private static String name(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String date(Random random) {
+        return String.format("20%02d-%02d-%02d", 20 + random.nextInt(6), 1 + random.nextInt(12), 1 + random.nextInt(28));
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.myjapanese;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The work behind populateTable and a row click that does not need a View:
+// indexing the locations, resolving each row's location text the way ItemAdapter.bindLocation does,
+// and finding the spinner position of a clicked row's location. lookupOnClickLinearScan is the scan over the
+// spinner's locations that LocationIndex replaced, the baseline for lookupOnClick.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RowPreparationBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    @Param({"50", "10000"})
+    public int locationCount;
+
+    private List<Item> items;
+    private List<Location> locations;
+    private List<Location> renamedLocations;
+    private LocationIndex index;
+    private int[] clickedLocationIds;
+    private int nextClick;
+
+    @Setup
+    public void setUp() {
+        items = Payloads.itemList(size);
+        locations = Payloads.locationList(locationCount);
+        renamedLocations = Payloads.locationList(locationCount);
+        renamedLocations.get(0).setLocationName("Renamed shelf");
+
+        index = new LocationIndex();
+        index.update(locations);
+        // Spread over all the locations, the generated items only use the first LOCATION_COUNT
+        Random random = new Random(7);
+        clickedLocationIds = new int[1024];
+        for (int i = 0; i < clickedLocationIds.length; i++) {
+            clickedLocationIds[i] = 1 + random.nextInt(locationCount);
+        }
+    }
+
+    // A fresh index over the whole location list, as on the first load
+    @Benchmark
+    public LocationIndex indexLocations() {
+        LocationIndex fresh = new LocationIndex();
+        fresh.update(locations);
+        return fresh;
+    }
+
+    // Re-indexing after a reload where one name changed
+    @Benchmark
+    public boolean reindexLocations() {
+        boolean changed = index.update(renamedLocations);
+        index.update(locations);
+        return changed;
+    }
+
+    // Text of every row, rows of an unknown location show the raw id
+    @Benchmark
+    public void bindRows(Blackhole blackhole) {
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            String locationName = index.nameOf(item.getItemLocationId());
+            blackhole.consume(item.getItemName());
+            blackhole.consume(item.getDateAdded());
+            blackhole.consume(locationName != null ? locationName : String.valueOf(item.getItemLocationId()));
+            blackhole.consume(i % 2 == 0);
+        }
+    }
+
+    // Spinner position for a clicked row
+    @Benchmark
+    public int lookupOnClick() {
+        int locationId = clickedLocationIds[nextClick++ & (clickedLocationIds.length - 1)];
+        return index.positionOf(locationId);
+    }
+
+    // The same lookup the way the row click did it before LocationIndex
+    @Benchmark
+    public int lookupOnClickLinearScan() {
+        int locationId = clickedLocationIds[nextClick++ & (clickedLocationIds.length - 1)];
+        for (int i = 0; i < locations.size(); i++) {
+            if (locations.get(i).getId() == locationId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.myjapanese;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ItemColumnsTest {
+
+    @Test
+    public void readsTheSameRowsAsTheListBinding() throws IOException {
+        String json = "[{\"id\":1,\"itemName\":\"rice\",\"date_added\":\"2024-3-5\",\"itemLocation\":2},"
+                + "{\"id\":2,\"itemName\":null,\"date_added\":null,\"itemLocation\":3,\"extra\":[1]},"
+                + "{\"id\":3,\"itemName\":\"rice\",\"date_added\":\"2024-01-31\",\"itemLocation\":2}]";
+        ItemColumns columns = ItemColumns.read(new StringReader(json), 1);
+
+        assertEquals(3, columns.size());
+        assertEquals("rice", columns.getName(0));
+        assertNull(columns.getName(1));
+        assertEquals(ItemColumns.NO_DATE, columns.getEpochDay(1));
+        Item first = columns.toItem(0);
+        assertEquals(1, first.getId());
+        assertEquals("2024-03-05", first.getDateAdded());
+        assertEquals(2, first.getItemLocationId());
+        assertNull(columns.toItem(1).getDateAdded());
+
+        // Still usable after read() dropped the name table
+        columns.add(4, "rice", 0, 9);
+        assertEquals("rice", columns.getName(3));
+    }
+
+    @Test
+    public void sortsRangesAndGroupsLikeTheList() {
+        Random random = new Random(3);
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            String date = String.format("20%02d-%02d-%02d", 20 + random.nextInt(5), 1 + random.nextInt(12), 1 + random.nextInt(28));
+            items.add(new Item(i, "item " + random.nextInt(300), date, random.nextInt(2) == 0 ? 1 + random.nextInt(20) : 1_000_000 * random.nextInt(4)));
+        }
+        ItemColumns columns = ItemColumns.of(items);
+
+        List<Item> byDate = new ArrayList<>(items);
+        Collections.sort(byDate, new Comparator<Item>() {
+            @Override
+            public int compare(Item a, Item b) {
+                return a.getDateAdded().compareTo(b.getDateAdded());
+            }
+        });
+        int[] rowsByDate = columns.rowsSortedByDate();
+        for (int i = 0; i < byDate.size(); i++) {
+            assertEquals(byDate.get(i).getId(), columns.getId(rowsByDate[i]));
+        }
+
+        List<Item> byName = new ArrayList<>(items);
+        Collections.sort(byName, new Comparator<Item>() {
+            @Override
+            public int compare(Item a, Item b) {
+                return a.getItemName().compareTo(b.getItemName());
+            }
+        });
+        int[] rowsByName = columns.rowsSortedByName();
+        for (int i = 0; i < byName.size(); i++) {
+            assertEquals(byName.get(i).getId(), columns.getId(rowsByName[i]));
+        }
+
+        int from = IsoDates.parseEpochDay("2022-03-01");
+        int to = IsoDates.parseEpochDay("2022-08-31");
+        int[] inRange = columns.rowsInDateRange(from, to);
+        int[] span = columns.dateRangeIn(rowsByDate, from, to);
+        int[] fromSorted = Arrays.copyOfRange(rowsByDate, span[0], span[1]);
+        Arrays.sort(fromSorted);
+        assertArrayEquals(inRange, fromSorted);
+        for (int row : inRange) {
+            String date = columns.toItem(row).getDateAdded();
+            assertTrue(date.compareTo("2022-03-01") >= 0 && date.compareTo("2022-08-31") <= 0);
+        }
+
+        ItemColumns.LocationGroups groups = columns.groupByLocation();
+        int total = 0;
+        for (int group = 0; group < groups.groupCount(); group++) {
+            for (int i = groups.offsets[group]; i < groups.offsets[group + 1]; i++) {
+                assertEquals(groups.locationIds[group], columns.getLocationId(groups.rows[i]));
+                total++;
+            }
+        }
+        assertEquals(items.size(), total);
+    }
+}
@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "MyJapanese"
 include(":app")
+include(":benchmarks")